@@ -0,0 +1,91 @@
+package com.netflix.exhibitor.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.netflix.exhibitor.core.activity.QueueGroups;
+import java.util.Map;
+
+public class ActivityQueueConfiguration
+{
+    private final Map<QueueGroups, Integer> workers;
+    private final int slowActivityMs;
+
+    /**
+     * One worker per group - all activities of a group run serially
+     */
+    public static final int DEFAULT_WORKERS = 1;
+
+    /**
+     * Activities running longer than this have their worker's stack logged
+     */
+    public static final int DEFAULT_SLOW_ACTIVITY_MS = 60000;
+
+    public ActivityQueueConfiguration()
+    {
+        this(DEFAULT_WORKERS, DEFAULT_WORKERS);
+    }
+
+    /**
+     * @param mainWorkers number of threads running {@link QueueGroups#MAIN} activities
+     * @param ioWorkers number of threads running {@link QueueGroups#IO} activities
+     */
+    public ActivityQueueConfiguration(int mainWorkers, int ioWorkers)
+    {
+        this(mainWorkers, ioWorkers, DEFAULT_SLOW_ACTIVITY_MS);
+    }
+
+    /**
+     * @param mainWorkers number of threads running {@link QueueGroups#MAIN} activities
+     * @param ioWorkers number of threads running {@link QueueGroups#IO} activities
+     * @param slowActivityMs activities running longer than this have their worker's stack logged - 0 to disable
+     */
+    public ActivityQueueConfiguration(int mainWorkers, int ioWorkers, int slowActivityMs)
+    {
+        this(ImmutableMap.of(QueueGroups.MAIN, mainWorkers, QueueGroups.IO, ioWorkers), slowActivityMs);
+    }
+
+    /**
+     * @param workers number of threads for each group - missing groups get {@link #DEFAULT_WORKERS}
+     */
+    public ActivityQueueConfiguration(Map<QueueGroups, Integer> workers)
+    {
+        this(workers, DEFAULT_SLOW_ACTIVITY_MS);
+    }
+
+    /**
+     * @param workers number of threads for each group - missing groups get {@link #DEFAULT_WORKERS}
+     * @param slowActivityMs activities running longer than this have their worker's stack logged - 0 to disable
+     */
+    public ActivityQueueConfiguration(Map<QueueGroups, Integer> workers, int slowActivityMs)
+    {
+        Preconditions.checkArgument(slowActivityMs >= 0, "slowActivityMs cannot be negative");
+        Map<QueueGroups, Integer>   localWorkers = Maps.newEnumMap(QueueGroups.class);
+        for ( QueueGroups group : QueueGroups.values() )
+        {
+            Integer     count = workers.get(group);
+            count = (count != null) ? count : DEFAULT_WORKERS;
+            Preconditions.checkArgument(count > 0, "workers for " + group + " must be a positive number");
+            localWorkers.put(group, count);
+        }
+        this.workers = ImmutableMap.copyOf(localWorkers);
+        this.slowActivityMs = slowActivityMs;
+    }
+
+    /**
+     * @param group queue group
+     * @return number of threads running the group's activities
+     */
+    public int getWorkers(QueueGroups group)
+    {
+        return workers.get(group);
+    }
+
+    /**
+     * @return threshold for logging a slow activity's stack or 0 if disabled
+     */
+    public int getSlowActivityMs()
+    {
+        return slowActivityMs;
+    }
+}
@@ -19,7 +19,10 @@ package com.netflix.exhibitor.core;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.activity.ActivityPriority;
 import com.netflix.exhibitor.core.activity.ActivityQueue;
+import com.netflix.exhibitor.core.activity.ActivityStats;
+import com.netflix.exhibitor.core.activity.ActivityStatsListener;
 import com.netflix.exhibitor.core.activity.QueueGroups;
 import com.netflix.exhibitor.core.activity.RepeatingActivity;
 import com.netflix.exhibitor.core.activity.RepeatingActivityImpl;
@@ -37,6 +40,7 @@ import com.netflix.exhibitor.core.config.JQueryStyle;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelValues;
 import com.netflix.exhibitor.core.controlpanel.FileBasedPreferences;
 import com.netflix.exhibitor.core.index.IndexCache;
+import com.netflix.exhibitor.core.index.LogFileCatalog;
 import com.netflix.exhibitor.core.processes.ProcessMonitor;
 import com.netflix.exhibitor.core.processes.ProcessOperations;
 import com.netflix.exhibitor.core.processes.StandardProcessOperations;
@@ -59,19 +63,23 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.prefs.Preferences;
 
 public class Exhibitor implements Closeable
 {
     private final ActivityLog                   log;
-    private final ActivityQueue                 activityQueue = new ActivityQueue();
+    private final ActivityQueue                 activityQueue;
     private final MonitorRunningInstance        monitorRunningInstance;
     private final Collection<UITab>             additionalUITabs;
     private final ProcessOperations             processOperations;
     private final CleanupManager                cleanupManager;
     private final AtomicReference<State>        state = new AtomicReference<State>(State.LATENT);
     private final IndexCache                    indexCache;
+    private final LogFileCatalog                logFileCatalog = new LogFileCatalog();
+    private final Preferences                   preferences;
     private final ControlPanelValues            controlPanelValues;
     private final BackupManager                 backupManager;
     private final ConfigManager                 configManager;
@@ -80,6 +88,9 @@ public class Exhibitor implements Closeable
     private final RepeatingActivity             autoInstanceManagement;
     private final RepeatingActivity             servoMonitoring;
     private final CompositeMonitor<?>           servoCompositeMonitor;
+    private final CompositeMonitor<?>           indexCacheServoMonitor;
+    private final CompositeMonitor<?>           backupBandwidthServoMonitor;
+    private final Queue<CompositeMonitor<?>>    activityServoMonitors = new ConcurrentLinkedQueue<CompositeMonitor<?>>();
     private final ManifestVersion               manifestVersion = new ManifestVersion();
     private final ForkJoinPool                  forkJoinPool = new ForkJoinPool();
     private final RemoteInstanceRequestClient   remoteInstanceRequestClient;
@@ -127,12 +138,27 @@ public class Exhibitor implements Closeable
 
         this.arguments = arguments;
         log = new ActivityLog(arguments.logWindowSizeLines);
+        activityQueue = new ActivityQueue(arguments.activityQueueConfiguration, log);
+        if ( arguments.servoRegistration != null )
+        {
+            activityQueue.addStatsListener
+            (
+                new ActivityStatsListener()
+                {
+                    @Override
+                    public void statsAdded(ActivityStats stats)
+                    {
+                        activityServoMonitors.add(registerServoMonitor(Exhibitor.this.arguments, stats.getName(), stats));
+                    }
+                }
+            );
+        }
         this.configManager = new ConfigManager(this, configProvider, arguments.configCheckMs);
         this.additionalUITabs = (additionalUITabs != null) ? ImmutableList.copyOf(additionalUITabs) : ImmutableList.<UITab>of();
         this.processOperations = new StandardProcessOperations(this);
         monitorRunningInstance = new MonitorRunningInstance(this);
         cleanupManager = new CleanupManager(this);
-        indexCache = new IndexCache(log);
+        indexCache = new IndexCache(log, arguments.indexCacheConfiguration);
         processMonitor = new ProcessMonitor(this);
         autoInstanceManagement = new RepeatingActivityImpl(log, activityQueue, QueueGroups.MAIN, new AutomaticInstanceManagement(this), getAutoInstanceManagementPeriod());
 
@@ -148,10 +174,13 @@ public class Exhibitor implements Closeable
         AtomicReference<CompositeMonitor<?>>    theMonitor = new AtomicReference<CompositeMonitor<?>>();
         servoMonitoring = initServo(this, log, activityQueue, arguments, theMonitor);
         servoCompositeMonitor = theMonitor.get();
+        indexCacheServoMonitor = registerServoMonitor(arguments, indexCache.getSearchResultCache());
 
-        controlPanelValues = new ControlPanelValues(getPreferences());
+        preferences = makePreferences();
+        controlPanelValues = new ControlPanelValues(preferences);
 
         this.backupManager = new BackupManager(this, backupProvider);
+        backupBandwidthServoMonitor = registerServoMonitor(arguments, backupManager.getBandwidth());
     }
 
     public String   getVersion()
@@ -175,6 +204,14 @@ public class Exhibitor implements Closeable
         return indexCache;
     }
 
+    /**
+     * @return catalog of the transaction logs in the data directory
+     */
+    public LogFileCatalog getLogFileCatalog()
+    {
+        return logFileCatalog;
+    }
+
     /**
      * Start the app
      *
@@ -188,6 +225,7 @@ public class Exhibitor implements Closeable
         configManager.start();
         monitorRunningInstance.start();
         cleanupManager.start();
+        indexCache.start();
         backupManager.start();
         autoInstanceManagement.start();
         if ( servoMonitoring != null )
@@ -229,6 +267,21 @@ public class Exhibitor implements Closeable
         {
             arguments.servoRegistration.getMonitorRegistry().unregister(servoCompositeMonitor);
         }
+        if ( (arguments.servoRegistration != null) && (indexCacheServoMonitor != null) )
+        {
+            arguments.servoRegistration.getMonitorRegistry().unregister(indexCacheServoMonitor);
+        }
+        if ( (arguments.servoRegistration != null) && (backupBandwidthServoMonitor != null) )
+        {
+            arguments.servoRegistration.getMonitorRegistry().unregister(backupBandwidthServoMonitor);
+        }
+        if ( arguments.servoRegistration != null )
+        {
+            for ( CompositeMonitor<?> monitor : activityServoMonitors )
+            {
+                arguments.servoRegistration.getMonitorRegistry().unregister(monitor);
+            }
+        }
 
         CloseableUtils.closeQuietly(servoMonitoring);
         CloseableUtils.closeQuietly(autoInstanceManagement);
@@ -328,6 +381,14 @@ public class Exhibitor implements Closeable
         return localConnection;
     }
 
+    /**
+     * @return the local preferences store (shared by control panel values, backup ledger, etc.)
+     */
+    public Preferences getPreferences()
+    {
+        return preferences;
+    }
+
     public ControlPanelValues getControlPanelValues()
     {
         return controlPanelValues;
@@ -388,7 +449,7 @@ public class Exhibitor implements Closeable
         return forkJoinPool;
     }
 
-    private Preferences getPreferences() throws IOException
+    private Preferences makePreferences() throws IOException
     {
         if ( arguments.preferencesPath != null )
         {
@@ -408,6 +469,23 @@ public class Exhibitor implements Closeable
         return AUTO_INSTANCE_MANAGEMENT_PERIOD_MS + (int)(AUTO_INSTANCE_MANAGEMENT_PERIOD_MS * Math.random());  // add some randomness to avoid overlap with other Exhibitors
     }
 
+    private static CompositeMonitor<?> registerServoMonitor(ExhibitorArguments arguments, Object monitoredObject)
+    {
+        return registerServoMonitor(arguments, null, monitoredObject);
+    }
+
+    private static CompositeMonitor<?> registerServoMonitor(ExhibitorArguments arguments, String id, Object monitoredObject)
+    {
+        if ( arguments.servoRegistration == null )
+        {
+            return null;
+        }
+
+        CompositeMonitor<?>     compositeMonitor = Monitors.newObjectMonitor(id, monitoredObject);
+        arguments.servoRegistration.getMonitorRegistry().register(compositeMonitor);
+        return compositeMonitor;
+    }
+
     private static RepeatingActivity initServo(Exhibitor exhibitor, ActivityLog log, ActivityQueue activityQueue, ExhibitorArguments arguments, AtomicReference<CompositeMonitor<?>> theMonitor)
     {
         theMonitor.set(null);
@@ -419,7 +497,7 @@ public class Exhibitor implements Closeable
             CompositeMonitor<?>     compositeMonitor = Monitors.newObjectMonitor(zookeeperMonitoredData);
 
             GetMonitorData          getMonitorData = new GetMonitorData(exhibitor, zookeeperMonitoredData);
-            localServoMonitoring = new RepeatingActivityImpl(log, activityQueue, QueueGroups.IO, getMonitorData, arguments.servoRegistration.getZookeeperPollMs());
+            localServoMonitoring = new RepeatingActivityImpl(log, activityQueue, QueueGroups.IO, getMonitorData, arguments.servoRegistration.getZookeeperPollMs(), ActivityPriority.LOW, null);
             arguments.servoRegistration.getMonitorRegistry().register(compositeMonitor);
 
             theMonitor.set(compositeMonitor);
@@ -0,0 +1,89 @@
+package com.netflix.exhibitor.core;
+
+import com.google.common.base.Preconditions;
+import java.util.concurrent.TimeUnit;
+
+public class IndexCacheConfiguration
+{
+    private final long searchResultCacheMaxBytes;
+    private final int searchResultCacheMaxIdleMs;
+    private final int maxOpenReaders;
+    private final int maxIdleMs;
+    private final int sweepPeriodMs;
+
+    public static final long DEFAULT_SEARCH_RESULT_CACHE_MAX_BYTES = 50 * 1024 * 1024;
+    public static final int DEFAULT_SEARCH_RESULT_CACHE_MAX_IDLE_MS = (int)TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES);
+    public static final int DEFAULT_MAX_OPEN_READERS = 10;
+    public static final int DEFAULT_MAX_IDLE_MS = (int)TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES);
+    public static final int DEFAULT_SWEEP_PERIOD_MS = (int)TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS);
+
+    public IndexCacheConfiguration()
+    {
+        this(DEFAULT_SEARCH_RESULT_CACHE_MAX_BYTES);
+    }
+
+    /**
+     * @param searchResultCacheMaxBytes approximate memory budget for cached search results shared by all open indexes
+     */
+    public IndexCacheConfiguration(long searchResultCacheMaxBytes)
+    {
+        this(searchResultCacheMaxBytes, DEFAULT_MAX_OPEN_READERS, DEFAULT_MAX_IDLE_MS, DEFAULT_SWEEP_PERIOD_MS);
+    }
+
+    /**
+     * @param searchResultCacheMaxBytes approximate memory budget for cached search results shared by all open indexes
+     * @param maxOpenReaders max number of indexes to keep open - the least recently used idle index is closed when exceeded
+     * @param maxIdleMs an index that hasn't been used for this long is closed
+     * @param sweepPeriodMs how often to check for idle indexes
+     */
+    public IndexCacheConfiguration(long searchResultCacheMaxBytes, int maxOpenReaders, int maxIdleMs, int sweepPeriodMs)
+    {
+        this(searchResultCacheMaxBytes, DEFAULT_SEARCH_RESULT_CACHE_MAX_IDLE_MS, maxOpenReaders, maxIdleMs, sweepPeriodMs);
+    }
+
+    /**
+     * @param searchResultCacheMaxBytes approximate memory budget for cached search results shared by all open indexes
+     * @param searchResultCacheMaxIdleMs a cached search result that hasn't been used for this long is discarded
+     * @param maxOpenReaders max number of indexes to keep open - the least recently used idle index is closed when exceeded
+     * @param maxIdleMs an index that hasn't been used for this long is closed
+     * @param sweepPeriodMs how often to check for idle indexes
+     */
+    public IndexCacheConfiguration(long searchResultCacheMaxBytes, int searchResultCacheMaxIdleMs, int maxOpenReaders, int maxIdleMs, int sweepPeriodMs)
+    {
+        Preconditions.checkArgument(searchResultCacheMaxBytes >= 0, "searchResultCacheMaxBytes cannot be negative");
+        Preconditions.checkArgument(searchResultCacheMaxIdleMs > 0, "searchResultCacheMaxIdleMs must be a positive number");
+        Preconditions.checkArgument(maxOpenReaders > 0, "maxOpenReaders must be a positive number");
+        Preconditions.checkArgument(maxIdleMs > 0, "maxIdleMs must be a positive number");
+        Preconditions.checkArgument(sweepPeriodMs > 0, "sweepPeriodMs must be a positive number");
+        this.searchResultCacheMaxBytes = searchResultCacheMaxBytes;
+        this.searchResultCacheMaxIdleMs = searchResultCacheMaxIdleMs;
+        this.maxOpenReaders = maxOpenReaders;
+        this.maxIdleMs = maxIdleMs;
+        this.sweepPeriodMs = sweepPeriodMs;
+    }
+
+    public long getSearchResultCacheMaxBytes()
+    {
+        return searchResultCacheMaxBytes;
+    }
+
+    public int getSearchResultCacheMaxIdleMs()
+    {
+        return searchResultCacheMaxIdleMs;
+    }
+
+    public int getMaxOpenReaders()
+    {
+        return maxOpenReaders;
+    }
+
+    public int getMaxIdleMs()
+    {
+        return maxIdleMs;
+    }
+
+    public int getSweepPeriodMs()
+    {
+        return sweepPeriodMs;
+    }
+}
@@ -16,9 +16,7 @@
 
 package com.netflix.exhibitor.core.activity;
 
-import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.netflix.exhibitor.core.ExhibitorArguments;
 import org.slf4j.Logger;
@@ -30,27 +28,89 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Date;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * The in-memory log shown in the UI. Messages are kept in a fixed size ring buffer - adding is lock free
+ * and overwrites the oldest message once the window is full. Each message has a sequence number so that
+ * readers can fetch only the messages added since their last read (see {@link #getLinesSince(String, long)}).
+ */
 public class ActivityLog
 {
-    private final Queue<Message>    queue = new ConcurrentLinkedQueue<Message>();
-    private final int               windowSizeLines;
+    private final AtomicReferenceArray<Message> messages;
+    private final AtomicLong        nextSequence = new AtomicLong(0);
 
     private static final Logger     log = LoggerFactory.getLogger(ActivityLog.class);
 
     private static class Message
     {
-        final Date      date = new Date();
+        final long      sequence;
+        final long      time = System.currentTimeMillis();
         final String    text;
         final Type      type;
 
-        private Message(String text, Type type)
+        private volatile String displayPrefix = null;  // formatting the date is relatively expensive - do it once
+
+        private Message(long sequence, String text, Type type)
         {
+            this.sequence = sequence;
             this.text = text;
             this.type = type;
         }
+
+        String toDisplay(String separator)
+        {
+            String  localDisplayPrefix = displayPrefix;
+            if ( localDisplayPrefix == null )
+            {
+                localDisplayPrefix = new Date(time).toString();
+                displayPrefix = localDisplayPrefix;
+            }
+            return localDisplayPrefix + separator + type + separator + text;
+        }
+    }
+
+    /**
+     * Lines returned by {@link #getLinesSince(String, long)}
+     */
+    public static class Lines
+    {
+        private final List<String> lines;
+        private final long nextSequence;
+        private final boolean truncated;
+
+        private Lines(List<String> lines, long nextSequence, boolean truncated)
+        {
+            this.lines = lines;
+            this.nextSequence = nextSequence;
+            this.truncated = truncated;
+        }
+
+        /**
+         * @return the lines, oldest first
+         */
+        public List<String> getLines()
+        {
+            return lines;
+        }
+
+        /**
+         * @return the sequence to pass to the next read
+         */
+        public long getNextSequence()
+        {
+            return nextSequence;
+        }
+
+        /**
+         * @return true if some of the requested messages have already been overwritten (or the sequence is
+         * from before this instance was restarted) - readers should discard the lines they have
+         */
+        public boolean isTruncated()
+        {
+            return truncated;
+        }
     }
 
     /**
@@ -58,7 +118,7 @@ public class ActivityLog
      */
     public ActivityLog(int windowSizeLines)
     {
-        this.windowSizeLines = windowSizeLines;
+        messages = new AtomicReferenceArray<Message>(Math.max(1, windowSizeLines));
         add(Type.INFO, "Exhibitor started");
     }
 
@@ -70,21 +130,57 @@ public class ActivityLog
      * @param logDirection display direction
      * @return lines
      */
-    public List<String> toDisplayList(final String separator, ExhibitorArguments.LogDirection logDirection)
+    public List<String> toDisplayList(String separator, ExhibitorArguments.LogDirection logDirection)
+    {
+        List<String>    list = getLinesSince(separator, 0).getLines();
+        return (logDirection == ExhibitorArguments.LogDirection.NATURAL) ? list : Lists.reverse(list);
+    }
+
+    /**
+     * Return the window lines added at or after the given sequence
+     *
+     * @param separator line separator
+     * @param sinceSequence first sequence to return - i.e. the {@link Lines#getNextSequence()} of a previous read or 0 for all lines
+     * @return lines
+     */
+    public Lines getLinesSince(String separator, long sinceSequence)
     {
-        Iterable<String> transformed = Iterables.transform
-        (
-            queue,
-            new Function<Message, String>()
+        long                        endSequence = nextSequence.get();
+        boolean                     truncated = false;
+        sinceSequence = Math.max(0, sinceSequence);
+        if ( sinceSequence > endSequence )
+        {
+            sinceSequence = 0;  // from before this instance was restarted
+            truncated = true;
+        }
+
+        long                        startSequence = Math.max(sinceSequence, endSequence - messages.length());
+        truncated |= (startSequence > sinceSequence);
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        long                        sequence = startSequence;
+        for ( ; sequence < endSequence; ++sequence )
+        {
+            Message     message = messages.get(getIndex(sequence));
+            if ( (message == null) || (message.sequence < sequence) )
             {
-                public String apply(Message message)
-                {
-                    return message.date + separator + message.type + separator + message.text;
-                }
+                break;  // the writer hasn't stored it yet - leave it (and anything after it) for the next read
             }
-        );
-        ImmutableList<String> list = ImmutableList.copyOf(transformed);
-        return (logDirection == ExhibitorArguments.LogDirection.NATURAL) ? list : Lists.reverse(list);
+            if ( message.sequence > sequence )
+            {
+                truncated = true;   // already overwritten
+                continue;
+            }
+            builder.add(message.toDisplay(separator));
+        }
+        return new Lines(builder.build(), sequence, truncated);
+    }
+
+    /**
+     * @return the sequence that the next message will get
+     */
+    public long getNextSequence()
+    {
+        return nextSequence.get();
     }
 
     /**
@@ -193,13 +289,33 @@ public class ActivityLog
 
         if ( type.addToUI() )
         {
-            while ( queue.size() > windowSizeLines )  // NOTE: due to concurrency, this may make the queue shorter than MAX - that's OK (and in some cases longer)
+            long    sequence = nextSequence.getAndIncrement();
+            store(new Message(sequence, queueMessage, type));
+        }
+        type.log(message, exception);
+    }
+
+    private void store(Message message)
+    {
+        // a writer that stalled between getting its sequence and storing must not overwrite a newer message
+        int     index = getIndex(message.sequence);
+        for(;;)
+        {
+            Message     current = messages.get(index);
+            if ( (current != null) && (current.sequence > message.sequence) )
+            {
+                break;
+            }
+            if ( messages.compareAndSet(index, current, message) )
             {
-                queue.remove();
+                break;
             }
-            queue.add(new Message(queueMessage, type));
         }
-        type.log(message, exception);
+    }
+
+    private int getIndex(long sequence)
+    {
+        return (int)(sequence % messages.length());
     }
 
     /**
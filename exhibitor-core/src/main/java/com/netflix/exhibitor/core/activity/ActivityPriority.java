@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.activity;
+
+/**
+ * Order in which ready activities of a queue group are run. Activities whose delay has expired
+ * run in priority order (then in the order they became ready).
+ */
+public enum ActivityPriority
+{
+    /**
+     * Health checks, instance monitoring, config polling
+     */
+    HIGH,
+
+    /**
+     * The default
+     */
+    NORMAL,
+
+    /**
+     * Housekeeping - backups, cleanup, indexing, metrics
+     */
+    LOW
+}
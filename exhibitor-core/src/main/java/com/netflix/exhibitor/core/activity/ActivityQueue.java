@@ -17,53 +17,98 @@
 package com.netflix.exhibitor.core.activity;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.exhibitor.core.ActivityQueueConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * <p>
+ *     Runs activities in queue groups. Each group has its own pool of workers (one by default, in which case
+ *     all activities of the group run serially). Ready activities - those whose delay has expired - run in
+ *     {@link ActivityPriority} order. With more than one worker, activities that share a serialization key
+ *     (see {@link QueuedActivity}) still never run concurrently, nor does an activity ever overlap itself.
+ * </p>
+ *
+ * <p>
+ *     Delays are handled by a shared timer, so adding, replacing or removing a delayed activity doesn't
+ *     scan the queue. Queue wait and run time histograms and outcome counts are kept for each kind of activity -
+ *     see {@link #getStats()}. Activities that run longer than the configured threshold have their worker's stack
+ *     logged.
+ * </p>
+ */
 public class ActivityQueue implements Closeable
 {
     private static final Logger log = LoggerFactory.getLogger(ActivityQueue.class);
 
     private final ExecutorService               service = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("ActivityQueue-%d").build());
-    private final Map<QueueGroups, DelayQueue<ActivityHolder>> queues;
+    private final ScheduledExecutorService      timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("ActivityQueueTimer-%d").build());
+    private final ActivityQueueConfiguration    configuration;
+    private final Map<QueueGroups, GroupQueue>  queues;
+    private final ConcurrentMap<String, ActivityStats> stats = new ConcurrentHashMap<String, ActivityStats>();
+    private final Set<ActivityStatsListener>    statsListeners = Sets.newSetFromMap(Maps.<ActivityStatsListener, Boolean>newConcurrentMap());
+    private final AtomicLong                    sequence = new AtomicLong(0);
+    private final ActivityLog                   activityLog;
 
-    private static class ActivityHolder implements Delayed
+    private static class ActivityHolder implements Comparable<ActivityHolder>
     {
         private final Activity      activity;
         private final long          endMs;
+        private final long          sequence;
+        private final ActivityPriority priority;
+        private final Object        serializationKey;
 
-        private ActivityHolder(Activity activity, long delayMs)
+        private ScheduledFuture<?>  timer = null;       // protected by the GroupQueue's sync
+        private boolean             cancelled = false;  // protected by the GroupQueue's sync
+
+        private ActivityHolder(Activity activity, long delayMs, long sequence)
         {
             this.activity = activity;
+            this.sequence = sequence;
             endMs = System.currentTimeMillis() + delayMs;
-        }
-
-        @Override
-        public long getDelay(TimeUnit unit)
-        {
-            return unit.convert(endMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            priority = getPriority(activity);
+            String  key = getSerializationKey(activity);
+            serializationKey = (key != null) ? key : new InstanceKey(activity);
         }
 
         @Override
         // Note: this class has a natural ordering that is inconsistent with equals
-        public int compareTo(Delayed rhs)
+        public int compareTo(ActivityHolder rhs)
         {
             if ( rhs == this )
             {
                 return 0;
             }
 
-            long    diff = getDelay(TimeUnit.MILLISECONDS) - rhs.getDelay(TimeUnit.MILLISECONDS);
-            return (diff == 0) ? 0 : ((diff < 0) ? -1 : 1);
+            // order of execution once ready: priority, then time ready, then time added
+            if ( priority != rhs.priority )
+            {
+                return priority.compareTo(rhs.priority);
+            }
+            if ( endMs != rhs.endMs )
+            {
+                return (endMs < rhs.endMs) ? -1 : 1;
+            }
+            return (sequence < rhs.sequence) ? -1 : ((sequence > rhs.sequence) ? 1 : 0);
         }
 
         @Override
@@ -91,12 +136,165 @@ public class ActivityQueue implements Closeable
         }
     }
 
+    // serialization key for activities that don't specify one - the activity instance itself
+    private static class InstanceKey
+    {
+        private final Activity activity;
+
+        private InstanceKey(Activity activity)
+        {
+            this.activity = activity;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return (o instanceof InstanceKey) && (((InstanceKey)o).activity == activity);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(activity);
+        }
+    }
+
+    // Delayed activities wait on the shared timer and are moved to the ready list when their delay expires. Workers
+    // take the best ready activity whose serialization key isn't already running.
+    private class GroupQueue
+    {
+        private final List<ActivityHolder> ready = Lists.newArrayList();
+        private final Map<Activity, List<ActivityHolder>> delayed = Maps.newIdentityHashMap();
+        private final Set<Object> runningKeys = Sets.newHashSet();
+
+        synchronized void offer(final ActivityHolder holder, long delayMs)
+        {
+            if ( delayMs <= 0 )
+            {
+                ready.add(holder);
+                notifyAll();
+                return;
+            }
+
+            List<ActivityHolder>    holders = delayed.get(holder.activity);
+            if ( holders == null )
+            {
+                holders = Lists.newArrayListWithCapacity(1);
+                delayed.put(holder.activity, holders);
+            }
+            holders.add(holder);
+            holder.timer = timer.schedule
+            (
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        expired(holder);
+                    }
+                },
+                delayMs,
+                TimeUnit.MILLISECONDS
+            );
+        }
+
+        synchronized void remove(Activity activity)
+        {
+            List<ActivityHolder>    holders = delayed.remove(activity);
+            if ( holders != null )
+            {
+                for ( ActivityHolder holder : holders )
+                {
+                    holder.cancelled = true;
+                    holder.timer.cancel(false);
+                }
+            }
+
+            Iterator<ActivityHolder> iterator = ready.iterator();
+            while ( iterator.hasNext() )
+            {
+                if ( iterator.next().activity == activity )
+                {
+                    iterator.remove();
+                }
+            }
+        }
+
+        synchronized ActivityHolder take() throws InterruptedException
+        {
+            for(;;)
+            {
+                ActivityHolder      best = null;
+                for ( ActivityHolder holder : ready )
+                {
+                    if ( !runningKeys.contains(holder.serializationKey) && ((best == null) || (holder.compareTo(best) < 0)) )
+                    {
+                        best = holder;
+                    }
+                }
+                if ( best != null )
+                {
+                    ready.remove(best);
+                    runningKeys.add(best.serializationKey);
+                    return best;
+                }
+                wait();
+            }
+        }
+
+        synchronized void release(ActivityHolder holder)
+        {
+            runningKeys.remove(holder.serializationKey);
+            notifyAll();
+        }
+
+        private synchronized void expired(ActivityHolder holder)
+        {
+            if ( holder.cancelled )
+            {
+                return; // replaced/removed after the timer fired
+            }
+
+            List<ActivityHolder>    holders = delayed.get(holder.activity);
+            if ( holders != null )
+            {
+                holders.remove(holder);
+                if ( holders.isEmpty() )
+                {
+                    delayed.remove(holder.activity);
+                }
+            }
+            ready.add(holder);
+            notifyAll();
+        }
+    }
+
     public ActivityQueue()
     {
-        ImmutableMap.Builder<QueueGroups, DelayQueue<ActivityHolder>>   builder = ImmutableMap.builder();
+        this(new ActivityQueueConfiguration());
+    }
+
+    /**
+     * @param configuration worker counts
+     */
+    public ActivityQueue(ActivityQueueConfiguration configuration)
+    {
+        this(configuration, null);
+    }
+
+    /**
+     * @param configuration worker counts and slow activity threshold
+     * @param activityLog where slow activities are reported or null to only use the process log
+     */
+    public ActivityQueue(ActivityQueueConfiguration configuration, ActivityLog activityLog)
+    {
+        this.configuration = configuration;
+        this.activityLog = activityLog;
+
+        ImmutableMap.Builder<QueueGroups, GroupQueue>   builder = ImmutableMap.builder();
         for ( QueueGroups group : QueueGroups.values() )
         {
-            builder.put(group, new DelayQueue<ActivityHolder>());
+            builder.put(group, new GroupQueue());
         }
         queues = builder.build();
     }
@@ -108,47 +306,49 @@ public class ActivityQueue implements Closeable
     {
         for ( QueueGroups group : QueueGroups.values() )
         {
-            final DelayQueue<ActivityHolder>      thisQueue = queues.get(group);
-            service.submit
-            (
-                new Runnable()
-                {
-                    @Override
-                    public void run()
+            final GroupQueue      thisQueue = queues.get(group);
+            for ( int i = 0; i < configuration.getWorkers(group); ++i )
+            {
+                service.submit
+                (
+                    new Runnable()
                     {
-                        try
+                        @Override
+                        public void run()
                         {
-                            while ( !Thread.currentThread().isInterrupted() )
+                            try
                             {
-                                ActivityHolder holder = thisQueue.take();
-                                try
+                                while ( !Thread.currentThread().isInterrupted() )
                                 {
-                                    Boolean result = holder.activity.call();
-                                    holder.activity.completed((result != null) && result);
-                                }
-                                catch ( Throwable e )
-                                {
-                                    log.error("Unhandled exception in background task", e);
+                                    ActivityHolder holder = thisQueue.take();
+                                    try
+                                    {
+                                        runActivity(holder);
+                                    }
+                                    finally
+                                    {
+                                        thisQueue.release(holder);
+                                    }
                                 }
                             }
-                        }
-                        catch ( InterruptedException dummy )
-                        {
-                            Thread.currentThread().interrupt();
+                            catch ( InterruptedException dummy )
+                            {
+                                Thread.currentThread().interrupt();
+                            }
                         }
                     }
-                }
-            );
+                );
+            }
         }
     }
 
     /**
      * Add an activity to the given queue
      *
-     * @param group the queue - all activities within a queue are executed serially
+     * @param group the queue
      * @param activity the activity
      */
-    public synchronized void     add(QueueGroups group, Activity activity)
+    public void     add(QueueGroups group, Activity activity)
     {
         add(group, activity, 0, TimeUnit.MILLISECONDS);
     }
@@ -156,30 +356,32 @@ public class ActivityQueue implements Closeable
     /**
      * Add an activity to the given queue that executes after a specified delay
      *
-     * @param group the queue - all activities within a queue are executed serially
+     * @param group the queue
      * @param activity the activity
      * @param delay the delay
      * @param unit the delay unit
      */
-    public synchronized void     add(QueueGroups group, Activity activity, long delay, TimeUnit unit)
+    public void     add(QueueGroups group, Activity activity, long delay, TimeUnit unit)
     {
-        ActivityHolder  holder = new ActivityHolder(activity, TimeUnit.MILLISECONDS.convert(delay, unit));
-        queues.get(group).offer(holder);
+        long            delayMs = TimeUnit.MILLISECONDS.convert(delay, unit);
+        ActivityHolder  holder = new ActivityHolder(activity, delayMs, sequence.getAndIncrement());
+        queues.get(group).offer(holder, delayMs);
     }
 
     @Override
     public void close() throws IOException
     {
+        timer.shutdownNow();
         service.shutdownNow();
     }
 
     /**
      * Replace the given activity in the given queue. If not in the queue, adds it to the queue.
      *
-     * @param group the queue - all activities within a queue are executed serially
+     * @param group the queue
      * @param activity the activity
      */
-    public synchronized void     replace(QueueGroups group, Activity activity)
+    public void     replace(QueueGroups group, Activity activity)
     {
         replace(group, activity, 0, TimeUnit.MILLISECONDS);
     }
@@ -188,16 +390,202 @@ public class ActivityQueue implements Closeable
      * Replace the given activity in the given queue. If not in the queue, adds it to the queue. The activity
      * runs after the specified delay (the delay of the previous entry, if any, is ignored)
      *
-     * @param group the queue - all activities within a queue are executed serially
+     * @param group the queue
      * @param activity the activity
      * @param delay the delay
      * @param unit the delay unit
      */
-    public synchronized void     replace(QueueGroups group, Activity activity, long delay, TimeUnit unit)
+    public void     replace(QueueGroups group, Activity activity, long delay, TimeUnit unit)
+    {
+        long            delayMs = TimeUnit.MILLISECONDS.convert(delay, unit);
+        ActivityHolder  holder = new ActivityHolder(activity, delayMs, sequence.getAndIncrement());
+        GroupQueue      queue = queues.get(group);
+        synchronized(queue)
+        {
+            queue.remove(activity);
+            queue.offer(holder, delayMs);
+        }
+    }
+
+    /**
+     * Remove any pending (not yet running) entries for the given activity
+     *
+     * @param group the queue
+     * @param activity the activity
+     */
+    public void     remove(QueueGroups group, Activity activity)
+    {
+        queues.get(group).remove(activity);
+    }
+
+    /**
+     * @return queue wait/run time metrics for each kind of activity that has run
+     */
+    public Collection<ActivityStats> getStats()
+    {
+        return stats.values();
+    }
+
+    /**
+     * Add a listener that is notified when stats are first kept for a kind of activity. Note: the listener
+     * is not called for stats that already exist.
+     *
+     * @param listener the listener
+     */
+    public void     addStatsListener(ActivityStatsListener listener)
+    {
+        statsListeners.add(listener);
+    }
+
+    /**
+     * @return the worker counts and slow activity threshold
+     */
+    public ActivityQueueConfiguration getConfiguration()
+    {
+        return configuration;
+    }
+
+    /**
+     * @param activity an activity
+     * @return the name used for the activity's metrics
+     */
+    public static String getName(Activity activity)
+    {
+        if ( activity instanceof QueuedActivity )
+        {
+            String  name = ((QueuedActivity)activity).getName();
+            if ( name != null )
+            {
+                return name;
+            }
+        }
+        Class<?>    clazz = activity.getClass();
+        while ( clazz.isAnonymousClass() && (clazz.getEnclosingClass() != null) )
+        {
+            clazz = clazz.getEnclosingClass();  // name anonymous activities after their owner
+        }
+        return clazz.getSimpleName();
+    }
+
+    /**
+     * @param activity an activity
+     * @return the activity's priority
+     */
+    public static ActivityPriority getPriority(Activity activity)
     {
-        ActivityHolder  holder = new ActivityHolder(activity, TimeUnit.MILLISECONDS.convert(delay, unit));
-        DelayQueue<ActivityHolder> queue = queues.get(group);
-        queue.remove(holder);
-        queue.offer(holder);
+        ActivityPriority    priority = (activity instanceof QueuedActivity) ? ((QueuedActivity)activity).getPriority() : null;
+        return (priority != null) ? priority : ActivityPriority.NORMAL;
+    }
+
+    /**
+     * @param activity an activity
+     * @return the activity's serialization key or null
+     */
+    public static String getSerializationKey(Activity activity)
+    {
+        return (activity instanceof QueuedActivity) ? ((QueuedActivity)activity).getSerializationKey() : null;
+    }
+
+    private void runActivity(ActivityHolder holder)
+    {
+        long            startMs = System.currentTimeMillis();
+        String          name = getName(holder.activity);
+        ActivityStats   activityStats = getStats(name);
+        activityStats.getQueueWait().record(startMs - holder.endMs);
+
+        AtomicBoolean       isRunning = new AtomicBoolean(true);
+        ScheduledFuture<?>  slowCheck = scheduleSlowCheck(name, activityStats, isRunning);
+        try
+        {
+            Boolean result = holder.activity.call();
+            boolean wasSuccessful = (result != null) && result;
+            activityStats.recordOutcome(wasSuccessful);
+            holder.activity.completed(wasSuccessful);
+        }
+        catch ( Throwable e )
+        {
+            activityStats.recordError();
+            log.error("Unhandled exception in background task", e);
+        }
+        finally
+        {
+            isRunning.set(false);
+            if ( slowCheck != null )
+            {
+                slowCheck.cancel(false);
+            }
+            activityStats.getRunTime().record(System.currentTimeMillis() - startMs);
+        }
+    }
+
+    private ScheduledFuture<?> scheduleSlowCheck(final String name, final ActivityStats activityStats, final AtomicBoolean isRunning)
+    {
+        final int       slowActivityMs = configuration.getSlowActivityMs();
+        if ( slowActivityMs <= 0 )
+        {
+            return null;
+        }
+
+        final Thread    worker = Thread.currentThread();
+        return timer.schedule
+        (
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if ( isRunning.get() )
+                    {
+                        activityStats.recordSlow();
+                        reportSlowActivity(name, worker, slowActivityMs);
+                    }
+                }
+            },
+            slowActivityMs,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    private void reportSlowActivity(String name, Thread worker, int slowActivityMs)
+    {
+        // capture the worker's current stack so that it's clear what the activity is stuck on
+        Exception   stack = new Exception("Stack of " + worker.getName());
+        stack.setStackTrace(worker.getStackTrace());
+
+        String      message = String.format("Activity %s has been running for more than %d ms", name, slowActivityMs);
+        if ( activityLog != null )
+        {
+            activityLog.add(ActivityLog.Type.ERROR, message, stack);
+        }
+        else
+        {
+            log.warn(message, stack);
+        }
+    }
+
+    private ActivityStats getStats(String name)
+    {
+        ActivityStats   activityStats = stats.get(name);
+        if ( activityStats == null )
+        {
+            ActivityStats   newStats = new ActivityStats(name);
+            activityStats = stats.putIfAbsent(name, newStats);
+            if ( activityStats == null )
+            {
+                activityStats = newStats;
+                for ( ActivityStatsListener listener : statsListeners )
+                {
+                    try
+                    {
+                        listener.statsAdded(activityStats);
+                    }
+                    catch ( Exception e )
+                    {
+                        log.error("Stats listener failed for: " + name, e);
+                    }
+                }
+            }
+        }
+        return activityStats;
     }
 }
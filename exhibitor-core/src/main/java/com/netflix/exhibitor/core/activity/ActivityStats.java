@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.activity;
+
+import com.netflix.servo.annotations.Monitor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.netflix.servo.annotations.DataSourceType.*;
+
+/**
+ * Queue metrics for one kind of activity (see {@link QueuedActivity#getName()}). Registered with
+ * Servo per activity (the activity name is the monitor id).
+ */
+public class ActivityStats
+{
+    private final String name;
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final AtomicLong successCount = new AtomicLong(0);
+    private final AtomicLong failureCount = new AtomicLong(0);
+    private final AtomicLong errorCount = new AtomicLong(0);
+    private final AtomicLong slowCount = new AtomicLong(0);
+
+    ActivityStats(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return time between the activity becoming ready (its delay expiring) and it starting to run
+     */
+    public LatencyHistogram getQueueWait()
+    {
+        return queueWait;
+    }
+
+    /**
+     * @return time spent in the activity's call() and completed()
+     */
+    public LatencyHistogram getRunTime()
+    {
+        return runTime;
+    }
+
+    /**
+     * @return number of runs where call() returned true
+     */
+    @Monitor(name = "activity_successes", type = COUNTER)
+    public long getSuccessCount()
+    {
+        return successCount.get();
+    }
+
+    /**
+     * @return number of runs where call() returned false/null
+     */
+    @Monitor(name = "activity_failures", type = COUNTER)
+    public long getFailureCount()
+    {
+        return failureCount.get();
+    }
+
+    /**
+     * @return number of runs where call() or completed() threw
+     */
+    @Monitor(name = "activity_errors", type = COUNTER)
+    public long getErrorCount()
+    {
+        return errorCount.get();
+    }
+
+    /**
+     * @return number of runs that exceeded the slow activity threshold
+     */
+    @Monitor(name = "activity_slow", type = COUNTER)
+    public long getSlowCount()
+    {
+        return slowCount.get();
+    }
+
+    @Monitor(name = "activity_queue_wait_ms", type = COUNTER)
+    public long getQueueWaitTotalMs()
+    {
+        return queueWait.getTotalMs();
+    }
+
+    @Monitor(name = "activity_queue_wait_max_ms", type = GAUGE)
+    public long getQueueWaitMaxMs()
+    {
+        return queueWait.getMaxMs();
+    }
+
+    @Monitor(name = "activity_queue_wait_p99_ms", type = GAUGE)
+    public long getQueueWait99thMs()
+    {
+        return queueWait.getPercentileMs(99);
+    }
+
+    @Monitor(name = "activity_run_count", type = COUNTER)
+    public long getRunCount()
+    {
+        return runTime.getCount();
+    }
+
+    @Monitor(name = "activity_run_time_ms", type = COUNTER)
+    public long getRunTimeTotalMs()
+    {
+        return runTime.getTotalMs();
+    }
+
+    @Monitor(name = "activity_run_time_max_ms", type = GAUGE)
+    public long getRunTimeMaxMs()
+    {
+        return runTime.getMaxMs();
+    }
+
+    @Monitor(name = "activity_run_time_p99_ms", type = GAUGE)
+    public long getRunTime99thMs()
+    {
+        return runTime.getPercentileMs(99);
+    }
+
+    void recordOutcome(boolean wasSuccessful)
+    {
+        (wasSuccessful ? successCount : failureCount).incrementAndGet();
+    }
+
+    void recordError()
+    {
+        errorCount.incrementAndGet();
+    }
+
+    void recordSlow()
+    {
+        slowCount.incrementAndGet();
+    }
+}
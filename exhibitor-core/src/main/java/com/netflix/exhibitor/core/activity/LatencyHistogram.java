@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.activity;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-bucket histogram of durations. Buckets are roughly logarithmic from 1ms to 5 minutes
+ * with a final overflow bucket. Recording is lock free.
+ */
+public class LatencyHistogram
+{
+    private static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, 300000, Long.MAX_VALUE};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_MS.length);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong totalMs = new AtomicLong(0);
+    private final AtomicLong maxMs = new AtomicLong(0);
+
+    /**
+     * @param ms the duration to record
+     */
+    public void record(long ms)
+    {
+        ms = Math.max(0, ms);
+
+        int     index = 0;
+        while ( ms > BUCKET_BOUNDS_MS[index] )
+        {
+            ++index;
+        }
+        counts.incrementAndGet(index);
+        count.incrementAndGet();
+        totalMs.addAndGet(ms);
+
+        long    currentMax;
+        do
+        {
+            currentMax = maxMs.get();
+        } while ( (ms > currentMax) && !maxMs.compareAndSet(currentMax, ms) );
+    }
+
+    /**
+     * @return number of recorded durations
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * @return sum of the recorded durations
+     */
+    public long getTotalMs()
+    {
+        return totalMs.get();
+    }
+
+    /**
+     * @return the longest recorded duration
+     */
+    public long getMaxMs()
+    {
+        return maxMs.get();
+    }
+
+    /**
+     * @return the mean duration or 0
+     */
+    public long getMeanMs()
+    {
+        long    localCount = count.get();
+        return (localCount > 0) ? (totalMs.get() / localCount) : 0;
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing the given percentile (the max for the overflow bucket)
+     *
+     * @param percentile 0 - 100
+     * @return approximate duration
+     */
+    public long getPercentileMs(double percentile)
+    {
+        long    localCount = count.get();
+        if ( localCount == 0 )
+        {
+            return 0;
+        }
+
+        long    target = (long)Math.ceil(localCount * (percentile / 100.0));
+        long    seen = 0;
+        for ( int i = 0; i < BUCKET_BOUNDS_MS.length; ++i )
+        {
+            seen += counts.get(i);
+            if ( seen >= target )
+            {
+                return Math.min(BUCKET_BOUNDS_MS[i], getMaxMs());
+            }
+        }
+        return getMaxMs();
+    }
+
+    /**
+     * @return the inclusive upper bound of each bucket (the last is {@link Long#MAX_VALUE})
+     */
+    public long[] getBucketBoundsMs()
+    {
+        return BUCKET_BOUNDS_MS.clone();
+    }
+
+    /**
+     * @return count of each bucket
+     */
+    public long[] getBucketCounts()
+    {
+        long[]  result = new long[counts.length()];
+        for ( int i = 0; i < result.length; ++i )
+        {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.activity;
+
+/**
+ * Optional scheduling hints for activities added to the {@link ActivityQueue}. Plain {@link Activity}
+ * instances are named after their class, run at {@link ActivityPriority#NORMAL} and are only
+ * serialized with themselves.
+ */
+public interface QueuedActivity extends Activity
+{
+    /**
+     * Serialization key for activities that start, stop or monitor the ZooKeeper instance
+     */
+    public static final String INSTANCE_KEY = "instance";
+
+    /**
+     * Serialization key for activities that read or modify the ZooKeeper data directories (backups, cleanup, restores)
+     */
+    public static final String DATA_DIRECTORY_KEY = "data-directory";
+
+    /**
+     * Serialization key for activities that build or modify log indexes
+     */
+    public static final String INDEX_KEY = "index";
+
+    /**
+     * @return name used for the activity's queue metrics
+     */
+    public String getName();
+
+    /**
+     * @return priority relative to the other ready activities of the queue group
+     */
+    public ActivityPriority getPriority();
+
+    /**
+     * Activities of a queue group with the same serialization key never run concurrently, regardless
+     * of the number of workers. Return null to only serialize the activity with itself.
+     *
+     * @return key or null
+     */
+    public String getSerializationKey();
+}
@@ -17,6 +17,7 @@
 package com.netflix.exhibitor.core.activity;
 
 import java.io.IOException;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -28,6 +29,10 @@ public class RepeatingActivityImpl implements RepeatingActivity
     private final Activity      activity;
     private final AtomicLong    timePeriodMs;
     private final ActivityQueue queue;
+    private final RepeatingSchedule schedule;
+    private final Random        random = new Random();
+
+    private long                nextBaseMs = 0; // protected by sync - next run time before jitter
 
     private static final int    MIN_TIME_PERIOD_MS = 5;
 
@@ -38,12 +43,60 @@ public class RepeatingActivityImpl implements RepeatingActivity
      * @param actualActivity the repeating activity
      * @param timePeriodMs the period between executions
      */
-    public RepeatingActivityImpl(final ActivityLog log, ActivityQueue queue, QueueGroups group, final Activity actualActivity, long timePeriodMs)
+    public RepeatingActivityImpl(ActivityLog log, ActivityQueue queue, QueueGroups group, Activity actualActivity, long timePeriodMs)
+    {
+        this(log, queue, group, actualActivity, timePeriodMs, ActivityQueue.getPriority(actualActivity), ActivityQueue.getSerializationKey(actualActivity));
+    }
+
+    /**
+     * @param log the log
+     * @param queue the queue to add to
+     * @param group the queue group
+     * @param actualActivity the repeating activity
+     * @param timePeriodMs the period between executions
+     * @param priority priority relative to the group's other ready activities
+     * @param serializationKey activities of the group with the same key never overlap - null to only serialize the activity with itself
+     */
+    public RepeatingActivityImpl(ActivityLog log, ActivityQueue queue, QueueGroups group, Activity actualActivity, long timePeriodMs, ActivityPriority priority, String serializationKey)
+    {
+        this(log, queue, group, actualActivity, timePeriodMs, priority, serializationKey, RepeatingSchedule.DEFAULT);
+    }
+
+    /**
+     * @param log the log
+     * @param queue the queue to add to
+     * @param group the queue group
+     * @param actualActivity the repeating activity
+     * @param timePeriodMs the period between executions
+     * @param priority priority relative to the group's other ready activities
+     * @param serializationKey activities of the group with the same key never overlap - null to only serialize the activity with itself
+     * @param schedule fixed delay/fixed rate and jitter
+     */
+    public RepeatingActivityImpl(final ActivityLog log, ActivityQueue queue, QueueGroups group, final Activity actualActivity, long timePeriodMs, final ActivityPriority priority, final String serializationKey, RepeatingSchedule schedule)
     {
         this.queue = queue;
+        this.schedule = schedule;
         this.group = group;
-        this.activity = new Activity()
+        this.activity = new QueuedActivity()
         {
+            @Override
+            public String getName()
+            {
+                return ActivityQueue.getName(actualActivity);
+            }
+
+            @Override
+            public ActivityPriority getPriority()
+            {
+                return priority;
+            }
+
+            @Override
+            public String getSerializationKey()
+            {
+                return serializationKey;
+            }
+
             @Override
             public void completed(boolean wasSuccessful)
             {
@@ -67,7 +120,10 @@ public class RepeatingActivityImpl implements RepeatingActivity
                             log.add(ActivityLog.Type.ERROR, String.format("Unhandled exception in repeating activity (%s) - re-queueing", actualActivity.getClass().getSimpleName()), e);
                         }
                     }
-                    reQueue();
+                    if ( isStarted.get() )  // may have been closed while running
+                    {
+                        reQueue(false);
+                    }
                 }
                 return result;
             }
@@ -79,24 +135,44 @@ public class RepeatingActivityImpl implements RepeatingActivity
     public void start()
     {
         isStarted.set(true);
-        reQueue();
+        reQueue(true);
     }
 
     @Override
     public void close() throws IOException
     {
         isStarted.set(false);
+        queue.remove(group, activity);
     }
 
     @Override
     public void setTimePeriodMs(long newTimePeriodMs)
     {
         timePeriodMs.set(Math.max(MIN_TIME_PERIOD_MS, newTimePeriodMs));
-        queue.replace(group, activity, timePeriodMs.get(), TimeUnit.MILLISECONDS);
+        queue.replace(group, activity, nextDelayMs(true), TimeUnit.MILLISECONDS);
+    }
+
+    private void reQueue(boolean restart)
+    {
+        queue.add(group, activity, nextDelayMs(restart), TimeUnit.MILLISECONDS);
     }
 
-    private void reQueue()
+    private synchronized long nextDelayMs(boolean restart)
     {
-        queue.add(group, activity, timePeriodMs.get(), TimeUnit.MILLISECONDS);
+        long        now = System.currentTimeMillis();
+        long        period = timePeriodMs.get();
+        if ( restart || (schedule.getMode() == RepeatingSchedule.Mode.FIXED_DELAY) )
+        {
+            nextBaseMs = now + period;
+        }
+        else
+        {
+            // fixed rate - keep to the original timeline but don't try to make up missed runs
+            nextBaseMs = Math.max(nextBaseMs + period, now);
+        }
+
+        // jitter is applied to each run only so that it doesn't accumulate
+        long        jitterMs = (long)((random.nextDouble() * 2 - 1) * schedule.getJitter() * period);
+        return Math.max(0, (nextBaseMs + jitterMs) - now);
     }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.activity;
+
+/**
+ * How a {@link RepeatingActivityImpl} computes the time of its next run
+ */
+public class RepeatingSchedule
+{
+    private final Mode mode;
+    private final double jitter;
+
+    public enum Mode
+    {
+        /**
+         * The next run is one period after the previous run completes - slow runs push out later runs
+         */
+        FIXED_DELAY,
+
+        /**
+         * Runs are one period apart regardless of how long each takes. If a run overruns the period the
+         * next one starts immediately, but missed runs are not made up.
+         */
+        FIXED_RATE
+    }
+
+    /**
+     * Fixed delay without jitter - the historical behavior
+     */
+    public static final RepeatingSchedule DEFAULT = new RepeatingSchedule(Mode.FIXED_DELAY, 0);
+
+    /**
+     * @param jitter fraction of the period (0 to less than 1) by which each run is randomly moved earlier or later
+     * @return fixed delay schedule
+     */
+    public static RepeatingSchedule fixedDelay(double jitter)
+    {
+        return new RepeatingSchedule(Mode.FIXED_DELAY, jitter);
+    }
+
+    /**
+     * @param jitter fraction of the period (0 to less than 1) by which each run is randomly moved earlier or later
+     * @return fixed rate schedule
+     */
+    public static RepeatingSchedule fixedRate(double jitter)
+    {
+        return new RepeatingSchedule(Mode.FIXED_RATE, jitter);
+    }
+
+    /**
+     * @param mode fixed delay or fixed rate
+     * @param jitter fraction of the period (0 to less than 1) by which each run is randomly moved earlier or later
+     */
+    public RepeatingSchedule(Mode mode, double jitter)
+    {
+        if ( (jitter < 0) || (jitter >= 1) )
+        {
+            throw new IllegalArgumentException("jitter must be >= 0 and < 1: " + jitter);
+        }
+        this.mode = mode;
+        this.jitter = jitter;
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    public double getJitter()
+    {
+        return jitter;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RepeatingSchedule{" +
+            "mode=" + mode +
+            ", jitter=" + jitter +
+            '}';
+    }
+}
@@ -6,6 +6,8 @@ import com.microsoft.azure.storage.blob.CloudBlobClient;
 import com.microsoft.azure.storage.blob.ListBlobItem;
 
 import java.io.Closeable;
+import java.io.InputStream;
+import java.util.List;
 
 public interface AzureClient extends Closeable {
     public CloudBlobClient getClient() throws Exception;
@@ -20,4 +22,62 @@ public interface AzureClient extends Closeable {
 
     public void deleteBlob(String containerName, String uri) throws Exception;
 
+    /**
+     * Create the container if it doesn't already exist
+     *
+     * @param containerName container
+     * @throws Exception errors
+     */
+    public void createContainerIfNotExists(String containerName) throws Exception;
+
+    /**
+     * Stage an uncommitted block of a block blob
+     *
+     * @param containerName container
+     * @param uri blob name
+     * @param blockId base64 block id - all ids of a blob must be the same length
+     * @param bytes data
+     * @param length length of the data
+     * @throws Exception errors
+     */
+    public void putBlock(String containerName, String uri, String blockId, byte[] bytes, int length) throws Exception;
+
+    /**
+     * Commit staged blocks as the content of a block blob
+     *
+     * @param containerName container
+     * @param uri blob name
+     * @param blockIds the block ids in order
+     * @throws Exception errors
+     */
+    public void commitBlocks(String containerName, String uri, List<String> blockIds) throws Exception;
+
+    /**
+     * @param containerName container
+     * @param uri blob name
+     * @param offset first byte
+     * @param length number of bytes
+     * @return the bytes of the range
+     * @throws Exception errors
+     */
+    public InputStream getBlobRange(String containerName, String uri, long offset, long length) throws Exception;
+
+    /**
+     * @param containerName container
+     * @param uri blob name
+     * @return length of the blob or -1 if it doesn't exist
+     * @throws Exception errors
+     */
+    public long getBlobLength(String containerName, String uri) throws Exception;
+
+    /**
+     * Flat (non-hierarchical) listing of blob names
+     *
+     * @param containerName container
+     * @param prefix name prefix
+     * @return names
+     * @throws Exception errors
+     */
+    public List<String> listBlobNames(String containerName, String prefix) throws Exception;
+
 }
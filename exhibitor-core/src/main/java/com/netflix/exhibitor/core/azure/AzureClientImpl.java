@@ -1,12 +1,18 @@
 package com.netflix.exhibitor.core.azure;
 
 import com.microsoft.azure.storage.CloudStorageAccount;
+import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.blob.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
 
 public class AzureClientImpl implements AzureClient {
     private final Logger log = LoggerFactory.getLogger(getClass());
@@ -57,6 +63,60 @@ public class AzureClientImpl implements AzureClient {
         getBlob(containerName, uri).deleteIfExists();
     }
 
+    @Override
+    public void createContainerIfNotExists(String containerName) throws Exception {
+        getClient().getContainerReference(containerName).createIfNotExists();
+    }
+
+    @Override
+    public void putBlock(String containerName, String uri, String blockId, byte[] bytes, int length) throws Exception {
+        CloudBlockBlob blob = getClient().getContainerReference(containerName).getBlockBlobReference(uri);
+        blob.uploadBlock(blockId, new ByteArrayInputStream(bytes, 0, length), length);
+    }
+
+    @Override
+    public void commitBlocks(String containerName, String uri, List<String> blockIds) throws Exception {
+        List<BlockEntry> blocks = new ArrayList<BlockEntry>(blockIds.size());
+        for (String blockId : blockIds) {
+            blocks.add(new BlockEntry(blockId, BlockSearchMode.UNCOMMITTED));
+        }
+        CloudBlockBlob blob = getClient().getContainerReference(containerName).getBlockBlobReference(uri);
+        blob.commitBlockList(blocks);
+    }
+
+    @Override
+    public InputStream getBlobRange(String containerName, String uri, long offset, long length) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream((int) length);
+        getBlob(containerName, uri).downloadRange(offset, length, os);
+        return new ByteArrayInputStream(os.toByteArray());
+    }
+
+    @Override
+    public long getBlobLength(String containerName, String uri) throws Exception {
+        CloudBlob blob = getBlob(containerName, uri);
+        try {
+            blob.downloadAttributes();
+        } catch (StorageException e) {
+            if (e.getHttpStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                return -1;
+            }
+            throw e;
+        }
+        return blob.getProperties().getLength();
+    }
+
+    @Override
+    public List<String> listBlobNames(String containerName, String prefix) throws Exception {
+        CloudBlobContainer container = getClient().getContainerReference(containerName);
+        List<String> names = new ArrayList<String>();
+        for (ListBlobItem item : container.listBlobs(prefix, true)) {
+            if (item instanceof CloudBlob) {
+                names.add(((CloudBlob) item).getName());
+            }
+        }
+        return names;
+    }
+
     @Override
     public void close() throws IOException {
 
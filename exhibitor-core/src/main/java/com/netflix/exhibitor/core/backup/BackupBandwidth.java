@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.netflix.exhibitor.core.config.DefaultProperties;
+import com.netflix.servo.annotations.Monitor;
+import java.util.Map;
+
+import static com.netflix.servo.annotations.DataSourceType.*;
+
+/**
+ * Process-wide bandwidth budgets for backup data: one limiter for uploads (backups) and one
+ * for downloads (restores, index builds). The budgets come from the backup config.
+ */
+public class BackupBandwidth
+{
+    private final BandwidthLimiter uploadLimiter = new BandwidthLimiter(0);
+    private final BandwidthLimiter downloadLimiter = new BandwidthLimiter(0);
+
+    static final BackupConfigSpec CONFIG_UPLOAD_LIMIT = new BackupConfigSpec("upload-limit-kb", "Upload Limit (KB/s)", "Maximum combined rate of all backup uploads in kilobytes per second. 0 means unlimited.", "0", BackupConfigSpec.Type.INTEGER);
+    static final BackupConfigSpec CONFIG_DOWNLOAD_LIMIT = new BackupConfigSpec("download-limit-kb", "Download Limit (KB/s)", "Maximum combined rate of all backup downloads (restores and index builds) in kilobytes per second. 0 means unlimited.", "0", BackupConfigSpec.Type.INTEGER);
+
+    /**
+     * Apply the budgets from the given backup config
+     *
+     * @param config backup config
+     */
+    public void update(Map<String, String> config)
+    {
+        uploadLimiter.setRate(getBytesPerSecond(config, CONFIG_UPLOAD_LIMIT));
+        downloadLimiter.setRate(getBytesPerSecond(config, CONFIG_DOWNLOAD_LIMIT));
+    }
+
+    public BandwidthLimiter getUploadLimiter()
+    {
+        return uploadLimiter;
+    }
+
+    public BandwidthLimiter getDownloadLimiter()
+    {
+        return downloadLimiter;
+    }
+
+    @Monitor(name = "backup_upload_bytes", type = COUNTER)
+    public long getUploadBytes()
+    {
+        return uploadLimiter.getAcquiredBytes();
+    }
+
+    @Monitor(name = "backup_upload_throttled_ms", type = COUNTER)
+    public long getUploadThrottledMs()
+    {
+        return uploadLimiter.getThrottledMs();
+    }
+
+    @Monitor(name = "backup_download_bytes", type = COUNTER)
+    public long getDownloadBytes()
+    {
+        return downloadLimiter.getAcquiredBytes();
+    }
+
+    @Monitor(name = "backup_download_throttled_ms", type = COUNTER)
+    public long getDownloadThrottledMs()
+    {
+        return downloadLimiter.getThrottledMs();
+    }
+
+    private static long getBytesPerSecond(Map<String, String> config, BackupConfigSpec spec)
+    {
+        String      value = config.get(spec.getKey());
+        return 1024L * DefaultProperties.asInt(((value != null) && (value.trim().length() > 0)) ? value.trim() : spec.getDefaultValue());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.exhibitor.core.Exhibitor;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cached listing of the backups in the store. Listing a store (e.g. a paginated S3 LIST) is expensive
+ * so the listing is shared by all callers, refreshed when older than a TTL (or when the backup config
+ * changes) and kept up to date locally as backups are uploaded and deleted.
+ */
+class BackupCatalog
+{
+    private final Exhibitor exhibitor;
+    private final BackupProvider provider;
+
+    private List<BackupMetaData> backups = null;        // protected by sync
+    private Map<String, String> loadedConfig = null;    // protected by sync
+    private long loadedMs = 0;                          // protected by sync
+
+    BackupCatalog(Exhibitor exhibitor, BackupProvider provider)
+    {
+        this.exhibitor = exhibitor;
+        this.provider = provider;
+    }
+
+    /**
+     * Return the current backups, listing the store if the cached listing is stale
+     *
+     * @param config backup config
+     * @param ttlMs max age of the cached listing
+     * @return backups
+     * @throws Exception errors listing the store
+     */
+    synchronized List<BackupMetaData> getBackups(Map<String, String> config, long ttlMs) throws Exception
+    {
+        long    now = System.currentTimeMillis();
+        if ( (backups == null) || !config.equals(loadedConfig) || ((now - loadedMs) >= ttlMs) )
+        {
+            backups = Lists.newArrayList(provider.getAvailableBackups(exhibitor, config));
+            loadedConfig = Maps.newHashMap(config);
+            loadedMs = now;
+        }
+        return ImmutableList.copyOf(backups);
+    }
+
+    /**
+     * Record a new backup (if it replaced older versions with the same name, they are removed)
+     *
+     * @param backup the new backup
+     */
+    synchronized void added(BackupMetaData backup)
+    {
+        if ( backups != null )
+        {
+            removeVersions(backup.getName());
+            backups.add(backup);
+        }
+    }
+
+    /**
+     * Record a deleted backup
+     *
+     * @param backup the deleted backup
+     */
+    synchronized void removed(BackupMetaData backup)
+    {
+        if ( backups != null )
+        {
+            backups.remove(backup);
+        }
+    }
+
+    /**
+     * Force the next call to {@link #getBackups(Map, long)} to list the store
+     */
+    synchronized void invalidate()
+    {
+        backups = null;
+    }
+
+    private void removeVersions(String name)
+    {
+        List<BackupMetaData>    versions = Lists.newArrayList();
+        for ( BackupMetaData backup : backups )
+        {
+            if ( backup.getName().equals(name) )
+            {
+                versions.add(backup);
+            }
+        }
+        backups.removeAll(versions);
+    }
+}
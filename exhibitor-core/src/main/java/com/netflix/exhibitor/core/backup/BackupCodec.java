@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression used for backups. Compressed data is self describing (each codec's stream starts with
+ * its own magic bytes) so that restores and indexing can use {@link #decompress(InputStream)} without
+ * knowing which codec was configured when the backup was written.
+ */
+public enum BackupCodec
+{
+    NONE("none")
+    {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException
+        {
+            return out;
+        }
+
+        @Override
+        InputStream internalDecompress(InputStream in) throws IOException
+        {
+            return in;
+        }
+
+        @Override
+        boolean matches(byte[] header, int length)
+        {
+            return false;
+        }
+    },
+
+    GZIP_FAST("gzip-fast")
+    {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException
+        {
+            return new LeveledGZIPOutputStream(out, Deflater.BEST_SPEED);
+        }
+    },
+
+    GZIP("gzip")
+    {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException
+        {
+            return new LeveledGZIPOutputStream(out, Deflater.DEFAULT_COMPRESSION);
+        }
+    },
+
+    GZIP_BEST("gzip-best")
+    {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException
+        {
+            return new LeveledGZIPOutputStream(out, Deflater.BEST_COMPRESSION);
+        }
+    },
+
+    LZ4("lz4")
+    {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException
+        {
+            return new LZ4BlockOutputStream(out, LZ4_BLOCK_SIZE, LZ4Factory.fastestJavaInstance().fastCompressor());
+        }
+
+        @Override
+        InputStream internalDecompress(InputStream in) throws IOException
+        {
+            return new LZ4BlockInputStream(in, LZ4Factory.fastestJavaInstance().fastDecompressor());
+        }
+
+        @Override
+        boolean matches(byte[] header, int length)
+        {
+            return (length >= LZ4_MAGIC.length) && Arrays.equals(Arrays.copyOf(header, LZ4_MAGIC.length), LZ4_MAGIC);
+        }
+    };
+
+    private final String name;
+
+    /**
+     * The codec used when none has been configured - matches what older versions wrote
+     */
+    public static final BackupCodec DEFAULT = GZIP;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LZ4_BLOCK_SIZE = 64 * 1024;
+    private static final byte[] LZ4_MAGIC = "LZ4Block".getBytes(Charset.forName("US-ASCII"));
+    private static final int MAX_MAGIC_LENGTH = 8;
+
+    BackupCodec(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * @return the name used in config
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Return a stream that compresses into the given stream. Closing the returned stream closes <code>out</code>.
+     *
+     * @param out destination
+     * @return compressing stream
+     * @throws IOException errors
+     */
+    public abstract OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * Same as {@link #compress(OutputStream)} except that {@link #NONE} writes gzip framing with no compression.
+     * Use this for data that doesn't start with its own magic bytes (e.g. chunks cut at arbitrary points of a
+     * file) - otherwise uncompressed data that happens to start like a compressed stream is misdetected by
+     * {@link #decompress(InputStream)}.
+     *
+     * @param out destination
+     * @return compressing stream
+     * @throws IOException errors
+     */
+    public OutputStream compressDetectable(OutputStream out) throws IOException
+    {
+        return (this == NONE) ? new LeveledGZIPOutputStream(out, Deflater.NO_COMPRESSION) : compress(out);
+    }
+
+    /**
+     * Return the codec with the given config name
+     *
+     * @param name config name
+     * @param defaultCodec codec to return if the name is empty or unknown
+     * @return codec
+     */
+    public static BackupCodec fromName(String name, BackupCodec defaultCodec)
+    {
+        if ( name != null )
+        {
+            for ( BackupCodec codec : values() )
+            {
+                if ( codec.name.equalsIgnoreCase(name.trim()) )
+                {
+                    return codec;
+                }
+            }
+        }
+        return defaultCodec;
+    }
+
+    /**
+     * Return a stream that decompresses the given backup data, detecting the codec that was used to write it.
+     * Data that wasn't compressed by a known codec is returned as is.
+     *
+     * @param in backup data
+     * @return decompressed stream
+     * @throws IOException errors
+     */
+    public static InputStream decompress(InputStream in) throws IOException
+    {
+        BufferedInputStream     bufferedIn = new BufferedInputStream(in, BUFFER_SIZE);
+        byte[]                  header = new byte[MAX_MAGIC_LENGTH];
+        bufferedIn.mark(header.length);
+        int                     length = 0;
+        while ( length < header.length )
+        {
+            int     bytesRead = bufferedIn.read(header, length, header.length - length);
+            if ( bytesRead < 0 )
+            {
+                break;
+            }
+            length += bytesRead;
+        }
+        bufferedIn.reset();
+
+        for ( BackupCodec codec : values() )
+        {
+            if ( codec.matches(header, length) )
+            {
+                return codec.internalDecompress(bufferedIn);
+            }
+        }
+        return bufferedIn;
+    }
+
+    // all gzip levels share the same stream format
+    InputStream internalDecompress(InputStream in) throws IOException
+    {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+
+    boolean matches(byte[] header, int length)
+    {
+        return (this == GZIP) && (length >= 2) && ((header[0] & 0xff) == 0x1f) && ((header[1] & 0xff) == 0x8b);
+    }
+
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream
+    {
+        LeveledGZIPOutputStream(OutputStream out, int level) throws IOException
+        {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+}
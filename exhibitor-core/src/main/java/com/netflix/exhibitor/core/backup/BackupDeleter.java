@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.exhibitor.core.Exhibitor;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Deletes a set of backups using the provider's bulk delete if it has one, otherwise by issuing
+ * single deletes in parallel
+ */
+class BackupDeleter
+{
+    private final Exhibitor exhibitor;
+    private final BackupProvider provider;
+    private final BackupCatalog catalog;
+
+    private static final int DELETE_CONCURRENCY = 8;
+
+    BackupDeleter(Exhibitor exhibitor, BackupProvider provider, BackupCatalog catalog)
+    {
+        this.exhibitor = exhibitor;
+        this.provider = provider;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Delete the given backups. If there's an error, the catalog is invalidated as some of the backups may
+     * have been deleted.
+     *
+     * @param backups backups to delete
+     * @param config backup config
+     * @throws Exception errors
+     */
+    void delete(List<BackupMetaData> backups, Map<String, String> config) throws Exception
+    {
+        if ( backups.isEmpty() )
+        {
+            return;
+        }
+
+        try
+        {
+            if ( provider instanceof BulkDeleteBackupProvider )
+            {
+                ((BulkDeleteBackupProvider)provider).deleteBackups(exhibitor, backups, config);
+            }
+            else
+            {
+                deleteInParallel(backups, config);
+            }
+        }
+        catch ( Exception e )
+        {
+            catalog.invalidate();
+            throw e;
+        }
+
+        for ( BackupMetaData backup : backups )
+        {
+            catalog.removed(backup);
+        }
+    }
+
+    private void deleteInParallel(List<BackupMetaData> backups, final Map<String, String> config) throws Exception
+    {
+        if ( backups.size() == 1 )
+        {
+            provider.deleteBackup(exhibitor, backups.get(0), config);
+            return;
+        }
+
+        ExecutorService     executorService = Executors.newFixedThreadPool(Math.min(DELETE_CONCURRENCY, backups.size()), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("BackupDeleter-%d").build());
+        try
+        {
+            List<Future<Void>>  futures = Lists.newArrayList();
+            for ( final BackupMetaData backup : backups )
+            {
+                futures.add
+                (
+                    executorService.submit
+                    (
+                        new Callable<Void>()
+                        {
+                            @Override
+                            public Void call() throws Exception
+                            {
+                                provider.deleteBackup(exhibitor, backup, config);
+                                return null;
+                            }
+                        }
+                    )
+                );
+            }
+
+            Exception   exception = null;
+            for ( Future<Void> future : futures )
+            {
+                try
+                {
+                    future.get();
+                }
+                catch ( ExecutionException e )
+                {
+                    if ( exception == null )
+                    {
+                        exception = (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+                    }
+                }
+            }
+            if ( exception != null )
+            {
+                throw exception;
+            }
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+    }
+}
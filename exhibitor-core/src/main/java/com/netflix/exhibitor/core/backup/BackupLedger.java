@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Local record of the log files that have already been uploaded (name, modified date and size) so that
+ * unchanged files can be skipped without compressing them or querying the backup provider. The ledger is
+ * only a hint - it is periodically reconciled against the provider's listing via {@link #reconcile(Collection)}
+ */
+public class BackupLedger
+{
+    private final Preferences preferences;
+    private final Map<String, Entry> entries = Maps.newHashMap();  // protected by sync
+
+    private static final String BASE_KEY = "com.netflix.exhibitor.backup-ledger.";
+    private static final String CONFIG_KEY = "com.netflix.exhibitor.backup-ledger-config";
+
+    private static class Entry
+    {
+        final long modifiedDate;
+        final long length;
+
+        Entry(long modifiedDate, long length)
+        {
+            this.modifiedDate = modifiedDate;
+            this.length = length;
+        }
+
+        static Entry parse(String value)
+        {
+            String[] parts = (value != null) ? value.split(":") : new String[0];
+            if ( parts.length != 2 )
+            {
+                return null;
+            }
+            try
+            {
+                return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            }
+            catch ( NumberFormatException e )
+            {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return modifiedDate + ":" + length;
+        }
+    }
+
+    /**
+     * @param preferences store for the ledger
+     * @throws BackingStoreException errors reading the store
+     */
+    public BackupLedger(Preferences preferences) throws BackingStoreException
+    {
+        this.preferences = preferences;
+
+        for ( String key : preferences.keys() )
+        {
+            if ( key.startsWith(BASE_KEY) )
+            {
+                Entry entry = Entry.parse(preferences.get(key, null));
+                if ( entry != null )
+                {
+                    entries.put(key.substring(BASE_KEY.length()), entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * The ledger is only valid for the backup config it was built with (e.g. the bucket). If the config
+     * has changed, the ledger is cleared.
+     *
+     * @param backupConfig current backup config
+     * @throws BackingStoreException errors writing the store
+     */
+    public synchronized void checkConfig(Map<String, String> backupConfig) throws BackingStoreException
+    {
+        String configValue = Hashing.sha1().hashString(String.valueOf(backupConfig), Charsets.UTF_8).toString();
+        if ( !configValue.equals(preferences.get(CONFIG_KEY, null)) )
+        {
+            clear();
+            preferences.put(CONFIG_KEY, configValue);
+            preferences.flush();
+        }
+    }
+
+    /**
+     * @param file log file
+     * @return true if the file, in its current state, has already been backed up
+     */
+    public synchronized boolean isBackedUp(File file)
+    {
+        Entry entry = entries.get(file.getName());
+        return (entry != null) && (entry.modifiedDate == file.lastModified()) && (entry.length == file.length());
+    }
+
+    /**
+     * Record that the file was backed up
+     *
+     * @param file log file
+     * @param modifiedDate the modified date that was used for the backup
+     * @param length the length of the file that was backed up
+     * @throws BackingStoreException errors writing the store
+     */
+    public synchronized void markBackedUp(File file, long modifiedDate, long length) throws BackingStoreException
+    {
+        Entry entry = new Entry(modifiedDate, length);
+        entries.put(file.getName(), entry);
+        preferences.put(BASE_KEY + file.getName(), entry.toString());
+        preferences.flush();
+    }
+
+    /**
+     * Remove any entries that are no longer present in the backup store (expired, deleted externally, etc.)
+     *
+     * @param availableBackups the provider's current listing
+     * @return number of entries removed
+     * @throws BackingStoreException errors writing the store
+     */
+    public synchronized int reconcile(Collection<BackupMetaData> availableBackups) throws BackingStoreException
+    {
+        Set<BackupMetaData> available = Sets.newHashSet(availableBackups);
+
+        int removed = 0;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ( iterator.hasNext() )
+        {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if ( !available.contains(new BackupMetaData(entry.getKey(), entry.getValue().modifiedDate)) )
+            {
+                iterator.remove();
+                preferences.remove(BASE_KEY + entry.getKey());
+                ++removed;
+            }
+        }
+
+        if ( removed > 0 )
+        {
+            preferences.flush();
+        }
+        return removed;
+    }
+
+    /**
+     * @return number of entries in the ledger
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    private void clear()
+    {
+        for ( String name : entries.keySet() )
+        {
+            preferences.remove(BASE_KEY + name);
+        }
+        entries.clear();
+    }
+}
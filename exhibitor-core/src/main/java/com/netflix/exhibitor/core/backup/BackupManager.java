@@ -17,15 +17,20 @@
 package com.netflix.exhibitor.core.backup;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.Activity;
 import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.activity.ActivityPriority;
 import com.netflix.exhibitor.core.activity.OnOffRepeatingActivity;
 import com.netflix.exhibitor.core.activity.QueueGroups;
+import com.netflix.exhibitor.core.activity.QueuedActivity;
 import com.netflix.exhibitor.core.activity.RepeatingActivity;
 import com.netflix.exhibitor.core.activity.RepeatingActivityImpl;
+import com.netflix.exhibitor.core.activity.RepeatingSchedule;
 import com.netflix.exhibitor.core.config.ConfigListener;
+import com.netflix.exhibitor.core.config.DefaultProperties;
 import com.netflix.exhibitor.core.config.EncodedConfigParser;
 import com.netflix.exhibitor.core.config.InstanceConfig;
 import com.netflix.exhibitor.core.config.IntConfigs;
@@ -33,17 +38,18 @@ import com.netflix.exhibitor.core.config.StringConfigs;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelTypes;
 import com.netflix.exhibitor.core.index.ZooKeeperLogFiles;
 import org.apache.curator.utils.CloseableUtils;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.zip.GZIPInputStream;
 
 public class BackupManager implements Closeable
 {
@@ -52,6 +58,16 @@ public class BackupManager implements Closeable
     private final RepeatingActivity repeatingActivity;
     private final AtomicLong lastRollCheck = new AtomicLong(0);
 
+    private final BackupCatalog catalog;
+    private final BackupBandwidth bandwidth = new BackupBandwidth();
+    private BackupLedger ledger;    // protected by sync
+
+    private static final int RESTORE_BUFFER_SIZE = 64 * 1024;
+
+    private static final BackupConfigSpec CONFIG_CODEC = new BackupConfigSpec("compression-codec", "Compression", "Compression used for new backups: none, gzip-fast, gzip, gzip-best or lz4. Existing backups are restored regardless of this setting.", BackupCodec.DEFAULT.getName(), BackupConfigSpec.Type.STRING);
+    private static final BackupConfigSpec CONFIG_CHUNKED = new BackupConfigSpec("chunked-backups", "Chunked Backups", "If non-zero, logs and snapshots are backed up as deduplicated chunks plus a small manifest per file so that only changed data is uploaded (requires a streaming backup provider)", "0", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_LISTING_CACHE_MS = new BackupConfigSpec("listing-cache-ms", "Listing Cache (ms)", "How long the listing of available backups is cached before the backup store is listed again", Integer.toString(5 * 60 * 1000), BackupConfigSpec.Type.INTEGER);
+
     /**
      * @param exhibitor main instance
      * @param backupProvider provider
@@ -60,6 +76,7 @@ public class BackupManager implements Closeable
     {
         this.exhibitor = exhibitor;
         this.backupProvider = Optional.fromNullable(backupProvider);
+        catalog = new BackupCatalog(exhibitor, backupProvider);
 
         final Activity activity = new Activity()
         {
@@ -83,7 +100,7 @@ public class BackupManager implements Closeable
                 @Override
                 public RepeatingActivity newRepeatingActivity(long timePeriodMs)
                 {
-                    return new RepeatingActivityImpl(exhibitor.getLog(), exhibitor.getActivityQueue(), QueueGroups.IO, activity, getBackupPeriodMs());
+                    return new RepeatingActivityImpl(exhibitor.getLog(), exhibitor.getActivityQueue(), QueueGroups.IO, activity, getBackupPeriodMs(), ActivityPriority.LOW, QueuedActivity.DATA_DIRECTORY_KEY, RepeatingSchedule.fixedRate(0.1));
                 }
             },
             getBackupPeriodMs()
@@ -146,11 +163,28 @@ public class BackupManager implements Closeable
     public List<BackupMetaData> getAvailableBackups() throws Exception
     {
         Map<String, String>       config = getBackupConfig();
-        return backupProvider.get().getAvailableBackups(exhibitor, config);
+        List<BackupMetaData>      backups = Lists.newArrayList();
+        for ( BackupMetaData backup : catalog.getBackups(config, getListingCacheMs(config)) )
+        {
+            if ( !ChunkedBackup.isChunk(backup) )
+            {
+                backups.add(backup);
+            }
+        }
+        return backups;
     }
 
     /**
-     * Return a stream for the specified backup
+     * @return the shared upload/download bandwidth budgets
+     */
+    public BackupBandwidth getBandwidth()
+    {
+        return bandwidth;
+    }
+
+    /**
+     * Return a stream for the specified backup. The stream returns the original (decompressed) file
+     * contents - for chunked backups the manifest's chunks are read in order.
      *
      * @param metaData the backup to get
      * @return the stream or null if the stream doesn't exist
@@ -158,7 +192,49 @@ public class BackupManager implements Closeable
      */
     public BackupStream getBackupStream(BackupMetaData metaData) throws Exception
     {
-        return backupProvider.get().getBackupStream(exhibitor, metaData, getBackupConfig());
+        Map<String, String>     config = getBackupConfig();
+        bandwidth.update(config);
+        final BackupStream      backupStream = backupProvider.get().getBackupStream(exhibitor, metaData, config);
+        if ( backupStream == null )
+        {
+            return null;
+        }
+
+        final InputStream       in;
+        try
+        {
+            InputStream         decompressed = BackupCodec.decompress(bandwidth.getDownloadLimiter().limit(backupStream.getStream()));
+            if ( ChunkedBackup.isManifest(metaData) )
+            {
+                in = new ChunkedBackup(exhibitor, backupProvider.get(), catalog, bandwidth, config, Collections.<BackupMetaData>emptyList()).open(decompressed);
+                backupStream.close();   // the manifest has been read
+            }
+            else
+            {
+                in = decompressed;
+            }
+        }
+        catch ( Exception e )
+        {
+            CloseableUtils.closeQuietly(backupStream);
+            throw e;
+        }
+
+        return new BackupStream()
+        {
+            @Override
+            public InputStream getStream()
+            {
+                return in;
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                CloseableUtils.closeQuietly(in);
+                backupStream.close();
+            }
+        };
     }
 
     /**
@@ -178,11 +254,18 @@ public class BackupManager implements Closeable
      */
     public List<BackupConfigSpec> getConfigSpecs()
     {
-        return backupProvider.get().getConfigs();
+        List<BackupConfigSpec>  specs = Lists.newArrayList(backupProvider.get().getConfigs());
+        specs.add(CONFIG_CODEC);
+        specs.add(CONFIG_CHUNKED);
+        specs.add(BackupBandwidth.CONFIG_UPLOAD_LIMIT);
+        specs.add(BackupBandwidth.CONFIG_DOWNLOAD_LIMIT);
+        specs.add(CONFIG_LISTING_CACHE_MS);
+        return specs;
     }
 
     /**
-     * Restore the given key to the given file
+     * Restore the given key to the given file. The backup is decompressed as it is downloaded - no
+     * temp file is used.
      *
      * @param backup the backup to pull down
      * @param destinationFile the file
@@ -190,28 +273,22 @@ public class BackupManager implements Closeable
      */
     public void restore(BackupMetaData backup, File destinationFile) throws Exception
     {
-        File                    tempFile = File.createTempFile("exhibitor-backup", ".tmp");
-        OutputStream            out = new FileOutputStream(tempFile);
-        InputStream in = null;
-        try
+        BackupStream            backupStream = getBackupStream(backup);
+        if ( backupStream == null )
         {
-            backupProvider.get().downloadBackup(exhibitor, backup, out, getBackupConfig());
-            CloseableUtils.closeQuietly(out);
-            out = null;
-
-            out = new FileOutputStream(destinationFile);
-            in = new GZIPInputStream(new FileInputStream(tempFile));
+            throw new IOException("Backup not found: " + backup);
+        }
 
-            ByteStreams.copy(in, out);
+        OutputStream            out = null;
+        try
+        {
+            out = new BufferedOutputStream(new FileOutputStream(destinationFile), RESTORE_BUFFER_SIZE);
+            ByteStreams.copy(backupStream.getStream(), out);
         }
         finally
         {
-            CloseableUtils.closeQuietly(in);
             CloseableUtils.closeQuietly(out);
-            if ( !tempFile.delete() )
-            {
-                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete temp file (for restore): " + tempFile);
-            }
+            CloseableUtils.closeQuietly(backupStream);
         }
     }
 
@@ -236,46 +313,142 @@ public class BackupManager implements Closeable
             return;
         }
 
-        for ( File f : zooKeeperLogFiles.getPaths() )
+        bandwidth.update(config);
+
+        BackupLedger        ledger = getLedger();
+        ledger.checkConfig(config);
+        doRoll(config, ledger);
+
+        // one listing (at most) per cycle - shared by all the uploads
+        List<BackupMetaData>    availableBackups = catalog.getBackups(config, getListingCacheMs(config));
+        ChunkedBackup           chunkedBackup = isChunked(provider, config) ? new ChunkedBackup(exhibitor, provider, catalog, bandwidth, config, availableBackups) : null;
+
+        List<File>              files = zooKeeperLogFiles.getPaths();
+        if ( chunkedBackup != null )
         {
-            TempCompressedFile      tempCompressedFile = new TempCompressedFile(f);
-            try
+            files.addAll(ZooKeeperLogFiles.getSnapshotFiles(exhibitor));
+        }
+        for ( File f : files )
+        {
+            if ( ledger.isBackedUp(f) )
             {
-                tempCompressedFile.compress();
+                continue;
+            }
 
-                BackupMetaData          metaData = new BackupMetaData(f.getName(), f.lastModified());
-                BackupProvider.UploadResult result = provider.uploadBackup(exhibitor, metaData, tempCompressedFile.getTempFile(), config);
-                switch ( result )
+            long                        modifiedDate = f.lastModified();
+            long                        length = f.length();
+            BackupMetaData              metaData = new BackupMetaData((chunkedBackup != null) ? (f.getName() + ChunkedBackup.MANIFEST_SUFFIX) : f.getName(), modifiedDate);
+            BackupProvider.UploadResult result;
+            try
+            {
+                if ( availableBackups.contains(metaData) )
                 {
-                    case SUCCEEDED:
-                    {
-                        exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Backing up: " + f);
-                        break;
-                    }
+                    result = BackupProvider.UploadResult.DUPLICATE;
+                }
+                else if ( chunkedBackup != null )
+                {
+                    result = chunkedBackup.upload(f, metaData, getCodec(config), availableBackups);
+                }
+                else
+                {
+                    result = upload(provider, f, metaData, availableBackups, config);
+                }
+            }
+            catch ( Exception e )
+            {
+                catalog.invalidate();   // the store may have been partially updated
+                throw e;
+            }
+            switch ( result )
+            {
+                case SUCCEEDED:
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Backing up: " + f);
+                    break;
+                }
 
-                    case DUPLICATE:
-                    {
-                        // ignore
-                        break;
-                    }
+                case DUPLICATE:
+                {
+                    // ignore
+                    break;
+                }
 
-                    case REPLACED_OLD_VERSION:
-                    {
-                        exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Updated back up for: " + f);
-                        break;
-                    }
+                case REPLACED_OLD_VERSION:
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Updated back up for: " + f);
+                    break;
                 }
             }
-            finally
+
+            if ( (result == BackupProvider.UploadResult.SUCCEEDED) || (result == BackupProvider.UploadResult.REPLACED_OLD_VERSION) )
+            {
+                catalog.added(metaData);
+            }
+            if ( result != BackupProvider.UploadResult.FAILED )
+            {
+                ledger.markBackedUp(f, modifiedDate, length);
+            }
+        }
+    }
+
+    private BackupProvider.UploadResult upload(BackupProvider provider, File f, BackupMetaData metaData, List<BackupMetaData> availableBackups, Map<String, String> config) throws Exception
+    {
+        BackupCodec     codec = getCodec(config);
+        if ( provider instanceof StreamingBackupProvider )
+        {
+            // compress directly into the provider - no temp file
+            final BackupWriter  writer = new FileBackupWriter(f, codec);
+            BackupWriter        limitedWriter = new BackupWriter()
             {
-                if ( !tempCompressedFile.getTempFile().delete() )
+                @Override
+                public void write(OutputStream out) throws Exception
                 {
-                    exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete temp file: " + tempCompressedFile.getTempFile());
+                    writer.write(bandwidth.getUploadLimiter().limit(out));
                 }
+            };
+            return ((StreamingBackupProvider)provider).uploadBackup(exhibitor, metaData, limitedWriter, availableBackups, config);
+        }
+
+        TempCompressedFile      tempCompressedFile = new TempCompressedFile(f, codec);
+        try
+        {
+            tempCompressedFile.compress();
+            bandwidth.getUploadLimiter().acquire(tempCompressedFile.getTempFile().length());
+            return provider.uploadBackup(exhibitor, metaData, tempCompressedFile.getTempFile(), config);
+        }
+        finally
+        {
+            if ( !tempCompressedFile.getTempFile().delete() )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete temp file: " + tempCompressedFile.getTempFile());
             }
         }
+    }
+
+    private synchronized BackupLedger getLedger() throws Exception
+    {
+        if ( ledger == null )
+        {
+            ledger = new BackupLedger(exhibitor.getPreferences());
+        }
+        return ledger;
+    }
 
-        doRoll(config);
+    private static BackupCodec getCodec(Map<String, String> config)
+    {
+        return BackupCodec.fromName(config.get(CONFIG_CODEC.getKey()), BackupCodec.DEFAULT);
+    }
+
+    private static boolean isChunked(BackupProvider provider, Map<String, String> config)
+    {
+        String      value = config.get(CONFIG_CHUNKED.getKey());
+        return (provider instanceof StreamingBackupProvider) && (value != null) && (DefaultProperties.asInt(value.trim()) != 0);
+    }
+
+    private static long getListingCacheMs(Map<String, String> config)
+    {
+        String      value = config.get(CONFIG_LISTING_CACHE_MS.getKey());
+        return DefaultProperties.asInt(((value != null) && (value.trim().length() > 0)) ? value.trim() : CONFIG_LISTING_CACHE_MS.getDefaultValue());
     }
 
     private Map<String, String> getBackupConfig()
@@ -285,7 +458,7 @@ public class BackupManager implements Closeable
         return encodedConfigParser.getSortedMap();
     }
 
-    private void doRoll(Map<String, String> config) throws Exception
+    private void doRoll(Map<String, String> config, BackupLedger ledger) throws Exception
     {
         long        elapsed = System.currentTimeMillis() - lastRollCheck.get();
         if ( elapsed < (exhibitor.getConfigManager().getConfig().getInt(IntConfigs.BACKUP_MAX_STORE_MS) / 3) )
@@ -295,17 +468,56 @@ public class BackupManager implements Closeable
 
         exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Checking for elapsed backups");
 
-        List<BackupMetaData>        availableBackups = backupProvider.get().getAvailableBackups(exhibitor, config);
-        for ( BackupMetaData backup : availableBackups )
+        // use a fresh listing - this is also where the ledger is reconciled
+        catalog.invalidate();
+        List<BackupMetaData>        availableBackups = Lists.newArrayList(catalog.getBackups(config, getListingCacheMs(config)));
+        List<BackupMetaData>        expired = Lists.newArrayList();
+        boolean                     hasChunks = false;
+        Iterator<BackupMetaData>    iterator = availableBackups.iterator();
+        while ( iterator.hasNext() )
         {
-            long        age = System.currentTimeMillis() - backup.getModifiedDate();
+            BackupMetaData  backup = iterator.next();
+            if ( ChunkedBackup.isChunk(backup) )
+            {
+                hasChunks = true;   // chunks are shared between backups - they're removed by the garbage collection below
+                continue;
+            }
+
+            long            age = System.currentTimeMillis() - backup.getModifiedDate();
             if ( age > exhibitor.getConfigManager().getConfig().getInt(IntConfigs.BACKUP_MAX_STORE_MS) )
             {
                 exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Cleaning backup: " + backup);
-                backupProvider.get().deleteBackup(exhibitor, backup, config);
+                expired.add(backup);
+                iterator.remove();
+            }
+        }
+        new BackupDeleter(exhibitor, backupProvider.get(), catalog).delete(expired, config);
+
+        if ( hasChunks )
+        {
+            int     deletedQty = new ChunkedBackup(exhibitor, backupProvider.get(), catalog, bandwidth, config, availableBackups).collectGarbage(availableBackups);
+            if ( deletedQty > 0 )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Cleaned unreferenced backup chunks: " + deletedQty);
             }
         }
 
+        // the ledger is only a hint - make sure it doesn't reference backups that are no longer in the store.
+        // The ledger is keyed by file name so manifests are mapped back to the file they describe.
+        List<BackupMetaData>        ledgerView = Lists.newArrayList();
+        for ( BackupMetaData backup : availableBackups )
+        {
+            if ( !ChunkedBackup.isChunk(backup) )
+            {
+                ledgerView.add(new BackupMetaData(ChunkedBackup.getSourceName(backup), backup.getModifiedDate()));
+            }
+        }
+        int         staleQty = ledger.reconcile(ledgerView);
+        if ( staleQty > 0 )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Removed stale backup ledger entries: " + staleQty);
+        }
+
         lastRollCheck.set(System.currentTimeMillis());
     }
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import java.io.OutputStream;
+
+/**
+ * Produces the content of a backup. Used by {@link StreamingBackupProvider} so that data can be
+ * written directly to the backup destination without an intermediate file.
+ */
+public interface BackupWriter
+{
+    /**
+     * Write the backup content to the given stream. The stream must NOT be closed by the writer -
+     * the provider completes (or abandons) the upload once this method returns (or throws).
+     *
+     * @param out destination stream
+     * @throws Exception any errors
+     */
+    public void     write(OutputStream out) throws Exception;
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ *     Token bucket bandwidth limiter. A single instance is meant to be shared by every stream that
+ *     should count against the same budget - callers {@link #acquire(long)} bytes before (or as) they
+ *     transfer them and are delayed while the bucket is in deficit. The bucket holds at most one
+ *     second of tokens so an idle limiter allows a short burst.
+ * </p>
+ *
+ * <p>
+ *     Waits are reserved under the lock and slept outside of it, so concurrent callers queue up
+ *     behind each other rather than all waking at once. The rate can be changed at any time;
+ *     a rate of 0 (or less) disables limiting.
+ * </p>
+ */
+public class BandwidthLimiter
+{
+    private final AtomicLong acquiredBytes = new AtomicLong(0);
+    private final AtomicLong throttledNanos = new AtomicLong(0);
+    private final AtomicLong throttledCount = new AtomicLong(0);
+
+    private long bytesPerSecond;    // protected by sync
+    private double tokens = 0;      // protected by sync
+    private long lastRefillNanos = System.nanoTime();   // protected by sync
+
+    /**
+     * @param bytesPerSecond initial rate - 0 or less means unlimited
+     */
+    public BandwidthLimiter(long bytesPerSecond)
+    {
+        setRate(bytesPerSecond);
+    }
+
+    /**
+     * Change the rate
+     *
+     * @param bytesPerSecond new rate - 0 or less means unlimited
+     */
+    public synchronized void setRate(long bytesPerSecond)
+    {
+        bytesPerSecond = Math.max(0, bytesPerSecond);
+        if ( bytesPerSecond != this.bytesPerSecond )
+        {
+            this.bytesPerSecond = bytesPerSecond;
+            tokens = Math.min(tokens, bytesPerSecond);
+            lastRefillNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return the current rate or 0 if unlimited
+     */
+    public synchronized long getRate()
+    {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Take the given number of bytes from the bucket, waiting if the bucket is in deficit
+     *
+     * @param bytes number of bytes about to be (or just) transferred
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedIOException
+    {
+        if ( bytes <= 0 )
+        {
+            return;
+        }
+
+        acquiredBytes.addAndGet(bytes);
+        long        waitNanos = reserve(bytes, System.nanoTime());
+        if ( waitNanos > 0 )
+        {
+            throttledCount.incrementAndGet();
+            throttledNanos.addAndGet(waitNanos);
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+
+    /**
+     * @param out stream to limit
+     * @return a stream that acquires bytes from this limiter as they are written
+     */
+    public OutputStream limit(OutputStream out)
+    {
+        return new FilterOutputStream(out)
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                acquire(1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                acquire(len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * @param in stream to limit
+     * @return a stream that acquires bytes from this limiter as they are read
+     */
+    public InputStream limit(InputStream in)
+    {
+        return new FilterInputStream(in)
+        {
+            @Override
+            public int read() throws IOException
+            {
+                int     b = in.read();
+                if ( b >= 0 )
+                {
+                    acquire(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                int     bytesRead = in.read(b, off, len);
+                acquire(bytesRead);
+                return bytesRead;
+            }
+        };
+    }
+
+    /**
+     * @return total bytes that have passed through the limiter
+     */
+    public long getAcquiredBytes()
+    {
+        return acquiredBytes.get();
+    }
+
+    /**
+     * @return total time callers have been delayed, in milliseconds
+     */
+    public long getThrottledMs()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get());
+    }
+
+    /**
+     * @return number of times a caller was delayed
+     */
+    public long getThrottledCount()
+    {
+        return throttledCount.get();
+    }
+
+    /**
+     * Take bytes from the bucket
+     *
+     * @param bytes number of bytes
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return how long the caller must wait (in nanoseconds) before transferring the bytes
+     */
+    @VisibleForTesting
+    synchronized long reserve(long bytes, long nowNanos)
+    {
+        if ( bytesPerSecond <= 0 )
+        {
+            return 0;
+        }
+
+        double      elapsedSeconds = Math.max(0, nowNanos - lastRefillNanos) / 1e9;
+        tokens = Math.min(bytesPerSecond, tokens + (elapsedSeconds * bytesPerSecond));
+        lastRefillNanos = nowNanos;
+
+        tokens -= bytes;
+        return (tokens >= 0) ? 0 : (long)((-tokens / bytesPerSecond) * 1e9);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.netflix.exhibitor.core.Exhibitor;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional capability for backup providers that can delete many backups in a single request (e.g. S3's
+ * multi-object delete). When the configured provider implements this interface, {@link BackupManager}
+ * uses it for retention and chunk cleanup instead of deleting one backup at a time.
+ */
+public interface BulkDeleteBackupProvider extends BackupProvider
+{
+    /**
+     * Delete the given backups
+     *
+     * @param exhibitor instance
+     * @param backups backups to delete
+     * @param configValues values for provider-specific config
+     * @throws Exception any errors - some of the backups may have been deleted
+     */
+    public void     deleteBackups(Exhibitor exhibitor, List<BackupMetaData> backups, Map<String, String> configValues) throws Exception;
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ *     Chunked, content-addressed backup format. Each file is split into content-defined chunks
+ *     (see {@link ContentDefinedChunker}). Each chunk is stored (compressed) once as
+ *     <code>chunk-&lt;sha256&gt;</code> and each backup point is a small manifest, named
+ *     <code>&lt;file name&gt;.manifest</code>, that lists the file's chunks in order.
+ * </p>
+ *
+ * <p>
+ *     Only chunks that aren't already in the store are uploaded, so re-backing up the active log
+ *     after an append costs roughly the size of the appended data. Chunks that are no longer referenced
+ *     by any manifest are removed by {@link #collectGarbage(List)}.
+ * </p>
+ */
+class ChunkedBackup
+{
+    private final Exhibitor exhibitor;
+    private final BackupProvider provider;
+    private final BackupCatalog catalog;
+    private final BackupBandwidth bandwidth;
+    private final Map<String, String> config;
+    private final Map<String, BackupMetaData> knownChunks = Maps.newHashMap();
+
+    static final String CHUNK_PREFIX = "chunk-";
+    static final String MANIFEST_SUFFIX = ".manifest";
+
+    static final String MANIFEST_HEADER = "exhibitor-chunked-backup-v1";
+
+    /**
+     * Unreferenced chunks younger than this are kept - they may belong to a manifest that is being written
+     */
+    static final long GARBAGE_MIN_AGE_MS = 60 * 60 * 1000;
+
+    /**
+     * Existing chunks older than this are uploaded again (as a new version) instead of being reused. A chunk
+     * that a new manifest references is therefore always much younger than {@link #GARBAGE_MIN_AGE_MS} -
+     * even if the listing it was found in is stale and a concurrent garbage collection has just decided that
+     * the old version is unreferenced.
+     */
+    static final long REUSE_MAX_AGE_MS = GARBAGE_MIN_AGE_MS / 2;
+
+    /**
+     * @param exhibitor instance
+     * @param provider the provider
+     * @param catalog catalog to keep up to date with new/deleted chunks
+     * @param bandwidth bandwidth budgets for chunk uploads/downloads
+     * @param config backup config
+     * @param availableBackups current backups - existing chunks are not uploaded again
+     */
+    ChunkedBackup(Exhibitor exhibitor, BackupProvider provider, BackupCatalog catalog, BackupBandwidth bandwidth, Map<String, String> config, List<BackupMetaData> availableBackups)
+    {
+        this.exhibitor = exhibitor;
+        this.provider = provider;
+        this.catalog = catalog;
+        this.bandwidth = bandwidth;
+        this.config = config;
+
+        for ( BackupMetaData backup : availableBackups )
+        {
+            if ( isChunk(backup) )
+            {
+                BackupMetaData  existing = knownChunks.get(backup.getName());
+                if ( (existing == null) || (existing.getModifiedDate() < backup.getModifiedDate()) )
+                {
+                    knownChunks.put(backup.getName(), backup);  // reuse the newest version
+                }
+            }
+        }
+    }
+
+    static boolean isChunk(BackupMetaData backup)
+    {
+        return backup.getName().startsWith(CHUNK_PREFIX);
+    }
+
+    static boolean isManifest(BackupMetaData backup)
+    {
+        return backup.getName().endsWith(MANIFEST_SUFFIX);
+    }
+
+    /**
+     * @param backup a backup
+     * @return the name of the file that was backed up
+     */
+    static String getSourceName(BackupMetaData backup)
+    {
+        String      name = backup.getName();
+        return isManifest(backup) ? name.substring(0, name.length() - MANIFEST_SUFFIX.length()) : name;
+    }
+
+    /**
+     * Upload any new chunks of the given file followed by its manifest
+     *
+     * @param source file to back up
+     * @param manifest identity of the manifest (name must end with {@link #MANIFEST_SUFFIX})
+     * @param codec compression for new chunks and the manifest - with {@link BackupCodec#NONE} they are still framed (see {@link BackupCodec#compressDetectable(OutputStream)})
+     * @param availableBackups current backups - passed to the provider for the manifest upload
+     * @return result of the manifest upload (or FAILED if a chunk couldn't be uploaded)
+     * @throws Exception errors
+     */
+    BackupProvider.UploadResult upload(File source, BackupMetaData manifest, BackupCodec codec, List<BackupMetaData> availableBackups) throws Exception
+    {
+        StreamingBackupProvider streamingProvider = (StreamingBackupProvider)provider;
+        List<BackupMetaData>    chunks = Lists.newArrayList();
+        long                    newBytes = 0;
+        int                     newQty = 0;
+
+        InputStream             in = new BufferedInputStream(new FileInputStream(source));
+        try
+        {
+            ContentDefinedChunker   chunker = new ContentDefinedChunker(in);
+            for ( byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next() )
+            {
+                String          name = CHUNK_PREFIX + Hashing.sha256().hashBytes(chunk).toString();
+                BackupMetaData  chunkMetaData = knownChunks.get(name);
+                if ( (chunkMetaData == null) || ((System.currentTimeMillis() - chunkMetaData.getModifiedDate()) > REUSE_MAX_AGE_MS) )
+                {
+                    chunkMetaData = new BackupMetaData(name, System.currentTimeMillis());
+                    BackupProvider.UploadResult result = streamingProvider.uploadBackup(exhibitor, chunkMetaData, makeWriter(codec, chunk), Collections.<BackupMetaData>emptyList(), config);
+                    if ( result == BackupProvider.UploadResult.FAILED )
+                    {
+                        return result;
+                    }
+                    knownChunks.put(name, chunkMetaData);
+                    catalog.added(chunkMetaData);
+                    newBytes += chunk.length;
+                    ++newQty;
+                }
+                chunks.add(chunkMetaData);
+            }
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+
+        StringBuilder       manifestText = new StringBuilder(MANIFEST_HEADER).append("\n");
+        for ( BackupMetaData chunk : chunks )
+        {
+            manifestText.append(chunk.getName()).append(" ").append(chunk.getModifiedDate()).append("\n");
+        }
+        BackupProvider.UploadResult result = streamingProvider.uploadBackup(exhibitor, manifest, makeWriter(codec, manifestText.toString().getBytes(Charsets.UTF_8)), availableBackups, config);
+        exhibitor.getLog().add(ActivityLog.Type.DEBUG, String.format("Chunked backup of %s: %d chunks, %d new (%d bytes)", source, chunks.size(), newQty, newBytes));
+        return result;
+    }
+
+    /**
+     * Delete chunks that aren't referenced by any manifest. Manifests reference a specific version (modified date)
+     * of each chunk - other versions of the chunk are garbage once they're old enough.
+     *
+     * @param availableBackups current backups
+     * @return number of chunks deleted
+     * @throws Exception errors
+     */
+    int collectGarbage(List<BackupMetaData> availableBackups) throws Exception
+    {
+        Set<BackupMetaData> referenced = Sets.newHashSet();
+        for ( BackupMetaData backup : availableBackups )
+        {
+            if ( isManifest(backup) )
+            {
+                List<BackupMetaData>    chunks;
+                try
+                {
+                    chunks = readManifest(backup);
+                }
+                catch ( IOException e )
+                {
+                    chunks = null;
+                }
+                if ( chunks == null )
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.INFO, "Skipping chunk cleanup - could not read manifest: " + backup);
+                    return 0;
+                }
+                referenced.addAll(chunks);
+            }
+        }
+
+        List<BackupMetaData>    garbage = Lists.newArrayList();
+        long                    now = System.currentTimeMillis();
+        for ( BackupMetaData backup : availableBackups )
+        {
+            if ( isChunk(backup) && !referenced.contains(backup) && ((now - backup.getModifiedDate()) > GARBAGE_MIN_AGE_MS) )
+            {
+                garbage.add(backup);
+                if ( backup.equals(knownChunks.get(backup.getName())) )
+                {
+                    knownChunks.remove(backup.getName());
+                }
+            }
+        }
+        new BackupDeleter(exhibitor, provider, catalog).delete(garbage, config);
+        return garbage.size();
+    }
+
+    /**
+     * Return the (decompressed) contents of the file that the manifest describes
+     *
+     * @param manifestData the manifest's decompressed content
+     * @return the file contents
+     * @throws Exception errors
+     */
+    InputStream open(InputStream manifestData) throws Exception
+    {
+        return new ChunkSequenceInputStream(parseManifest(manifestData).iterator());
+    }
+
+    private List<BackupMetaData> readManifest(BackupMetaData manifest) throws Exception
+    {
+        BackupStream    stream = provider.getBackupStream(exhibitor, manifest, config);
+        if ( stream == null )
+        {
+            return null;
+        }
+        try
+        {
+            return parseManifest(BackupCodec.decompress(stream.getStream()));
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(stream);
+        }
+    }
+
+    private static List<BackupMetaData> parseManifest(InputStream in) throws IOException
+    {
+        BufferedReader      reader = new BufferedReader(new InputStreamReader(in, Charsets.UTF_8));
+        if ( !MANIFEST_HEADER.equals(reader.readLine()) )
+        {
+            throw new IOException("Not a backup manifest");
+        }
+
+        ImmutableList.Builder<BackupMetaData>   builder = ImmutableList.builder();
+        for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+        {
+            String[]        parts = line.trim().split(" ");
+            if ( parts.length == 2 )
+            {
+                try
+                {
+                    builder.add(new BackupMetaData(parts[0], Long.parseLong(parts[1])));
+                    continue;
+                }
+                catch ( NumberFormatException ignore )
+                {
+                    // fall through
+                }
+            }
+            if ( line.trim().length() > 0 )
+            {
+                throw new IOException("Bad backup manifest line: " + line);
+            }
+        }
+        return builder.build();
+    }
+
+    private BackupWriter makeWriter(final BackupCodec codec, final byte[] bytes)
+    {
+        return new BackupWriter()
+        {
+            @Override
+            public void write(OutputStream out) throws Exception
+            {
+                // chunks start at arbitrary points of the file so they must always be detectable when decompressed
+                OutputStream    compressed = codec.compressDetectable(new NonClosingOutputStream(bandwidth.getUploadLimiter().limit(out)));
+                try
+                {
+                    compressed.write(bytes);
+                }
+                finally
+                {
+                    compressed.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads the chunks in order, opening each one only when the previous one is exhausted
+     */
+    private class ChunkSequenceInputStream extends InputStream
+    {
+        private final Iterator<BackupMetaData> chunks;
+        private BackupStream current = null;
+        private InputStream currentStream = null;
+
+        ChunkSequenceInputStream(Iterator<BackupMetaData> chunks)
+        {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[]      b = new byte[1];
+            int         count = read(b, 0, 1);
+            return (count < 0) ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+
+            for(;;)
+            {
+                if ( currentStream == null )
+                {
+                    if ( !chunks.hasNext() )
+                    {
+                        return -1;
+                    }
+                    openNext(chunks.next());
+                }
+
+                int     count = currentStream.read(b, off, len);
+                if ( count >= 0 )
+                {
+                    return count;
+                }
+                closeCurrent();
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            closeCurrent();
+        }
+
+        private void openNext(BackupMetaData chunk) throws IOException
+        {
+            try
+            {
+                current = provider.getBackupStream(exhibitor, chunk, config);
+            }
+            catch ( Exception e )
+            {
+                throw new IOException(e);
+            }
+            if ( current == null )
+            {
+                throw new IOException("Missing backup chunk: " + chunk);
+            }
+            try
+            {
+                currentStream = BackupCodec.decompress(bandwidth.getDownloadLimiter().limit(current.getStream()));
+            }
+            catch ( IOException e )
+            {
+                closeCurrent();
+                throw e;
+            }
+        }
+
+        private void closeCurrent()
+        {
+            CloseableUtils.closeQuietly(current);
+            current = null;
+            currentStream = null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Splits a stream into content-defined chunks using a gear rolling hash. Chunk boundaries depend
+ * only on the bytes near them, so an insertion or an append only changes the chunks around the
+ * edit - the rest of the stream produces the same chunks (and chunk hashes) as before.
+ */
+class ContentDefinedChunker
+{
+    private final InputStream in;
+    private final int minChunkSize;
+    private final long mask;
+    private final byte[] buffer;
+    private int bufferUsed = 0;
+    private boolean eof = false;
+
+    static final int DEFAULT_MIN_CHUNK_SIZE = 256 * 1024;
+    static final int DEFAULT_AVERAGE_CHUNK_SIZE = 1024 * 1024;
+    static final int DEFAULT_MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final long[] GEAR = new long[256];
+    static
+    {
+        // must never change - chunk boundaries (and therefore dedup) depend on it
+        Random      random = new Random(0x45584849L);
+        for ( int i = 0; i < GEAR.length; ++i )
+        {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    ContentDefinedChunker(InputStream in)
+    {
+        this(in, DEFAULT_MIN_CHUNK_SIZE, DEFAULT_AVERAGE_CHUNK_SIZE, DEFAULT_MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * @param in stream to chunk
+     * @param minChunkSize smallest chunk (other than the last)
+     * @param averageChunkSize target average chunk size - must be a power of 2
+     * @param maxChunkSize largest chunk
+     */
+    ContentDefinedChunker(InputStream in, int minChunkSize, int averageChunkSize, int maxChunkSize)
+    {
+        this.in = in;
+        this.minChunkSize = minChunkSize;
+        mask = averageChunkSize - 1;
+        buffer = new byte[maxChunkSize];
+    }
+
+    /**
+     * @return the next chunk or null when the stream is exhausted
+     * @throws IOException errors
+     */
+    byte[] next() throws IOException
+    {
+        fill();
+        if ( bufferUsed == 0 )
+        {
+            return null;
+        }
+
+        int         length = findBoundary();
+        byte[]      chunk = Arrays.copyOf(buffer, length);
+        System.arraycopy(buffer, length, buffer, 0, bufferUsed - length);
+        bufferUsed -= length;
+        return chunk;
+    }
+
+    private int findBoundary()
+    {
+        if ( bufferUsed <= minChunkSize )
+        {
+            return bufferUsed;
+        }
+
+        // the hash only depends on the last 64 bytes so start just before the minimum
+        long        hash = 0;
+        for ( int i = Math.max(0, minChunkSize - 64); i < bufferUsed; ++i )
+        {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if ( (i >= minChunkSize) && ((hash & mask) == 0) )
+            {
+                return i + 1;
+            }
+        }
+        return bufferUsed;
+    }
+
+    private void fill() throws IOException
+    {
+        while ( !eof && (bufferUsed < buffer.length) )
+        {
+            int     bytesRead = in.read(buffer, bufferUsed, buffer.length - bufferUsed);
+            if ( bytesRead < 0 )
+            {
+                eof = true;
+            }
+            else
+            {
+                bufferUsed += bytesRead;
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.io.ByteStreams;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes the contents of a file to the backup using a {@link BackupCodec}
+ */
+public class FileBackupWriter implements BackupWriter
+{
+    private final File source;
+    private final BackupCodec codec;
+
+    /**
+     * @param source file to write
+     * @param codec compression to use
+     */
+    public FileBackupWriter(File source, BackupCodec codec)
+    {
+        this.source = source;
+        this.codec = codec;
+    }
+
+    @Override
+    public void write(OutputStream out) throws Exception
+    {
+        InputStream     in = new FileInputStream(source);
+        OutputStream    compressed = null;
+        try
+        {
+            compressed = codec.compress(new NonClosingOutputStream(out));
+            ByteStreams.copy(in, compressed);
+            compressed.close();  // finishes the codec - doesn't close out
+            compressed = null;
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+            CloseableUtils.closeQuietly(compressed);
+        }
+    }
+}
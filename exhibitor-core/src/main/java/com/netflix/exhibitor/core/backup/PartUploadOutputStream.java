@@ -0,0 +1,376 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.curator.RetryLoop;
+import org.apache.curator.RetryPolicy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Base for output streams that upload to an object store as data is written. Objects smaller than a
+ *     part are stored with a single put, otherwise the object is uploaded as parts (multipart upload parts,
+ *     blocks, component objects, etc.) and up to <code>concurrency</code> parts are uploaded in parallel.
+ * </p>
+ *
+ * <p>
+ *     Part buffers come from a small pool (concurrency + 1 buffers) so memory is bounded and writes block
+ *     while all parts are in flight. The bandwidth limiter is applied by the writing thread as parts are
+ *     handed off, so it limits the upload as a whole. Each part is retried per the retry policy.
+ *     {@link #close()} completes the upload, {@link #abort()} abandons it.
+ * </p>
+ *
+ * @param <P> the store's identifier for an uploaded part
+ */
+public abstract class PartUploadOutputStream<P> extends OutputStream
+{
+    private final String name;
+    private final int partSize;
+    private final int concurrency;
+    private final RetryPolicy retryPolicy;
+    private final BandwidthLimiter throttle;
+    private final BlockingQueue<byte[]> bufferPool = new LinkedBlockingQueue<byte[]>();
+    private final List<Future<P>> parts = Lists.newArrayList();
+
+    private static final int ABORT_WAIT_SECONDS = 30;
+
+    private int allocatedBuffers = 0;
+    private byte[] buffer;
+    private int bufferUsed = 0;
+    private boolean started = false;
+    private ExecutorService executorService = null;
+    private boolean closed = false;
+
+    /**
+     * @param name name of the object (used for thread names/errors)
+     * @param partSize size of each part
+     * @param concurrency max parts to upload concurrently
+     * @param retryPolicy retry policy for each part
+     * @param throttle bandwidth limiter shared by the provider's transfers
+     */
+    protected PartUploadOutputStream(String name, int partSize, int concurrency, RetryPolicy retryPolicy, BandwidthLimiter throttle)
+    {
+        this.name = name;
+        this.partSize = partSize;
+        this.concurrency = Math.max(1, concurrency);
+        this.retryPolicy = retryPolicy;
+        this.throttle = throttle;
+        buffer = allocateBuffer();
+    }
+
+    /**
+     * Store an object that fits in a single part
+     *
+     * @param bytes data
+     * @param length length of the data
+     * @throws Exception errors
+     */
+    protected abstract void putObject(byte[] bytes, int length) throws Exception;
+
+    /**
+     * Called before the first part is uploaded
+     *
+     * @throws Exception errors
+     */
+    protected abstract void startParts() throws Exception;
+
+    /**
+     * Upload one part. Called concurrently from the upload threads.
+     *
+     * @param partNumber 1 based part number
+     * @param bytes data
+     * @param length length of the data
+     * @return the part's identifier
+     * @throws Exception errors
+     */
+    protected abstract P uploadPart(int partNumber, byte[] bytes, int length) throws Exception;
+
+    /**
+     * Combine the uploaded parts into the final object
+     *
+     * @param partIds the identifiers of the parts in order
+     * @throws Exception errors
+     */
+    protected abstract void completeParts(List<P> partIds) throws Exception;
+
+    /**
+     * Clean up any parts that have been uploaded
+     *
+     * @throws Exception errors
+     */
+    protected abstract void abortParts() throws Exception;
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        checkNotClosed();
+        while ( len > 0 )
+        {
+            int     thisLength = Math.min(len, buffer.length - bufferUsed);
+            System.arraycopy(b, off, buffer, bufferUsed, thisLength);
+            bufferUsed += thisLength;
+            off += thisLength;
+            len -= thisLength;
+
+            if ( bufferUsed == buffer.length )
+            {
+                try
+                {
+                    submitPart();
+                    buffer = takeBuffer();
+                }
+                catch ( Exception e )
+                {
+                    abortQuietly();
+                    throw toIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Upload any buffered data, wait for all parts and complete the upload
+     *
+     * @throws IOException errors
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+
+        try
+        {
+            if ( !started )
+            {
+                throttle.acquire(bufferUsed);
+                putObject(buffer, bufferUsed);
+            }
+            else
+            {
+                if ( bufferUsed > 0 )
+                {
+                    submitPart();
+                }
+
+                List<P>     partIds = Lists.newArrayList();
+                for ( Future<P> part : parts )
+                {
+                    partIds.add(getPart(part));
+                }
+                completeParts(partIds);
+                shutdown();
+            }
+        }
+        catch ( Exception e )
+        {
+            abortQuietly();
+            throw toIOException(e);
+        }
+    }
+
+    /**
+     * Abandon the upload. Nothing will be stored.
+     *
+     * @throws Exception errors
+     */
+    public void abort() throws Exception
+    {
+        closed = true;
+        ExecutorService     uploads = executorService;
+        shutdown();
+        if ( uploads != null )
+        {
+            // don't clean up while parts are still being uploaded
+            uploads.awaitTermination(ABORT_WAIT_SECONDS, TimeUnit.SECONDS);
+        }
+        if ( started )
+        {
+            started = false;
+            abortParts();
+        }
+    }
+
+    private void submitPart() throws Exception
+    {
+        if ( !started )
+        {
+            startParts();
+            started = true;
+            executorService = Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("PartUpload-%d").build());
+        }
+        checkFailedParts();
+
+        throttle.acquire(bufferUsed);
+
+        final byte[]    partBuffer = buffer;
+        final int       partLength = bufferUsed;
+        final int       partNumber = parts.size() + 1;
+        buffer = null;
+        bufferUsed = 0;
+        parts.add
+        (
+            executorService.submit
+            (
+                new Callable<P>()
+                {
+                    @Override
+                    public P call() throws Exception
+                    {
+                        try
+                        {
+                            return uploadPartWithRetry(partNumber, partBuffer, partLength);
+                        }
+                        finally
+                        {
+                            bufferPool.add(partBuffer);
+                        }
+                    }
+                }
+            )
+        );
+    }
+
+    private P uploadPartWithRetry(int partNumber, byte[] partBuffer, int partLength) throws Exception
+    {
+        long            startMs = System.currentTimeMillis();
+        int             retries = 0;
+        for(;;)
+        {
+            try
+            {
+                return uploadPart(partNumber, partBuffer, partLength);
+            }
+            catch ( Exception e )
+            {
+                if ( !retryPolicy.allowRetry(retries++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
+                {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private byte[] takeBuffer() throws InterruptedIOException
+    {
+        byte[]  next = bufferPool.poll();
+        if ( next == null )
+        {
+            if ( allocatedBuffers <= concurrency )
+            {
+                return allocateBuffer();
+            }
+
+            try
+            {
+                next = bufferPool.take();   // all parts in flight - wait for one to finish
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for part upload: " + name);
+            }
+        }
+        return next;
+    }
+
+    private byte[] allocateBuffer()
+    {
+        ++allocatedBuffers;
+        return new byte[partSize];
+    }
+
+    private void checkFailedParts() throws Exception
+    {
+        for ( Future<P> part : parts )
+        {
+            if ( part.isDone() )
+            {
+                getPart(part);
+            }
+        }
+    }
+
+    private P getPart(Future<P> part) throws Exception
+    {
+        try
+        {
+            return part.get();
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            throw (cause instanceof Exception) ? (Exception)cause : e;
+        }
+    }
+
+    private void shutdown()
+    {
+        if ( executorService != null )
+        {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+    }
+
+    private void abortQuietly()
+    {
+        try
+        {
+            abort();
+        }
+        catch ( Exception ignore )
+        {
+            // ignore
+        }
+    }
+
+    private void checkNotClosed() throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException("Stream is closed: " + name);
+        }
+    }
+
+    private static IOException toIOException(Exception e)
+    {
+        return (e instanceof IOException) ? (IOException)e : new IOException(e);
+    }
+}
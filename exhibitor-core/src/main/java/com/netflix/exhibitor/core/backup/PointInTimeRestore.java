@@ -0,0 +1,627 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.activity.ActivityPriority;
+import com.netflix.exhibitor.core.activity.QueuedActivity;
+import com.netflix.exhibitor.core.index.ZooKeeperLogFiles;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.BinaryInputArchive;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ *     Rebuilds a ZooKeeper data directory from backups as of a target zxid and/or time. The newest
+ *     backed up snapshot at or before the target is used along with the transaction logs needed to
+ *     replay from the snapshot up to the target. The files are downloaded in parallel, the logs are
+ *     truncated after the last transaction at or before the target and the result is moved into
+ *     place as <code>version-2</code> in the destination.
+ * </p>
+ *
+ * <p>
+ *     Snapshots are only backed up when chunked backups are enabled. Without a snapshot the
+ *     restore fails unless the backed up logs go back to the first transaction of the ensemble.
+ * </p>
+ */
+public class PointInTimeRestore implements QueuedActivity
+{
+    private final Exhibitor exhibitor;
+    private final long targetZxid;
+    private final long targetTimeMs;
+    private final File dataDirectory;
+    private final int threadQty;
+
+    /**
+     * Use for the target zxid or time to restore as far as the backups go
+     */
+    public static final long LATEST = Long.MAX_VALUE;
+
+    public static final int DEFAULT_THREAD_QTY = 4;
+
+    private static final String VERSION_DIRECTORY = "version-2";
+    private static final String LOG_PREFIX = "log.";
+
+    // magic (int), version (int), dbid (long)
+    private static final int LOG_HEADER_LENGTH = 16;
+
+    /**
+     * The backups to restore
+     */
+    @VisibleForTesting
+    static class Plan
+    {
+        final BackupMetaData snapshot;
+        final List<BackupMetaData> logs;
+
+        Plan(BackupMetaData snapshot, List<BackupMetaData> logs)
+        {
+            this.snapshot = snapshot;
+            this.logs = ImmutableList.copyOf(logs);
+        }
+    }
+
+    /**
+     * Result of truncating a log at the target
+     */
+    @VisibleForTesting
+    static class Truncation
+    {
+        final int keptQty;
+        final long firstZxid;
+        final long lastZxid;
+        final long lastTimeMs;
+        final boolean reachedTarget;
+
+        Truncation(int keptQty, long firstZxid, long lastZxid, long lastTimeMs, boolean reachedTarget)
+        {
+            this.keptQty = keptQty;
+            this.firstZxid = firstZxid;
+            this.lastZxid = lastZxid;
+            this.lastTimeMs = lastTimeMs;
+            this.reachedTarget = reachedTarget;
+        }
+    }
+
+    /**
+     * @param exhibitor instance
+     * @param targetZxid restore through this zxid or {@link #LATEST}
+     * @param targetTimeMs restore through this time or {@link #LATEST}
+     * @param dataDirectory destination - must not already have a <code>version-2</code> directory
+     */
+    public PointInTimeRestore(Exhibitor exhibitor, long targetZxid, long targetTimeMs, File dataDirectory)
+    {
+        this(exhibitor, targetZxid, targetTimeMs, dataDirectory, DEFAULT_THREAD_QTY);
+    }
+
+    /**
+     * @param exhibitor instance
+     * @param targetZxid restore through this zxid or {@link #LATEST}
+     * @param targetTimeMs restore through this time or {@link #LATEST}
+     * @param dataDirectory destination - must not already have a <code>version-2</code> directory
+     * @param threadQty max number of backups to download concurrently
+     */
+    public PointInTimeRestore(Exhibitor exhibitor, long targetZxid, long targetTimeMs, File dataDirectory, int threadQty)
+    {
+        this.exhibitor = exhibitor;
+        this.targetZxid = targetZxid;
+        this.targetTimeMs = targetTimeMs;
+        this.dataDirectory = dataDirectory;
+        this.threadQty = Math.max(1, threadQty);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "PointInTimeRestore";
+    }
+
+    @Override
+    public ActivityPriority getPriority()
+    {
+        return ActivityPriority.NORMAL;
+    }
+
+    @Override
+    public String getSerializationKey()
+    {
+        return DATA_DIRECTORY_KEY;
+    }
+
+    @Override
+    public void completed(boolean wasSuccessful)
+    {
+    }
+
+    @Override
+    public Boolean call() throws Exception
+    {
+        try
+        {
+            restore();
+            return true;
+        }
+        catch ( Exception e )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.ERROR, "Restore: failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Perform the restore. The restore fails (and the destination is left as it was) if the logs have a gap,
+     * if they end before the target or if there's no snapshot and the logs don't start at the first transaction.
+     *
+     * @throws Exception errors
+     */
+    public void restore() throws Exception
+    {
+        File        versionDirectory = new File(dataDirectory, VERSION_DIRECTORY);
+        if ( versionDirectory.exists() )
+        {
+            throw new IOException("Restore: destination already has data: " + versionDirectory);
+        }
+
+        File        workDirectory = new File(dataDirectory, VERSION_DIRECTORY + ".restoring-" + System.currentTimeMillis());
+        if ( !workDirectory.mkdirs() )
+        {
+            throw new IOException("Restore: could not make directory: " + workDirectory);
+        }
+
+        boolean     success = false;
+        try
+        {
+            List<BackupMetaData>    availableBackups = exhibitor.getBackupManager().getAvailableBackups();
+            Plan                    plan = makePlan(availableBackups, targetZxid, targetTimeMs);
+            BackupMetaData          targetLog = null;
+            if ( targetZxid != LATEST )
+            {
+                // snapshots are fuzzy - snapshot.X can have transactions after X. So, the snapshot must not be newer than the target transaction
+                long        targetTransactionTimeMs = Long.MIN_VALUE;   // if unknown, no snapshot can be trusted
+                if ( !plan.logs.isEmpty() )
+                {
+                    targetLog = plan.logs.get(plan.logs.size() - 1);
+                    download(Collections.singletonList(targetLog), workDirectory);
+                    Truncation  truncation = truncateLog(new File(workDirectory, ChunkedBackup.getSourceName(targetLog)), targetZxid, targetTimeMs);
+                    if ( truncation.keptQty > 0 )
+                    {
+                        targetTransactionTimeMs = truncation.lastTimeMs;
+                    }
+                    else if ( truncation.reachedTarget )
+                    {
+                        targetTransactionTimeMs = targetTimeMs;    // the time target comes first
+                    }
+                }
+                plan = makePlan(availableBackups, targetZxid, Math.min(targetTimeMs, targetTransactionTimeMs));
+            }
+
+            if ( (plan.snapshot == null) && plan.logs.isEmpty() )
+            {
+                throw new IOException("Restore: there are no backups at or before the target");
+            }
+            exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Restore: target zxid %s, target time %s - using snapshot %s and %d logs", describe(targetZxid, true), describe(targetTimeMs, false), plan.snapshot, plan.logs.size()));
+
+            List<BackupMetaData>    backups = Lists.newArrayList(plan.logs);
+            backups.remove(targetLog);  // already downloaded
+            if ( plan.snapshot != null )
+            {
+                backups.add(0, plan.snapshot);
+            }
+            download(backups, workDirectory);
+
+            long        lastZxid = (plan.snapshot != null) ? getZxid(plan.snapshot) : -1;
+            boolean     reachedTarget = false;
+            for ( BackupMetaData log : plan.logs )
+            {
+                File        logFile = new File(workDirectory, ChunkedBackup.getSourceName(log));
+                Truncation  truncation = reachedTarget ? null : truncateLog(logFile, targetZxid, targetTimeMs);
+                if ( (truncation == null) || (truncation.keptQty == 0) )
+                {
+                    deleteFile(logFile);    // nothing at or before the target
+                }
+                else
+                {
+                    if ( (lastZxid < 0) && !isFirstTransaction(truncation.firstZxid) )
+                    {
+                        throw new IOException(String.format("Restore: there is no snapshot backup and the oldest backed up log %s starts at zxid 0x%s - not at the first transaction. Enable chunked backups so that snapshots are backed up.", log, Long.toHexString(truncation.firstZxid)));
+                    }
+                    if ( (lastZxid >= 0) && isGap(lastZxid, truncation.firstZxid) )
+                    {
+                        throw new IOException(String.format("Restore: the backed up logs have a gap - %s starts at zxid 0x%s but the previous transaction is 0x%s", log, Long.toHexString(truncation.firstZxid), Long.toHexString(lastZxid)));
+                    }
+                    lastZxid = truncation.lastZxid;
+                }
+                reachedTarget = reachedTarget || ((truncation != null) && truncation.reachedTarget);
+            }
+
+            if ( lastZxid < 0 )
+            {
+                throw new IOException("Restore: there is no snapshot backup and the backed up logs have no transactions at or before the target");
+            }
+
+            boolean     hasTarget = (targetZxid != LATEST) || (targetTimeMs != LATEST);
+            if ( hasTarget && !reachedTarget && (lastZxid < targetZxid) )
+            {
+                throw new IOException(String.format("Restore: the backups end at zxid %s - before the target zxid %s, target time %s", (lastZxid >= 0) ? ("0x" + Long.toHexString(lastZxid)) : "n/a", describe(targetZxid, true), describe(targetTimeMs, false)));
+            }
+
+            if ( !workDirectory.renameTo(versionDirectory) )
+            {
+                throw new IOException("Restore: could not rename " + workDirectory + " to " + versionDirectory);
+            }
+            success = true;
+
+            exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Restore: completed into %s - last transaction zxid %s", versionDirectory, (lastZxid >= 0) ? ("0x" + Long.toHexString(lastZxid)) : "n/a"));
+        }
+        finally
+        {
+            if ( !success )
+            {
+                File[]      files = workDirectory.listFiles();
+                if ( files != null )
+                {
+                    for ( File f : files )
+                    {
+                        deleteFile(f);
+                    }
+                }
+                deleteFile(workDirectory);
+            }
+        }
+    }
+
+    /**
+     * Select the backups needed for the target: the newest snapshot at or before the target and the logs
+     * from the one containing the transaction after the snapshot through the one containing the target.
+     * When there are multiple versions of a file (e.g. the active log), the newest version is used.
+     *
+     * @param availableBackups all backups
+     * @param targetZxid target zxid or {@link #LATEST}
+     * @param targetTimeMs target time or {@link #LATEST} - snapshots modified after this aren't used
+     * @return plan
+     */
+    @VisibleForTesting
+    static Plan makePlan(List<BackupMetaData> availableBackups, long targetZxid, long targetTimeMs)
+    {
+        Map<String, BackupMetaData>     newest = Maps.newHashMap();
+        for ( BackupMetaData backup : availableBackups )
+        {
+            String          name = ChunkedBackup.getSourceName(backup);
+            BackupMetaData  existing = newest.get(name);
+            if ( (existing == null) || (existing.getModifiedDate() < backup.getModifiedDate()) )
+            {
+                newest.put(name, backup);
+            }
+        }
+
+        BackupMetaData          snapshot = null;
+        List<BackupMetaData>    logs = Lists.newArrayList();
+        for ( Map.Entry<String, BackupMetaData> entry : newest.entrySet() )
+        {
+            String          name = entry.getKey();
+            BackupMetaData  backup = entry.getValue();
+            if ( name.startsWith(ZooKeeperLogFiles.SNAPSHOT_PREFIX) )
+            {
+                long        zxid = getZxid(name, ZooKeeperLogFiles.SNAPSHOT_PREFIX);
+                if ( (zxid >= 0) && (zxid <= targetZxid) && (backup.getModifiedDate() <= targetTimeMs) && ((snapshot == null) || (zxid > getZxid(snapshot))) )
+                {
+                    snapshot = backup;
+                }
+            }
+            else
+            {
+                long        zxid = getZxid(name, LOG_PREFIX);
+                if ( (zxid >= 0) && (zxid <= targetZxid) )
+                {
+                    logs.add(backup);
+                }
+            }
+        }
+
+        Collections.sort
+        (
+            logs,
+            new Comparator<BackupMetaData>()
+            {
+                @Override
+                public int compare(BackupMetaData o1, BackupMetaData o2)
+                {
+                    long        diff = getZxid(o1) - getZxid(o2);
+                    return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+                }
+            }
+        );
+
+        if ( snapshot != null )
+        {
+            // skip logs that end before the first transaction after the snapshot
+            long        firstNeededZxid = getZxid(snapshot) + 1;
+            int         startIndex = 0;
+            for ( int i = 0; i < logs.size(); ++i )
+            {
+                if ( getZxid(logs.get(i)) <= firstNeededZxid )
+                {
+                    startIndex = i;
+                }
+            }
+            logs = logs.subList(startIndex, logs.size());
+        }
+
+        return new Plan(snapshot, logs);
+    }
+
+    /**
+     * Truncate the log just after the last complete transaction at or before the target
+     *
+     * @param log log file
+     * @param targetZxid target zxid or {@link #LATEST}
+     * @param targetTimeMs target time or {@link #LATEST}
+     * @return result
+     * @throws IOException errors
+     */
+    @VisibleForTesting
+    static Truncation truncateLog(File log, long targetZxid, long targetTimeMs) throws IOException
+    {
+        long                keepLength = 0;
+        int                 keptQty = 0;
+        long                firstZxid = -1;
+        long                lastZxid = -1;
+        long                lastTimeMs = -1;
+        boolean             reachedTarget = false;
+
+        DataInputStream     in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)));
+        try
+        {
+            in.readFully(new byte[LOG_HEADER_LENGTH]);
+            keepLength = LOG_HEADER_LENGTH;
+
+            byte[]          buffer = new byte[4096];
+            for(;;)
+            {
+                int         length;
+                try
+                {
+                    in.readLong();  // crc
+                    length = in.readInt();
+                    if ( length <= 0 )
+                    {
+                        break;  // preallocated space
+                    }
+                    if ( length > buffer.length )
+                    {
+                        buffer = new byte[length];
+                    }
+                    in.readFully(buffer, 0, length);
+                    if ( in.readByte() != 'B' )
+                    {
+                        break;  // partial transaction
+                    }
+                }
+                catch ( EOFException e )
+                {
+                    break;
+                }
+
+                TxnHeader   header = new TxnHeader();
+                header.deserialize(new BinaryInputArchive(new DataInputStream(new ByteArrayInputStream(buffer, 0, length))), "hdr");
+                if ( (header.getZxid() > targetZxid) || (header.getTime() > targetTimeMs) )
+                {
+                    reachedTarget = true;
+                    break;
+                }
+
+                keepLength += 8 + 4 + length + 1;
+                if ( keptQty++ == 0 )
+                {
+                    firstZxid = header.getZxid();
+                }
+                lastZxid = header.getZxid();
+                lastTimeMs = header.getTime();
+            }
+        }
+        catch ( EOFException e )
+        {
+            // short header - nothing to keep
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+
+        RandomAccessFile    file = new RandomAccessFile(log, "rw");
+        try
+        {
+            file.setLength(keepLength);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(file);
+        }
+        return new Truncation(keptQty, firstZxid, lastZxid, lastTimeMs, reachedTarget);
+    }
+
+    /**
+     * Return true if a log starting at the given zxid doesn't continue from the previous transaction. A new
+     * leader epoch restarts the counter (the low 32 bits of the zxid) so the first transaction of a later
+     * epoch also continues the log.
+     *
+     * @param previousZxid the last transaction restored so far (from the snapshot or the previous log)
+     * @param firstZxid the first transaction of the next log
+     * @return true if transactions are missing
+     */
+    @VisibleForTesting
+    static boolean isGap(long previousZxid, long firstZxid)
+    {
+        if ( firstZxid <= (previousZxid + 1) )
+        {
+            return false;
+        }
+        return !(((firstZxid >>> 32) > (previousZxid >>> 32)) && ((firstZxid & 0xffffffffL) <= 1));
+    }
+
+    /**
+     * Return true if the zxid is the first transaction of the ensemble - i.e. replaying from it doesn't
+     * need a snapshot
+     *
+     * @param zxid zxid
+     * @return true/false
+     */
+    @VisibleForTesting
+    static boolean isFirstTransaction(long zxid)
+    {
+        return ((zxid >>> 32) <= 1) && ((zxid & 0xffffffffL) == 1);
+    }
+
+    private void download(List<BackupMetaData> backups, final File workDirectory) throws Exception
+    {
+        final int               totalQty = backups.size();
+        if ( totalQty == 0 )
+        {
+            return;
+        }
+
+        final AtomicInteger     doneQty = new AtomicInteger(0);
+        ExecutorService         executorService = Executors.newFixedThreadPool(Math.min(threadQty, totalQty), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("PointInTimeRestore-%d").build());
+        try
+        {
+            List<Future<Void>>  futures = Lists.newArrayList();
+            for ( final BackupMetaData backup : backups )
+            {
+                futures.add
+                (
+                    executorService.submit
+                    (
+                        new Callable<Void>()
+                        {
+                            @Override
+                            public Void call() throws Exception
+                            {
+                                downloadOne(backup, new File(workDirectory, ChunkedBackup.getSourceName(backup)));
+                                exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Restore: downloaded %s (%d of %d)", backup, doneQty.incrementAndGet(), totalQty));
+                                return null;
+                            }
+                        }
+                    )
+                );
+            }
+
+            for ( Future<Void> future : futures )
+            {
+                try
+                {
+                    future.get();
+                }
+                catch ( ExecutionException e )
+                {
+                    throw (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+                }
+            }
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void downloadOne(BackupMetaData backup, File destination) throws Exception
+    {
+        BackupStream        backupStream = exhibitor.getBackupManager().getBackupStream(backup);
+        if ( backupStream == null )
+        {
+            throw new IOException("Restore: backup not found: " + backup);
+        }
+
+        OutputStream        out = null;
+        try
+        {
+            out = new BufferedOutputStream(new FileOutputStream(destination));
+            ByteStreams.copy(backupStream.getStream(), out);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(out);
+            CloseableUtils.closeQuietly(backupStream);
+        }
+    }
+
+    private void deleteFile(File f)
+    {
+        if ( f.exists() && !f.delete() )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.ERROR, "Restore: could not delete: " + f);
+        }
+    }
+
+    private static long getZxid(BackupMetaData backup)
+    {
+        String      name = ChunkedBackup.getSourceName(backup);
+        return getZxid(name, name.startsWith(ZooKeeperLogFiles.SNAPSHOT_PREFIX) ? ZooKeeperLogFiles.SNAPSHOT_PREFIX : LOG_PREFIX);
+    }
+
+    private static long getZxid(String name, String prefix)
+    {
+        if ( name.startsWith(prefix) )
+        {
+            try
+            {
+                return Long.parseLong(name.substring(prefix.length()), 16);
+            }
+            catch ( NumberFormatException e )
+            {
+                // ignore
+            }
+        }
+        return -1;
+    }
+
+    private static String describe(long value, boolean isZxid)
+    {
+        if ( value == LATEST )
+        {
+            return "latest";
+        }
+        return isZxid ? ("0x" + Long.toHexString(value)) : Long.toString(value);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.curator.RetryLoop;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Base for input streams that read an object by fetching byte ranges in parallel. Up to <code>concurrency</code>
+ * ranges are fetched ahead of the reader, in order, so memory is bounded to concurrency * rangeSize.
+ * A failed range is retried from the last byte received rather than restarting the object.
+ */
+public abstract class RangedDownloadInputStream extends InputStream
+{
+    private final String name;
+    private final long length;
+    private final int rangeSize;
+    private final int concurrency;
+    private final RetryPolicy retryPolicy;
+    private final BandwidthLimiter throttle;
+    private final LinkedList<Future<byte[]>> pending = Lists.newLinkedList();
+
+    private ExecutorService executorService = null;
+    private long nextRangeStart = 0;
+    private byte[] current = new byte[0];
+    private int currentPosition = 0;
+    private boolean closed = false;
+
+    /**
+     * @param name name of the object (used for errors)
+     * @param length total length of the object
+     * @param rangeSize size of each range request
+     * @param concurrency max ranges to fetch concurrently
+     * @param retryPolicy retry policy for each range
+     * @param throttle bandwidth limiter shared by the provider's transfers
+     */
+    protected RangedDownloadInputStream(String name, long length, int rangeSize, int concurrency, RetryPolicy retryPolicy, BandwidthLimiter throttle)
+    {
+        this.name = name;
+        this.length = length;
+        this.rangeSize = rangeSize;
+        this.concurrency = Math.max(1, concurrency);
+        this.retryPolicy = retryPolicy;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Open a stream for the given range of the object. Called concurrently from the download threads.
+     *
+     * @param start first byte (inclusive)
+     * @param end last byte (inclusive)
+     * @return stream of the range's bytes or null if the object no longer exists
+     * @throws Exception errors
+     */
+    protected abstract InputStream openRange(long start, long end) throws Exception;
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[]  b = new byte[1];
+        int     bytesRead = read(b, 0, 1);
+        return (bytesRead < 0) ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException("Stream is closed: " + name);
+        }
+        if ( len == 0 )
+        {
+            return 0;
+        }
+
+        if ( currentPosition >= current.length )
+        {
+            if ( !nextRange() )
+            {
+                return -1;
+            }
+        }
+
+        int     thisLength = Math.min(len, current.length - currentPosition);
+        System.arraycopy(current, currentPosition, b, off, thisLength);
+        currentPosition += thisLength;
+        throttle.acquire(thisLength);
+        return thisLength;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return current.length - currentPosition;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if ( !closed )
+        {
+            closed = true;
+            for ( Future<byte[]> future : pending )
+            {
+                future.cancel(true);
+            }
+            pending.clear();
+            if ( executorService != null )
+            {
+                executorService.shutdownNow();
+            }
+        }
+    }
+
+    private boolean nextRange() throws IOException
+    {
+        if ( executorService == null )
+        {
+            // ranges are started lazily so that subclasses are fully constructed before openRange() is called
+            executorService = Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("RangedDownload-%d").build());
+            for ( int i = 0; i < concurrency; ++i )
+            {
+                submitNextRange();
+            }
+        }
+
+        Future<byte[]>  future = pending.poll();
+        if ( future == null )
+        {
+            return false;
+        }
+        submitNextRange();
+
+        try
+        {
+            current = future.get();
+            currentPosition = 0;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for range of: " + name);
+        }
+        catch ( ExecutionException e )
+        {
+            close();
+            Throwable cause = e.getCause();
+            throw (cause instanceof IOException) ? (IOException)cause : new IOException(cause);
+        }
+        return true;
+    }
+
+    private void submitNextRange()
+    {
+        if ( nextRangeStart >= length )
+        {
+            return;
+        }
+
+        final long      start = nextRangeStart;
+        final int       size = (int)Math.min(rangeSize, length - start);
+        nextRangeStart += size;
+        pending.add
+        (
+            executorService.submit
+            (
+                new Callable<byte[]>()
+                {
+                    @Override
+                    public byte[] call() throws Exception
+                    {
+                        return fetchRange(start, size);
+                    }
+                }
+            )
+        );
+    }
+
+    private byte[] fetchRange(long start, int size) throws Exception
+    {
+        byte[]          bytes = new byte[size];
+        int             offset = 0;
+        long            startMs = System.currentTimeMillis();
+        int             retries = 0;
+        while ( offset < size )
+        {
+            InputStream     in = null;
+            try
+            {
+                in = openRange(start + offset, start + size - 1);
+                if ( in == null )
+                {
+                    throw new IOException("Object not found: " + name);
+                }
+
+                while ( offset < size )
+                {
+                    int     bytesRead = in.read(bytes, offset, size - offset);
+                    if ( bytesRead < 0 )
+                    {
+                        throw new EOFException("Range ended early for: " + name);
+                    }
+                    offset += bytesRead;
+                }
+            }
+            catch ( Exception e )
+            {
+                // resume from the last byte received
+                if ( !retryPolicy.allowRetry(retries++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
+                {
+                    throw e;
+                }
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(in);
+            }
+        }
+        return bytes;
+    }
+}
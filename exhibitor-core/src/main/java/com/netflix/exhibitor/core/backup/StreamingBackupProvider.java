@@ -0,0 +1,44 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.netflix.exhibitor.core.Exhibitor;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional capability for backup providers that can accept backup content as a stream. When the configured
+ * provider implements this interface, {@link BackupManager} compresses log files directly into the provider's
+ * destination (e.g. multipart upload parts or the destination file) instead of going through a temp file.
+ */
+public interface StreamingBackupProvider extends BackupProvider
+{
+    /**
+     * Upload an object into the backup. Providers should check for duplicates before calling the
+     * writer so that no work is done for backups that already exist. The caller supplies the current
+     * listing (usually cached) so that providers don't need to list the store for each upload.
+     *
+     * @param exhibitor instance
+     * @param metaData identity of the backup
+     * @param writer produces the content of the backup
+     * @param availableBackups the current set of backups - used for duplicate checks and to replace old versions
+     * @param configValues values for provider-specific config
+     * @return the upload result
+     * @throws Exception any errors
+     */
+    public UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData metaData, BackupWriter writer, List<BackupMetaData> availableBackups, Map<String, String> configValues) throws Exception;
+}
@@ -23,18 +23,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.GZIPOutputStream;
 
 class TempCompressedFile
 {
     private final File      tempFile;
     private final File      source;
+    private final BackupCodec codec;
 
     private static final int        BUFFER_SIZE = 1024 * 1024;  // 1 MB
 
-    TempCompressedFile(File source) throws IOException
+    TempCompressedFile(File source, BackupCodec codec) throws IOException
     {
         this.source = source;
+        this.codec = codec;
         tempFile = File.createTempFile("exhibitor", ".tmp");
     }
 
@@ -47,7 +48,7 @@ class TempCompressedFile
         try
         {
             in = new FileInputStream(source);
-            out = new GZIPOutputStream(new FileOutputStream(tempFile));
+            out = codec.compress(new FileOutputStream(tempFile));
 
             for(;;)
             {
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.azure;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.azure.AzureClient;
+import com.netflix.exhibitor.core.azure.AzureClientFactory;
+import com.netflix.exhibitor.core.azure.AzureCredential;
+import com.netflix.exhibitor.core.backup.BackupCodec;
+import com.netflix.exhibitor.core.backup.BackupConfigSpec;
+import com.netflix.exhibitor.core.backup.BackupMetaData;
+import com.netflix.exhibitor.core.backup.BackupStream;
+import com.netflix.exhibitor.core.backup.BackupWriter;
+import com.netflix.exhibitor.core.backup.BandwidthLimiter;
+import com.netflix.exhibitor.core.backup.FileBackupWriter;
+import com.netflix.exhibitor.core.backup.PartUploadOutputStream;
+import com.netflix.exhibitor.core.backup.RangedDownloadInputStream;
+import com.netflix.exhibitor.core.backup.StreamingBackupProvider;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.netflix.exhibitor.core.config.DefaultProperties.asInt;
+
+/**
+ * Backs up to Azure block blobs. Large backups are staged as blocks that are uploaded in parallel and
+ * then committed as a block list. Restores/downloads fetch byte ranges of the blob in parallel.
+ * Bandwidth is limited by {@link com.netflix.exhibitor.core.backup.BackupBandwidth}.
+ */
+public class AzureBackupProvider implements StreamingBackupProvider
+{
+    private final AzureClient azureClient;
+    private final BandwidthLimiter throttle = new BandwidthLimiter(0);  // the backup manager applies the configured limits
+
+    private static final BackupConfigSpec CONFIG_CONTAINER = new BackupConfigSpec("container-name", "Azure Container Name", "The Azure storage container to use", "", BackupConfigSpec.Type.STRING);
+    private static final BackupConfigSpec CONFIG_KEY_PREFIX = new BackupConfigSpec("key-prefix", "Azure Blob Prefix", "The prefix for Azure backup blob names", "exhibitor-backup", BackupConfigSpec.Type.STRING);
+    private static final BackupConfigSpec CONFIG_MAX_RETRIES = new BackupConfigSpec("max-retries", "Max Retries", "Maximum retries when uploading/downloading Azure data", "3", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_RETRY_SLEEP_MS = new BackupConfigSpec("retry-sleep-ms", "Retry Sleep (ms)", "Sleep time in milliseconds when retrying", "1000", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_BLOCK_SIZE_MB = new BackupConfigSpec("block-size-mb", "Upload Block Size (MB)", "Size of each block of a block blob upload. Azure's maximum is 4 MB.", "4", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_UPLOAD_CONCURRENCY = new BackupConfigSpec("upload-concurrency", "Upload Concurrency", "Maximum number of blocks of an upload to send in parallel", "4", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_DOWNLOAD_RANGE_MB = new BackupConfigSpec("download-range-mb", "Download Range Size (MB)", "Size of each byte range requested when downloading/restoring a backup", "4", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_DOWNLOAD_CONCURRENCY = new BackupConfigSpec("download-concurrency", "Download Concurrency", "Maximum number of byte ranges of a backup to download in parallel", "4", BackupConfigSpec.Type.INTEGER);
+
+    private static final List<BackupConfigSpec>     CONFIGS = Arrays.asList(CONFIG_CONTAINER, CONFIG_KEY_PREFIX, CONFIG_MAX_RETRIES, CONFIG_RETRY_SLEEP_MS, CONFIG_BLOCK_SIZE_MB, CONFIG_UPLOAD_CONCURRENCY, CONFIG_DOWNLOAD_RANGE_MB, CONFIG_DOWNLOAD_CONCURRENCY);
+
+    private static final int        MAX_BLOCK_SIZE_MB = 4;
+    private static final int        MAX_RANGE_SIZE_MB = 64;
+
+    static final String       SEPARATOR = "/";
+    private static final String       SEPARATOR_REPLACEMENT = "_";
+
+    /**
+     * @param factory the factory
+     * @param credential credentials
+     * @throws Exception errors
+     */
+    public AzureBackupProvider(AzureClientFactory factory, AzureCredential credential) throws Exception
+    {
+        azureClient = factory.makeNewClient(credential);
+    }
+
+    public AzureClient getAzureClient()
+    {
+        return azureClient;
+    }
+
+    @Override
+    public List<BackupConfigSpec> getConfigs()
+    {
+        return CONFIGS;
+    }
+
+    @Override
+    public boolean isValidConfig(Exhibitor exhibitor, Map<String, String> configValues)
+    {
+        String container = (configValues != null) ? configValues.get(CONFIG_CONTAINER.getKey()) : null;
+        return (container != null) && (container.trim().length() > 0);
+    }
+
+    @Override
+    public UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData backup, File source, Map<String, String> configValues) throws Exception
+    {
+        return uploadBackup(exhibitor, backup, new FileBackupWriter(source, BackupCodec.NONE), getAvailableBackups(exhibitor, configValues), configValues);
+    }
+
+    @Override
+    public UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData backup, BackupWriter writer, List<BackupMetaData> availableBackups, Map<String, String> configValues) throws Exception
+    {
+        if ( availableBackups.contains(backup) )
+        {
+            return UploadResult.DUPLICATE;
+        }
+
+        final String        container = configValues.get(CONFIG_CONTAINER.getKey());
+        final String        key = toKey(backup, configValues);
+        int                 blockSize = Math.min(getIntConfig(configValues, CONFIG_BLOCK_SIZE_MB), MAX_BLOCK_SIZE_MB) * 1024 * 1024;
+        int                 concurrency = getIntConfig(configValues, CONFIG_UPLOAD_CONCURRENCY);
+        azureClient.createContainerIfNotExists(container);
+
+        PartUploadOutputStream<String>  out = new PartUploadOutputStream<String>(key, blockSize, concurrency, makeRetryPolicy(configValues), throttle)
+        {
+            @Override
+            protected void putObject(byte[] bytes, int length) throws Exception
+            {
+                azureClient.putBlob(Arrays.copyOf(bytes, length), container, key);
+            }
+
+            @Override
+            protected void startParts() throws Exception
+            {
+                // blocks are staged against the blob name - nothing to initiate
+            }
+
+            @Override
+            protected String uploadPart(int partNumber, byte[] bytes, int length) throws Exception
+            {
+                String      blockId = toBlockId(partNumber);
+                azureClient.putBlock(container, key, blockId, bytes, length);
+                return blockId;
+            }
+
+            @Override
+            protected void completeParts(List<String> partIds) throws Exception
+            {
+                azureClient.commitBlocks(container, key, partIds);
+            }
+
+            @Override
+            protected void abortParts() throws Exception
+            {
+                // uncommitted blocks are garbage collected by Azure
+            }
+        };
+        try
+        {
+            writer.write(out);
+            out.close();
+        }
+        catch ( Exception e )
+        {
+            out.abort();
+            throw e;
+        }
+
+        UploadResult        result = UploadResult.SUCCEEDED;
+        for ( BackupMetaData existing : availableBackups )
+        {
+            if ( existing.getName().equals(backup.getName()) )
+            {
+                deleteBackup(exhibitor, existing, configValues);
+                result = UploadResult.REPLACED_OLD_VERSION;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public BackupStream getBackupStream(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues) throws Exception
+    {
+        final InputStream   in = makeRangedStream(backup, configValues);
+        if ( in == null )
+        {
+            return null;
+        }
+        return new BackupStream()
+        {
+            @Override
+            public InputStream getStream()
+            {
+                return in;
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                in.close();
+            }
+        };
+    }
+
+    @Override
+    public void downloadBackup(Exhibitor exhibitor, BackupMetaData backup, OutputStream destination, Map<String, String> configValues) throws Exception
+    {
+        InputStream     in = makeRangedStream(backup, configValues);
+        if ( in == null )
+        {
+            throw new IOException("Backup not found: " + toKey(backup, configValues));
+        }
+
+        try
+        {
+            ByteStreams.copy(in, destination);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    @Override
+    public List<BackupMetaData> getAvailableBackups(Exhibitor exhibitor, Map<String, String> configValues) throws Exception
+    {
+        List<BackupMetaData>    backups = Lists.newArrayList();
+        for ( String name : azureClient.listBlobNames(configValues.get(CONFIG_CONTAINER.getKey()), getKeyPrefix(configValues) + SEPARATOR) )
+        {
+            BackupMetaData      backup = fromKey(name);
+            if ( backup != null )
+            {
+                backups.add(backup);
+            }
+        }
+        return backups;
+    }
+
+    @Override
+    public void deleteBackup(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues) throws Exception
+    {
+        azureClient.deleteBlob(configValues.get(CONFIG_CONTAINER.getKey()), toKey(backup, configValues));
+    }
+
+    private InputStream makeRangedStream(BackupMetaData backup, Map<String, String> configValues) throws Exception
+    {
+        final String    container = configValues.get(CONFIG_CONTAINER.getKey());
+        final String    key = toKey(backup, configValues);
+        long            length = azureClient.getBlobLength(container, key);
+        if ( length < 0 )
+        {
+            return null;
+        }
+
+        int             rangeSize = Math.min(getIntConfig(configValues, CONFIG_DOWNLOAD_RANGE_MB), MAX_RANGE_SIZE_MB) * 1024 * 1024;
+        int             concurrency = getIntConfig(configValues, CONFIG_DOWNLOAD_CONCURRENCY);
+        return new RangedDownloadInputStream(key, length, rangeSize, concurrency, makeRetryPolicy(configValues), throttle)
+        {
+            @Override
+            protected InputStream openRange(long start, long end) throws Exception
+            {
+                return azureClient.getBlobRange(container, key, start, (end - start) + 1);
+            }
+        };
+    }
+
+    static String toBlockId(int partNumber)
+    {
+        // all block ids of a blob must have the same length
+        return BaseEncoding.base64().encode(String.format("%08d", partNumber).getBytes(Charsets.UTF_8));
+    }
+
+    private static int getIntConfig(Map<String, String> configValues, BackupConfigSpec spec)
+    {
+        int     value = asInt(configValues.get(spec.getKey()));
+        return (value > 0) ? value : asInt(spec.getDefaultValue());
+    }
+
+    private RetryPolicy makeRetryPolicy(Map<String, String> configValues)
+    {
+        return new ExponentialBackoffRetry(getIntConfig(configValues, CONFIG_RETRY_SLEEP_MS), getIntConfig(configValues, CONFIG_MAX_RETRIES));
+    }
+
+    private String toKey(BackupMetaData backup, Map<String, String> configValues)
+    {
+        String  name = backup.getName().replace(SEPARATOR, SEPARATOR_REPLACEMENT);
+        String  prefix = getKeyPrefix(configValues);
+
+        return prefix + SEPARATOR + name + SEPARATOR + backup.getModifiedDate();
+    }
+
+    private String getKeyPrefix(Map<String, String> configValues)
+    {
+        String  prefix = configValues.get(CONFIG_KEY_PREFIX.getKey());
+        if ( prefix != null )
+        {
+            prefix = prefix.replace(SEPARATOR, SEPARATOR_REPLACEMENT);
+        }
+
+        if ( (prefix == null) || (prefix.length() == 0))
+        {
+            prefix = CONFIG_KEY_PREFIX.getDefaultValue();
+        }
+        return prefix;
+    }
+
+    private static BackupMetaData fromKey(String key)
+    {
+        String[]        parts = key.split("\\" + SEPARATOR);
+        if ( parts.length != 3 )
+        {
+            return null;
+        }
+        try
+        {
+            return new BackupMetaData(parts[1], Long.parseLong(parts[2]));
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+}
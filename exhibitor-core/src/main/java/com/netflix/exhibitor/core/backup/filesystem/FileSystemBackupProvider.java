@@ -19,14 +19,20 @@ package com.netflix.exhibitor.core.backup.filesystem;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
-import com.netflix.exhibitor.core.backup.BackupProvider;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.backup.BackupCodec;
 import com.netflix.exhibitor.core.backup.BackupConfigSpec;
 import com.netflix.exhibitor.core.backup.BackupStream;
+import com.netflix.exhibitor.core.backup.BackupWriter;
+import com.netflix.exhibitor.core.backup.FileBackupWriter;
+import com.netflix.exhibitor.core.backup.StreamingBackupProvider;
+import org.apache.curator.utils.CloseableUtils;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -34,12 +40,14 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
-public class FileSystemBackupProvider implements BackupProvider
+public class FileSystemBackupProvider implements StreamingBackupProvider
 {
     private static final BackupConfigSpec CONFIG_DIRECTORY = new BackupConfigSpec("directory", "Destination Path", "The path of the directory where backups are written to", "", BackupConfigSpec.Type.STRING);
 
     private static final List<BackupConfigSpec> BACKUP_CONFIGS = Arrays.asList(CONFIG_DIRECTORY);
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     @Override
     public List<BackupConfigSpec> getConfigs()
     {
@@ -55,6 +63,12 @@ public class FileSystemBackupProvider implements BackupProvider
 
     @Override
     public UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData backup, File source, Map<String, String> configValues) throws Exception
+    {
+        return uploadBackup(exhibitor, backup, new FileBackupWriter(source, BackupCodec.NONE), getAvailableBackups(exhibitor, configValues), configValues);
+    }
+
+    @Override
+    public UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData backup, BackupWriter writer, List<BackupMetaData> availableBackups, Map<String, String> configValues) throws Exception
     {
         String      path = configValues.get(CONFIG_DIRECTORY.getKey());
         if ( path == null )
@@ -76,9 +90,29 @@ public class FileSystemBackupProvider implements BackupProvider
             return UploadResult.FAILED;
         }
 
-        List<BackupMetaData>    availableBackups = getAvailableBackups(exhibitor, configValues);
+        // write to a temp file at the top level (which getAvailableBackups() ignores) so that partial backups are never visible
+        File            tempFile = File.createTempFile("exhibitor-backup", ".tmp", directory);
+        OutputStream    out = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
+        try
+        {
+            writer.write(out);
+            out.close();
+            out = null;
 
-        Files.copy(source, destinationFile);
+            if ( !tempFile.renameTo(destinationFile) )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not move backup into place: " + destinationFile);
+                return UploadResult.FAILED;
+            }
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(out);
+            if ( tempFile.exists() && !tempFile.delete() )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete temp file: " + tempFile);
+            }
+        }
 
         UploadResult        result = UploadResult.SUCCEEDED;
         for ( BackupMetaData existing : availableBackups )
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.gcs;
+
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.storage.model.StorageObject;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.backup.BackupCodec;
+import com.netflix.exhibitor.core.backup.BackupConfigSpec;
+import com.netflix.exhibitor.core.backup.BackupMetaData;
+import com.netflix.exhibitor.core.backup.BackupStream;
+import com.netflix.exhibitor.core.backup.BackupWriter;
+import com.netflix.exhibitor.core.backup.BandwidthLimiter;
+import com.netflix.exhibitor.core.backup.FileBackupWriter;
+import com.netflix.exhibitor.core.backup.PartUploadOutputStream;
+import com.netflix.exhibitor.core.backup.RangedDownloadInputStream;
+import com.netflix.exhibitor.core.backup.StreamingBackupProvider;
+import com.netflix.exhibitor.core.gcs.GcsClient;
+import com.netflix.exhibitor.core.gcs.GcsClientFactory;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.netflix.exhibitor.core.config.DefaultProperties.asInt;
+
+/**
+ * <p>
+ *     Backs up to Google Cloud Storage. Large backups are uploaded as a parallel composite upload: parts are
+ *     uploaded concurrently as temporary component objects which are then composed into the backup object and
+ *     deleted. Restores/downloads fetch byte ranges of the object in parallel. Bandwidth is limited by
+ *     {@link com.netflix.exhibitor.core.backup.BackupBandwidth}.
+ * </p>
+ *
+ * <p>
+ *     Component objects are stored under a sibling prefix (<code>&lt;key-prefix&gt;-parts</code>) so that they
+ *     never appear in the backup listing, even if an upload is abandoned.
+ * </p>
+ */
+public class GcsBackupProvider implements StreamingBackupProvider
+{
+    private final GcsClient gcsClient;
+    private final BandwidthLimiter throttle = new BandwidthLimiter(0);  // the backup manager applies the configured limits
+
+    private static final BackupConfigSpec CONFIG_BUCKET = new BackupConfigSpec("bucket-name", "GCS Bucket Name", "The GCS bucket to use", "", BackupConfigSpec.Type.STRING);
+    private static final BackupConfigSpec CONFIG_KEY_PREFIX = new BackupConfigSpec("key-prefix", "GCS Object Prefix", "The prefix for GCS backup object names", "exhibitor-backup", BackupConfigSpec.Type.STRING);
+    private static final BackupConfigSpec CONFIG_MAX_RETRIES = new BackupConfigSpec("max-retries", "Max Retries", "Maximum retries when uploading/downloading GCS data", "3", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_RETRY_SLEEP_MS = new BackupConfigSpec("retry-sleep-ms", "Retry Sleep (ms)", "Sleep time in milliseconds when retrying", "1000", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_PART_SIZE_MB = new BackupConfigSpec("part-size-mb", "Upload Part Size (MB)", "Size of each component object of a parallel composite upload", "8", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_UPLOAD_CONCURRENCY = new BackupConfigSpec("upload-concurrency", "Upload Concurrency", "Maximum number of parts of an upload to send in parallel", "4", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_DOWNLOAD_RANGE_MB = new BackupConfigSpec("download-range-mb", "Download Range Size (MB)", "Size of each byte range requested when downloading/restoring a backup", "8", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_DOWNLOAD_CONCURRENCY = new BackupConfigSpec("download-concurrency", "Download Concurrency", "Maximum number of byte ranges of a backup to download in parallel", "4", BackupConfigSpec.Type.INTEGER);
+
+    private static final List<BackupConfigSpec>     CONFIGS = Arrays.asList(CONFIG_BUCKET, CONFIG_KEY_PREFIX, CONFIG_MAX_RETRIES, CONFIG_RETRY_SLEEP_MS, CONFIG_PART_SIZE_MB, CONFIG_UPLOAD_CONCURRENCY, CONFIG_DOWNLOAD_RANGE_MB, CONFIG_DOWNLOAD_CONCURRENCY);
+
+    private static final int        MAX_PART_SIZE_MB = 1024;
+    private static final int        MAX_COMPOSE_SOURCES = 32;
+
+    static final String       SEPARATOR = "/";
+    private static final String       SEPARATOR_REPLACEMENT = "_";
+    private static final String       PARTS_SUFFIX = "-parts";
+
+    /**
+     * @param factory the factory
+     * @throws Exception errors
+     */
+    public GcsBackupProvider(GcsClientFactory factory) throws Exception
+    {
+        gcsClient = factory.makeNewClient();
+    }
+
+    public GcsClient getGcsClient()
+    {
+        return gcsClient;
+    }
+
+    @Override
+    public List<BackupConfigSpec> getConfigs()
+    {
+        return CONFIGS;
+    }
+
+    @Override
+    public boolean isValidConfig(Exhibitor exhibitor, Map<String, String> configValues)
+    {
+        String bucket = (configValues != null) ? configValues.get(CONFIG_BUCKET.getKey()) : null;
+        return (bucket != null) && (bucket.trim().length() > 0);
+    }
+
+    @Override
+    public UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData backup, File source, Map<String, String> configValues) throws Exception
+    {
+        return uploadBackup(exhibitor, backup, new FileBackupWriter(source, BackupCodec.NONE), getAvailableBackups(exhibitor, configValues), configValues);
+    }
+
+    @Override
+    public UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData backup, BackupWriter writer, List<BackupMetaData> availableBackups, Map<String, String> configValues) throws Exception
+    {
+        if ( availableBackups.contains(backup) )
+        {
+            return UploadResult.DUPLICATE;
+        }
+
+        final String        bucket = configValues.get(CONFIG_BUCKET.getKey());
+        final String        key = toKey(backup, configValues);
+        final String        partsPrefix = getKeyPrefix(configValues) + PARTS_SUFFIX + SEPARATOR + UUID.randomUUID() + SEPARATOR;
+        final List<String>  uploadedParts = Collections.synchronizedList(Lists.<String>newArrayList());
+        int                 partSize = Math.min(getIntConfig(configValues, CONFIG_PART_SIZE_MB), MAX_PART_SIZE_MB) * 1024 * 1024;
+        int                 concurrency = getIntConfig(configValues, CONFIG_UPLOAD_CONCURRENCY);
+
+        PartUploadOutputStream<String>  out = new PartUploadOutputStream<String>(key, partSize, concurrency, makeRetryPolicy(configValues), throttle)
+        {
+            @Override
+            protected void putObject(byte[] bytes, int length) throws Exception
+            {
+                gcsClient.putObject(Arrays.copyOf(bytes, length), bucket, key);
+            }
+
+            @Override
+            protected void startParts() throws Exception
+            {
+                // component objects need no initiation
+            }
+
+            @Override
+            protected String uploadPart(int partNumber, byte[] bytes, int length) throws Exception
+            {
+                String      partName = partsPrefix + String.format("%08d", partNumber);
+                gcsClient.putObject(Arrays.copyOf(bytes, length), bucket, partName);
+                uploadedParts.add(partName);
+                return partName;
+            }
+
+            @Override
+            protected void completeParts(List<String> partIds) throws Exception
+            {
+                try
+                {
+                    compose(bucket, partIds, key, partsPrefix, uploadedParts);
+                }
+                finally
+                {
+                    deleteParts(bucket, uploadedParts);
+                }
+            }
+
+            @Override
+            protected void abortParts() throws Exception
+            {
+                deleteParts(bucket, uploadedParts);
+            }
+        };
+        try
+        {
+            writer.write(out);
+            out.close();
+        }
+        catch ( Exception e )
+        {
+            out.abort();
+            throw e;
+        }
+
+        UploadResult        result = UploadResult.SUCCEEDED;
+        for ( BackupMetaData existing : availableBackups )
+        {
+            if ( existing.getName().equals(backup.getName()) )
+            {
+                deleteBackup(exhibitor, existing, configValues);
+                result = UploadResult.REPLACED_OLD_VERSION;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public BackupStream getBackupStream(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues) throws Exception
+    {
+        final InputStream   in = makeRangedStream(backup, configValues);
+        if ( in == null )
+        {
+            return null;
+        }
+        return new BackupStream()
+        {
+            @Override
+            public InputStream getStream()
+            {
+                return in;
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                in.close();
+            }
+        };
+    }
+
+    @Override
+    public void downloadBackup(Exhibitor exhibitor, BackupMetaData backup, OutputStream destination, Map<String, String> configValues) throws Exception
+    {
+        InputStream     in = makeRangedStream(backup, configValues);
+        if ( in == null )
+        {
+            throw new IOException("Backup not found: " + toKey(backup, configValues));
+        }
+
+        try
+        {
+            ByteStreams.copy(in, destination);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    @Override
+    public List<BackupMetaData> getAvailableBackups(Exhibitor exhibitor, Map<String, String> configValues) throws Exception
+    {
+        List<BackupMetaData>    backups = Lists.newArrayList();
+        for ( StorageObject object : gcsClient.listObjects(configValues.get(CONFIG_BUCKET.getKey()), getKeyPrefix(configValues) + SEPARATOR) )
+        {
+            BackupMetaData      backup = fromKey(object.getName());
+            if ( backup != null )
+            {
+                backups.add(backup);
+            }
+        }
+        return backups;
+    }
+
+    @Override
+    public void deleteBackup(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues) throws Exception
+    {
+        gcsClient.deleteObject(configValues.get(CONFIG_BUCKET.getKey()), toKey(backup, configValues));
+    }
+
+    private void compose(String bucket, List<String> sources, String destination, String partsPrefix, List<String> intermediates) throws Exception
+    {
+        int     level = 0;
+        while ( sources.size() > MAX_COMPOSE_SOURCES )
+        {
+            // compose is limited in the number of sources - combine groups into intermediate objects first
+            List<String>    combined = Lists.newArrayList();
+            int             index = 0;
+            for ( List<String> group : Lists.partition(sources, MAX_COMPOSE_SOURCES) )
+            {
+                String      name = partsPrefix + "compose-" + level + "-" + String.format("%08d", index++);
+                gcsClient.composeObject(bucket, group, name);
+                intermediates.add(name);
+                combined.add(name);
+            }
+            sources = combined;
+            ++level;
+        }
+        gcsClient.composeObject(bucket, sources, destination);
+    }
+
+    private void deleteParts(String bucket, List<String> parts)
+    {
+        synchronized(parts)
+        {
+            for ( String part : parts )
+            {
+                try
+                {
+                    gcsClient.deleteObject(bucket, part);
+                }
+                catch ( Exception ignore )
+                {
+                    // parts are outside of the backup prefix - an orphan doesn't affect the backups
+                }
+            }
+            parts.clear();
+        }
+    }
+
+    private InputStream makeRangedStream(BackupMetaData backup, Map<String, String> configValues) throws Exception
+    {
+        final String    bucket = configValues.get(CONFIG_BUCKET.getKey());
+        final String    key = toKey(backup, configValues);
+        StorageObject   metadata = getObjectMetadata(bucket, key);
+        if ( (metadata == null) || (metadata.getSize() == null) )
+        {
+            return null;
+        }
+
+        int             rangeSize = Math.min(getIntConfig(configValues, CONFIG_DOWNLOAD_RANGE_MB), MAX_PART_SIZE_MB) * 1024 * 1024;
+        int             concurrency = getIntConfig(configValues, CONFIG_DOWNLOAD_CONCURRENCY);
+        return new RangedDownloadInputStream(key, metadata.getSize().longValue(), rangeSize, concurrency, makeRetryPolicy(configValues), throttle)
+        {
+            @Override
+            protected InputStream openRange(long start, long end) throws Exception
+            {
+                return gcsClient.getObjectRange(bucket, key, start, end);
+            }
+        };
+    }
+
+    private StorageObject getObjectMetadata(String bucket, String key) throws Exception
+    {
+        try
+        {
+            return gcsClient.getObjectMetadata(bucket, key);
+        }
+        catch ( HttpResponseException e )
+        {
+            if ( e.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND )
+            {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static int getIntConfig(Map<String, String> configValues, BackupConfigSpec spec)
+    {
+        int     value = asInt(configValues.get(spec.getKey()));
+        return (value > 0) ? value : asInt(spec.getDefaultValue());
+    }
+
+    private RetryPolicy makeRetryPolicy(Map<String, String> configValues)
+    {
+        return new ExponentialBackoffRetry(getIntConfig(configValues, CONFIG_RETRY_SLEEP_MS), getIntConfig(configValues, CONFIG_MAX_RETRIES));
+    }
+
+    private String toKey(BackupMetaData backup, Map<String, String> configValues)
+    {
+        String  name = backup.getName().replace(SEPARATOR, SEPARATOR_REPLACEMENT);
+        String  prefix = getKeyPrefix(configValues);
+
+        return prefix + SEPARATOR + name + SEPARATOR + backup.getModifiedDate();
+    }
+
+    private String getKeyPrefix(Map<String, String> configValues)
+    {
+        String  prefix = configValues.get(CONFIG_KEY_PREFIX.getKey());
+        if ( prefix != null )
+        {
+            prefix = prefix.replace(SEPARATOR, SEPARATOR_REPLACEMENT);
+        }
+
+        if ( (prefix == null) || (prefix.length() == 0))
+        {
+            prefix = CONFIG_KEY_PREFIX.getDefaultValue();
+        }
+        return prefix;
+    }
+
+    private static BackupMetaData fromKey(String key)
+    {
+        String[]        parts = key.split("\\" + SEPARATOR);
+        if ( parts.length != 3 )
+        {
+            return null;
+        }
+        try
+        {
+            return new BackupMetaData(parts[1], Long.parseLong(parts[2]));
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+}
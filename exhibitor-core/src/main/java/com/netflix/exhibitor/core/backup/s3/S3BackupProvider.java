@@ -23,26 +23,28 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.io.Files;
+import com.google.common.io.ByteStreams;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.backup.BackupCodec;
 import com.netflix.exhibitor.core.backup.BackupConfigSpec;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
-import com.netflix.exhibitor.core.backup.BackupProvider;
 import com.netflix.exhibitor.core.backup.BackupStream;
+import com.netflix.exhibitor.core.backup.BackupWriter;
+import com.netflix.exhibitor.core.backup.BandwidthLimiter;
+import com.netflix.exhibitor.core.backup.BulkDeleteBackupProvider;
+import com.netflix.exhibitor.core.backup.FileBackupWriter;
+import com.netflix.exhibitor.core.backup.StreamingBackupProvider;
 import com.netflix.exhibitor.core.s3.S3Client;
 import com.netflix.exhibitor.core.s3.S3ClientConfig;
 import com.netflix.exhibitor.core.s3.S3ClientFactory;
 import com.netflix.exhibitor.core.s3.S3Credential;
 import com.netflix.exhibitor.core.s3.S3CredentialsProvider;
-import com.netflix.exhibitor.core.s3.S3Utils;
 import org.apache.curator.RetryLoop;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.curator.utils.CloseableUtils;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -52,19 +54,27 @@ import java.util.Map;
 
 import static com.netflix.exhibitor.core.config.DefaultProperties.asInt;
 
-public class S3BackupProvider implements BackupProvider
+public class S3BackupProvider implements StreamingBackupProvider, BulkDeleteBackupProvider
 {
     private final S3Client s3Client;
+    private final BandwidthLimiter throttle = new BandwidthLimiter(0);  // shared by all of this provider's transfers
 
     private static final BackupConfigSpec CONFIG_THROTTLE = new BackupConfigSpec("throttle", "Throttle (bytes/ms)", "Data throttling. Maximum bytes per millisecond.", Integer.toString(1024 * 1024), BackupConfigSpec.Type.INTEGER);
     private static final BackupConfigSpec CONFIG_BUCKET = new BackupConfigSpec("bucket-name", "S3 Bucket Name", "The S3 bucket to use", "", BackupConfigSpec.Type.STRING);
     private static final BackupConfigSpec CONFIG_KEY_PREFIX = new BackupConfigSpec("key-prefix", "S3 Key Prefix", "The prefix for S3 backup keys", "exhibitor-backup", BackupConfigSpec.Type.STRING);
     private static final BackupConfigSpec CONFIG_MAX_RETRIES = new BackupConfigSpec("max-retries", "Max Retries", "Maximum retries when uploading/downloading S3 data", "3", BackupConfigSpec.Type.INTEGER);
     private static final BackupConfigSpec CONFIG_RETRY_SLEEP_MS = new BackupConfigSpec("retry-sleep-ms", "Retry Sleep (ms)", "Sleep time in milliseconds when retrying", "1000", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_PART_SIZE_MB = new BackupConfigSpec("part-size-mb", "Upload Part Size (MB)", "Size of each part of a multipart upload. S3's minimum is 5 MB.", "5", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_UPLOAD_CONCURRENCY = new BackupConfigSpec("upload-concurrency", "Upload Concurrency", "Maximum number of parts of a multipart upload to send in parallel", "4", BackupConfigSpec.Type.INTEGER);
 
-    private static final List<BackupConfigSpec>     CONFIGS = Arrays.asList(CONFIG_THROTTLE, CONFIG_BUCKET, CONFIG_KEY_PREFIX, CONFIG_MAX_RETRIES, CONFIG_RETRY_SLEEP_MS);
+    private static final BackupConfigSpec CONFIG_DOWNLOAD_RANGE_MB = new BackupConfigSpec("download-range-mb", "Download Range Size (MB)", "Size of each byte range requested when downloading/restoring a backup", "8", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_DOWNLOAD_CONCURRENCY = new BackupConfigSpec("download-concurrency", "Download Concurrency", "Maximum number of byte ranges of a backup to download in parallel", "4", BackupConfigSpec.Type.INTEGER);
+
+    private static final List<BackupConfigSpec>     CONFIGS = Arrays.asList(CONFIG_THROTTLE, CONFIG_BUCKET, CONFIG_KEY_PREFIX, CONFIG_MAX_RETRIES, CONFIG_RETRY_SLEEP_MS, CONFIG_PART_SIZE_MB, CONFIG_UPLOAD_CONCURRENCY, CONFIG_DOWNLOAD_RANGE_MB, CONFIG_DOWNLOAD_CONCURRENCY);
     
     private static final int        MIN_S3_PART_SIZE = 5 * (1024 * 1024);
+    private static final int        MAX_S3_PART_SIZE_MB = 1024;
+    private static final int        MAX_S3_DELETE_KEYS = 1000;
 
     @VisibleForTesting
     static final String       SEPARATOR = "/";
@@ -137,25 +147,32 @@ public class S3BackupProvider implements BackupProvider
     @Override
     public UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData backup, File source, final Map<String, String> configValues) throws Exception
     {
-        List<BackupMetaData>    availableBackups = getAvailableBackups(exhibitor, configValues);
+        return uploadBackup(exhibitor, backup, new FileBackupWriter(source, BackupCodec.NONE), getAvailableBackups(exhibitor, configValues), configValues);
+    }
+
+    @Override
+    public UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData backup, BackupWriter writer, List<BackupMetaData> availableBackups, Map<String, String> configValues) throws Exception
+    {
         if ( availableBackups.contains(backup) )
         {
             return UploadResult.DUPLICATE;
         }
 
-        RetryPolicy retryPolicy = makeRetryPolicy(configValues);
-        Throttle    throttle = makeThrottle(configValues);
-
-        String                          key = toKey(backup, configValues);
-
-        if ( source.length() < MIN_S3_PART_SIZE )
+        RetryPolicy                 retryPolicy = makeRetryPolicy(configValues);
+        updateThrottle(configValues);
+        String                      key = toKey(backup, configValues);
+        int                         partSize = Math.max(MIN_S3_PART_SIZE, Math.min(getIntConfig(configValues, CONFIG_PART_SIZE_MB), MAX_S3_PART_SIZE_MB) * 1024 * 1024);
+        int                         concurrency = getIntConfig(configValues, CONFIG_UPLOAD_CONCURRENCY);
+        S3MultipartOutputStream     out = new S3MultipartOutputStream(s3Client, configValues.get(CONFIG_BUCKET.getKey()), key, partSize, concurrency, retryPolicy, throttle);
+        try
         {
-            byte[]          bytes = Files.toByteArray(source);
-            S3Utils.simpleUploadFile(s3Client, bytes, configValues.get(CONFIG_BUCKET.getKey()), key);
+            writer.write(out);
+            out.close();
         }
-        else
+        catch ( Exception e )
         {
-            multiPartUpload(source, configValues, retryPolicy, throttle, key);
+            out.abort();
+            throw e;
         }
 
         UploadResult        result = UploadResult.SUCCEEDED;
@@ -170,57 +187,24 @@ public class S3BackupProvider implements BackupProvider
         return result;
     }
 
-    private void multiPartUpload(File source, Map<String, String> configValues, RetryPolicy retryPolicy, Throttle throttle, String key) throws Exception
-    {
-        InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(configValues.get(CONFIG_BUCKET.getKey()), key);
-        InitiateMultipartUploadResult initResponse = s3Client.initiateMultipartUpload(initRequest);
-
-        byte[]      buffer = new byte[MIN_S3_PART_SIZE];
-        InputStream in = null;
-        try
-        {
-            List<PartETag>      eTags = Lists.newArrayList();
-            int                 index = 1;
-
-            in = new FileInputStream(source);
-            for(;;)
-            {
-                int     bytesRead = in.read(buffer);
-                if ( bytesRead < 0 )
-                {
-                    break;
-                }
-                throttle.throttle(bytesRead);
-
-                PartETag eTag = uploadChunkWithRetry(buffer, bytesRead, initResponse, index++, retryPolicy);
-                eTags.add(eTag);
-            }
-
-            completeUpload(initResponse, eTags);
-        }
-        catch ( Exception e )
-        {
-            abortUpload(initResponse);
-            throw e;
-        }
-        finally
-        {
-            CloseableUtils.closeQuietly(in);
-        }
-    }
-
     @Override
     public BackupStream getBackupStream(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues) throws Exception
     {
         long            startMs = System.currentTimeMillis();
         RetryPolicy     retryPolicy = makeRetryPolicy(configValues);
-        S3Object        object = null;
+        String          bucket = configValues.get(CONFIG_BUCKET.getKey());
+        String          key = toKey(backup, configValues);
+        ObjectMetadata  metadata = null;
         int             retryCount = 0;
-        while ( object == null )
+        while ( metadata == null )
         {
             try
             {
-                object = s3Client.getObject(configValues.get(CONFIG_BUCKET.getKey()), toKey(backup, configValues));
+                metadata = s3Client.getObjectMetadata(bucket, key);
+                if ( metadata == null )
+                {
+                    return null;
+                }
             }
             catch ( AmazonS3Exception e)
             {
@@ -238,52 +222,13 @@ public class S3BackupProvider implements BackupProvider
             }
         }
 
-        final Throttle      throttle = makeThrottle(configValues);
-        final InputStream   in = object.getObjectContent();
-        final InputStream   wrappedstream = new InputStream()
-        {
-            @Override
-            public void close() throws IOException
-            {
-                in.close();
-            }
-
-            @Override
-            public int read() throws IOException
-            {
-                throttle.throttle(1);
-                return in.read();
-            }
-
-            @Override
-            public int read(byte[] b) throws IOException
-            {
-                int bytesRead = in.read(b);
-                if ( bytesRead > 0 )
-                {
-                    throttle.throttle(bytesRead);
-                }
-                return bytesRead;
-            }
-
-            @Override
-            public int read(byte[] b, int off, int len) throws IOException
-            {
-                int bytesRead = in.read(b, off, len);
-                if ( bytesRead > 0 )
-                {
-                    throttle.throttle(bytesRead);
-                }
-                return bytesRead;
-            }
-        };
-
+        final InputStream   in = makeRangedStream(bucket, key, metadata.getContentLength(), configValues);
         return new BackupStream()
         {
             @Override
             public InputStream getStream()
             {
-                return wrappedstream;
+                return in;
             }
 
             @Override
@@ -297,50 +242,33 @@ public class S3BackupProvider implements BackupProvider
     @Override
     public void downloadBackup(Exhibitor exhibitor, BackupMetaData backup, OutputStream destination, Map<String, String> configValues) throws Exception
     {
-        byte[]          buffer = new byte[MIN_S3_PART_SIZE];
-
-        long            startMs = System.currentTimeMillis();
-        RetryPolicy     retryPolicy = makeRetryPolicy(configValues);
-        int             retryCount = 0;
-        boolean         done = false;
-
-        while ( !done )
+        String          bucket = configValues.get(CONFIG_BUCKET.getKey());
+        String          key = toKey(backup, configValues);
+        ObjectMetadata  metadata = s3Client.getObjectMetadata(bucket, key);
+        if ( metadata == null )
         {
-            Throttle            throttle = makeThrottle(configValues);
-            InputStream         in = null;
-            try
-            {
-                S3Object            object = s3Client.getObject(configValues.get(CONFIG_BUCKET.getKey()), toKey(backup, configValues));
-                in = object.getObjectContent();
-
-                for(;;)
-                {
-                    int     bytesRead = in.read(buffer);
-                    if ( bytesRead < 0 )
-                    {
-                        break;
-                    }
-
-                    throttle.throttle(bytesRead);
-                    destination.write(buffer, 0, bytesRead);
-                }
+            throw new IOException("Backup not found: " + key);
+        }
 
-                done = true;
-            }
-            catch ( Exception e )
-            {
-                if ( !retryPolicy.allowRetry(retryCount++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
-                {
-                    done = true;
-                }
-            }
-            finally
-            {
-                CloseableUtils.closeQuietly(in);
-            }
+        InputStream     in = makeRangedStream(bucket, key, metadata.getContentLength(), configValues);
+        try
+        {
+            ByteStreams.copy(in, destination);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
         }
     }
 
+    private InputStream makeRangedStream(String bucket, String key, long length, Map<String, String> configValues)
+    {
+        int         rangeSize = Math.min(getIntConfig(configValues, CONFIG_DOWNLOAD_RANGE_MB), MAX_S3_PART_SIZE_MB) * 1024 * 1024;
+        int         concurrency = getIntConfig(configValues, CONFIG_DOWNLOAD_CONCURRENCY);
+        updateThrottle(configValues);
+        return new S3RangedInputStream(s3Client, bucket, key, length, rangeSize, concurrency, makeRetryPolicy(configValues), throttle);
+    }
+
     @Override
     public List<BackupMetaData> getAvailableBackups(Exhibitor exhibitor, Map<String, String> configValues) throws Exception
     {
@@ -394,76 +322,38 @@ public class S3BackupProvider implements BackupProvider
         s3Client.deleteObject(configValues.get(CONFIG_BUCKET.getKey()), toKey(backup, configValues));
     }
 
-    private Throttle makeThrottle(final Map<String, String> configValues)
+    @Override
+    public void deleteBackups(Exhibitor exhibitor, List<BackupMetaData> backups, Map<String, String> configValues) throws Exception
     {
-        return new Throttle(this.getClass().getCanonicalName(), new Throttle.ThroughputFunction()
+        String      bucket = configValues.get(CONFIG_BUCKET.getKey());
+        for ( List<BackupMetaData> batch : Lists.partition(backups, MAX_S3_DELETE_KEYS) )
         {
-            public int targetThroughput()
+            List<DeleteObjectsRequest.KeyVersion>   keys = Lists.newArrayList();
+            for ( BackupMetaData backup : batch )
             {
-                return Math.max(asInt(configValues.get(CONFIG_THROTTLE.getKey())), Integer.MAX_VALUE);
+                keys.add(new DeleteObjectsRequest.KeyVersion(toKey(backup, configValues)));
             }
-        });
-    }
 
-    private ExponentialBackoffRetry makeRetryPolicy(Map<String, String> configValues)
-    {
-        return new ExponentialBackoffRetry(asInt(configValues.get(CONFIG_RETRY_SLEEP_MS.getKey())), asInt(configValues.get(CONFIG_MAX_RETRIES.getKey())));
-    }
-
-
-    private PartETag uploadChunkWithRetry(byte[] buffer, int bytesRead, InitiateMultipartUploadResult initResponse, int index, RetryPolicy retryPolicy) throws Exception
-    {
-        long            startMs = System.currentTimeMillis();
-        int             retries = 0;
-        for(;;)
-        {
-            try
-            {
-                return uploadChunk(buffer, bytesRead, initResponse, index);
-            }
-            catch ( Exception e )
-            {
-                if ( !retryPolicy.allowRetry(retries++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
-                {
-                    throw e;
-                }
-            }
+            DeleteObjectsRequest    request = new DeleteObjectsRequest(bucket).withKeys(keys).withQuiet(true);
+            s3Client.deleteObjects(request);    // partial failures are thrown as MultiObjectDeleteException
         }
     }
 
-    private PartETag uploadChunk(byte[] buffer, int bytesRead, InitiateMultipartUploadResult initResponse, int index) throws Exception
+    private void updateThrottle(Map<String, String> configValues)
     {
-        byte[]          md5 = S3Utils.md5(buffer, bytesRead);
-
-        UploadPartRequest   request = new UploadPartRequest();
-        request.setBucketName(initResponse.getBucketName());
-        request.setKey(initResponse.getKey());
-        request.setUploadId(initResponse.getUploadId());
-        request.setPartNumber(index);
-        request.setPartSize(bytesRead);
-        request.setMd5Digest(S3Utils.toBase64(md5));
-        request.setInputStream(new ByteArrayInputStream(buffer, 0, bytesRead));
-
-        UploadPartResult    response = s3Client.uploadPart(request);
-        PartETag            partETag = response.getPartETag();
-        if ( !response.getPartETag().getETag().equals(S3Utils.toHex(md5)) )
-        {
-            throw new Exception("Unable to match MD5 for part " + index);
-        }
-
-        return partETag;
+        // config is in bytes per millisecond
+        throttle.setRate(getIntConfig(configValues, CONFIG_THROTTLE) * 1000L);
     }
 
-    private void completeUpload(InitiateMultipartUploadResult initResponse, List<PartETag> eTags) throws Exception
+    private static int getIntConfig(Map<String, String> configValues, BackupConfigSpec spec)
     {
-        CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(initResponse.getBucketName(), initResponse.getKey(), initResponse.getUploadId(), eTags);
-        s3Client.completeMultipartUpload(completeRequest);
+        int     value = asInt(configValues.get(spec.getKey()));
+        return (value > 0) ? value : asInt(spec.getDefaultValue());
     }
 
-    private void abortUpload(InitiateMultipartUploadResult initResponse) throws Exception
+    private ExponentialBackoffRetry makeRetryPolicy(Map<String, String> configValues)
     {
-        AbortMultipartUploadRequest abortRequest = new AbortMultipartUploadRequest(initResponse.getBucketName(), initResponse.getKey(), initResponse.getUploadId());
-        s3Client.abortMultipartUpload(abortRequest);
+        return new ExponentialBackoffRetry(asInt(configValues.get(CONFIG_RETRY_SLEEP_MS.getKey())), asInt(configValues.get(CONFIG_MAX_RETRIES.getKey())));
     }
 
     private String toKey(BackupMetaData backup, Map<String, String> configValues)
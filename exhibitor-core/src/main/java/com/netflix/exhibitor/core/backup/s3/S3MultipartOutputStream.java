@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.s3;
+
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.netflix.exhibitor.core.backup.BandwidthLimiter;
+import com.netflix.exhibitor.core.backup.PartUploadOutputStream;
+import com.netflix.exhibitor.core.s3.S3Client;
+import com.netflix.exhibitor.core.s3.S3Utils;
+import org.apache.curator.RetryPolicy;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An output stream that uploads to S3 as data is written, using a multipart upload for objects
+ * larger than a part. See {@link PartUploadOutputStream}.
+ */
+class S3MultipartOutputStream extends PartUploadOutputStream<PartETag>
+{
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String key;
+
+    private volatile InitiateMultipartUploadResult initResponse = null;
+
+    /**
+     * @param s3Client the client
+     * @param bucket destination bucket
+     * @param key destination key
+     * @param partSize size of each multipart part (must be at least the S3 minimum)
+     * @param concurrency max parts to upload concurrently
+     * @param retryPolicy retry policy for each part
+     * @param throttle bandwidth limiter shared by the provider's transfers
+     */
+    S3MultipartOutputStream(S3Client s3Client, String bucket, String key, int partSize, int concurrency, RetryPolicy retryPolicy, BandwidthLimiter throttle)
+    {
+        super(key, partSize, concurrency, retryPolicy, throttle);
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+    }
+
+    @Override
+    protected void putObject(byte[] bytes, int length) throws Exception
+    {
+        S3Utils.simpleUploadFile(s3Client, Arrays.copyOf(bytes, length), bucket, key);
+    }
+
+    @Override
+    protected void startParts() throws Exception
+    {
+        initResponse = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key));
+    }
+
+    @Override
+    protected PartETag uploadPart(int partNumber, byte[] bytes, int length) throws Exception
+    {
+        byte[]          md5 = S3Utils.md5(bytes, length);
+
+        UploadPartRequest   request = new UploadPartRequest();
+        request.setBucketName(initResponse.getBucketName());
+        request.setKey(initResponse.getKey());
+        request.setUploadId(initResponse.getUploadId());
+        request.setPartNumber(partNumber);
+        request.setPartSize(length);
+        request.setMd5Digest(S3Utils.toBase64(md5));
+        request.setInputStream(new ByteArrayInputStream(bytes, 0, length));
+
+        UploadPartResult    response = s3Client.uploadPart(request);
+        PartETag            partETag = response.getPartETag();
+        if ( !response.getPartETag().getETag().equals(S3Utils.toHex(md5)) )
+        {
+            throw new Exception("Unable to match MD5 for part " + partNumber);
+        }
+
+        return partETag;
+    }
+
+    @Override
+    protected void completeParts(List<PartETag> partIds) throws Exception
+    {
+        CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(initResponse.getBucketName(), initResponse.getKey(), initResponse.getUploadId(), partIds);
+        s3Client.completeMultipartUpload(completeRequest);
+    }
+
+    @Override
+    protected void abortParts() throws Exception
+    {
+        AbortMultipartUploadRequest abortRequest = new AbortMultipartUploadRequest(initResponse.getBucketName(), initResponse.getKey(), initResponse.getUploadId());
+        initResponse = null;
+        s3Client.abortMultipartUpload(abortRequest);
+    }
+}
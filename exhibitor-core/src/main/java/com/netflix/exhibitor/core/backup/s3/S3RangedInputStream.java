@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.s3;
+
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.netflix.exhibitor.core.backup.BandwidthLimiter;
+import com.netflix.exhibitor.core.backup.RangedDownloadInputStream;
+import com.netflix.exhibitor.core.s3.S3Client;
+import org.apache.curator.RetryPolicy;
+import java.io.InputStream;
+
+/**
+ * Reads an S3 object by fetching byte ranges in parallel via ranged GETs
+ */
+class S3RangedInputStream extends RangedDownloadInputStream
+{
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String key;
+
+    /**
+     * @param s3Client the client
+     * @param bucket bucket
+     * @param key object key
+     * @param length total length of the object
+     * @param rangeSize size of each range request
+     * @param concurrency max ranges to fetch concurrently
+     * @param retryPolicy retry policy for each range
+     * @param throttle bandwidth limiter shared by the provider's transfers
+     */
+    S3RangedInputStream(S3Client s3Client, String bucket, String key, long length, int rangeSize, int concurrency, RetryPolicy retryPolicy, BandwidthLimiter throttle)
+    {
+        super(key, length, rangeSize, concurrency, retryPolicy, throttle);
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+    }
+
+    @Override
+    protected InputStream openRange(long start, long end) throws Exception
+    {
+        GetObjectRequest    request = new GetObjectRequest(bucket, key);
+        request.setRange(start, end);
+        S3Object            object = s3Client.getObject(request);
+        return (object != null) ? object.getObjectContent() : null;
+    }
+}
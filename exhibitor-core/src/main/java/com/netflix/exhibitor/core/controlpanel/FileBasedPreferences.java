@@ -87,7 +87,7 @@ public class FileBasedPreferences extends AbstractPreferences
     @Override
     protected String[] keysSpi() throws BackingStoreException
     {
-        return new String[0];
+        return properties.stringPropertyNames().toArray(new String[0]);
     }
 
     @Override
@@ -5,6 +5,7 @@ import com.google.api.services.storage.model.StorageObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.InputStream;
 import java.util.List;
 
 public interface GcsClient extends Closeable {
@@ -19,4 +20,24 @@ public interface GcsClient extends Closeable {
     public void putObject(byte[] bytes, String bucketName, String objectName) throws Exception;
 
     public void deleteObject(String bucketName, String objectName) throws Exception;
+
+    /**
+     * @param bucketName bucket
+     * @param objectName object
+     * @param start first byte (inclusive)
+     * @param end last byte (inclusive)
+     * @return stream of the bytes of the range
+     * @throws Exception errors
+     */
+    public InputStream getObjectRange(String bucketName, String objectName, long start, long end) throws Exception;
+
+    /**
+     * Concatenate existing objects into a new object. GCS allows at most 32 sources per call.
+     *
+     * @param bucketName bucket
+     * @param sourceObjectNames source objects in order
+     * @param destinationObjectName the new object
+     * @throws Exception errors
+     */
+    public void composeObject(String bucketName, List<String> sourceObjectNames, String destinationObjectName) throws Exception;
 }
\ No newline at end of file
@@ -11,6 +11,8 @@ import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.storage.Storage;
 import com.google.api.services.storage.StorageScopes;
+import com.google.api.services.storage.model.ComposeRequest;
+import com.google.api.services.storage.model.Objects;
 import com.google.api.services.storage.model.StorageObject;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -25,6 +27,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
@@ -83,13 +86,16 @@ public class GcsClientImpl implements GcsClient {
 
     @Override
     public List<StorageObject> listObjects(String bucketName, String prefix) throws Exception {
-        List<StorageObject> storageObjects = getClient().objects().list(bucketName).execute().getItems();
+        Storage.Objects.List request = getClient().objects().list(bucketName).setPrefix(prefix);
         List<StorageObject> matchingObjects = new ArrayList<StorageObject>();
-        for (StorageObject storageObject : storageObjects){
-            if (storageObject.getName().startsWith(prefix)) {
-                matchingObjects.add(storageObject);
+        Objects objects;
+        do {
+            objects = request.execute();
+            if (objects.getItems() != null) {
+                matchingObjects.addAll(objects.getItems());
             }
-        }
+            request.setPageToken(objects.getNextPageToken());
+        } while (objects.getNextPageToken() != null);
         return matchingObjects;
     }
 
@@ -105,6 +111,25 @@ public class GcsClientImpl implements GcsClient {
         getClient().objects().delete(bucketName, objectName).execute();
     }
 
+    @Override
+    public InputStream getObjectRange(String bucketName, String objectName, long start, long end) throws Exception {
+        Storage.Objects.Get request = getClient().objects().get(bucketName, objectName);
+        request.getRequestHeaders().setRange("bytes=" + start + "-" + end);
+        return request.executeMediaAsInputStream();
+    }
+
+    @Override
+    public void composeObject(String bucketName, List<String> sourceObjectNames, String destinationObjectName) throws Exception {
+        List<ComposeRequest.SourceObjects> sources = new ArrayList<ComposeRequest.SourceObjects>(sourceObjectNames.size());
+        for (String sourceObjectName : sourceObjectNames) {
+            sources.add(new ComposeRequest.SourceObjects().setName(sourceObjectName));
+        }
+        ComposeRequest request = new ComposeRequest()
+                .setSourceObjects(sources)
+                .setDestination(new StorageObject().setName(destinationObjectName));
+        getClient().objects().compose(bucketName, destinationObjectName, request).execute();
+    }
+
     @Override
     public void close() throws IOException {
 
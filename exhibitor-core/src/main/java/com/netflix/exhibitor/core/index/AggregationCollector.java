@@ -0,0 +1,217 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AtomicLongMap;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.FieldSelectorResult;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.Bits;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes a {@link LogAggregation} in a single pass. Counts are accumulated per segment against the
+ * path column's term ordinals and folded into the totals once per segment so that the path strings
+ * are only touched once per unique path.
+ */
+class AggregationCollector extends Collector
+{
+    private final int topN;
+    private final long intervalMs;
+    private final int prefixDepth;
+    private final AtomicLongMap<String> pathCounts = AtomicLongMap.create();
+    private final AtomicLongMap<Long> intervalCounts = AtomicLongMap.create();
+    private final AtomicLongMap<String> ephemeralCounts = AtomicLongMap.create();
+    private final AtomicLongMap<String> subtreeBytes = AtomicLongMap.create();
+
+    private int documentCount = 0;
+
+    // current segment
+    private IndexReader reader;
+    private FieldCache.StringIndex paths;
+    private int[] typeIdsByOrd;
+    private int[] typeOrds;
+    private long[] dates;
+    private int[] sizes;
+    private Bits hasSize;
+    private int[] segmentPathCounts;
+    private int[] segmentEphemeralCounts;
+    private long[] segmentBytes;
+
+    // indexes written before the size field was added - read the size (but not the value) of the stored data
+    private static final FieldSelector DATA_SIZE_SELECTOR = new FieldSelector()
+    {
+        @Override
+        public FieldSelectorResult accept(String fieldName)
+        {
+            return FieldNames.DATA.equals(fieldName) ? FieldSelectorResult.SIZE_AND_BREAK : FieldSelectorResult.NO_LOAD;
+        }
+    };
+
+    AggregationCollector(int topN, long intervalMs, int prefixDepth)
+    {
+        this.topN = topN;
+        this.intervalMs = intervalMs;
+        this.prefixDepth = prefixDepth;
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException
+    {
+        // scores aren't used
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException
+    {
+        flushSegment();
+
+        this.reader = reader;
+        paths = FieldCache.DEFAULT.getStringIndex(reader, FieldNames.PATH);
+        dates = FieldCache.DEFAULT.getLongs(reader, FieldNames.DATE, FieldCache.NUMERIC_UTILS_LONG_PARSER);
+        sizes = FieldCache.DEFAULT.getInts(reader, FieldNames.SIZE, FieldCache.NUMERIC_UTILS_INT_PARSER);
+        hasSize = FieldCache.DEFAULT.getDocsWithField(reader, FieldNames.SIZE);
+
+        FieldCache.StringIndex  types = FieldCache.DEFAULT.getStringIndex(reader, FieldNames.TYPE);
+        typeOrds = types.order;
+        typeIdsByOrd = new int[types.lookup.length];
+        for ( int i = 0; i < types.lookup.length; ++i )
+        {
+            EntryTypes      type = (types.lookup[i] != null) ? EntryTypes.getFromId(types.lookup[i]) : null;
+            typeIdsByOrd[i] = (type != null) ? type.getId() : -1;
+        }
+
+        segmentPathCounts = new int[paths.lookup.length];
+        segmentEphemeralCounts = new int[paths.lookup.length];
+        segmentBytes = new long[paths.lookup.length];
+    }
+
+    @Override
+    public void collect(int doc) throws IOException
+    {
+        ++documentCount;
+
+        int     pathOrd = paths.order[doc];
+        ++segmentPathCounts[pathOrd];
+        if ( typeIdsByOrd[typeOrds[doc]] == EntryTypes.CREATE_EPHEMERAL.getId() )
+        {
+            ++segmentEphemeralCounts[pathOrd];
+        }
+        segmentBytes[pathOrd] += hasSize.get(doc) ? sizes[doc] : getStoredDataSize(doc);
+
+        long    date = dates[doc];
+        intervalCounts.incrementAndGet(date - (date % intervalMs));
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder()
+    {
+        return true;
+    }
+
+    LogAggregation getAggregation()
+    {
+        flushSegment();
+
+        List<Map.Entry<String, Long>>   sortedPaths = Lists.newArrayList(pathCounts.asMap().entrySet());
+        Collections.sort
+        (
+            sortedPaths,
+            new Comparator<Map.Entry<String, Long>>()
+            {
+                @Override
+                public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2)
+                {
+                    int     diff = o2.getValue().compareTo(o1.getValue());
+                    return (diff != 0) ? diff : o1.getKey().compareTo(o2.getKey());
+                }
+            }
+        );
+        Map<String, Long>               topPaths = Maps.newLinkedHashMap();
+        for ( Map.Entry<String, Long> entry : sortedPaths.subList(0, Math.min(topN, sortedPaths.size())) )
+        {
+            topPaths.put(entry.getKey(), entry.getValue());
+        }
+
+        return new LogAggregation(documentCount, topPaths, intervalCounts.asMap(), ephemeralCounts.asMap(), subtreeBytes.asMap());
+    }
+
+    static String getPrefix(String path, int depth)
+    {
+        int     index = 0;
+        for ( int i = 0; i < depth; ++i )
+        {
+            index = path.indexOf('/', index + 1);
+            if ( index < 0 )
+            {
+                return path;
+            }
+        }
+        return (index > 0) ? path.substring(0, index) : "/";
+    }
+
+    private void flushSegment()
+    {
+        if ( segmentPathCounts == null )
+        {
+            return;
+        }
+
+        for ( int ord = 0; ord < segmentPathCounts.length; ++ord )
+        {
+            if ( segmentPathCounts[ord] > 0 )
+            {
+                String      path = (paths.lookup[ord] != null) ? paths.lookup[ord] : "";
+                String      prefix = getPrefix(path, prefixDepth);
+                pathCounts.addAndGet(path, segmentPathCounts[ord]);
+                if ( segmentEphemeralCounts[ord] > 0 )
+                {
+                    ephemeralCounts.addAndGet(prefix, segmentEphemeralCounts[ord]);
+                }
+                if ( segmentBytes[ord] > 0 )
+                {
+                    subtreeBytes.addAndGet(prefix, segmentBytes[ord]);
+                }
+            }
+        }
+
+        segmentPathCounts = null;
+        segmentEphemeralCounts = null;
+        segmentBytes = null;
+    }
+
+    private int getStoredDataSize(int doc) throws IOException
+    {
+        Document    document = reader.document(doc, DATA_SIZE_SELECTOR);
+        byte[]      sizeBytes = document.getBinaryValue(FieldNames.DATA);
+        if ( (sizeBytes == null) || (sizeBytes.length < 4) )
+        {
+            return 0;
+        }
+        return ((sizeBytes[0] & 0xff) << 24) | ((sizeBytes[1] & 0xff) << 16) | ((sizeBytes[2] & 0xff) << 8) | (sizeBytes[3] & 0xff);
+    }
+}
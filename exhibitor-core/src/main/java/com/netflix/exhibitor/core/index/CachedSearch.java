@@ -16,26 +16,24 @@
 
 package com.netflix.exhibitor.core.index;
 
-import org.apache.lucene.search.TopDocs;
-
 public class CachedSearch
 {
-    private final TopDocs docs;
+    private final int[] docIds;
     private final int totalDocs;
 
-    CachedSearch(TopDocs docs, int totalDocs)
+    CachedSearch(int[] docIds, int totalDocs)
     {
-        this.docs = docs;
+        this.docIds = docIds;
         this.totalDocs = totalDocs;
     }
 
     public int  getTotalHits()
     {
-        return (docs != null) ? docs.totalHits : totalDocs;
+        return (docIds != null) ? docIds.length : totalDocs;
     }
     
     public int  getNthDocId(int n)
     {
-        return (docs != null) ? docs.scoreDocs[n].doc : n;
+        return (docIds != null) ? docIds[n] : n;
     }
 }
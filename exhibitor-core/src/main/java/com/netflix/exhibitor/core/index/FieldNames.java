@@ -23,6 +23,8 @@ class FieldNames
     static final String      DATE = "date";
     static final String      DATA = "data";
     static final String      VERSION = "version";
+    static final String      SIZE = "size";
+    static final String      ZXID = "zxid";
 
     private FieldNames()
     {
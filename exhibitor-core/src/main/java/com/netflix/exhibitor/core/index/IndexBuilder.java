@@ -35,6 +35,7 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
 import java.util.Date;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -42,16 +43,47 @@ import java.util.concurrent.atomic.AtomicLong;
 public class IndexBuilder implements Closeable
 {
     private final File              directory;
+    private final IndexMetaData     existing;
     private final AtomicInteger     count = new AtomicInteger(0);
     private final AtomicLong        from = new AtomicLong(Long.MAX_VALUE);
     private final AtomicLong        to = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong        fromZxid = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong        toZxid = new AtomicLong(Long.MIN_VALUE);
+    private final int               initialCount;
 
     private NIOFSDirectory niofsDirectory;
     private IndexWriter writer;
 
+    /**
+     * Builds a brand new index in the given directory
+     *
+     * @param directory index directory
+     */
     public IndexBuilder(File directory)
+    {
+        this(directory, null);
+    }
+
+    /**
+     * Appends to the index in the given directory. Only transactions newer than
+     * {@link IndexMetaData#getToZxid()} of the existing index are added.
+     *
+     * @param directory index directory
+     * @param existing meta data of the existing index or null to build a new index
+     */
+    public IndexBuilder(File directory, IndexMetaData existing)
     {
         this.directory = directory;
+        this.existing = existing;
+        if ( existing != null )
+        {
+            count.set(existing.getEntryCount());
+            from.set(existing.getFrom().getTime());
+            to.set(existing.getTo().getTime());
+            fromZxid.set(existing.getFromZxid());
+            toZxid.set(existing.getToZxid());
+        }
+        initialCount = count.get();
     }
 
     public void open() throws Exception
@@ -61,7 +93,8 @@ public class IndexBuilder implements Closeable
             throw new IOException("Could not make: " + directory);
         }
 
-        IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_35, new KeywordAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        IndexWriterConfig.OpenMode  openMode = (existing != null) ? IndexWriterConfig.OpenMode.APPEND : IndexWriterConfig.OpenMode.CREATE;
+        IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_35, new KeywordAnalyzer()).setOpenMode(openMode);
 
         niofsDirectory = new NIOFSDirectory(directory, new SingleInstanceLockFactory());
         writer = new IndexWriter(niofsDirectory, conf);
@@ -79,98 +112,196 @@ public class IndexBuilder implements Closeable
                     @Override
                     public void receiveEntry(TxnHeader header, Record record) throws Exception
                     {
-                        indexRecord(header, record, count, from, to);
+                        if ( accepts(header) )
+                        {
+                            addDocument(header.getZxid(), header.getTime(), makeDocument(header, record));
+                        }
                     }
                 }
             );
         }
     }
 
-    public void writeMetaData() throws Exception
+    /**
+     * Returns true if the given transaction should be added to the index (i.e. when appending, it
+     * isn't already covered by the existing index). Safe to call from any thread.
+     *
+     * @param header transaction header
+     * @return true/false
+     */
+    public boolean accepts(TxnHeader header)
     {
-        IndexMetaData       metaData = new IndexMetaData(new Date(from.get()), new Date(to.get()), count.get());
-        IndexMetaData.write(metaData, IndexMetaData.getMetaDataFile(directory));
+        return (existing == null) || (header.getZxid() > existing.getToZxid());
     }
 
-    @Override
-    public void close() throws IOException
+    /**
+     * Add a document previously created via {@link #makeDocument(TxnHeader, Record)}. Not thread safe - the
+     * index statistics are maintained by the calling thread.
+     *
+     * @param zxid the transaction's zxid
+     * @param time the transaction's time
+     * @param document the document or null if the transaction isn't indexed (only its zxid is recorded)
+     * @throws IOException errors
+     */
+    public void addDocument(long zxid, long time, Document document) throws IOException
     {
-        CloseableUtils.closeQuietly(writer);
-        CloseableUtils.closeQuietly(niofsDirectory);
-    }
-
-    public int  getCurrentCount()
-    {
-        return count.get();
+        updateZxidRange(zxid);
+        if ( document != null )
+        {
+            count.incrementAndGet();
+            if ( time < from.get() )
+            {
+                from.set(time);
+            }
+            if ( time > to.get() )
+            {
+                to.set(time);
+            }
+            writer.addDocument(document);
+        }
     }
 
-    private void indexRecord(TxnHeader header, Record record, AtomicInteger count, AtomicLong from, AtomicLong to) throws IOException
+    /**
+     * Convert a transaction into a document. Safe to call from any thread.
+     *
+     * @param header transaction header
+     * @param record transaction record
+     * @return the document or null if the transaction type isn't indexed
+     */
+    public static Document makeDocument(TxnHeader header, Record record)
     {
         if ( record instanceof CreateTxn )
         {
             CreateTxn   createTxn = (CreateTxn)record;
 
             EntryTypes type = createTxn.getEphemeral() ? EntryTypes.CREATE_EPHEMERAL: EntryTypes.CREATE_PERSISTENT;
-            Document document = makeDocument(header, type, count, from, to);
+            Document document = makeDocument(header, type);
             addPath(document, createTxn.getPath());
             addData(document, createTxn.getData());
-            writer.addDocument(document);
+            return document;
         }
-        else if ( record instanceof DeleteTxn )
+
+        if ( record instanceof DeleteTxn )
         {
             DeleteTxn   deleteTxn = (DeleteTxn)record;
 
-            Document document = makeDocument(header, EntryTypes.DELETE, count, from, to);
+            Document document = makeDocument(header, EntryTypes.DELETE);
             addPath(document, deleteTxn.getPath());
-            writer.addDocument(document);
+            addSize(document, 0);
+            return document;
         }
-        else if ( record instanceof SetDataTxn )
+
+        if ( record instanceof SetDataTxn )
         {
             SetDataTxn   setDataTxn = (SetDataTxn)record;
 
-            NumericField versionField = new NumericField(FieldNames.VERSION, Field.Store.YES, true);
+            NumericField versionField = new NumericField(FieldNames.VERSION, Field.Store.NO, true);
             versionField.setIntValue(setDataTxn.getVersion());
 
-            Document document = makeDocument(header, EntryTypes.SET_DATA, count, from, to);
+            Document document = makeDocument(header, EntryTypes.SET_DATA);
             addPath(document, setDataTxn.getPath());
             addData(document, setDataTxn.getData());
             document.add(versionField);
-            writer.addDocument(document);
+            return document;
         }
+
+        return null;
     }
 
-    private void addData(Document document, byte[] data)
+    /**
+     * Write the meta data for the index
+     *
+     * @param indexedSources keys of the sources that are now covered by the index
+     * @throws Exception errors
+     */
+    public void writeMetaData(Collection<String> indexedSources) throws Exception
     {
-        if ( data == null )
+        IndexMetaData       metaData = new IndexMetaData(new Date(from.get()), new Date(to.get()), count.get(), fromZxid.get(), toZxid.get(), indexedSources);
+        IndexMetaData.write(metaData, IndexMetaData.getMetaDataFile(directory));
+    }
+
+    /**
+     * Discard everything added since the index was opened
+     *
+     * @throws IOException errors
+     */
+    public void rollback() throws IOException
+    {
+        if ( writer != null )
         {
-            data = new byte[0];
+            writer.rollback();
         }
-        document.add(new Field(FieldNames.DATA, data));
     }
 
-    private void addPath(Document document, String path)
+    @Override
+    public void close() throws IOException
     {
-        document.add(new Field(FieldNames.PATH, path, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        CloseableUtils.closeQuietly(writer);
+        CloseableUtils.closeQuietly(niofsDirectory);
     }
 
-    private Document makeDocument(TxnHeader header, EntryTypes type, AtomicInteger count, AtomicLong from, AtomicLong to)
+    public int  getCurrentCount()
     {
-        count.incrementAndGet();
-        if ( header.getTime() < from.get() )
+        return count.get();
+    }
+
+    /**
+     * @return the number of entries added since the index was opened
+     */
+    public int  getAddedCount()
+    {
+        return count.get() - initialCount;
+    }
+
+    private void updateZxidRange(long zxid)
+    {
+        if ( zxid < fromZxid.get() )
+        {
+            fromZxid.set(zxid);
+        }
+        if ( zxid > toZxid.get() )
         {
-            from.set(header.getTime());
+            toZxid.set(zxid);
         }
-        if ( header.getTime() > to.get() )
+    }
+
+    // only the data is stored - the other fields are read as columns from their indexed terms (see IndexColumns)
+    private static void addData(Document document, byte[] data)
+    {
+        if ( data == null )
         {
-            to.set(header.getTime());
+            data = new byte[0];
         }
+        document.add(new Field(FieldNames.DATA, data));
+        addSize(document, data.length);
+    }
 
-        NumericField dateField = new NumericField(FieldNames.DATE, Field.Store.YES, true);
+    // indexed separately so that aggregations don't need to read the data
+    private static void addSize(Document document, int size)
+    {
+        NumericField sizeField = new NumericField(FieldNames.SIZE, Field.Store.NO, true);
+        sizeField.setIntValue(size);
+        document.add(sizeField);
+    }
+
+    private static void addPath(Document document, String path)
+    {
+        document.add(new Field(FieldNames.PATH, path, Field.Store.NO, Field.Index.NOT_ANALYZED));
+    }
+
+    private static Document makeDocument(TxnHeader header, EntryTypes type)
+    {
+        NumericField dateField = new NumericField(FieldNames.DATE, Field.Store.NO, true);
         dateField.setLongValue(header.getTime());
 
+        // stable tie-breaker for paging (see LogSearch.searchPage)
+        NumericField zxidField = new NumericField(FieldNames.ZXID, Field.Store.NO, true);
+        zxidField.setLongValue(header.getZxid());
+
         Document    document = new Document();
-        document.add(new Field(FieldNames.TYPE, Integer.toString(type.getId()), Field.Store.YES, Field.Index.NOT_ANALYZED));
+        document.add(new Field(FieldNames.TYPE, Integer.toString(type.getId()), Field.Store.NO, Field.Index.NOT_ANALYZED));
         document.add(dateField);
+        document.add(zxidField);
         return document;
     }
 }
@@ -20,60 +20,152 @@ import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.exhibitor.core.IndexCacheConfiguration;
 import com.netflix.exhibitor.core.activity.ActivityLog;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
-@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+/**
+ * Keeps recently used indexes open. Each open index is reference counted - callers must pair
+ * {@link #getLogSearch(File)} with {@link #releaseLogSearch(LogSearch)}. Idle indexes are closed by a
+ * background sweeper and, when more than the configured max are open, the least recently used
+ * idle index is closed. An index that is marked for refresh or deletion is not handed out again -
+ * a refreshed index gets a new searcher while current users finish with the old one.
+ */
 public class IndexCache implements Closeable
 {
-    private final LoadingCache<File, IndexMetaData> metaDataCache = CacheBuilder
-        .newBuilder()
-        .expireAfterAccess(MAX_CACHE_MS, TimeUnit.MILLISECONDS)
-        .build
-        (
-            new CacheLoader<File, IndexMetaData>()
-            {
-                @Override
-                public IndexMetaData load(File indexDirectory) throws Exception
-                {
-                    return IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
-                }
-            }
-        );
-
+    private final LoadingCache<File, IndexMetaData> metaDataCache;
     private final ConcurrentMap<File, LogSearchHolder>  indexCache = Maps.newConcurrentMap();
+    private final ConcurrentMap<LogSearch, LogSearchHolder> openHolders = Maps.newConcurrentMap();
+    private final Striped<Lock>                         openLocks = Striped.lock(16);
     private final AtomicBoolean                         isOpen = new AtomicBoolean(true);
     private final ActivityLog                           log;
+    private final SearchResultCache                     searchResultCache;
+    private final IndexCacheConfiguration               configuration;
+    private final ScheduledExecutorService              sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("IndexCacheSweeper").build());
 
     private static class LogSearchHolder
     {
-        // all protected by synchronization
-        private LogSearch               logSearch;
-        private int                     useCount = 0;
-        private long                    lastUse = System.currentTimeMillis();
-        private boolean                 markedForDeletion = false;
+        private final File                  indexDirectory;
+        private final LogSearch             logSearch;
+        private final AtomicInteger         useCount = new AtomicInteger(0);    // CLOSED once closed
+        private volatile long               lastUse = System.currentTimeMillis();
+        private volatile boolean            markedForDeletion = false;
+        private volatile boolean            markedForRefresh = false;
+
+        private LogSearchHolder(File indexDirectory, LogSearch logSearch)
+        {
+            this.indexDirectory = indexDirectory;
+            this.logSearch = logSearch;
+        }
+
+        private boolean acquire()
+        {
+            for(;;)
+            {
+                int     count = useCount.get();
+                if ( (count == CLOSED) || markedForDeletion || markedForRefresh )
+                {
+                    return false;
+                }
+                if ( useCount.compareAndSet(count, count + 1) )
+                {
+                    lastUse = System.currentTimeMillis();
+                    return true;
+                }
+            }
+        }
     }
 
-    private static final int        MAX_CACHE_MS = (int)TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES);
+    private static final int        CLOSED = -1;
 
     public IndexCache(ActivityLog log)
+    {
+        this(log, new IndexCacheConfiguration());
+    }
+
+    /**
+     * @param log the log
+     * @param configuration cache limits
+     */
+    public IndexCache(ActivityLog log, IndexCacheConfiguration configuration)
     {
         this.log = log;
+        this.configuration = configuration;
+        searchResultCache = new SearchResultCache(configuration.getSearchResultCacheMaxBytes(), configuration.getSearchResultCacheMaxIdleMs());
+        metaDataCache = CacheBuilder
+            .newBuilder()
+            .expireAfterAccess(configuration.getMaxIdleMs(), TimeUnit.MILLISECONDS)
+            .build
+            (
+                new CacheLoader<File, IndexMetaData>()
+                {
+                    @Override
+                    public IndexMetaData load(File indexDirectory) throws Exception
+                    {
+                        return IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+                    }
+                }
+            );
+    }
+
+    /**
+     * Start the background sweeper that closes idle indexes
+     */
+    public void start()
+    {
+        sweeper.scheduleWithFixedDelay
+        (
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        sweep();
+                    }
+                    catch ( Throwable e )
+                    {
+                        log.add(ActivityLog.Type.ERROR, "Closing idle indexes", e);
+                    }
+                }
+            },
+            configuration.getSweepPeriodMs(),
+            configuration.getSweepPeriodMs(),
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * @return the search result cache shared by all open indexes
+     */
+    public SearchResultCache getSearchResultCache()
+    {
+        return searchResultCache;
     }
 
     @Override
     public void close() throws IOException
     {
         Preconditions.checkArgument(isOpen.compareAndSet(true, false), "Cache is closed");
-        clean();
+        sweeper.shutdownNow();
+        sweep();
     }
 
     public IndexMetaData    getMetaData(File indexDirectory) throws Exception
@@ -87,61 +179,93 @@ public class IndexCache implements Closeable
     {
         Preconditions.checkArgument(isOpen.get(), "Cache is closed");
 
-        LogSearchHolder     holder = getHolder(indexDirectory);
-        synchronized(holder)
+        Lock        lock = openLocks.get(indexDirectory);
+        lock.lock();
+        try
         {
+            LogSearchHolder     holder = indexCache.get(indexDirectory);
+            if ( holder == null )
+            {
+                delete(indexDirectory);
+                return;
+            }
             holder.markedForDeletion = true;
+            closeIfIdle(holder);
+        }
+        finally
+        {
+            lock.unlock();
         }
-        clean();
     }
 
-    public LogSearch        getLogSearch(File indexDirectory) throws Exception
+    /**
+     * Call when an index has been modified (e.g. by an incremental update). Cached meta data is discarded and
+     * the open searcher, if any, is closed once it is no longer in use so that the next search sees the changes.
+     *
+     * @param indexDirectory the index
+     */
+    public void     markForRefresh(File indexDirectory)
     {
         Preconditions.checkArgument(isOpen.get(), "Cache is closed");
 
-        clean();
-
-        final LogSearchHolder     holder = getHolder(indexDirectory);
+        metaDataCache.invalidate(indexDirectory);
 
-        LogSearch                 logSearch;
-        synchronized(holder)
+        Lock        lock = openLocks.get(indexDirectory);
+        lock.lock();
+        try
         {
-            if ( holder.logSearch == null )
+            LogSearchHolder     holder = indexCache.get(indexDirectory);
+            if ( holder != null )
             {
-                Preconditions.checkArgument(holder.useCount == 0, "use count is non zero but instance is null: " + holder.useCount);
-                holder.logSearch = new LogSearch(indexDirectory);
+                holder.markedForRefresh = true;
+                closeIfIdle(holder);
             }
-
-            ++holder.useCount;
-            Preconditions.checkArgument(holder.useCount > 0, "use count has rolled over: " + holder.useCount);
-
-            holder.lastUse = System.currentTimeMillis();
-
-            logSearch = holder.logSearch;
         }
-
-        return logSearch;
+        finally
+        {
+            lock.unlock();
+        }
     }
 
-    public void             releaseLogSearch(File indexDirectory)
+    /**
+     * Return a searcher for the index. Each call must be paired with a call to {@link #releaseLogSearch(LogSearch)}.
+     *
+     * @param indexDirectory the index
+     * @return the searcher or <code>null</code> if the index has been marked for deletion
+     * @throws Exception errors
+     */
+    public LogSearch        getLogSearch(File indexDirectory) throws Exception
     {
         Preconditions.checkArgument(isOpen.get(), "Cache is closed");
 
         LogSearchHolder     holder = indexCache.get(indexDirectory);
-        holder = Preconditions.checkNotNull(holder, "No entry found for index being released: " + indexDirectory);
-
-        synchronized(holder)
+        if ( (holder == null) || !holder.acquire() )
         {
-            Preconditions.checkArgument(holder.useCount > 0, "non positive use count in release: " + holder.useCount);
-            --holder.useCount;
+            // not open, being closed or marked for refresh/deletion
+            holder = openHolder(indexDirectory);
         }
+        return (holder != null) ? holder.logSearch : null;
     }
 
-    private LogSearchHolder getHolder(File indexDirectory)
+    /**
+     * Release a searcher returned by {@link #getLogSearch(File)}
+     *
+     * @param logSearch the searcher
+     */
+    public void             releaseLogSearch(LogSearch logSearch)
     {
-        LogSearchHolder newHolder = new LogSearchHolder();
-        LogSearchHolder oldHolder = indexCache.putIfAbsent(indexDirectory, newHolder);
-        return (oldHolder != null) ? oldHolder : newHolder;
+        Preconditions.checkArgument(isOpen.get(), "Cache is closed");
+
+        LogSearchHolder     holder = openHolders.get(logSearch);
+        holder = Preconditions.checkNotNull(holder, "No entry found for index being released: " + logSearch.getFile());
+
+        int     count = holder.useCount.decrementAndGet();
+        Preconditions.checkArgument(count >= 0, "non positive use count in release: " + (count + 1));
+        holder.lastUse = System.currentTimeMillis();
+        if ( (count == 0) && (holder.markedForDeletion || holder.markedForRefresh) )
+        {
+            closeIfIdle(holder);
+        }
     }
 
     public void delete(File indexDirectory)
@@ -170,33 +294,98 @@ public class IndexCache implements Closeable
         log.add(ActivityLog.Type.INFO, "Index deleted: " + indexDirectory.getName());
     }
 
-    private void        clean()
+    private LogSearchHolder openHolder(File indexDirectory) throws Exception
     {
-        Iterator<Map.Entry<File, LogSearchHolder>> iterator = indexCache.entrySet().iterator();
-        while ( iterator.hasNext() )
+        LogSearchHolder     holder;
+        Lock                lock = openLocks.get(indexDirectory);
+        lock.lock();
+        try
         {
-            final Map.Entry<File, LogSearchHolder> entry = iterator.next();
-            final LogSearchHolder     holder = entry.getValue();
-            synchronized(holder)
+            holder = indexCache.get(indexDirectory);
+            if ( (holder != null) && holder.markedForDeletion )
+            {
+                return null;
+            }
+            if ( (holder == null) || !holder.acquire() )
             {
-                if ( holder.useCount == 0 )
+                // a holder that is marked for refresh is replaced here - it's closed once its current users release it
+                holder = new LogSearchHolder(indexDirectory, new LogSearch(indexDirectory, searchResultCache));
+                holder.acquire();
+                openHolders.put(holder.logSearch, holder);
+                indexCache.put(indexDirectory, holder);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        evictLeastRecentlyUsed();
+        return holder;
+    }
+
+    private void evictLeastRecentlyUsed()
+    {
+        int     excess = indexCache.size() - configuration.getMaxOpenReaders();
+        if ( excess <= 0 )
+        {
+            return;
+        }
+
+        List<LogSearchHolder>   holders = Lists.newArrayList(indexCache.values());
+        Collections.sort
+        (
+            holders,
+            new Comparator<LogSearchHolder>()
+            {
+                @Override
+                public int compare(LogSearchHolder o1, LogSearchHolder o2)
                 {
-                    if ( !isOpen.get() || holder.markedForDeletion || ((System.currentTimeMillis() - holder.lastUse) > MAX_CACHE_MS) )
-                    {
-                        if ( holder.logSearch != null )
-                        {
-                            holder.logSearch.close();
-                            holder.logSearch = null;
-                        }
-                        iterator.remove();
-
-                        if ( holder.markedForDeletion )
-                        {
-                            delete(entry.getKey());
-                        }
-                    }
+                    long        diff = o1.lastUse - o2.lastUse;
+                    return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
                 }
             }
+        );
+        for ( LogSearchHolder holder : holders )
+        {
+            if ( excess <= 0 )
+            {
+                break;
+            }
+            if ( closeIfIdle(holder) )
+            {
+                --excess;
+            }
+        }
+    }
+
+    private void sweep()
+    {
+        long        now = System.currentTimeMillis();
+        for ( LogSearchHolder holder : indexCache.values() )
+        {
+            if ( !isOpen.get() || holder.markedForDeletion || holder.markedForRefresh || ((now - holder.lastUse) > configuration.getMaxIdleMs()) )
+            {
+                closeIfIdle(holder);
+            }
+        }
+        evictLeastRecentlyUsed();
+    }
+
+    private boolean closeIfIdle(LogSearchHolder holder)
+    {
+        if ( !holder.useCount.compareAndSet(0, CLOSED) )
+        {
+            return false;
+        }
+
+        indexCache.remove(holder.indexDirectory, holder);
+        openHolders.remove(holder.logSearch);
+        holder.logSearch.close();
+        if ( holder.markedForDeletion )
+        {
+            delete(holder.indexDirectory);
         }
+        return true;
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ReaderUtil;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Column oriented access to the listing fields (type, date, path, version) of an index. The columns
+ * are un-inverted from the indexed terms via the {@link FieldCache} one segment at a time, so rendering
+ * results never reads stored documents (and, therefore, never the potentially large data payload).
+ * Works with indexes that were written with stored listing fields as well.
+ */
+class IndexColumns
+{
+    private final IndexReader[] subReaders;
+    private final int[] docStarts;
+    private final Segment[] segments;
+
+    private static class Segment
+    {
+        private final FieldCache.StringIndex types;
+        private final FieldCache.StringIndex paths;
+        private final long[] dates;
+        private final int[] versions;
+        private final Bits hasVersion;
+
+        private Segment(IndexReader reader) throws IOException
+        {
+            types = FieldCache.DEFAULT.getStringIndex(reader, FieldNames.TYPE);
+            paths = FieldCache.DEFAULT.getStringIndex(reader, FieldNames.PATH);
+            dates = FieldCache.DEFAULT.getLongs(reader, FieldNames.DATE, FieldCache.NUMERIC_UTILS_LONG_PARSER);
+            versions = FieldCache.DEFAULT.getInts(reader, FieldNames.VERSION, FieldCache.NUMERIC_UTILS_INT_PARSER);
+            hasVersion = FieldCache.DEFAULT.getDocsWithField(reader, FieldNames.VERSION);
+        }
+
+        private SearchItem toResult(int doc)
+        {
+            String      type = types.lookup[types.order[doc]];
+            String      path = paths.lookup[paths.order[doc]];
+            return new SearchItem
+            (
+                (type != null) ? Integer.parseInt(type) : -1,
+                (path != null) ? path : "",
+                hasVersion.get(doc) ? versions[doc] : -1,
+                new Date(dates[doc])
+            );
+        }
+    }
+
+    IndexColumns(IndexReader reader)
+    {
+        List<IndexReader>   readers = Lists.newArrayList();
+        ReaderUtil.gatherSubReaders(readers, reader);
+
+        subReaders = readers.toArray(new IndexReader[readers.size()]);
+        docStarts = new int[subReaders.length];
+        int         maxDoc = 0;
+        for ( int i = 0; i < subReaders.length; ++i )
+        {
+            docStarts[i] = maxDoc;
+            maxDoc += subReaders[i].maxDoc();
+        }
+        segments = new Segment[subReaders.length];
+    }
+
+    /**
+     * @param documentId top level document id
+     * @return the listing fields for the document
+     * @throws IOException errors loading the columns
+     */
+    SearchItem toResult(int documentId) throws IOException
+    {
+        int         index = ReaderUtil.subIndex(documentId, docStarts);
+        return getSegment(index).toResult(documentId - docStarts[index]);
+    }
+
+    private synchronized Segment getSegment(int index) throws IOException
+    {
+        if ( segments[index] == null )
+        {
+            segments[index] = new Segment(subReaders[index]);
+        }
+        return segments[index];
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.netflix.exhibitor.core.index;
 
+import com.google.common.collect.ImmutableSet;
 import org.apache.curator.utils.CloseableUtils;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -25,23 +26,38 @@ import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.DateFormat;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Properties;
+import java.util.Set;
 
 public class IndexMetaData
 {
     private final Date  from;
     private final Date  to;
     private final int   entryCount;
+    private final long  fromZxid;
+    private final long  toZxid;
+    private final Set<String> indexedSources;
+
+    /**
+     * Zxid value used when the covered range isn't known (e.g. indexes written by older versions)
+     */
+    public static final long        UNKNOWN_ZXID = -1;
 
     private static final String         META_DATA_FILE_EXTENSION = ".properties";
 
-    private static final int        VERSION = 1;
-    
+    private static final int        VERSION = 2;
+    private static final int        FIRST_VERSION = 1;
+
     private static final String     PROPERTY_FROM = "from";
     private static final String     PROPERTY_TO = "to";
     private static final String     PROPERTY_COUNT = "count";
     private static final String     PROPERTY_VERSION = "version";
+    private static final String     PROPERTY_FROM_ZXID = "from-zxid";
+    private static final String     PROPERTY_TO_ZXID = "to-zxid";
+    private static final String     PROPERTY_SOURCE_COUNT = "source-count";
+    private static final String     PROPERTY_SOURCE_PREFIX = "source.";
 
     public static boolean isValid(File indexDirectory)
     {
@@ -62,7 +78,15 @@ public class IndexMetaData
         properties.setProperty(PROPERTY_TO, format.format(meta.to));
         properties.setProperty(PROPERTY_VERSION, Integer.toString(VERSION));
         properties.setProperty(PROPERTY_COUNT, Integer.toString(meta.entryCount));
-        
+        properties.setProperty(PROPERTY_FROM_ZXID, Long.toString(meta.fromZxid));
+        properties.setProperty(PROPERTY_TO_ZXID, Long.toString(meta.toZxid));
+        properties.setProperty(PROPERTY_SOURCE_COUNT, Integer.toString(meta.indexedSources.size()));
+        int         index = 0;
+        for ( String source : meta.indexedSources )
+        {
+            properties.setProperty(PROPERTY_SOURCE_PREFIX + index++, source);
+        }
+
         OutputStream    out = new BufferedOutputStream(new FileOutputStream(to));
         try
         {
@@ -90,24 +114,54 @@ public class IndexMetaData
         }
 
         String version = properties.getProperty(PROPERTY_VERSION, "0");
-        if ( !version.equals(Integer.toString(VERSION)) )
+        if ( !version.equals(Integer.toString(VERSION)) && !version.equals(Integer.toString(FIRST_VERSION)) )
         {
             throw new Exception("Unknown version: " + version);
         }
 
+        ImmutableSet.Builder<String>    sources = ImmutableSet.builder();
+        int                             sourceCount = Integer.parseInt(properties.getProperty(PROPERTY_SOURCE_COUNT, "0"));
+        for ( int i = 0; i < sourceCount; ++i )
+        {
+            String      source = properties.getProperty(PROPERTY_SOURCE_PREFIX + i);
+            if ( source != null )
+            {
+                sources.add(source);
+            }
+        }
+
         return new IndexMetaData
         (
             format.parse(properties.getProperty(PROPERTY_FROM)),
             format.parse(properties.getProperty(PROPERTY_TO)),
-            Integer.parseInt(properties.getProperty(PROPERTY_COUNT))
+            Integer.parseInt(properties.getProperty(PROPERTY_COUNT)),
+            Long.parseLong(properties.getProperty(PROPERTY_FROM_ZXID, Long.toString(UNKNOWN_ZXID))),
+            Long.parseLong(properties.getProperty(PROPERTY_TO_ZXID, Long.toString(UNKNOWN_ZXID))),
+            sources.build()
         );
     }
 
     public IndexMetaData(Date from, Date to, int entryCount)
+    {
+        this(from, to, entryCount, UNKNOWN_ZXID, UNKNOWN_ZXID, ImmutableSet.<String>of());
+    }
+
+    /**
+     * @param from date of the oldest entry
+     * @param to date of the newest entry
+     * @param entryCount number of indexed entries
+     * @param fromZxid lowest zxid covered by the index
+     * @param toZxid highest zxid covered by the index
+     * @param indexedSources keys of the backups/active logs that have been indexed
+     */
+    public IndexMetaData(Date from, Date to, int entryCount, long fromZxid, long toZxid, Collection<String> indexedSources)
     {
         this.from = from;
         this.to = to;
         this.entryCount = entryCount;
+        this.fromZxid = fromZxid;
+        this.toZxid = toZxid;
+        this.indexedSources = ImmutableSet.copyOf(indexedSources);
     }
 
     public Date getFrom()
@@ -124,4 +178,30 @@ public class IndexMetaData
     {
         return entryCount;
     }
+
+    public long getFromZxid()
+    {
+        return fromZxid;
+    }
+
+    public long getToZxid()
+    {
+        return toZxid;
+    }
+
+    public Set<String> getIndexedSources()
+    {
+        return indexedSources;
+    }
+
+    /**
+     * Return true if this index records its covered zxid range and can therefore
+     * have new transactions appended to it
+     *
+     * @return true/false
+     */
+    public boolean isUpdatable()
+    {
+        return toZxid != UNKNOWN_ZXID;
+    }
 }
@@ -17,29 +17,54 @@
 package com.netflix.exhibitor.core.index;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.ActivityLog;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
 import com.netflix.exhibitor.core.backup.BackupStream;
-import org.apache.curator.utils.CloseableUtils;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 
 public class IndexProcessor
 {
     private final Exhibitor exhibitor;
+    private final int threadQty;
+
+    /**
+     * Logs are fetched/parsed concurrently - most of the time is spent waiting on the backup
+     * store or on disk so use at least a couple of threads even on small machines
+     */
+    public static final int DEFAULT_THREAD_QTY = Math.max(2, Runtime.getRuntime().availableProcessors());
 
     public IndexProcessor(Exhibitor exhibitor)
+    {
+        this(exhibitor, DEFAULT_THREAD_QTY);
+    }
+
+    /**
+     * @param exhibitor instance
+     * @param threadQty max number of logs to fetch/parse concurrently
+     */
+    public IndexProcessor(Exhibitor exhibitor, int threadQty)
     {
         this.exhibitor = exhibitor;
+        this.threadQty = threadQty;
     }
 
+    /**
+     * Build a new index from all available backups and active logs
+     *
+     * @param directory the directory for the new index
+     * @throws Exception errors
+     */
     public void     process(File directory) throws Exception
     {
         if ( !directory.exists() && !directory.mkdirs() )
@@ -52,10 +77,10 @@ public class IndexProcessor
         try
         {
             builder.open();
-            addBackups(builder);
-            addActive(builder);
+            Set<String>     indexedSources = Sets.newHashSet();
+            addSources(builder, null, indexedSources);
 
-            builder.writeMetaData();
+            builder.writeMetaData(indexedSources);
         }
         catch ( Exception e )
         {
@@ -83,45 +108,99 @@ public class IndexProcessor
         }
     }
 
-    private void addActive(IndexBuilder builder) throws Exception
+    /**
+     * Append to an existing index only the backups/active logs that haven't already been indexed. Transactions
+     * that are already covered by the index (per its zxid range) are skipped.
+     *
+     * @param directory the existing index directory
+     * @param metaData the existing index's meta data - must be {@link IndexMetaData#isUpdatable()}
+     * @throws Exception errors
+     */
+    public void     update(File directory, IndexMetaData metaData) throws Exception
     {
-        ZooKeeperLogFiles       zooKeeperLogFiles = new ZooKeeperLogFiles(exhibitor);
-        List<File>              paths = zooKeeperLogFiles.getPaths();
-        Collections.sort
-        (
-            paths,
-            new Comparator<File>()
+        if ( !metaData.isUpdatable() )
+        {
+            throw new IOException("Index Update: index does not record its zxid range: " + directory);
+        }
+
+        Exception           exception = null;
+        IndexBuilder        builder = new IndexBuilder(directory, metaData);
+        try
+        {
+            builder.open();
+            Set<String>     indexedSources = Sets.newHashSet();
+            addSources(builder, metaData.getIndexedSources(), indexedSources);
+
+            builder.writeMetaData(indexedSources);
+        }
+        catch ( Exception e )
+        {
+            exception = e;
+            builder.rollback();
+        }
+        finally
+        {
+            builder.close();
+            if ( exception != null )
             {
-                @Override
-                public int compare(File o1, File o2)
-                {
-                    long        diff = o1.lastModified() - o2.lastModified();
-                    return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
-                }
+                //noinspection ThrowFromFinallyBlock
+                throw exception;
             }
-        );
+        }
 
-        int     index = 0;
-        for ( File f : paths )
-        {
-            exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Indexing active log %d of %d", ++index, paths.size()));
+        exhibitor.getIndexCache().markForRefresh(directory);
+        exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Index updated: %s (%d new entries)", directory, builder.getAddedCount()));
+    }
 
-            if ( f.exists() )
+    private List<IndexSource> getActiveSources(Set<String> alreadyIndexed, Set<String> indexedSources) throws Exception
+    {
+        ZooKeeperLogFiles       zooKeeperLogFiles = new ZooKeeperLogFiles(exhibitor);
+        List<File>              paths = zooKeeperLogFiles.getPaths();
+
+        List<IndexSource>       sources = Lists.newArrayList();
+        for ( int i = 0; i < paths.size(); ++i )
+        {
+            final File        f = paths.get(i);
+            final boolean     isCurrentLog = (i == (paths.size() - 1));  // the only log ZooKeeper might still write to or truncate
+            final String      sourceKey = getSourceKey(f);
+            if ( (alreadyIndexed != null) && alreadyIndexed.contains(sourceKey) )
             {
-                InputStream         in = new BufferedInputStream(new FileInputStream(f));
-                try
-                {
-                    builder.add(in);
-                }
-                finally
+                indexedSources.add(sourceKey);
+                continue;
+            }
+
+            sources.add
+            (
+                new IndexSource()
                 {
-                    CloseableUtils.closeQuietly(in);
+                    @Override
+                    public String getKey()
+                    {
+                        return sourceKey;
+                    }
+
+                    @Override
+                    public String getDescription()
+                    {
+                        return "active log " + f.getName();
+                    }
+
+                    @Override
+                    public InputStream open() throws Exception
+                    {
+                        if ( !f.exists() )
+                        {
+                            return null;
+                        }
+                        return isCurrentLog ? new BufferedInputStream(new FileInputStream(f)) : MappedLogInputStream.open(f);
+                    }
                 }
-            }
+            );
         }
+        return sources;
     }
 
-    private void addBackups(IndexBuilder builder) throws Exception
+    private List<IndexSource> getBackupSources(Set<String> alreadyIndexed, Set<String> indexedSources) throws Exception
     {
         exhibitor.getLog().add(ActivityLog.Type.ERROR, "Index Build: Getting available backups");
         List<BackupMetaData> availableBackups = Lists.newArrayList(exhibitor.getBackupManager().getAvailableBackups());
@@ -140,24 +219,78 @@ public class IndexProcessor
         );
         exhibitor.getLog().add(ActivityLog.Type.ERROR, "Index Build: there are " + availableBackups.size() + " available backups");
 
-        int     index = 0;
-        for ( BackupMetaData metaData : availableBackups )
+        List<IndexSource>       sources = Lists.newArrayList();
+        for ( final BackupMetaData metaData : availableBackups )
         {
-            exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Index Build: indexing backup log %d of %d", ++index, availableBackups.size()));
+            if ( metaData.getName().startsWith(ZooKeeperLogFiles.SNAPSHOT_PREFIX) )
+            {
+                continue;   // snapshots aren't transaction logs
+            }
 
-            BackupStream backupStream = exhibitor.getBackupManager().getBackupStream(metaData);
-            if ( backupStream != null )
+            final String      sourceKey = getSourceKey(metaData);
+            if ( (alreadyIndexed != null) && alreadyIndexed.contains(sourceKey) )
             {
-                try
-                {
-                    builder.add(backupStream.getStream());
-                }
-                finally
+                indexedSources.add(sourceKey);
+                continue;
+            }
+
+            sources.add
+            (
+                new IndexSource()
                 {
-                    CloseableUtils.closeQuietly(backupStream);
+                    @Override
+                    public String getKey()
+                    {
+                        return sourceKey;
+                    }
+
+                    @Override
+                    public String getDescription()
+                    {
+                        return "backup " + metaData;
+                    }
+
+                    @Override
+                    public InputStream open() throws Exception
+                    {
+                        final BackupStream backupStream = exhibitor.getBackupManager().getBackupStream(metaData);
+                        if ( backupStream == null )
+                        {
+                            return null;
+                        }
+                        return new FilterInputStream(backupStream.getStream())
+                        {
+                            @Override
+                            public void close() throws IOException
+                            {
+                                backupStream.close();
+                            }
+                        };
+                    }
                 }
-            }
+            );
         }
+        return sources;
+    }
+
+    private void addSources(IndexBuilder builder, Set<String> alreadyIndexed, Set<String> indexedSources) throws Exception
+    {
+        List<IndexSource>   sources = Lists.newArrayList();
+        sources.addAll(getBackupSources(alreadyIndexed, indexedSources));
+        sources.addAll(getActiveSources(alreadyIndexed, indexedSources));
+
+        exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Index Build: indexing %d logs using %d threads", sources.size(), threadQty));
+        new ParallelIndexLoader(builder, exhibitor.getLog(), threadQty).load(sources, indexedSources);
+    }
+
+    private static String getSourceKey(BackupMetaData metaData)
+    {
+        return "backup:" + metaData.getName() + ":" + metaData.getModifiedDate();
+    }
+
+    private static String getSourceKey(File activeLog)
+    {
+        return "active:" + activeLog.getName() + ":" + activeLog.lastModified() + ":" + activeLog.length();
     }
 
     private void cleanDirectory(File directory)
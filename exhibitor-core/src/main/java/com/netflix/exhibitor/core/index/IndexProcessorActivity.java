@@ -17,18 +17,49 @@
 package com.netflix.exhibitor.core.index;
 
 import com.netflix.exhibitor.core.Exhibitor;
-import com.netflix.exhibitor.core.activity.Activity;
 import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.activity.ActivityPriority;
+import com.netflix.exhibitor.core.activity.QueuedActivity;
 import com.netflix.exhibitor.core.config.StringConfigs;
 import java.io.File;
 
-public class IndexProcessorActivity implements Activity
+public class IndexProcessorActivity implements QueuedActivity
 {
-    private Exhibitor exhibitor;
+    private final Exhibitor exhibitor;
+    private final boolean incremental;
 
     public IndexProcessorActivity(Exhibitor exhibitor)
+    {
+        this(exhibitor, false);
+    }
+
+    /**
+     * @param exhibitor instance
+     * @param incremental if true, append new transactions to the most recent updatable index (a new
+     *                    index is built if there isn't one)
+     */
+    public IndexProcessorActivity(Exhibitor exhibitor, boolean incremental)
     {
         this.exhibitor = exhibitor;
+        this.incremental = incremental;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "IndexProcessorActivity";
+    }
+
+    @Override
+    public ActivityPriority getPriority()
+    {
+        return ActivityPriority.LOW;
+    }
+
+    @Override
+    public String getSerializationKey()
+    {
+        return INDEX_KEY;
     }
 
     @Override
@@ -47,12 +78,21 @@ public class IndexProcessorActivity implements Activity
         }
         else
         {
-            exhibitor.getLog().add(ActivityLog.Type.INFO, "Starting index build");
             try
             {
-                File            indexDirectory = new File(path, "exhibitor-" + System.currentTimeMillis());
                 IndexProcessor  processor = new IndexProcessor(exhibitor);
-                processor.process(indexDirectory);
+                File            existingIndex = incremental ? findUpdatableIndex(new File(path)) : null;
+                if ( existingIndex != null )
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.INFO, "Starting incremental index update: " + existingIndex.getName());
+                    processor.update(existingIndex, IndexMetaData.read(IndexMetaData.getMetaDataFile(existingIndex)));
+                }
+                else
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.INFO, "Starting index build");
+                    File            indexDirectory = new File(path, "exhibitor-" + System.currentTimeMillis());
+                    processor.process(indexDirectory);
+                }
             }
             catch ( Exception e )
             {
@@ -62,4 +102,27 @@ public class IndexProcessorActivity implements Activity
 
         return null;
     }
+
+    private File findUpdatableIndex(File indexParentDirectory)
+    {
+        File        bestIndex = null;
+        long        bestZxid = IndexMetaData.UNKNOWN_ZXID;
+        for ( File indexDirectory : new IndexList(indexParentDirectory).getIndexes() )
+        {
+            try
+            {
+                IndexMetaData   metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+                if ( metaData.isUpdatable() && (metaData.getToZxid() > bestZxid) )
+                {
+                    bestIndex = indexDirectory;
+                    bestZxid = metaData.getToZxid();
+                }
+            }
+            catch ( Exception e )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Reading index meta data: " + indexDirectory, e);
+            }
+        }
+        return bestIndex;
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import java.io.InputStream;
+
+/**
+ * A transaction log (backup or active) that can be added to an index
+ */
+interface IndexSource
+{
+    /**
+     * @return a key that uniquely identifies this version of the source (recorded in {@link IndexMetaData})
+     */
+    public String       getKey();
+
+    /**
+     * @return description used for logging
+     */
+    public String       getDescription();
+
+    /**
+     * Open the log - the returned stream must be closed by the caller
+     *
+     * @return stream or null if the source no longer exists
+     * @throws Exception errors
+     */
+    public InputStream  open() throws Exception;
+}
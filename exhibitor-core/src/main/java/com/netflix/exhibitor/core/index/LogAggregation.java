@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Results of {@link LogSearch#aggregate(org.apache.lucene.search.Query, int, long, int)}
+ */
+public class LogAggregation
+{
+    private final int documentCount;
+    private final Map<String, Long> topPaths;
+    private final SortedMap<Long, Long> writesPerInterval;
+    private final SortedMap<String, Long> ephemeralChurn;
+    private final SortedMap<String, Long> bytesBySubtree;
+
+    LogAggregation(int documentCount, Map<String, Long> topPaths, Map<Long, Long> writesPerInterval, Map<String, Long> ephemeralChurn, Map<String, Long> bytesBySubtree)
+    {
+        this.documentCount = documentCount;
+        this.topPaths = ImmutableMap.copyOf(topPaths);
+        this.writesPerInterval = ImmutableSortedMap.copyOf(writesPerInterval);
+        this.ephemeralChurn = ImmutableSortedMap.copyOf(ephemeralChurn);
+        this.bytesBySubtree = ImmutableSortedMap.copyOf(bytesBySubtree);
+    }
+
+    /**
+     * @return number of entries that matched the query
+     */
+    public int getDocumentCount()
+    {
+        return documentCount;
+    }
+
+    /**
+     * @return path to number of writes (creates, deletes and set datas) - most written first
+     */
+    public Map<String, Long> getTopPaths()
+    {
+        return topPaths;
+    }
+
+    /**
+     * @return start of each interval (epoch millis) to number of writes in the interval
+     */
+    public SortedMap<Long, Long> getWritesPerInterval()
+    {
+        return writesPerInterval;
+    }
+
+    /**
+     * @return path prefix to the number of ephemeral nodes created under it
+     */
+    public SortedMap<String, Long> getEphemeralChurn()
+    {
+        return ephemeralChurn;
+    }
+
+    /**
+     * @return path prefix to the number of data bytes written (by creates and set datas) under it
+     */
+    public SortedMap<String, Long> getBytesBySubtree()
+    {
+        return bytesBySubtree;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers which files in the ZooKeeper data directory are transaction logs so that
+ * each file's header is only read once. An entry is re-validated whenever the file's
+ * size or modified date changes.
+ */
+public class LogFileCatalog
+{
+    private final ConcurrentMap<String, Entry> entries = Maps.newConcurrentMap();
+
+    private static final String LOG_FILE_PREFIX = "log.";
+
+    private static class Entry
+    {
+        private final long length;
+        private final long lastModified;
+        private final boolean isLogFile;
+
+        private Entry(long length, long lastModified, boolean isLogFile)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.isLogFile = isLogFile;
+        }
+    }
+
+    /**
+     * Return the first zxid of a transaction log as encoded in its name (i.e. "log.&lt;hex zxid&gt;")
+     *
+     * @param f log file
+     * @return zxid or -1 if the name doesn't encode one
+     */
+    public static long getZxidFromName(File f)
+    {
+        String      name = f.getName();
+        if ( name.startsWith(LOG_FILE_PREFIX) )
+        {
+            try
+            {
+                return Long.parseLong(name.substring(LOG_FILE_PREFIX.length()), 16);
+            }
+            catch ( NumberFormatException e )
+            {
+                // ignore
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the transaction logs in the given directory ordered by their starting zxid
+     *
+     * @param directory the data directory
+     * @return logs
+     */
+    public List<File> getLogFiles(File directory)
+    {
+        List<File>      logFiles = Lists.newArrayList();
+        Set<String>     currentPaths = Sets.newHashSet();
+        File[]          files = directory.listFiles();
+        if ( files != null )
+        {
+            for ( File f : files )
+            {
+                currentPaths.add(f.getPath());
+                if ( isLogFile(f) )
+                {
+                    logFiles.add(f);
+                }
+            }
+        }
+
+        // forget files that have been purged
+        String      directoryPath = directory.getPath();
+        for ( String path : entries.keySet() )
+        {
+            if ( directoryPath.equals(new File(path).getParent()) && !currentPaths.contains(path) )
+            {
+                entries.remove(path);
+            }
+        }
+
+        Collections.sort
+        (
+            logFiles,
+            new Comparator<File>()
+            {
+                @Override
+                public int compare(File o1, File o2)
+                {
+                    long        diff = getZxidFromName(o1) - getZxidFromName(o2);
+                    if ( diff == 0 )
+                    {
+                        diff = o1.lastModified() - o2.lastModified();
+                    }
+                    return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+                }
+            }
+        );
+        return logFiles;
+    }
+
+    /**
+     * @param f file to check
+     * @return true if the file has a transaction log header
+     */
+    public boolean isLogFile(File f)
+    {
+        long        length = f.length();
+        long        lastModified = f.lastModified();
+        Entry       entry = entries.get(f.getPath());
+        if ( (entry == null) || (entry.length != length) || (entry.lastModified != lastModified) )
+        {
+            entry = new Entry(length, lastModified, hasLogHeader(f));
+            entries.put(f.getPath(), entry);
+        }
+        return entry.isLogFile;
+    }
+
+    private static boolean hasLogHeader(File f)
+    {
+        if ( !f.isFile() )
+        {
+            return false;
+        }
+
+        // the file header is: magic (int), version (int), dbid (long)
+        DataInputStream     in = null;
+        try
+        {
+            in = new DataInputStream(new FileInputStream(f));
+            int                 magic = in.readInt();
+            in.readInt();
+            in.readLong();
+            return magic == FileTxnLog.TXNLOG_MAGIC;
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+}
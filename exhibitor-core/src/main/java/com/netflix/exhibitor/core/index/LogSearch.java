@@ -16,15 +16,21 @@
 
 package com.netflix.exhibitor.core.index;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import org.apache.curator.utils.CloseableUtils;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Fieldable;
-import org.apache.lucene.document.NumericField;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
@@ -34,9 +40,11 @@ import org.apache.lucene.store.NativeFSLockFactory;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.Date;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 public class LogSearch implements Closeable
 {
@@ -44,18 +52,33 @@ public class LogSearch implements Closeable
     private final IndexReader reader;
     private final IndexSearcher searcher;
     private final File file;
-    private final Cache<String, TopDocs> cache = CacheBuilder.newBuilder()
-        .expireAfterAccess(5, TimeUnit.MINUTES) // does this need to be configurable?
-        .build();
+    private final SearchResultCache cache;
+    private final IndexColumns columns;
 
     private static final int            MAX_RESULTS = 5000; // does this need to be configurable?
+    private static final int            MAX_PAGE_SIZE = 10000;
+
+    // the data payload is the only field read from the stored documents - see IndexColumns
+    private static final MapFieldSelector   DATA_FIELD = new MapFieldSelector(FieldNames.DATA);
 
     public LogSearch(File file) throws Exception
+    {
+        this(file, new SearchResultCache(Long.MAX_VALUE));
+    }
+
+    /**
+     * @param file index directory
+     * @param cache cache for search results - usually shared with other instances
+     * @throws Exception errors
+     */
+    public LogSearch(File file, SearchResultCache cache) throws Exception
     {
         this.file = file;
+        this.cache = cache;
         directory = new NIOFSDirectory(file, new NativeFSLockFactory());
         reader = IndexReader.open(directory);
         searcher = new IndexSearcher(reader);
+        columns = new IndexColumns(reader);
     }
 
     public File getFile()
@@ -70,7 +93,7 @@ public class LogSearch implements Closeable
 
     public void     releaseCache(String id)
     {
-        cache.invalidate(id);
+        cache.invalidate(this, id);
     }
 
     public String    cacheSearch(Query query, String reuseId, int maxResults) throws IOException
@@ -83,16 +106,21 @@ public class LogSearch implements Closeable
         String      id = ((reuseId != null) && (reuseId.length() > 0)) ? reuseId : UUID.randomUUID().toString();
         if ( query != null )    // otherwise it's an All Docs search which is the default
         {
-            TopDocs docs = search(query, maxResults);
-            docs.totalHits = Math.min(maxResults, docs.totalHits);
-            cache.put(id, docs);
+            // only the doc ids are needed so don't hold on to the ScoreDocs
+            TopDocs     docs = search(query, maxResults);
+            int[]       docIds = new int[docs.scoreDocs.length];
+            for ( int i = 0; i < docIds.length; ++i )
+            {
+                docIds[i] = docs.scoreDocs[i].doc;
+            }
+            cache.put(this, id, docIds);
         }
         return id;
     }
     
     public CachedSearch getCachedSearch(String id)
     {
-        return new CachedSearch(cache.getIfPresent(id), getDocQty());
+        return new CachedSearch(cache.get(this, id), getDocQty());
     }
 
     public TopDocs   search(Query query, int maxResults) throws IOException
@@ -101,32 +129,256 @@ public class LogSearch implements Closeable
         return searcher.search(query, maxResults, sort);
     }
 
-    public SearchItem toResult(int documentId) throws IOException
+    /**
+     * Return a page of results sorted newest first (ties in zxid order). Unlike {@link #cacheSearch(Query, String, int)}
+     * nothing is retained between calls so there is no limit on the total number of results. Pass the
+     * returned page's {@link SearchPage#getNextCursor()} to get the following page. The cursor identifies
+     * the last entry by its date and zxid so it stays valid when the index is updated.
+     *
+     * @param query the query or null for all documents
+     * @param cursor cursor from the previous page or null for the first page
+     * @param pageSize max documents to return
+     * @return the page
+     * @throws IOException errors
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public SearchPage searchPage(Query query, String cursor, int pageSize) throws IOException
     {
-        Document        document = searcher.doc(documentId);
+        return searchPage(query, cursor, pageSize, true);
+    }
+
+    /**
+     * Same as {@link #searchPage(Query, String, int)} but counting the remaining matches is optional. Callers
+     * that walk all of the pages (e.g. exports) should not count them.
+     *
+     * @param query the query or null for all documents
+     * @param cursor cursor from the previous page or null for the first page
+     * @param pageSize max documents to return
+     * @param countRemaining if false, {@link SearchPage#getRemainingHits()} is -1
+     * @return the page
+     * @throws IOException errors
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public SearchPage searchPage(Query query, String cursor, int pageSize, boolean countRemaining) throws IOException
+    {
+        if ( (pageSize <= 0) || (pageSize > MAX_PAGE_SIZE) )
+        {
+            pageSize = MAX_PAGE_SIZE;
+        }
+
+        Query           pageQuery = (query != null) ? query : new MatchAllDocsQuery();
+        PageCollector   collector;
+        if ( (cursor != null) && (cursor.length() > 0) )
+        {
+            Hit         after = Hit.fromCursor(cursor);
 
-        String          type = document.getFieldable(FieldNames.TYPE).stringValue();
-        NumericField    date = (NumericField)document.getFieldable(FieldNames.DATE);
-        Fieldable       path = document.getFieldable(FieldNames.PATH);
-        NumericField    version = (NumericField)document.getFieldable(FieldNames.VERSION);
-        return new SearchItem
-        (
-            Integer.parseInt(type),
-            path.stringValue(),
-            (version != null) ? version.getNumericValue().intValue() : -1,
-            new Date(date.getNumericValue().longValue())
-        );
+            // let Lucene skip everything newer than the cursor
+            BooleanQuery    booleanQuery = new BooleanQuery();
+            booleanQuery.add(pageQuery, BooleanClause.Occur.MUST);
+            booleanQuery.add(NumericRangeQuery.newLongRange(FieldNames.DATE, null, after.date, true, true), BooleanClause.Occur.MUST);
+            pageQuery = booleanQuery;
+
+            collector = new PageCollector(pageSize, after, countRemaining);
+        }
+        else
+        {
+            collector = new PageCollector(pageSize, null, countRemaining);
+        }
+        searcher.search(pageQuery, collector);
+
+        // the collector keeps one extra hit to tell if there's a following page
+        List<Hit>       hits = collector.getHits();
+        boolean         hasMore = hits.size() > pageSize;
+        if ( hasMore )
+        {
+            hits = hits.subList(0, pageSize);
+        }
+        List<Integer>   docIds = Lists.newArrayList();
+        for ( Hit hit : hits )
+        {
+            docIds.add(hit.docId);
+        }
+        String          nextCursor = hasMore ? hits.get(hits.size() - 1).toCursor() : null;
+        return new SearchPage(docIds, nextCursor, countRemaining ? collector.totalHits : -1);
+    }
+
+    /**
+     * Compute aggregate statistics for the entries that match the given query in a single pass
+     * over the matches. Only the indexed columns are read - not the stored documents.
+     *
+     * @param query the query or null for all documents
+     * @param topN number of most written paths to return
+     * @param intervalMs bucket size for the writes histogram
+     * @param prefixDepth number of path components used to group paths into subtrees
+     * @return the aggregation
+     * @throws IOException errors
+     */
+    public LogAggregation aggregate(Query query, int topN, long intervalMs, int prefixDepth) throws IOException
+    {
+        Preconditions.checkArgument(topN >= 0, "topN cannot be negative");
+        Preconditions.checkArgument(intervalMs > 0, "intervalMs must be positive");
+        Preconditions.checkArgument(prefixDepth >= 0, "prefixDepth cannot be negative");
+
+        AggregationCollector    collector = new AggregationCollector(topN, intervalMs, prefixDepth);
+        searcher.search((query != null) ? query : new MatchAllDocsQuery(), collector);
+        return collector.getAggregation();
+    }
+
+    public SearchItem toResult(int documentId) throws IOException
+    {
+        return columns.toResult(documentId);
     }
 
     public byte[]           toData(int documentId) throws IOException
     {
-        Document document = searcher.doc(documentId);
+        Document document = searcher.doc(documentId, DATA_FIELD);
         return document.getBinaryValue(FieldNames.DATA);
     }
 
+    private static class Hit
+    {
+        private final long date;
+        private final long zxid;
+        private final int docId;
+
+        private static final Comparator<Hit> ORDER = new Comparator<Hit>()
+        {
+            @Override
+            public int compare(Hit o1, Hit o2)
+            {
+                return Hit.compare(o1.date, o1.zxid, o1.docId, o2);
+            }
+        };
+
+        private Hit(long date, long zxid, int docId)
+        {
+            this.date = date;
+            this.zxid = zxid;
+            this.docId = docId;
+        }
+
+        /**
+         * Newest first, then zxid order. The zxid is unique within an index - the document ID only breaks
+         * ties between entries indexed before the zxid was (which all have a zxid of 0).
+         */
+        private static int compare(long date, long zxid, int docId, Hit hit)
+        {
+            if ( date != hit.date )
+            {
+                return (date > hit.date) ? -1 : 1;
+            }
+            if ( zxid != hit.zxid )
+            {
+                return (zxid < hit.zxid) ? -1 : 1;
+            }
+            return (docId < hit.docId) ? -1 : ((docId > hit.docId) ? 1 : 0);
+        }
+
+        private static Hit fromCursor(String cursor)
+        {
+            String[]    parts = cursor.split("-");
+            if ( parts.length != 3 )
+            {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            try
+            {
+                return new Hit(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+            }
+            catch ( NumberFormatException e )
+            {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+        }
+
+        private String toCursor()
+        {
+            return date + "-" + zxid + "-" + docId;
+        }
+    }
+
+    /**
+     * Keeps the best pageSize + 1 hits after the cursor. Hits are only allocated when they make it into the
+     * queue so skipping the (usually many) matches past the page is cheap.
+     */
+    private static class PageCollector extends Collector
+    {
+        private final int maxHits;
+        private final Hit after;
+        private final boolean countAll;
+        private final PriorityQueue<Hit> queue;    // head is the worst hit kept so far
+
+        private long[] dates;
+        private long[] zxids;
+        private int docBase;
+        private int totalHits = 0;
+
+        private PageCollector(int pageSize, Hit after, boolean countAll)
+        {
+            this.maxHits = pageSize + 1;
+            this.after = after;
+            this.countAll = countAll;
+            queue = new PriorityQueue<Hit>(maxHits + 1, Collections.reverseOrder(Hit.ORDER));
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException
+        {
+            // scores aren't used
+        }
+
+        @Override
+        public void collect(int doc) throws IOException
+        {
+            long    date = dates[doc];
+            long    zxid = zxids[doc];
+            int     docId = docBase + doc;
+            if ( (after != null) && (Hit.compare(date, zxid, docId, after) <= 0) )
+            {
+                return; // on a previous page
+            }
+
+            if ( countAll )
+            {
+                ++totalHits;
+            }
+            if ( queue.size() < maxHits )
+            {
+                queue.add(new Hit(date, zxid, docId));
+            }
+            else if ( Hit.compare(date, zxid, docId, queue.peek()) < 0 )
+            {
+                queue.poll();
+                queue.add(new Hit(date, zxid, docId));
+            }
+        }
+
+        @Override
+        public void setNextReader(IndexReader reader, int docBase) throws IOException
+        {
+            this.docBase = docBase;
+            dates = FieldCache.DEFAULT.getLongs(reader, FieldNames.DATE, FieldCache.NUMERIC_UTILS_LONG_PARSER);
+            zxids = FieldCache.DEFAULT.getLongs(reader, FieldNames.ZXID, FieldCache.NUMERIC_UTILS_LONG_PARSER);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder()
+        {
+            return true;
+        }
+
+        private List<Hit> getHits()
+        {
+            List<Hit>   hits = Lists.newArrayList(queue);
+            Collections.sort(hits, Hit.ORDER);
+            return hits;
+        }
+    }
+
     @Override
     public void close()
     {
+        cache.invalidateAll(this);
         CloseableUtils.closeQuietly(searcher);
         CloseableUtils.closeQuietly(reader);
         CloseableUtils.closeQuietly(directory);
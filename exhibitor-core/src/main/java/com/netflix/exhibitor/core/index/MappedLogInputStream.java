@@ -0,0 +1,230 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream that reads a local transaction log through a read-only memory mapping. ZooKeeper
+ * preallocates its logs so most of an active log is a zero tail - pages are only faulted in as
+ * the parser reaches them and the parser stops at the first empty entry, so the tail is never touched.
+ * The mapping is released when the stream is closed. Not thread safe.
+ *
+ * Only map logs that won't be truncated while they're read (i.e. not the log that ZooKeeper is writing).
+ * Touching a truncated region raises an InternalError - reads convert it to an IOException but the
+ * JVM can also raise it asynchronously after the read has returned.
+ */
+public class MappedLogInputStream extends InputStream
+{
+    private MappedByteBuffer buffer;
+
+    private static final Unmapper unmapper = makeUnmapper();
+
+    /**
+     * Open the given local log. Files that are too large to map in a single region fall back
+     * to a buffered stream.
+     *
+     * @param file log file
+     * @return stream - caller must close
+     * @throws IOException errors
+     */
+    public static InputStream open(File file) throws IOException
+    {
+        RandomAccessFile    randomAccessFile = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel     channel = randomAccessFile.getChannel();
+            long            size = channel.size();
+            if ( size > Integer.MAX_VALUE )
+            {
+                return new BufferedInputStream(new FileInputStream(file));
+            }
+            // the mapping stays valid after the channel is closed
+            return new MappedLogInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+
+    private MappedLogInputStream(MappedByteBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        ByteBuffer      localBuffer = getBuffer();
+        try
+        {
+            return localBuffer.hasRemaining() ? (localBuffer.get() & 0xff) : -1;
+        }
+        catch ( InternalError e )
+        {
+            throw truncated(e);
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        ByteBuffer      localBuffer = getBuffer();
+        if ( len == 0 )
+        {
+            return 0;
+        }
+        if ( !localBuffer.hasRemaining() )
+        {
+            return -1;
+        }
+
+        int     count = Math.min(len, localBuffer.remaining());
+        try
+        {
+            localBuffer.get(b, off, count);
+        }
+        catch ( InternalError e )
+        {
+            throw truncated(e);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        ByteBuffer      localBuffer = getBuffer();
+        int             count = (int)Math.max(0, Math.min(n, localBuffer.remaining()));
+        localBuffer.position(localBuffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return getBuffer().remaining();
+    }
+
+    @Override
+    public void close()
+    {
+        MappedByteBuffer    localBuffer = buffer;
+        buffer = null;
+        if ( (localBuffer != null) && (unmapper != null) )
+        {
+            unmapper.unmap(localBuffer);
+        }
+        // otherwise the mapping is released when the buffer is collected
+    }
+
+    private ByteBuffer getBuffer() throws IOException
+    {
+        ByteBuffer      localBuffer = buffer;
+        if ( localBuffer == null )
+        {
+            throw new IOException("Stream closed");
+        }
+        return localBuffer;
+    }
+
+    // the JVM reports a fault in a mapped region (e.g. the file was truncated) as an InternalError
+    private static IOException truncated(InternalError e)
+    {
+        return new IOException("Could not read mapped log - it may have been truncated", e);
+    }
+
+    /**
+     * Releases a mapping without waiting for the buffer to be collected. There's no public API for this so
+     * the JDK internals are used: Unsafe.invokeCleaner() on Java 9+, the buffer's cleaner on Java 8.
+     */
+    private interface Unmapper
+    {
+        void unmap(MappedByteBuffer buffer);
+    }
+
+    private static Unmapper makeUnmapper()
+    {
+        try
+        {
+            Class<?>        unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method    invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field           theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            final Object    unsafe = theUnsafe.get(null);
+            return new Unmapper()
+            {
+                @Override
+                public void unmap(MappedByteBuffer buffer)
+                {
+                    invoke(invokeCleaner, unsafe, buffer);
+                }
+            };
+        }
+        catch ( Exception ignore )
+        {
+            // not Java 9+
+        }
+
+        try
+        {
+            final Method    cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            final Method    cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return new Unmapper()
+            {
+                @Override
+                public void unmap(MappedByteBuffer buffer)
+                {
+                    Object      cleaner = invoke(cleanerMethod, buffer);
+                    if ( cleaner != null )
+                    {
+                        invoke(cleanMethod, cleaner);
+                    }
+                }
+            };
+        }
+        catch ( Exception ignore )
+        {
+            // fall back to releasing mappings when the buffers are collected
+        }
+        return null;
+    }
+
+    private static Object invoke(Method method, Object target, Object... args)
+    {
+        try
+        {
+            return method.invoke(target, args);
+        }
+        catch ( Exception ignore )
+        {
+            // the mapping is released when the buffer is collected instead
+            return null;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.lucene.document.Document;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches and parses several index sources concurrently on a bounded pool. Parsed documents
+ * are handed to the single index writer thread (the caller) via a queue that is bounded by the
+ * size of the queued documents so that memory use stays fixed no matter how fast the sources are
+ * read or how large the znode payloads are. Entries from a given source are added in log order.
+ */
+class ParallelIndexLoader
+{
+    private final IndexBuilder              builder;
+    private final ActivityLog               log;
+    private final int                       threadQty;
+    private final int                       maxQueuedBytes;
+    private final BlockingQueue<Entry>      queue = new LinkedBlockingQueue<Entry>();
+    private final Semaphore                 queuedBytes;
+
+    private static final int        DEFAULT_MAX_QUEUED_BYTES = 16 * 1024 * 1024;
+    private static final int        ENTRY_OVERHEAD_BYTES = 256;     // rough size of the document's other fields
+    private static final int        POLL_MS = 100;
+
+    private static class Entry
+    {
+        private final long          zxid;
+        private final long          time;
+        private final Document      document;
+        private final int           permits;
+
+        private Entry(long zxid, long time, Document document, int permits)
+        {
+            this.zxid = zxid;
+            this.time = time;
+            this.document = document;
+            this.permits = permits;
+        }
+    }
+
+    ParallelIndexLoader(IndexBuilder builder, ActivityLog log, int threadQty)
+    {
+        this(builder, log, threadQty, DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    @VisibleForTesting
+    ParallelIndexLoader(IndexBuilder builder, ActivityLog log, int threadQty, int maxQueuedBytes)
+    {
+        this.builder = builder;
+        this.log = log;
+        this.threadQty = Math.max(1, threadQty);
+        this.maxQueuedBytes = Math.max(1, maxQueuedBytes);
+        queuedBytes = new Semaphore(this.maxQueuedBytes);
+    }
+
+    /**
+     * Add the given sources to the index. Returns when all sources have been indexed or
+     * throws on the first failure.
+     *
+     * @param sources sources to load
+     * @param indexedSources keys of successfully loaded sources are added to this set (sources that could not be opened are not added)
+     * @throws Exception errors
+     */
+    void load(List<IndexSource> sources, Set<String> indexedSources) throws Exception
+    {
+        if ( sources.size() == 0 )
+        {
+            return;
+        }
+
+        ExecutorService                     service = Executors.newFixedThreadPool(Math.min(threadQty, sources.size()), new ThreadFactoryBuilder().setNameFormat("IndexLoader-%d").setDaemon(true).build());
+        ExecutorCompletionService<String>   completionService = new ExecutorCompletionService<String>(service);
+        try
+        {
+            for ( IndexSource source : sources )
+            {
+                completionService.submit(makeTask(source));
+            }
+
+            int     outstanding = sources.size();
+            while ( (outstanding > 0) || !queue.isEmpty() )
+            {
+                Entry   entry = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                while ( entry != null )
+                {
+                    builder.addDocument(entry.zxid, entry.time, entry.document);
+                    queuedBytes.release(entry.permits);
+                    entry = queue.poll();
+                }
+
+                Future<String>  future;
+                while ( (future = completionService.poll()) != null )
+                {
+                    --outstanding;
+                    String      key = getResult(future);
+                    if ( key != null )
+                    {
+                        indexedSources.add(key);
+                    }
+                    log.add(ActivityLog.Type.INFO, String.format("Index Build: %d of %d logs indexed", sources.size() - outstanding, sources.size()));
+                }
+            }
+        }
+        finally
+        {
+            service.shutdownNow();
+        }
+    }
+
+    private Callable<String> makeTask(final IndexSource source)
+    {
+        return new Callable<String>()
+        {
+            @Override
+            public String call() throws Exception
+            {
+                InputStream     in = source.open();
+                if ( in == null )
+                {
+                    log.add(ActivityLog.Type.INFO, "Index Build: could not open: " + source.getDescription());
+                    return null;
+                }
+
+                try
+                {
+                    ZooKeeperLogParser  logParser = new ZooKeeperLogParser(in);
+                    if ( logParser.isValid() )
+                    {
+                        logParser.parse
+                        (
+                            new LogEntryReceiver()
+                            {
+                                @Override
+                                public void receiveEntry(TxnHeader header, Record record) throws Exception
+                                {
+                                    if ( builder.accepts(header) )
+                                    {
+                                        Document    document = IndexBuilder.makeDocument(header, record);
+
+                                        // an entry larger than the budget waits for the queue to drain
+                                        int         permits = (int)Math.min(getSize(document), maxQueuedBytes);
+                                        queuedBytes.acquire(permits);
+                                        queue.put(new Entry(header.getZxid(), header.getTime(), document, permits));
+                                    }
+                                }
+                            }
+                        );
+                    }
+                }
+                finally
+                {
+                    CloseableUtils.closeQuietly(in);
+                }
+                return source.getKey();
+            }
+        };
+    }
+
+    private static long getSize(Document document)
+    {
+        if ( document == null )
+        {
+            return ENTRY_OVERHEAD_BYTES;
+        }
+        byte[]      data = document.getBinaryValue(FieldNames.DATA);
+        return ENTRY_OVERHEAD_BYTES + ((data != null) ? data.length : 0);
+    }
+
+    private static String getResult(Future<String> future) throws Exception
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof Exception )
+            {
+                throw (Exception)e.getCause();
+            }
+            throw e;
+        }
+    }
+}
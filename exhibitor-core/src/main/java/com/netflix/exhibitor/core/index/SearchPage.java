@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * One page of a cursor based search - see {@link LogSearch#searchPage(org.apache.lucene.search.Query, String, int)}
+ */
+public class SearchPage
+{
+    private final List<Integer> docIds;
+    private final String nextCursor;
+    private final int remainingHits;
+
+    SearchPage(List<Integer> docIds, String nextCursor, int remainingHits)
+    {
+        this.docIds = ImmutableList.copyOf(docIds);
+        this.nextCursor = nextCursor;
+        this.remainingHits = remainingHits;
+    }
+
+    /**
+     * @return the document IDs in this page - newest first
+     */
+    public List<Integer> getDocIds()
+    {
+        return docIds;
+    }
+
+    /**
+     * @return cursor to pass to get the following page or null if this is the last page
+     */
+    public String getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    /**
+     * @return total number of matches from the start of this page to the end of the results or -1 if they weren't counted
+     */
+    public int getRemainingHits()
+    {
+        return remainingHits;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.netflix.exhibitor.core.IndexCacheConfiguration;
+import com.netflix.servo.annotations.Monitor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.netflix.servo.annotations.DataSourceType.*;
+
+/**
+ * Search results (see {@link LogSearch#cacheSearch(org.apache.lucene.search.Query, String, int)}) for
+ * all open indexes share this cache. It is bounded by an approximate memory budget - each entry is
+ * weighed by its number of hits.
+ */
+public class SearchResultCache
+{
+    private final Cache<Key, int[]> cache;
+    private final AtomicLong estimatedBytes = new AtomicLong(0);
+
+    private static final int BYTES_PER_HIT = 4;
+    private static final int BYTES_PER_ENTRY = 128;  // key, array header, cache entry overhead
+
+    private static class Key
+    {
+        private final LogSearch owner;
+        private final String id;
+
+        private Key(LogSearch owner, String id)
+        {
+            this.owner = owner;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+
+            Key key = (Key)o;
+            return (owner == key.owner) && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * System.identityHashCode(owner) + id.hashCode();
+        }
+    }
+
+    /**
+     * @param maxBytes approximate memory budget
+     */
+    public SearchResultCache(long maxBytes)
+    {
+        this(maxBytes, IndexCacheConfiguration.DEFAULT_SEARCH_RESULT_CACHE_MAX_IDLE_MS);
+    }
+
+    /**
+     * @param maxBytes approximate memory budget
+     * @param maxIdleMs entries that haven't been used for this long are discarded
+     */
+    public SearchResultCache(long maxBytes, int maxIdleMs)
+    {
+        cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher
+            (
+                new Weigher<Key, int[]>()
+                {
+                    @Override
+                    public int weigh(Key key, int[] docIds)
+                    {
+                        return weight(docIds);
+                    }
+                }
+            )
+            .removalListener
+            (
+                new RemovalListener<Key, int[]>()
+                {
+                    @Override
+                    public void onRemoval(RemovalNotification<Key, int[]> notification)
+                    {
+                        estimatedBytes.addAndGet(-weight(notification.getValue()));
+                    }
+                }
+            )
+            .expireAfterAccess(maxIdleMs, TimeUnit.MILLISECONDS)
+            .recordStats()
+            .build();
+    }
+
+    @Monitor(name = "index_search_cache_hits", type = COUNTER)
+    public long getHitCount()
+    {
+        return cache.stats().hitCount();
+    }
+
+    @Monitor(name = "index_search_cache_misses", type = COUNTER)
+    public long getMissCount()
+    {
+        return cache.stats().missCount();
+    }
+
+    @Monitor(name = "index_search_cache_evictions", type = COUNTER)
+    public long getEvictionCount()
+    {
+        return cache.stats().evictionCount();
+    }
+
+    @Monitor(name = "index_search_cache_entries", type = GAUGE)
+    public long getEntryCount()
+    {
+        return cache.size();
+    }
+
+    @Monitor(name = "index_search_cache_bytes", type = GAUGE)
+    public long getEstimatedBytes()
+    {
+        return estimatedBytes.get();
+    }
+
+    int[] get(LogSearch owner, String id)
+    {
+        return cache.getIfPresent(new Key(owner, id));
+    }
+
+    void put(LogSearch owner, String id, int[] docIds)
+    {
+        estimatedBytes.addAndGet(weight(docIds));
+        cache.put(new Key(owner, id), docIds);
+    }
+
+    void invalidate(LogSearch owner, String id)
+    {
+        cache.invalidate(new Key(owner, id));
+    }
+
+    void invalidateAll(LogSearch owner)
+    {
+        for ( Key key : cache.asMap().keySet() )
+        {
+            if ( key.owner == owner )
+            {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    private static int weight(int[] docIds)
+    {
+        return BYTES_PER_ENTRY + (docIds.length * BYTES_PER_HIT);
+    }
+}
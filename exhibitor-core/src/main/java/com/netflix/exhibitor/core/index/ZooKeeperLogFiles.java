@@ -18,14 +18,9 @@ package com.netflix.exhibitor.core.index;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.io.Closeables;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.config.StringConfigs;
-import org.apache.curator.utils.CloseableUtils;
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.util.List;
 
 public class ZooKeeperLogFiles
@@ -33,6 +28,8 @@ public class ZooKeeperLogFiles
     private final List<File>        paths;
     private final boolean           isValid;
 
+    public static final String      SNAPSHOT_PREFIX = "snapshot.";
+
     public static File      getDataDir(Exhibitor exhibitor)
     {
         String      path = exhibitor.getConfigManager().getConfig().getString(StringConfigs.ZOOKEEPER_LOG_DIRECTORY);
@@ -43,28 +40,33 @@ public class ZooKeeperLogFiles
         return new File(path, "version-2");
     }
 
-    public ZooKeeperLogFiles(Exhibitor exhibitor) throws Exception
+    /**
+     * @param exhibitor instance
+     * @return the snapshot files in the ZooKeeper data directory (if any)
+     */
+    public static List<File> getSnapshotFiles(Exhibitor exhibitor)
     {
-        ImmutableList.Builder<File> builder = ImmutableList.builder();
-
-        File        path = getDataDir(exhibitor);
-        isValid = path.isDirectory();
-        if ( isValid )
+        String      path = exhibitor.getConfigManager().getConfig().getString(StringConfigs.ZOOKEEPER_DATA_DIRECTORY);
+        File[]      files = new File(path, "version-2").listFiles();
+        List<File>  snapshots = Lists.newArrayList();
+        if ( files != null )
         {
-            File[]      logs = path.listFiles();
-            if ( logs != null )
+            for ( File f : files )
             {
-                for ( File f : logs )
+                if ( f.isFile() && f.getName().startsWith(SNAPSHOT_PREFIX) )
                 {
-                    if ( isLogFile(f) )
-                    {
-                        builder.add(f);
-                    }
+                    snapshots.add(f);
                 }
             }
         }
+        return snapshots;
+    }
 
-        paths = builder.build();
+    public ZooKeeperLogFiles(Exhibitor exhibitor) throws Exception
+    {
+        File        path = getDataDir(exhibitor);
+        isValid = path.isDirectory();
+        paths = isValid ? ImmutableList.copyOf(exhibitor.getLogFileCatalog().getLogFiles(path)) : ImmutableList.<File>of();
     }
 
     public boolean isValid()
@@ -72,22 +74,11 @@ public class ZooKeeperLogFiles
         return isValid;
     }
 
+    /**
+     * @return the transaction logs ordered by their starting zxid
+     */
     public List<File> getPaths()
     {
         return Lists.newArrayList(paths);
     }
-
-    private boolean isLogFile(File f) throws Exception
-    {
-        InputStream         log = new BufferedInputStream(new FileInputStream(f));
-        try
-        {
-            ZooKeeperLogParser  logParser = new ZooKeeperLogParser(log);
-            return logParser.isValid();
-        }
-        finally
-        {
-            CloseableUtils.closeQuietly(log);
-        }
-    }
 }
@@ -17,63 +17,59 @@
 package com.netflix.exhibitor.core.index;
 
 import org.apache.jute.BinaryInputArchive;
-import org.apache.jute.InputArchive;
 import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.server.persistence.FileHeader;
 import org.apache.zookeeper.server.persistence.FileTxnLog;
-import org.apache.zookeeper.server.util.SerializeUtils;
+import org.apache.zookeeper.txn.CreateSessionTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.CreateTxnV0;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.ErrorTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetACLTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
 import org.apache.zookeeper.txn.TxnHeader;
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Method;
 import java.util.zip.Adler32;
-import java.util.zip.Checksum;
 
+/**
+ * Streaming parser for ZooKeeper transaction logs. A single record buffer, checksum
+ * and input archive are reused for every transaction so that parsing multi-GB logs
+ * doesn't churn the heap. Records are deserialized directly rather than through
+ * {@link org.apache.zookeeper.server.util.SerializeUtils} - the logic mirrors
+ * SerializeUtils.deserializeTxn() from ZooKeeper 3.4.x.
+ *
+ * Instances are not thread safe.
+ */
 public class ZooKeeperLogParser
 {
-    private final BinaryInputArchive logStream;
-    private final boolean            validHeader;
+    private final DataInputStream logStream;
+    private final boolean validHeader;
+    private final Adler32 crc = new Adler32();
+    private final RecordInputStream recordStream = new RecordInputStream();
+    private final BinaryInputArchive recordArchive = new BinaryInputArchive(new DataInputStream(recordStream));
 
-    private static final Method             deserializeTxnMethod;
-    private static final boolean            useOldDeserializeMethod;
-    static
-    {
-        // The signature for SerializeUtils.deserializeTxn changed between 3.3.x and 3.4.x
-        // so, use reflection to work with both
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
 
-        Method          localSeserializeTxnMethod;
-        boolean         localUseOldDeserializeMethod = true;
-        try
-        {
-            localSeserializeTxnMethod = SerializeUtils.class.getMethod("deserializeTxn", InputArchive.class, TxnHeader.class);
-        }
-        catch ( Exception e )
-        {
-            try
-            {
-                localSeserializeTxnMethod = SerializeUtils.class.getMethod("deserializeTxn", byte[].class, TxnHeader.class);
-                localUseOldDeserializeMethod = false;
-            }
-            catch ( NoSuchMethodException e1 )
-            {
-                throw new RuntimeException(e);
-            }
-        }
-        deserializeTxnMethod = localSeserializeTxnMethod;
-        useOldDeserializeMethod = localUseOldDeserializeMethod;
-    }
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    // same limit ZooKeeper uses when reading log entries
+    private static final int MAX_RECORD_SIZE = Integer.getInteger("jute.maxbuffer", 0xfffff);
 
     public ZooKeeperLogParser(InputStream log)
     {
-        logStream = BinaryInputArchive.getArchive(log);
+        logStream = (log instanceof DataInputStream) ? (DataInputStream)log : new DataInputStream(log);
 
         boolean         localValidHeader = false;
         try
         {
             FileHeader fhdr = new FileHeader();
-            fhdr.deserialize(logStream, "fileheader");
+            fhdr.deserialize(new BinaryInputArchive(logStream), "fileheader");
             localValidHeader = (fhdr.getMagic() == FileTxnLog.TXNLOG_MAGIC);
         }
         catch ( IOException e )
@@ -97,38 +93,50 @@ public class ZooKeeperLogParser
 
         while ( true )
         {
-            long crcValue;
-            byte[] bytes;
+            long    crcValue;
+            int     length;
             try
             {
-                crcValue = logStream.readLong("crcvalue");
-
-                bytes = logStream.readBuffer("txnEntry");
+                crcValue = logStream.readLong();
+                length = logStream.readInt();
+                if ( length > 0 )
+                {
+                    if ( length > MAX_RECORD_SIZE )
+                    {
+                        throw new IOException("Unreasonable length = " + length);
+                    }
+                    logStream.readFully(ensureBuffer(length), 0, length);
+                }
             }
             catch ( EOFException e )
             {
                 break;
             }
-            if ( bytes.length == 0 )
+            if ( length <= 0 )
             {
                 // Since we preallocate, we define EOF to be an
                 // empty transaction
                 break;
             }
 
-            Checksum crc = new Adler32();
-            crc.update(bytes, 0, bytes.length);
+            crc.reset();
+            crc.update(buffer, 0, length);
             if ( crcValue != crc.getValue() )
             {
                 throw new IOException("CRC doesn't match " + crcValue + " vs " + crc.getValue());
             }
 
-            InputArchive    iab = BinaryInputArchive.getArchive(new ByteArrayInputStream(bytes));
             TxnHeader       hdr = new TxnHeader();
+            Record          record = deserializeTxn(length, hdr);
 
-            Record          record = useOldDeserializeMethod ? (Record)deserializeTxnMethod.invoke(null, iab, hdr) : (Record)deserializeTxnMethod.invoke(null, bytes, hdr);
-
-            if ( logStream.readByte("EOR") != 'B' )
+            try
+            {
+                if ( logStream.readByte() != 'B' )
+                {
+                    break;  // partial transaction
+                }
+            }
+            catch ( EOFException e )
             {
                 break;  // partial transaction
             }
@@ -136,4 +144,117 @@ public class ZooKeeperLogParser
             receiver.receiveEntry(hdr, record);
         }
     }
+
+    private byte[] ensureBuffer(int length)
+    {
+        if ( length > buffer.length )
+        {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        return buffer;
+    }
+
+    private Record deserializeTxn(int length, TxnHeader hdr) throws IOException
+    {
+        recordStream.reset(buffer, length);
+        hdr.deserialize(recordArchive, "hdr");
+        recordStream.mark(length);
+
+        Record      txn;
+        switch ( hdr.getType() )
+        {
+            case ZooDefs.OpCode.createSession:
+            {
+                txn = new CreateSessionTxn();
+                break;
+            }
+
+            case ZooDefs.OpCode.closeSession:
+            {
+                return null;
+            }
+
+            case ZooDefs.OpCode.create:
+            {
+                txn = new CreateTxn();
+                break;
+            }
+
+            case ZooDefs.OpCode.delete:
+            {
+                txn = new DeleteTxn();
+                break;
+            }
+
+            case ZooDefs.OpCode.setData:
+            {
+                txn = new SetDataTxn();
+                break;
+            }
+
+            case ZooDefs.OpCode.setACL:
+            {
+                txn = new SetACLTxn();
+                break;
+            }
+
+            case ZooDefs.OpCode.error:
+            {
+                txn = new ErrorTxn();
+                break;
+            }
+
+            case ZooDefs.OpCode.multi:
+            {
+                txn = new MultiTxn();
+                break;
+            }
+
+            default:
+            {
+                throw new IOException("Unsupported Txn with type=" + hdr.getType());
+            }
+        }
+
+        try
+        {
+            txn.deserialize(recordArchive, "txn");
+        }
+        catch ( EOFException e )
+        {
+            if ( hdr.getType() != ZooDefs.OpCode.create )
+            {
+                throw e;
+            }
+
+            // logs written before 3.3 don't have the parent cversion
+            recordStream.reset();
+            CreateTxnV0     createV0 = new CreateTxnV0();
+            createV0.deserialize(recordArchive, "txn");
+
+            CreateTxn       create = (CreateTxn)txn;
+            create.setPath(createV0.getPath());
+            create.setData(createV0.getData());
+            create.setAcl(createV0.getAcl());
+            create.setEphemeral(createV0.getEphemeral());
+            create.setParentCVersion(-1);
+        }
+        return txn;
+    }
+
+    private static class RecordInputStream extends ByteArrayInputStream
+    {
+        RecordInputStream()
+        {
+            super(new byte[0]);
+        }
+
+        void reset(byte[] newBuffer, int length)
+        {
+            buf = newBuffer;
+            pos = 0;
+            mark = 0;
+            count = length;
+        }
+    }
 }
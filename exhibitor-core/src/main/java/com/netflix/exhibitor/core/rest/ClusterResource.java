@@ -16,9 +16,15 @@
 
 package com.netflix.exhibitor.core.rest;
 
+import com.netflix.exhibitor.core.ExhibitorArguments;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.activity.ActivityQueue;
+import com.netflix.exhibitor.core.activity.ActivityStats;
+import com.netflix.exhibitor.core.activity.LatencyHistogram;
 import com.netflix.exhibitor.core.activity.QueueGroups;
 import com.netflix.exhibitor.core.automanage.ClusterStatusTask;
 import com.netflix.exhibitor.core.automanage.RemoteInstanceRequest;
+import com.netflix.exhibitor.core.backup.PointInTimeRestore;
 import com.netflix.exhibitor.core.config.InstanceConfig;
 import com.netflix.exhibitor.core.config.IntConfigs;
 import com.netflix.exhibitor.core.config.StringConfigs;
@@ -36,7 +42,10 @@ import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.node.JsonNodeFactory;
 import org.codehaus.jackson.node.ObjectNode;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -46,6 +55,8 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.ContextResolver;
+import java.io.File;
+import java.io.IOException;
 import java.net.URLEncoder;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -235,6 +246,79 @@ public class ClusterResource
         return JsonUtil.writeValueAsString(log);
     }
 
+    @Path("log/since/{sequence}/{hostname}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String remoteGetLogSince(@Context UriInfo uriInfo, @PathParam("hostname") String hostname, final @PathParam("sequence") long sequence) throws Exception
+    {
+        return makeRemoteRequest
+            (
+                "getLogSince",
+                hostname,
+                true,
+                new Callable<String>()
+                {
+                    @Override
+                    public String call() throws Exception
+                    {
+                        return getLogSince(sequence);
+                    }
+                },
+                sequence
+            );
+    }
+
+    // incremental version of getLog() - only the lines added at or after the given sequence and the sequence for the next call
+    @Path("log/since/{sequence}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String getLogSince(@PathParam("sequence") long sequence) throws Exception
+    {
+        ActivityLog.Lines   lines = context.getExhibitor().getLog().getLinesSince("\t", sequence);
+
+        ObjectNode          node = JsonNodeFactory.instance.objectNode();
+        node.put("sequence", lines.getNextSequence());
+        node.put("truncated", lines.isTruncated());
+        node.put("natural", context.getExhibitor().getLogDirection() == ExhibitorArguments.LogDirection.NATURAL);
+
+        ArrayNode           linesNode = JsonNodeFactory.instance.arrayNode();
+        for ( String line : lines.getLines() )
+        {
+            linesNode.add(line);
+        }
+        node.put("lines", linesNode);
+
+        return JsonUtil.writeValueAsString(node);
+    }
+
+    @Path("activities")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String getActivityStats() throws Exception
+    {
+        ActivityQueue       activityQueue = context.getExhibitor().getActivityQueue();
+
+        ObjectNode          mainNode = JsonNodeFactory.instance.objectNode();
+        mainNode.put("slowActivityMs", activityQueue.getConfiguration().getSlowActivityMs());
+
+        ArrayNode           activitiesNode = JsonNodeFactory.instance.arrayNode();
+        for ( ActivityStats stats : activityQueue.getStats() )
+        {
+            ObjectNode      node = JsonNodeFactory.instance.objectNode();
+            node.put("name", stats.getName());
+            node.put("successes", stats.getSuccessCount());
+            node.put("failures", stats.getFailureCount());
+            node.put("errors", stats.getErrorCount());
+            node.put("slow", stats.getSlowCount());
+            node.put("queueWait", toNode(stats.getQueueWait()));
+            node.put("runTime", toNode(stats.getRunTime()));
+            activitiesNode.add(node);
+        }
+        mainNode.put("activities", activitiesNode);
+
+        return JsonUtil.writeValueAsString(mainNode);
+    }
+
     @Path("4ltr/{word}")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -289,6 +373,52 @@ public class ClusterResource
         return JsonUtil.writeValueAsString(result);
     }
 
+    @Path("restore")
+    @POST
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response restore(@FormParam("directory") String directory, @FormParam("zxid") String zxid, @FormParam("time") String time) throws Exception
+    {
+        if ( !context.getExhibitor().nodeMutationsAllowed() )
+        {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+
+        if ( (directory == null) || (directory.trim().length() == 0) )
+        {
+            return Response.ok(new Result("A destination directory is required", false)).build();
+        }
+        File        destination = new File(directory.trim());
+        String      destinationError = checkRestoreDestination(destination);
+        if ( destinationError != null )
+        {
+            return Response.ok(new Result(destinationError, false)).build();
+        }
+
+        long        targetZxid = PointInTimeRestore.LATEST;
+        long        targetTimeMs = PointInTimeRestore.LATEST;
+        try
+        {
+            if ( (zxid != null) && (zxid.trim().length() > 0) )
+            {
+                String      value = zxid.trim().toLowerCase();
+                targetZxid = Long.parseLong(value.startsWith("0x") ? value.substring(2) : value, 16);
+            }
+            if ( (time != null) && (time.trim().length() > 0) )
+            {
+                targetTimeMs = Long.parseLong(time.trim());
+            }
+        }
+        catch ( NumberFormatException e )
+        {
+            return Response.ok(new Result("Bad zxid (hex) or time (ms): " + e.getMessage(), false)).build();
+        }
+
+        context.getExhibitor().getLog().add(ActivityLog.Type.INFO, String.format("Restore request received. Directory [%s], zxid [%s], time [%s]", destination, zxid, time));
+        context.getExhibitor().getActivityQueue().add(QueueGroups.IO, new PointInTimeRestore(context.getExhibitor(), targetZxid, targetTimeMs, destination));
+        return Response.ok(new Result("OK", true)).build();
+    }
+
     @Path("set/{type}/{value}")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -391,6 +521,35 @@ public class ClusterResource
         return response.toString();
     }
 
+    private String checkRestoreDestination(File destination) throws IOException
+    {
+        if ( !destination.isAbsolute() )
+        {
+            return "The destination directory must be an absolute path: " + destination;
+        }
+
+        // never write into the directories of the running instance
+        InstanceConfig      config = context.getExhibitor().getConfigManager().getConfig();
+        File                canonicalDestination = destination.getCanonicalFile();
+        for ( StringConfigs liveDirectory : new StringConfigs[]{StringConfigs.ZOOKEEPER_DATA_DIRECTORY, StringConfigs.ZOOKEEPER_LOG_DIRECTORY} )
+        {
+            String          path = config.getString(liveDirectory);
+            if ( (path == null) || (path.trim().length() == 0) )
+            {
+                continue;
+            }
+            File            canonicalLive = new File(path.trim()).getCanonicalFile();
+            for ( File f = canonicalDestination; f != null; f = f.getParentFile() )
+            {
+                if ( f.equals(canonicalLive) )
+                {
+                    return "The destination directory must not be in the ZooKeeper data or log directory: " + destination;
+                }
+            }
+        }
+        return null;
+    }
+
     private String    makeRemoteRequest(String methodName, String hostname, boolean responseIsJson, Callable<String> proc, Object... values) throws Exception
     {
         String      remoteResponse;
@@ -436,4 +595,32 @@ public class ClusterResource
 
         return JsonUtil.writeValueAsString(node);
     }
+
+    private static ObjectNode toNode(LatencyHistogram histogram)
+    {
+        ObjectNode      node = JsonNodeFactory.instance.objectNode();
+        node.put("count", histogram.getCount());
+        node.put("totalMs", histogram.getTotalMs());
+        node.put("meanMs", histogram.getMeanMs());
+        node.put("maxMs", histogram.getMaxMs());
+        node.put("p50Ms", histogram.getPercentileMs(50));
+        node.put("p90Ms", histogram.getPercentileMs(90));
+        node.put("p99Ms", histogram.getPercentileMs(99));
+
+        ArrayNode       bucketsNode = JsonNodeFactory.instance.arrayNode();
+        long[]          bounds = histogram.getBucketBoundsMs();
+        long[]          counts = histogram.getBucketCounts();
+        for ( int i = 0; i < bounds.length; ++i )
+        {
+            ObjectNode  bucketNode = JsonNodeFactory.instance.objectNode();
+            if ( bounds[i] != Long.MAX_VALUE )
+            {
+                bucketNode.put("maxMs", bounds[i]);
+            }
+            bucketNode.put("count", counts[i]);
+            bucketsNode.add(bucketNode);
+        }
+        node.put("buckets", bucketsNode);
+        return node;
+    }
 }
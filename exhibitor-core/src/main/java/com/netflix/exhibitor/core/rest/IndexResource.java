@@ -16,6 +16,7 @@
 
 package com.netflix.exhibitor.core.rest;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
@@ -35,27 +36,37 @@ import com.netflix.exhibitor.core.index.IndexCache;
 import com.netflix.exhibitor.core.index.IndexList;
 import com.netflix.exhibitor.core.index.IndexMetaData;
 import com.netflix.exhibitor.core.index.IndexProcessorActivity;
+import com.netflix.exhibitor.core.index.LogAggregation;
 import com.netflix.exhibitor.core.index.LogSearch;
 import com.netflix.exhibitor.core.index.QueryBuilder;
 import com.netflix.exhibitor.core.index.SearchItem;
+import com.netflix.exhibitor.core.index.SearchPage;
 import org.apache.lucene.search.Query;
 import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.node.JsonNodeFactory;
 import org.codehaus.jackson.node.ObjectNode;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.ext.ContextResolver;
 import java.io.File;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -63,6 +74,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 @Path("exhibitor/v1/index")
 public class IndexResource
@@ -71,6 +83,9 @@ public class IndexResource
 
     private static final int        MAX_PATH = 50;
     private static final String     DATE_FORMAT_STR = "MM/dd/yyyy-HH:ss";
+    private static final int        DEFAULT_PAGE_SIZE = 100;
+    private static final int        EXPORT_PAGE_SIZE = 1000;
+    private static final String     NDJSON_MEDIA_TYPE = "application/x-ndjson";
 
     public IndexResource(@Context ContextResolver<UIContext> resolver)
     {
@@ -86,6 +101,15 @@ public class IndexResource
         return Response.ok(new Result("OK", true)).build();
     }
 
+    @Path("update-index")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response updateIndex() throws Exception
+    {
+        context.getExhibitor().getActivityQueue().add(QueueGroups.IO, new IndexProcessorActivity(context.getExhibitor(), true));
+        return Response.ok(new Result("OK", true)).build();
+    }
+
     @Path("{index-name}")
     @DELETE
     @Produces(MediaType.APPLICATION_JSON)
@@ -158,7 +182,7 @@ public class IndexResource
         }
         finally
         {
-            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch.getFile());
+            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch);
         }
 
         return Response.ok(result).build();
@@ -212,7 +236,7 @@ public class IndexResource
         }
         finally
         {
-            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch.getFile());
+            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch);
         }
 
         return node.toString();
@@ -276,7 +300,7 @@ public class IndexResource
         }
         finally
         {
-            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch.getFile());
+            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch);
         }
         return Response.ok(new Result("OK", true)).build();
     }
@@ -296,50 +320,254 @@ public class IndexResource
         SearchId    searchHandle;
         try
         {
-            boolean         hasTerms = false;
-            QueryBuilder    builder = QueryBuilder.builder();
-            if ( (request.getPathPrefix() != null) && (request.getPathPrefix().length() > 0) )
+            Query       query = buildQuery(request);
+            String      id = logSearch.cacheSearch(query, request.getReuseHandle(), request.getMaxResults());
+            searchHandle = new SearchId(id);
+        }
+        finally
+        {
+            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch);
+        }
+        return Response.ok(searchHandle).build();
+    }
+
+    @Path("search-page")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response searchPage(SearchRequest request, @QueryParam("cursor") String cursor, @QueryParam("pageSize") int pageSize) throws Exception
+    {
+        LogSearch   logSearch = getLogSearch(request.getIndexName());
+        if ( logSearch == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        ObjectNode          node;
+        try
+        {
+            SearchPage          page;
+            try
             {
-                hasTerms = true;
-                builder.pathPrefix(request.getPathPrefix());
+                page = logSearch.searchPage(buildQuery(request), cursor, (pageSize > 0) ? pageSize : DEFAULT_PAGE_SIZE);
             }
-            if ( request.getOperationType() >= 0 )
+            catch ( IllegalArgumentException e )
             {
-                hasTerms = true;
-                builder.operationType(request.getOperationType());
+                return Response.status(Response.Status.BAD_REQUEST).entity(new Result(e)).build();
             }
-            if ( (request.getFirstDate() != null) && (request.getSecondDate() != null) )
+
+            DateFormat          dateFormatter = new SimpleDateFormat(DATE_FORMAT_STR);
+            ArrayNode           items = JsonNodeFactory.instance.arrayNode();
+            for ( int docId : page.getDocIds() )
+            {
+                SearchItem      item = logSearch.toResult(docId);
+                ObjectNode      data = JsonNodeFactory.instance.objectNode();
+                data.put("docId", docId);
+                data.put("type", getTypeName(EntryTypes.getFromId(item.getType())));
+                data.put("date", dateFormatter.format(item.getDate()));
+                data.put("path", item.getPath());
+                items.add(data);
+            }
+
+            node = JsonNodeFactory.instance.objectNode();
+            node.put("items", items);
+            node.put("nextCursor", page.getNextCursor());
+            node.put("remainingHits", page.getRemainingHits());
+        }
+        finally
+        {
+            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch);
+        }
+
+        return Response.ok(node.toString()).build();
+    }
+
+    @Path("export")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(NDJSON_MEDIA_TYPE)
+    public Response export(SearchRequest request, @QueryParam("includeData") boolean includeData) throws Exception
+    {
+        final Query         query = buildQuery(request);
+        final File          indexFile = getLogFile(request.getIndexName());
+        if ( indexFile == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        final boolean           localIncludeData = includeData;
+        StreamingOutput         output = new StreamingOutput()
+        {
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException
             {
-                hasTerms = true;
-                Date        startDate;
-                Date        endDate;
-                if ( request.getFirstDate().before(request.getSecondDate()) )
+                // the log search is acquired here (not when the response is built) so that it is always released -
+                // write() isn't called at all if the client goes away before the entity is written
+                LogSearch   logSearch;
+                try
+                {
+                    logSearch = context.getExhibitor().getIndexCache().getLogSearch(indexFile);
+                }
+                catch ( Exception e )
                 {
-                    startDate = request.getFirstDate();
-                    endDate = request.getSecondDate();
+                    throw new IOException(e);
                 }
-                else
+                if ( logSearch == null )
                 {
-                    startDate = request.getSecondDate();
-                    endDate = request.getFirstDate();
+                    throw new WebApplicationException(Response.Status.NOT_FOUND);
+                }
+
+                try
+                {
+                    Writer              writer = new BufferedWriter(new OutputStreamWriter(out, Charsets.UTF_8));
+                    String              cursor = null;
+                    do
+                    {
+                        SearchPage      page = logSearch.searchPage(query, cursor, EXPORT_PAGE_SIZE, false);
+                        for ( int docId : page.getDocIds() )
+                        {
+                            SearchItem      item = logSearch.toResult(docId);
+                            ObjectNode      data = JsonNodeFactory.instance.objectNode();
+                            data.put("docId", docId);
+                            data.put("type", getTypeName(EntryTypes.getFromId(item.getType())));
+                            data.put("date", item.getDate().getTime());
+                            data.put("path", item.getPath());
+                            data.put("version", item.getVersion());
+                            if ( localIncludeData )
+                            {
+                                byte[]      bytes = logSearch.toData(docId);
+                                data.put("data", (bytes != null) ? bytes : new byte[0]);
+                            }
+                            writer.write(data.toString());
+                            writer.write('\n');
+                        }
+                        cursor = page.getNextCursor();
+                    } while ( cursor != null );
+
+                    writer.flush();
+                }
+                finally
+                {
+                    context.getExhibitor().getIndexCache().releaseLogSearch(logSearch);
                 }
-                Calendar      endOfDayEndDate = Calendar.getInstance();
-                endOfDayEndDate.setTime(endDate);
-                endOfDayEndDate.set(Calendar.HOUR_OF_DAY, 23);
-                endOfDayEndDate.set(Calendar.MINUTE, 59);
-                endOfDayEndDate.set(Calendar.SECOND, 59);
-                endDate = endOfDayEndDate.getTime();
-                builder.dateRange(startDate, endDate);
             }
-            Query       query = hasTerms ? builder.build(QueryBuilder.Type.AND) : null;
-            String      id = logSearch.cacheSearch(query, request.getReuseHandle(), request.getMaxResults());
-            searchHandle = new SearchId(id);
+        };
+        return Response.ok(output).build();
+    }
+
+    @Path("aggregate")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response aggregate
+        (
+            SearchRequest request,
+            @QueryParam("topN") @DefaultValue("20") int topN,
+            @QueryParam("intervalMs") @DefaultValue("60000") long intervalMs,
+            @QueryParam("prefixDepth") @DefaultValue("2") int prefixDepth
+        ) throws Exception
+    {
+        if ( (topN < 0) || (intervalMs <= 0) || (prefixDepth < 0) )
+        {
+            return Response.status(Response.Status.BAD_REQUEST).entity(new Result("topN and prefixDepth cannot be negative and intervalMs must be positive", false)).build();
+        }
+
+        Query       query = buildQuery(request);
+        LogSearch   logSearch = getLogSearch(request.getIndexName());
+        if ( logSearch == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        LogAggregation      aggregation;
+        try
+        {
+            aggregation = logSearch.aggregate(query, topN, intervalMs, prefixDepth);
         }
         finally
         {
-            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch.getFile());
+            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch);
         }
-        return Response.ok(searchHandle).build();
+
+        ArrayNode           topPaths = JsonNodeFactory.instance.arrayNode();
+        for ( Map.Entry<String, Long> entry : aggregation.getTopPaths().entrySet() )
+        {
+            ObjectNode      node = topPaths.addObject();
+            node.put("path", entry.getKey());
+            node.put("count", entry.getValue());
+        }
+
+        ArrayNode           histogram = JsonNodeFactory.instance.arrayNode();
+        for ( Map.Entry<Long, Long> entry : aggregation.getWritesPerInterval().entrySet() )
+        {
+            ObjectNode      node = histogram.addObject();
+            node.put("time", entry.getKey());
+            node.put("count", entry.getValue());
+        }
+
+        ArrayNode           ephemeralChurn = JsonNodeFactory.instance.arrayNode();
+        for ( Map.Entry<String, Long> entry : aggregation.getEphemeralChurn().entrySet() )
+        {
+            ObjectNode      node = ephemeralChurn.addObject();
+            node.put("prefix", entry.getKey());
+            node.put("count", entry.getValue());
+        }
+
+        ArrayNode           bytesBySubtree = JsonNodeFactory.instance.arrayNode();
+        for ( Map.Entry<String, Long> entry : aggregation.getBytesBySubtree().entrySet() )
+        {
+            ObjectNode      node = bytesBySubtree.addObject();
+            node.put("prefix", entry.getKey());
+            node.put("bytes", entry.getValue());
+        }
+
+        ObjectNode          mainNode = JsonNodeFactory.instance.objectNode();
+        mainNode.put("documentCount", aggregation.getDocumentCount());
+        mainNode.put("topPaths", topPaths);
+        mainNode.put("writesPerInterval", histogram);
+        mainNode.put("ephemeralChurn", ephemeralChurn);
+        mainNode.put("bytesBySubtree", bytesBySubtree);
+        return Response.ok(mainNode.toString()).build();
+    }
+
+    private Query buildQuery(SearchRequest request)
+    {
+        boolean         hasTerms = false;
+        QueryBuilder    builder = QueryBuilder.builder();
+        if ( (request.getPathPrefix() != null) && (request.getPathPrefix().length() > 0) )
+        {
+            hasTerms = true;
+            builder.pathPrefix(request.getPathPrefix());
+        }
+        if ( request.getOperationType() >= 0 )
+        {
+            hasTerms = true;
+            builder.operationType(request.getOperationType());
+        }
+        if ( (request.getFirstDate() != null) && (request.getSecondDate() != null) )
+        {
+            hasTerms = true;
+            Date        startDate;
+            Date        endDate;
+            if ( request.getFirstDate().before(request.getSecondDate()) )
+            {
+                startDate = request.getFirstDate();
+                endDate = request.getSecondDate();
+            }
+            else
+            {
+                startDate = request.getSecondDate();
+                endDate = request.getFirstDate();
+            }
+            Calendar      endOfDayEndDate = Calendar.getInstance();
+            endOfDayEndDate.setTime(endDate);
+            endOfDayEndDate.set(Calendar.HOUR_OF_DAY, 23);
+            endOfDayEndDate.set(Calendar.MINUTE, 59);
+            endOfDayEndDate.set(Calendar.SECOND, 59);
+            endDate = endOfDayEndDate.getTime();
+            builder.dateRange(startDate, endDate);
+        }
+        return hasTerms ? builder.build(QueryBuilder.Type.AND) : null;
     }
 
     private String trimPath(String path)
@@ -19,10 +19,13 @@ package com.netflix.exhibitor.core.state;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.Activity;
 import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.activity.ActivityPriority;
 import com.netflix.exhibitor.core.activity.OnOffRepeatingActivity;
 import com.netflix.exhibitor.core.activity.QueueGroups;
+import com.netflix.exhibitor.core.activity.QueuedActivity;
 import com.netflix.exhibitor.core.activity.RepeatingActivity;
 import com.netflix.exhibitor.core.activity.RepeatingActivityImpl;
+import com.netflix.exhibitor.core.activity.RepeatingSchedule;
 import com.netflix.exhibitor.core.config.ConfigListener;
 import com.netflix.exhibitor.core.config.IntConfigs;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelTypes;
@@ -69,7 +72,7 @@ public class CleanupManager implements Closeable
                 @Override
                 public RepeatingActivity newRepeatingActivity(long timePeriodMs)
                 {
-                    return new RepeatingActivityImpl(exhibitor.getLog(), exhibitor.getActivityQueue(), QueueGroups.IO, activity, exhibitor.getConfigManager().getConfig().getInt(IntConfigs.CLEANUP_PERIOD_MS));
+                    return new RepeatingActivityImpl(exhibitor.getLog(), exhibitor.getActivityQueue(), QueueGroups.IO, activity, exhibitor.getConfigManager().getConfig().getInt(IntConfigs.CLEANUP_PERIOD_MS), ActivityPriority.LOW, QueuedActivity.DATA_DIRECTORY_KEY, RepeatingSchedule.fixedDelay(0.1));
                 }
             },
             exhibitor.getConfigManager().getConfig().getInt(IntConfigs.CLEANUP_PERIOD_MS)
@@ -17,10 +17,11 @@
 package com.netflix.exhibitor.core.state;
 
 import com.netflix.exhibitor.core.Exhibitor;
-import com.netflix.exhibitor.core.activity.Activity;
 import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.activity.ActivityPriority;
+import com.netflix.exhibitor.core.activity.QueuedActivity;
 
-public class KillRunningInstance implements Activity
+public class KillRunningInstance implements QueuedActivity
 {
     private final Exhibitor exhibitor;
     private final boolean restart;
@@ -31,6 +32,24 @@ public class KillRunningInstance implements Activity
         this.restart = restart;
     }
 
+    @Override
+    public String getName()
+    {
+        return "KillRunningInstance";
+    }
+
+    @Override
+    public ActivityPriority getPriority()
+    {
+        return ActivityPriority.HIGH;
+    }
+
+    @Override
+    public String getSerializationKey()
+    {
+        return INSTANCE_KEY;
+    }
+
     @Override
     public void completed(boolean wasSuccessful)
     {
@@ -17,10 +17,11 @@
 package com.netflix.exhibitor.core.state;
 
 import com.netflix.exhibitor.core.Exhibitor;
-import com.netflix.exhibitor.core.activity.Activity;
 import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.activity.ActivityPriority;
+import com.netflix.exhibitor.core.activity.QueuedActivity;
 
-public class StartInstance implements Activity
+public class StartInstance implements QueuedActivity
 {
     private final Exhibitor exhibitor;
 
@@ -29,6 +30,24 @@ public class StartInstance implements Activity
         this.exhibitor = exhibitor;
     }
 
+    @Override
+    public String getName()
+    {
+        return "StartInstance";
+    }
+
+    @Override
+    public ActivityPriority getPriority()
+    {
+        return ActivityPriority.HIGH;
+    }
+
+    @Override
+    public String getSerializationKey()
+    {
+        return INSTANCE_KEY;
+    }
+
     @Override
     public void completed(boolean wasSuccessful)
     {
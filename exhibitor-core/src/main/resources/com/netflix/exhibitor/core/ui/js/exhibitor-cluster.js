@@ -8,6 +8,8 @@ var STATE_DOWN = 1;
 var STATE_NOT_SERVING = 2;
 var STATE_SERVING = 3;
 
+var MAX_LOG_DIALOG_LINES = 10000;
+
 function makeServersList()
 {
     var serverList = new Array();
@@ -183,9 +185,24 @@ function logDialog(hostname)
     return function() {
         $('#log-text').text("Loading...");
 
+        // only fetch the lines added since the last refresh
+        var logLines = [];
+        var logSequence = 0;
         function getLog() {
-            makeRemoteCall(URL_CLUSTER_LOG_BASE, hostname, function(text){
-                $('#log-text').text(text);
+            makeRemoteCall(URL_CLUSTER_LOG_SINCE_BASE + logSequence + "/", hostname, function(data){
+                if ( data.truncated )
+                {
+                    logLines = [];
+                }
+                logLines = logLines.concat(data.lines);
+                if ( logLines.length > MAX_LOG_DIALOG_LINES )
+                {
+                    logLines = logLines.slice(logLines.length - MAX_LOG_DIALOG_LINES);
+                }
+                logSequence = data.sequence;
+
+                var displayLines = data.natural ? logLines : logLines.slice(0).reverse();
+                $('#log-text').text(displayLines.join("\n"));
             });
         }
         getLog();
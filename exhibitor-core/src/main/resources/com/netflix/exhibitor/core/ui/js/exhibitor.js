@@ -12,6 +12,7 @@ var URL_CACHE_INDEX_SEARCH = "../index/cache-search";
 var URL_RELEASE_CACHE_INDEX_SEARCH_BASE = "../index/release-cache/";
 
 var URL_CLUSTER_LOG_BASE = "../cluster/log/";
+var URL_CLUSTER_LOG_SINCE_BASE = "../cluster/log/since/";
 var URL_CLUSTER_RESTART_BASE = "../cluster/restart/";
 var URL_CLUSTER_START_BASE = "../cluster/start/";
 var URL_CLUSTER_STOP_BASE = "../cluster/stop/";
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.activity;
+
+import com.netflix.exhibitor.core.ExhibitorArguments;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class TestActivityLog
+{
+    @Test
+    public void testWindow()
+    {
+        ActivityLog     log = new ActivityLog(3);   // "Exhibitor started" is the first line
+        log.add(ActivityLog.Type.INFO, "one");
+        log.add(ActivityLog.Type.INFO, "two");
+        log.add(ActivityLog.Type.INFO, "three");
+
+        List<String>    lines = log.toDisplayList("|", ExhibitorArguments.LogDirection.NATURAL);
+        Assert.assertEquals(lines.size(), 3);
+        Assert.assertTrue(lines.get(0).endsWith("|INFO|one"));
+        Assert.assertTrue(lines.get(2).endsWith("|INFO|three"));
+
+        lines = log.toDisplayList("|", ExhibitorArguments.LogDirection.INVERTED);
+        Assert.assertTrue(lines.get(0).endsWith("|INFO|three"));
+    }
+
+    @Test
+    public void testSince()
+    {
+        ActivityLog         log = new ActivityLog(10);
+        ActivityLog.Lines   lines = log.getLinesSince("|", 0);
+        Assert.assertEquals(lines.getLines().size(), 1);
+        Assert.assertFalse(lines.isTruncated());
+        Assert.assertEquals(lines.getNextSequence(), 1);
+
+        log.add(ActivityLog.Type.INFO, "one");
+        log.add(ActivityLog.Type.INFO, "two");
+        lines = log.getLinesSince("|", lines.getNextSequence());
+        Assert.assertEquals(lines.getLines().size(), 2);
+        Assert.assertTrue(lines.getLines().get(0).endsWith("|INFO|one"));
+        Assert.assertTrue(lines.getLines().get(1).endsWith("|INFO|two"));
+        Assert.assertEquals(lines.getNextSequence(), 3);
+
+        lines = log.getLinesSince("|", lines.getNextSequence());
+        Assert.assertEquals(lines.getLines().size(), 0);
+        Assert.assertEquals(lines.getNextSequence(), 3);
+        Assert.assertFalse(lines.isTruncated());
+    }
+
+    @Test
+    public void testTruncated()
+    {
+        ActivityLog         log = new ActivityLog(5);
+        long                sequence = log.getNextSequence();
+        for ( int i = 0; i < 20; ++i )
+        {
+            log.add(ActivityLog.Type.INFO, Integer.toString(i));
+        }
+
+        ActivityLog.Lines   lines = log.getLinesSince("|", sequence);
+        Assert.assertTrue(lines.isTruncated());
+        Assert.assertEquals(lines.getLines().size(), 5);
+        Assert.assertTrue(lines.getLines().get(0).endsWith("|INFO|15"));
+        Assert.assertEquals(lines.getNextSequence(), log.getNextSequence());
+
+        // a sequence from a previous run of the process
+        lines = log.getLinesSince("|", 1000);
+        Assert.assertTrue(lines.isTruncated());
+        Assert.assertEquals(lines.getLines().size(), 5);
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception
+    {
+        final int                   threadQty = 8;
+        final int                   qtyPerThread = 10000;
+        final ActivityLog           log = new ActivityLog(100);
+        final CountDownLatch        startLatch = new CountDownLatch(1);
+        Thread[]                    threads = new Thread[threadQty];
+        for ( int i = 0; i < threadQty; ++i )
+        {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        startLatch.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+                    for ( int j = 0; j < qtyPerThread; ++j )
+                    {
+                        log.add(ActivityLog.Type.INFO, Integer.toString(j));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        startLatch.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        // every slot holds the newest message for it - an older message never replaces a newer one
+        ActivityLog.Lines   lines = log.getLinesSince("|", log.getNextSequence() - 100);
+        Assert.assertFalse(lines.isTruncated());
+        Assert.assertEquals(lines.getLines().size(), 100);
+        Assert.assertEquals(lines.getNextSequence(), (threadQty * qtyPerThread) + 1);
+    }
+}
@@ -17,9 +17,12 @@
 package com.netflix.exhibitor.core.activity;
 
 import com.google.common.collect.Lists;
+import com.netflix.exhibitor.core.ActivityQueueConfiguration;
 import org.apache.curator.utils.CloseableUtils;
 import org.testng.Assert;
 import org.testng.annotations.Test;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -294,4 +297,430 @@ public class TestActivityQueue
             CloseableUtils.closeQuietly(queue);
         }
     }
+
+    @Test
+    public void testPriority() throws Exception
+    {
+        ActivityQueue queue = new ActivityQueue();
+        queue.start();
+        try
+        {
+            final CountDownLatch    blockLatch = new CountDownLatch(1);
+            final CountDownLatch    doneLatch = new CountDownLatch(3);
+            final List<String>      order = Collections.synchronizedList(Lists.<String>newArrayList());
+            queue.add(QueueGroups.MAIN, new TestActivity("block", ActivityPriority.NORMAL, null, order, blockLatch, doneLatch));
+            for ( int i = 0; order.isEmpty() && (i < 500); ++i )
+            {
+                Thread.sleep(10);   // wait for the blocker to be running
+            }
+            queue.add(QueueGroups.MAIN, new TestActivity("low", ActivityPriority.LOW, null, order, null, doneLatch));
+            queue.add(QueueGroups.MAIN, new TestActivity("high", ActivityPriority.HIGH, null, order, null, doneLatch));
+            Thread.sleep(100);
+            blockLatch.countDown();
+
+            Assert.assertTrue(doneLatch.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(order, Arrays.asList("block", "high", "low"));
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(queue);
+        }
+    }
+
+    @Test
+    public void testKeyedSerialization() throws Exception
+    {
+        ActivityQueue queue = new ActivityQueue(new ActivityQueueConfiguration(1, 4));
+        queue.start();
+        try
+        {
+            final AtomicInteger     concurrent = new AtomicInteger(0);
+            final AtomicInteger     maxSameKey = new AtomicInteger(0);
+            final AtomicInteger     maxTotal = new AtomicInteger(0);
+            final AtomicInteger     keyedConcurrent = new AtomicInteger(0);
+            final CountDownLatch    latch = new CountDownLatch(8);
+            for ( int i = 0; i < 8; ++i )
+            {
+                final boolean   keyed = (i % 2) == 0;
+                queue.add
+                (
+                    QueueGroups.IO,
+                    new TestActivity("test", ActivityPriority.NORMAL, keyed ? "key" : null, null, null, null)
+                    {
+                        @Override
+                        public Boolean call() throws Exception
+                        {
+                            int     total = concurrent.incrementAndGet();
+                            int     sameKey = keyed ? keyedConcurrent.incrementAndGet() : 0;
+                            maxTotal.set(Math.max(maxTotal.get(), total));
+                            maxSameKey.set(Math.max(maxSameKey.get(), sameKey));
+                            Thread.sleep(200);
+                            if ( keyed )
+                            {
+                                keyedConcurrent.decrementAndGet();
+                            }
+                            concurrent.decrementAndGet();
+                            latch.countDown();
+                            return true;
+                        }
+                    }
+                );
+            }
+
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(maxSameKey.get(), 1);
+            Assert.assertTrue(maxTotal.get() > 1, "maxTotal: " + maxTotal.get());
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(queue);
+        }
+    }
+
+    @Test
+    public void testStats() throws Exception
+    {
+        ActivityQueue queue = new ActivityQueue();
+        queue.start();
+        try
+        {
+            CountDownLatch      latch = new CountDownLatch(2);
+            queue.add(QueueGroups.IO, new TestActivity("stats", ActivityPriority.NORMAL, null, null, null, latch));
+            queue.add(QueueGroups.IO, new TestActivity("stats", ActivityPriority.NORMAL, null, null, null, latch));
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            ActivityStats       stats = null;
+            for ( int i = 0; (stats == null) && (i < 50); ++i )
+            {
+                for ( ActivityStats activityStats : queue.getStats() )
+                {
+                    if ( activityStats.getName().equals("stats") && (activityStats.getRunTime().getCount() == 2) )
+                    {
+                        stats = activityStats;
+                    }
+                }
+                Thread.sleep(10);
+            }
+            Assert.assertNotNull(stats);
+            Assert.assertEquals(stats.getQueueWait().getCount(), 2);
+            Assert.assertEquals(stats.getSuccessCount(), 2);
+            Assert.assertEquals(stats.getFailureCount(), 0);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(queue);
+        }
+    }
+
+    @Test
+    public void testOutcomesAndSlowActivities() throws Exception
+    {
+        final List<ActivityStats>   addedStats = Lists.newCopyOnWriteArrayList();
+        ActivityQueue               queue = new ActivityQueue(new ActivityQueueConfiguration(1, 1, 100));
+        queue.addStatsListener
+        (
+            new ActivityStatsListener()
+            {
+                @Override
+                public void statsAdded(ActivityStats stats)
+                {
+                    addedStats.add(stats);
+                }
+            }
+        );
+        queue.start();
+        try
+        {
+            final AtomicInteger     count = new AtomicInteger();
+            final CountDownLatch    latch = new CountDownLatch(2);
+            Activity                activity = new QueuedActivity()
+            {
+                @Override
+                public String getName()
+                {
+                    return "outcomes";
+                }
+
+                @Override
+                public ActivityPriority getPriority()
+                {
+                    return null;
+                }
+
+                @Override
+                public String getSerializationKey()
+                {
+                    return null;
+                }
+
+                @Override
+                public void completed(boolean wasSuccessful)
+                {
+                    latch.countDown();
+                }
+
+                @Override
+                public Boolean call() throws Exception
+                {
+                    if ( count.incrementAndGet() == 1 )
+                    {
+                        Thread.sleep(500);
+                        return false;
+                    }
+                    latch.countDown();
+                    throw new Exception("test");
+                }
+            };
+            queue.add(QueueGroups.MAIN, activity);
+            queue.add(QueueGroups.MAIN, activity);
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            Assert.assertEquals(addedStats.size(), 1);
+            ActivityStats   stats = addedStats.get(0);
+            for ( int i = 0; (stats.getRunTime().getCount() < 2) && (i < 50); ++i )
+            {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(stats.getName(), "outcomes");
+            Assert.assertEquals(stats.getSuccessCount(), 0);
+            Assert.assertEquals(stats.getFailureCount(), 1);
+            Assert.assertEquals(stats.getErrorCount(), 1);
+            Assert.assertEquals(stats.getSlowCount(), 1);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(queue);
+        }
+    }
+
+    @Test
+    public void testHistogram()
+    {
+        LatencyHistogram    histogram = new LatencyHistogram();
+        for ( int i = 1; i <= 100; ++i )
+        {
+            histogram.record(i);
+        }
+        Assert.assertEquals(histogram.getCount(), 100);
+        Assert.assertEquals(histogram.getMaxMs(), 100);
+        Assert.assertEquals(histogram.getMeanMs(), 50);
+        Assert.assertEquals(histogram.getPercentileMs(50), 50);
+        Assert.assertEquals(histogram.getPercentileMs(99), 100);
+        Assert.assertEquals(histogram.getPercentileMs(100), 100);
+    }
+
+    @Test
+    public void testFixedRate() throws Exception
+    {
+        final int PERIOD = 500;
+        final int RUN_TIME = 300;
+
+        RepeatingActivity       repeating = null;
+        ActivityQueue           queue = new ActivityQueue();
+        queue.start();
+        try
+        {
+            final List<Long>        times = Collections.synchronizedList(Lists.<Long>newArrayList());
+            final CountDownLatch    latch = new CountDownLatch(4);
+            Activity                activity = new Activity()
+            {
+                @Override
+                public void completed(boolean wasSuccessful)
+                {
+                }
+
+                @Override
+                public Boolean call() throws Exception
+                {
+                    times.add(System.currentTimeMillis());
+                    latch.countDown();
+                    Thread.sleep(RUN_TIME);
+                    return true;
+                }
+            };
+            repeating = new RepeatingActivityImpl(null, queue, QueueGroups.MAIN, activity, PERIOD, ActivityPriority.NORMAL, null, RepeatingSchedule.fixedRate(0));
+            repeating.start();
+
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            repeating.close();
+
+            // run time must not be added to the period. The starts are compared with the fixed-rate timeline instead of
+            // with each other so that one late start (e.g. on a loaded machine) doesn't fail the test. The timeline starts
+            // at the least late run. If the run time were added to the period the last start would be 3 * RUN_TIME behind.
+            long        origin = Long.MAX_VALUE;
+            for ( int i = 0; i < 4; ++i )
+            {
+                origin = Math.min(origin, times.get(i) - (i * PERIOD));
+            }
+            for ( int i = 0; i < 4; ++i )
+            {
+                long    lateness = times.get(i) - (i * PERIOD) - origin;
+                Assert.assertTrue(lateness < (2 * RUN_TIME), "run " + i + " is behind the fixed-rate timeline by: " + lateness);
+            }
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(repeating);
+            CloseableUtils.closeQuietly(queue);
+        }
+    }
+
+    @Test
+    public void testJitter() throws Exception
+    {
+        final int PERIOD = 200;
+
+        try
+        {
+            RepeatingSchedule.fixedDelay(1);
+            Assert.fail();
+        }
+        catch ( IllegalArgumentException expected )
+        {
+            // expected
+        }
+
+        RepeatingActivity       repeating = null;
+        ActivityQueue           queue = new ActivityQueue();
+        queue.start();
+        try
+        {
+            final List<Long>        times = Collections.synchronizedList(Lists.<Long>newArrayList());
+            final CountDownLatch    latch = new CountDownLatch(10);
+            Activity                activity = new Activity()
+            {
+                @Override
+                public void completed(boolean wasSuccessful)
+                {
+                }
+
+                @Override
+                public Boolean call() throws Exception
+                {
+                    times.add(System.currentTimeMillis());
+                    latch.countDown();
+                    return true;
+                }
+            };
+            repeating = new RepeatingActivityImpl(null, queue, QueueGroups.MAIN, activity, PERIOD, ActivityPriority.NORMAL, null, RepeatingSchedule.fixedDelay(0.5));
+            repeating.start();
+
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            repeating.close();
+
+            for ( int i = 1; i < 10; ++i )
+            {
+                long elapsed = times.get(i) - times.get(i - 1);
+                Assert.assertTrue(elapsed >= ((PERIOD / 2) - (PERIOD / 10)), "elapsed: " + elapsed);
+                Assert.assertTrue(elapsed <= (PERIOD + (PERIOD / 2) + (PERIOD / 2)), "elapsed: " + elapsed);
+            }
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(repeating);
+            CloseableUtils.closeQuietly(queue);
+        }
+    }
+
+    @Test
+    public void testRemove() throws Exception
+    {
+        ActivityQueue queue = new ActivityQueue();
+        queue.start();
+        try
+        {
+            final AtomicInteger     count = new AtomicInteger();
+            Activity                activity = new Activity()
+            {
+                @Override
+                public void completed(boolean wasSuccessful)
+                {
+                }
+
+                @Override
+                public Boolean call() throws Exception
+                {
+                    count.incrementAndGet();
+                    return true;
+                }
+            };
+
+            // replacing cancels the pending runs
+            queue.add(QueueGroups.MAIN, activity, 200, TimeUnit.MILLISECONDS);
+            queue.add(QueueGroups.MAIN, activity, 300, TimeUnit.MILLISECONDS);
+            queue.replace(QueueGroups.MAIN, activity, 400, TimeUnit.MILLISECONDS);
+            Thread.sleep(1000);
+            Assert.assertEquals(count.get(), 1);
+
+            queue.add(QueueGroups.MAIN, activity, 200, TimeUnit.MILLISECONDS);
+            queue.remove(QueueGroups.MAIN, activity);
+            Thread.sleep(500);
+            Assert.assertEquals(count.get(), 1);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(queue);
+        }
+    }
+
+    private static class TestActivity implements QueuedActivity
+    {
+        private final String name;
+        private final ActivityPriority priority;
+        private final String key;
+        private final List<String> order;
+        private final CountDownLatch waitLatch;
+        private final CountDownLatch doneLatch;
+
+        private TestActivity(String name, ActivityPriority priority, String key, List<String> order, CountDownLatch waitLatch, CountDownLatch doneLatch)
+        {
+            this.name = name;
+            this.priority = priority;
+            this.key = key;
+            this.order = order;
+            this.waitLatch = waitLatch;
+            this.doneLatch = doneLatch;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public ActivityPriority getPriority()
+        {
+            return priority;
+        }
+
+        @Override
+        public String getSerializationKey()
+        {
+            return key;
+        }
+
+        @Override
+        public void completed(boolean wasSuccessful)
+        {
+        }
+
+        @Override
+        public Boolean call() throws Exception
+        {
+            if ( order != null )
+            {
+                order.add(name);
+            }
+            if ( waitLatch != null )
+            {
+                waitLatch.await();
+            }
+            if ( doneLatch != null )
+            {
+                doneLatch.countDown();
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reports the compression ratio and throughput of each {@link BackupCodec}. Pass the paths of
+ * real ZooKeeper txn logs as arguments, e.g. <code>BackupCodecBenchmark /var/zookeeper/version-2/log.*</code>
+ */
+public class BackupCodecBenchmark
+{
+    private static final int ITERATIONS = 3;
+
+    public static void main(String[] args) throws Exception
+    {
+        if ( args.length == 0 )
+        {
+            System.err.println("Usage: BackupCodecBenchmark <txn log> [<txn log> ...]");
+            System.exit(1);
+        }
+
+        System.out.println(String.format("%-10s %10s %12s %14s %16s", "codec", "ratio", "size (MB)", "compress MB/s", "decompress MB/s"));
+        for ( BackupCodec codec : BackupCodec.values() )
+        {
+            long        rawBytes = 0;
+            long        compressedBytes = 0;
+            long        compressNanos = 0;
+            long        decompressNanos = 0;
+            for ( String path : args )
+            {
+                byte[]      data = Files.toByteArray(new File(path));
+                for ( int i = 0; i < ITERATIONS; ++i )
+                {
+                    long                    start = System.nanoTime();
+                    ByteArrayOutputStream   bytes = new ByteArrayOutputStream(data.length);
+                    OutputStream            out = codec.compress(bytes);
+                    out.write(data);
+                    out.close();
+                    compressNanos += System.nanoTime() - start;
+
+                    byte[]                  compressed = bytes.toByteArray();
+                    start = System.nanoTime();
+                    InputStream             in = BackupCodec.decompress(new ByteArrayInputStream(compressed));
+                    ByteStreams.copy(in, ByteStreams.nullOutputStream());
+                    decompressNanos += System.nanoTime() - start;
+
+                    rawBytes += data.length;
+                    compressedBytes += compressed.length;
+                }
+            }
+
+            double      rawMb = rawBytes / (1024.0 * 1024.0);
+            System.out.println(String.format("%-10s %10.2f %12.2f %14.1f %16.1f", codec.getName(), (double)rawBytes / Math.max(1, compressedBytes), rawMb / ITERATIONS, rawMb / (compressNanos / 1e9), rawMb / (decompressNanos / 1e9)));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.netflix.exhibitor.core.Exhibitor;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class TestBackupCatalog
+{
+    @Test
+    public void     testCaching() throws Exception
+    {
+        Map<String, String>     config = ImmutableMap.of("bucket-name", "one");
+        BackupMetaData          backup1 = new BackupMetaData("log.1", 1);
+        BackupMetaData          backup2 = new BackupMetaData("log.2", 2);
+
+        BackupProvider          provider = Mockito.mock(BackupProvider.class);
+        Mockito.when(provider.getAvailableBackups(Mockito.any(Exhibitor.class), Mockito.<Map<String, String>>any())).thenReturn(Lists.newArrayList(backup1));
+
+        BackupCatalog           catalog = new BackupCatalog(null, provider);
+        Assert.assertEquals(catalog.getBackups(config, 60000), Arrays.asList(backup1));
+        Assert.assertEquals(catalog.getBackups(config, 60000), Arrays.asList(backup1));
+        Mockito.verify(provider, Mockito.times(1)).getAvailableBackups(Mockito.any(Exhibitor.class), Mockito.<Map<String, String>>any());
+
+        // local updates are visible without listing again
+        catalog.added(backup2);
+        BackupMetaData          newBackup1 = new BackupMetaData("log.1", 10);
+        catalog.added(newBackup1);
+        List<BackupMetaData>    backups = catalog.getBackups(config, 60000);
+        Assert.assertEquals(backups, Arrays.asList(backup2, newBackup1));
+        catalog.removed(backup2);
+        Assert.assertEquals(catalog.getBackups(config, 60000), Arrays.asList(newBackup1));
+        Mockito.verify(provider, Mockito.times(1)).getAvailableBackups(Mockito.any(Exhibitor.class), Mockito.<Map<String, String>>any());
+
+        // a config change, expired TTL or invalidation lists again
+        catalog.getBackups(ImmutableMap.of("bucket-name", "two"), 60000);
+        Mockito.verify(provider, Mockito.times(2)).getAvailableBackups(Mockito.any(Exhibitor.class), Mockito.<Map<String, String>>any());
+        catalog.getBackups(ImmutableMap.of("bucket-name", "two"), 0);
+        Mockito.verify(provider, Mockito.times(3)).getAvailableBackups(Mockito.any(Exhibitor.class), Mockito.<Map<String, String>>any());
+        catalog.invalidate();
+        Assert.assertEquals(catalog.getBackups(ImmutableMap.of("bucket-name", "two"), 60000), Arrays.asList(backup1));
+        Mockito.verify(provider, Mockito.times(4)).getAvailableBackups(Mockito.any(Exhibitor.class), Mockito.<Map<String, String>>any());
+    }
+}
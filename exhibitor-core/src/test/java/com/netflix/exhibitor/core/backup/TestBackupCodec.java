@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.io.ByteStreams;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+public class TestBackupCodec
+{
+    @Test
+    public void     testRoundTrip() throws Exception
+    {
+        byte[]      data = makeData();
+        for ( BackupCodec codec : BackupCodec.values() )
+        {
+            byte[]      compressed = compress(codec, data);
+            if ( codec != BackupCodec.NONE )
+            {
+                Assert.assertTrue(compressed.length < data.length, codec.getName());
+            }
+
+            // decompression detects the codec
+            InputStream in = BackupCodec.decompress(new ByteArrayInputStream(compressed));
+            Assert.assertEquals(ByteStreams.toByteArray(in), data, codec.getName());
+        }
+    }
+
+    @Test
+    public void     testEmptyAndShort() throws Exception
+    {
+        Assert.assertEquals(ByteStreams.toByteArray(BackupCodec.decompress(new ByteArrayInputStream(new byte[0]))), new byte[0]);
+        Assert.assertEquals(ByteStreams.toByteArray(BackupCodec.decompress(new ByteArrayInputStream(new byte[]{0x1f}))), new byte[]{0x1f});
+
+        byte[]      compressed = compress(BackupCodec.LZ4, new byte[0]);
+        Assert.assertEquals(ByteStreams.toByteArray(BackupCodec.decompress(new ByteArrayInputStream(compressed))), new byte[0]);
+    }
+
+    @Test
+    public void     testFromName()
+    {
+        Assert.assertEquals(BackupCodec.fromName("lz4", BackupCodec.DEFAULT), BackupCodec.LZ4);
+        Assert.assertEquals(BackupCodec.fromName(" GZIP-FAST ", BackupCodec.DEFAULT), BackupCodec.GZIP_FAST);
+        Assert.assertEquals(BackupCodec.fromName("", BackupCodec.DEFAULT), BackupCodec.DEFAULT);
+        Assert.assertEquals(BackupCodec.fromName(null, BackupCodec.NONE), BackupCodec.NONE);
+        Assert.assertEquals(BackupCodec.fromName("bogus", BackupCodec.DEFAULT), BackupCodec.DEFAULT);
+    }
+
+    private static byte[] compress(BackupCodec codec, byte[] data) throws Exception
+    {
+        ByteArrayOutputStream   bytes = new ByteArrayOutputStream();
+        OutputStream            out = codec.compress(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] makeData()
+    {
+        // repetitive, like a txn log
+        Random                  random = new Random(1234);
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        for ( int i = 0; i < 10000; ++i )
+        {
+            byte[]      line = ("/exhibitor/path/" + random.nextInt(100) + " set data " + i + "\n").getBytes();
+            out.write(line, 0, line.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.netflix.exhibitor.core.Exhibitor;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+public class TestBackupDeleter
+{
+    private final Map<String, String> config = ImmutableMap.of();
+
+    @Test
+    public void     testParallelDelete() throws Exception
+    {
+        List<BackupMetaData>    backups = makeBackups(20);
+        BackupProvider          provider = makeProvider(backups);
+        BackupCatalog           catalog = new BackupCatalog(null, provider);
+        Assert.assertEquals(catalog.getBackups(config, 60000), backups);
+
+        List<BackupMetaData>    toDelete = backups.subList(0, 10);
+        new BackupDeleter(null, provider, catalog).delete(toDelete, config);
+        for ( BackupMetaData backup : toDelete )
+        {
+            Mockito.verify(provider).deleteBackup(Mockito.any(Exhibitor.class), Mockito.eq(backup), Mockito.<Map<String, String>>any());
+        }
+
+        // the catalog is updated without listing the store again
+        Assert.assertEquals(catalog.getBackups(config, 60000), backups.subList(10, 20));
+        Mockito.verify(provider, Mockito.times(1)).getAvailableBackups(Mockito.any(Exhibitor.class), Mockito.<Map<String, String>>any());
+    }
+
+    @Test
+    public void     testPartialFailure() throws Exception
+    {
+        List<BackupMetaData>    backups = makeBackups(20);
+        BackupProvider          provider = makeProvider(backups);
+        BackupMetaData          bad = backups.get(3);
+        Mockito.doThrow(new IOException("test")).when(provider).deleteBackup(Mockito.any(Exhibitor.class), Mockito.eq(bad), Mockito.<Map<String, String>>any());
+
+        BackupCatalog           catalog = new BackupCatalog(null, provider);
+        catalog.getBackups(config, 60000);
+
+        try
+        {
+            new BackupDeleter(null, provider, catalog).delete(backups, config);
+            Assert.fail("Delete should have failed");
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+
+        // the other deletes still ran
+        for ( BackupMetaData backup : backups )
+        {
+            Mockito.verify(provider).deleteBackup(Mockito.any(Exhibitor.class), Mockito.eq(backup), Mockito.<Map<String, String>>any());
+        }
+
+        // some of the backups were deleted so the catalog lists the store again
+        catalog.getBackups(config, 60000);
+        Mockito.verify(provider, Mockito.times(2)).getAvailableBackups(Mockito.any(Exhibitor.class), Mockito.<Map<String, String>>any());
+    }
+
+    private BackupProvider makeProvider(List<BackupMetaData> backups) throws Exception
+    {
+        BackupProvider          provider = Mockito.mock(BackupProvider.class);
+        Mockito.when(provider.getAvailableBackups(Mockito.any(Exhibitor.class), Mockito.<Map<String, String>>any())).thenReturn(backups);
+        return provider;
+    }
+
+    private static List<BackupMetaData> makeBackups(int qty)
+    {
+        List<BackupMetaData>    backups = Lists.newArrayList();
+        for ( int i = 0; i < qty; ++i )
+        {
+            backups.add(new BackupMetaData("log." + i, i));
+        }
+        return backups;
+    }
+}
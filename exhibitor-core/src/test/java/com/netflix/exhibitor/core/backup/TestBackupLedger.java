@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.controlpanel.FileBasedPreferences;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class TestBackupLedger
+{
+    @Test
+    public void testBasic() throws Exception
+    {
+        File        directory = Files.createTempDir();
+        File        preferencesFile = new File(directory, "prefs.properties");
+        File        log = new File(directory, "log.100000001");
+        try
+        {
+            Files.write(new byte[]{1, 2, 3}, log);
+
+            Map<String, String> config = ImmutableMap.of("bucket-name", "test");
+            BackupLedger        ledger = new BackupLedger(new FileBasedPreferences(preferencesFile));
+            ledger.checkConfig(config);
+            Assert.assertFalse(ledger.isBackedUp(log));
+
+            ledger.markBackedUp(log, log.lastModified(), log.length());
+            Assert.assertTrue(ledger.isBackedUp(log));
+
+            // survives a restart
+            ledger = new BackupLedger(new FileBasedPreferences(preferencesFile));
+            ledger.checkConfig(config);
+            Assert.assertTrue(ledger.isBackedUp(log));
+
+            // file changed
+            Files.append("more", log, Charsets.UTF_8);
+            Assert.assertFalse(ledger.isBackedUp(log));
+        }
+        finally
+        {
+            //noinspection ResultOfMethodCallIgnored
+            log.delete();
+            //noinspection ResultOfMethodCallIgnored
+            preferencesFile.delete();
+            //noinspection ResultOfMethodCallIgnored
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testReconcileAndConfigChange() throws Exception
+    {
+        File        directory = Files.createTempDir();
+        File        preferencesFile = new File(directory, "prefs.properties");
+        File        log1 = new File(directory, "log.100000001");
+        File        log2 = new File(directory, "log.100000002");
+        try
+        {
+            Files.write(new byte[]{1}, log1);
+            Files.write(new byte[]{2}, log2);
+
+            BackupLedger        ledger = new BackupLedger(new FileBasedPreferences(preferencesFile));
+            ledger.checkConfig(ImmutableMap.of("bucket-name", "one"));
+            ledger.markBackedUp(log1, log1.lastModified(), log1.length());
+            ledger.markBackedUp(log2, log2.lastModified(), log2.length());
+            Assert.assertEquals(ledger.size(), 2);
+
+            // log2's backup has been removed from the store
+            int removed = ledger.reconcile(Arrays.asList(new BackupMetaData(log1.getName(), log1.lastModified())));
+            Assert.assertEquals(removed, 1);
+            Assert.assertTrue(ledger.isBackedUp(log1));
+            Assert.assertFalse(ledger.isBackedUp(log2));
+
+            ledger.checkConfig(ImmutableMap.of("bucket-name", "one"));
+            Assert.assertTrue(ledger.isBackedUp(log1));
+
+            ledger.checkConfig(ImmutableMap.of("bucket-name", "two"));
+            Assert.assertFalse(ledger.isBackedUp(log1));
+            Assert.assertEquals(ledger.reconcile(Collections.<BackupMetaData>emptyList()), 0);
+        }
+        finally
+        {
+            //noinspection ResultOfMethodCallIgnored
+            log1.delete();
+            //noinspection ResultOfMethodCallIgnored
+            log2.delete();
+            //noinspection ResultOfMethodCallIgnored
+            preferencesFile.delete();
+            //noinspection ResultOfMethodCallIgnored
+            directory.delete();
+        }
+    }
+}
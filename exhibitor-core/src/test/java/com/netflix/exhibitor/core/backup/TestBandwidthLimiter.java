@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.io.ByteStreams;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+public class TestBandwidthLimiter
+{
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void     testUnlimited() throws Exception
+    {
+        BandwidthLimiter    limiter = new BandwidthLimiter(0);
+        Assert.assertEquals(limiter.reserve(Long.MAX_VALUE / 2, System.nanoTime()), 0);
+    }
+
+    @Test
+    public void     testDeficitIsRepaid() throws Exception
+    {
+        BandwidthLimiter    limiter = new BandwidthLimiter(1000);
+        long                now = System.nanoTime() + SECOND_NANOS;   // bucket fills to a full second's worth
+
+        Assert.assertEquals(limiter.reserve(1000, now), 0);
+        Assert.assertEquals(limiter.reserve(500, now), SECOND_NANOS / 2);
+
+        // a second caller queues up behind the first
+        Assert.assertEquals(limiter.reserve(500, now), SECOND_NANOS);
+
+        // after 1 second the deficit has been repaid
+        Assert.assertEquals(limiter.reserve(500, now + SECOND_NANOS), SECOND_NANOS / 2);
+    }
+
+    @Test
+    public void     testBurstIsCapped() throws Exception
+    {
+        BandwidthLimiter    limiter = new BandwidthLimiter(1000);
+        long                now = System.nanoTime() + (100 * SECOND_NANOS);   // idle for a long time
+
+        Assert.assertEquals(limiter.reserve(1000, now), 0);
+        Assert.assertTrue(limiter.reserve(1, now) > 0);
+    }
+
+    @Test
+    public void     testRateChange() throws Exception
+    {
+        BandwidthLimiter    limiter = new BandwidthLimiter(1000);
+        long                now = System.nanoTime() + SECOND_NANOS;
+        Assert.assertEquals(limiter.reserve(2000, now), SECOND_NANOS);
+
+        limiter.setRate(0);
+        Assert.assertEquals(limiter.reserve(1000000, now), 0);
+    }
+
+    @Test
+    public void     testStreams() throws Exception
+    {
+        BandwidthLimiter        limiter = new BandwidthLimiter(0);
+        byte[]                  data = new byte[10000];
+
+        ByteArrayOutputStream   bytes = new ByteArrayOutputStream();
+        OutputStream            out = limiter.limit(bytes);
+        out.write(data);
+        out.write(1);
+        Assert.assertEquals(bytes.size(), data.length + 1);
+
+        Assert.assertEquals(ByteStreams.toByteArray(limiter.limit(new ByteArrayInputStream(data))), data);
+        Assert.assertEquals(limiter.getAcquiredBytes(), (2 * data.length) + 1);
+        Assert.assertEquals(limiter.getThrottledCount(), 0);
+    }
+}
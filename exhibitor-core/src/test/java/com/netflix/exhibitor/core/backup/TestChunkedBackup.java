@@ -0,0 +1,346 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TestChunkedBackup
+{
+    private final Map<String, String> config = ImmutableMap.of();
+
+    private File directory;
+    private Exhibitor exhibitor;
+    private MemoryProvider provider;
+    private BackupCatalog catalog;
+    private BackupBandwidth bandwidth;
+
+    @BeforeMethod
+    public void     setup() throws Exception
+    {
+        directory = com.google.common.io.Files.createTempDir();
+        exhibitor = Mockito.mock(Exhibitor.class);
+        Mockito.when(exhibitor.getLog()).thenReturn(Mockito.mock(ActivityLog.class));
+        provider = new MemoryProvider();
+        catalog = new BackupCatalog(exhibitor, provider);
+        bandwidth = new BackupBandwidth();
+    }
+
+    @AfterMethod
+    public void     teardown() throws Exception
+    {
+        for ( File f : directory.listFiles() )
+        {
+            Assert.assertTrue(f.delete());
+        }
+        Assert.assertTrue(directory.delete());
+    }
+
+    @Test
+    public void     testUploadAndRestore() throws Exception
+    {
+        byte[]              data = makeData(1, 3 * ContentDefinedChunker.DEFAULT_AVERAGE_CHUNK_SIZE);
+        BackupMetaData      manifest = new BackupMetaData("log.1" + ChunkedBackup.MANIFEST_SUFFIX, 1000);
+        Assert.assertEquals(upload(data, manifest), BackupProvider.UploadResult.SUCCEEDED);
+
+        List<BackupMetaData>    chunks = provider.getChunks();
+        Assert.assertTrue(chunks.size() > 1);
+
+        // the manifest lists each chunk by name and version
+        List<String>        lines = readManifestLines(manifest);
+        Assert.assertEquals(lines.get(0), ChunkedBackup.MANIFEST_HEADER);
+        Assert.assertEquals(lines.size() - 1, chunks.size());
+        for ( String line : lines.subList(1, lines.size()) )
+        {
+            String[]        parts = line.split(" ");
+            Assert.assertTrue(chunks.contains(new BackupMetaData(parts[0], Long.parseLong(parts[1]))), line);
+        }
+
+        Assert.assertEquals(restore(manifest), data);
+
+        // uploading the same content again only writes a new manifest
+        BackupMetaData      manifest2 = new BackupMetaData("log.2" + ChunkedBackup.MANIFEST_SUFFIX, 2000);
+        Assert.assertEquals(upload(data, manifest2), BackupProvider.UploadResult.SUCCEEDED);
+        Assert.assertEquals(provider.getChunks(), chunks);
+        Assert.assertEquals(restore(manifest2), data);
+    }
+
+    @Test
+    public void     testGarbageCollection() throws Exception
+    {
+        long                old = System.currentTimeMillis() - (2 * ChunkedBackup.GARBAGE_MIN_AGE_MS);
+        BackupMetaData      referenced = new BackupMetaData(ChunkedBackup.CHUNK_PREFIX + "a", old);
+        BackupMetaData      oldVersion = new BackupMetaData(ChunkedBackup.CHUNK_PREFIX + "a", old - 1);
+        BackupMetaData      unreferenced = new BackupMetaData(ChunkedBackup.CHUNK_PREFIX + "b", old);
+        BackupMetaData      young = new BackupMetaData(ChunkedBackup.CHUNK_PREFIX + "c", System.currentTimeMillis());
+        BackupMetaData      manifest = new BackupMetaData("log.1" + ChunkedBackup.MANIFEST_SUFFIX, old);
+
+        provider.put(referenced, new byte[0]);
+        provider.put(oldVersion, new byte[0]);
+        provider.put(unreferenced, new byte[0]);
+        provider.put(young, new byte[0]);
+        provider.put(manifest, compress(ChunkedBackup.MANIFEST_HEADER + "\n" + referenced.getName() + " " + referenced.getModifiedDate() + "\n"));
+
+        List<BackupMetaData>    listing = provider.getAvailableBackups(exhibitor, config);
+        Assert.assertEquals(newChunkedBackup(listing).collectGarbage(listing), 2);
+        Assert.assertEquals(provider.getChunks(), Lists.newArrayList(referenced, young));
+
+        // nothing is deleted if a manifest can't be read
+        provider.put(new BackupMetaData("log.2" + ChunkedBackup.MANIFEST_SUFFIX, old), "garbage".getBytes(Charsets.UTF_8));
+        provider.put(unreferenced, new byte[0]);
+        listing = provider.getAvailableBackups(exhibitor, config);
+        Assert.assertEquals(newChunkedBackup(listing).collectGarbage(listing), 0);
+        Assert.assertEquals(provider.getChunks().size(), 3);
+    }
+
+    @Test
+    public void     testReusedChunksAreRefreshed() throws Exception
+    {
+        byte[]              data = makeData(2, 3 * ContentDefinedChunker.DEFAULT_AVERAGE_CHUNK_SIZE);
+        BackupMetaData      manifest = new BackupMetaData("log.1" + ChunkedBackup.MANIFEST_SUFFIX, 1000);
+        upload(data, manifest);
+
+        // the chunks are now old and their manifest has expired
+        provider.ageChunks(2 * ChunkedBackup.GARBAGE_MIN_AGE_MS);
+        provider.deleteBackup(exhibitor, manifest, config);
+        List<BackupMetaData>    oldChunks = provider.getChunks();
+        List<BackupMetaData>    staleListing = provider.getAvailableBackups(exhibitor, config);
+
+        // a new backup of the same content doesn't reuse the old chunks...
+        BackupMetaData      manifest2 = new BackupMetaData("log.2" + ChunkedBackup.MANIFEST_SUFFIX, 2000);
+        Assert.assertEquals(upload(data, manifest2), BackupProvider.UploadResult.SUCCEEDED);
+        Assert.assertEquals(provider.getChunks().size(), 2 * oldChunks.size());
+
+        // ...so a garbage collection working from a listing taken before the new manifest was written can't break it
+        Assert.assertEquals(newChunkedBackup(staleListing).collectGarbage(staleListing), oldChunks.size());
+        Assert.assertTrue(Collections.disjoint(provider.getChunks(), oldChunks));
+        Assert.assertEquals(restore(manifest2), data);
+
+        List<BackupMetaData>    listing = provider.getAvailableBackups(exhibitor, config);
+        Assert.assertEquals(newChunkedBackup(listing).collectGarbage(listing), 0);
+    }
+
+    @Test
+    public void     testUncompressedChunksThatLookCompressed() throws Exception
+    {
+        // chunks are cut at arbitrary points so uncompressed chunk data can start with a codec's magic bytes
+        byte[]      gzipMagic = new byte[]{0x1f, (byte)0x8b};
+        byte[]      lz4Magic = "LZ4Block".getBytes(Charsets.US_ASCII);
+        int         index = 0;
+        for ( byte[] magic : new byte[][]{gzipMagic, lz4Magic} )
+        {
+            byte[]              data = makeData(3 + index, 3 * ContentDefinedChunker.DEFAULT_AVERAGE_CHUNK_SIZE);
+            System.arraycopy(magic, 0, data, 0, magic.length);
+
+            BackupMetaData      manifest = new BackupMetaData("log." + (++index) + ChunkedBackup.MANIFEST_SUFFIX, 1000);
+            Assert.assertEquals(upload(data, manifest, BackupCodec.NONE), BackupProvider.UploadResult.SUCCEEDED);
+            Assert.assertEquals(restore(manifest), data);
+        }
+    }
+
+    private BackupProvider.UploadResult upload(byte[] data, BackupMetaData manifest) throws Exception
+    {
+        return upload(data, manifest, BackupCodec.DEFAULT);
+    }
+
+    private BackupProvider.UploadResult upload(byte[] data, BackupMetaData manifest, BackupCodec codec) throws Exception
+    {
+        File                source = new File(directory, manifest.getName());
+        com.google.common.io.Files.write(data, source);
+
+        List<BackupMetaData>    listing = provider.getAvailableBackups(exhibitor, config);
+        return newChunkedBackup(listing).upload(source, manifest, codec, listing);
+    }
+
+    private byte[] restore(BackupMetaData manifest) throws Exception
+    {
+        List<BackupMetaData>    listing = provider.getAvailableBackups(exhibitor, config);
+        InputStream             in = newChunkedBackup(listing).open(new ByteArrayInputStream(readManifest(manifest)));
+        try
+        {
+            return ByteStreams.toByteArray(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private List<String> readManifestLines(BackupMetaData manifest) throws Exception
+    {
+        BufferedReader      reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(readManifest(manifest)), Charsets.UTF_8));
+        List<String>        lines = Lists.newArrayList();
+        for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+        {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private byte[] readManifest(BackupMetaData manifest) throws Exception
+    {
+        BackupStream        stream = provider.getBackupStream(exhibitor, manifest, config);
+        Assert.assertNotNull(stream);
+        return ByteStreams.toByteArray(BackupCodec.decompress(stream.getStream()));
+    }
+
+    private ChunkedBackup newChunkedBackup(List<BackupMetaData> listing)
+    {
+        return new ChunkedBackup(exhibitor, provider, catalog, bandwidth, config, listing);
+    }
+
+    private static byte[] compress(String s) throws Exception
+    {
+        ByteArrayOutputStream   bytes = new ByteArrayOutputStream();
+        OutputStream            out = BackupCodec.DEFAULT.compress(bytes);
+        out.write(s.getBytes(Charsets.UTF_8));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] makeData(int seed, int size)
+    {
+        byte[]      data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static class MemoryProvider implements StreamingBackupProvider
+    {
+        private final Map<BackupMetaData, byte[]> store = Maps.newLinkedHashMap();
+
+        synchronized void put(BackupMetaData backup, byte[] bytes)
+        {
+            store.put(backup, bytes);
+        }
+
+        synchronized List<BackupMetaData> getChunks()
+        {
+            List<BackupMetaData>    chunks = Lists.newArrayList();
+            for ( BackupMetaData backup : store.keySet() )
+            {
+                if ( ChunkedBackup.isChunk(backup) )
+                {
+                    chunks.add(backup);
+                }
+            }
+            return chunks;
+        }
+
+        synchronized void ageChunks(long ms)
+        {
+            for ( BackupMetaData chunk : getChunks() )
+            {
+                store.put(new BackupMetaData(chunk.getName(), chunk.getModifiedDate() - ms), store.remove(chunk));
+            }
+        }
+
+        @Override
+        public synchronized UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData metaData, BackupWriter writer, List<BackupMetaData> availableBackups, Map<String, String> configValues) throws Exception
+        {
+            if ( store.containsKey(metaData) )
+            {
+                return UploadResult.DUPLICATE;
+            }
+            ByteArrayOutputStream   out = new ByteArrayOutputStream();
+            writer.write(out);
+            store.put(metaData, out.toByteArray());
+            return UploadResult.SUCCEEDED;
+        }
+
+        @Override
+        public synchronized List<BackupMetaData> getAvailableBackups(Exhibitor exhibitor, Map<String, String> configValues) throws Exception
+        {
+            return Lists.newArrayList(store.keySet());
+        }
+
+        @Override
+        public synchronized BackupStream getBackupStream(Exhibitor exhibitor, BackupMetaData metaData, Map<String, String> configValues) throws Exception
+        {
+            byte[]      bytes = store.get(metaData);
+            if ( bytes == null )
+            {
+                return null;
+            }
+            final InputStream   in = new ByteArrayInputStream(bytes);
+            return new BackupStream()
+            {
+                @Override
+                public InputStream getStream()
+                {
+                    return in;
+                }
+
+                @Override
+                public void close()
+                {
+                }
+            };
+        }
+
+        @Override
+        public synchronized void deleteBackup(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues) throws Exception
+        {
+            store.remove(backup);
+        }
+
+        @Override
+        public List<BackupConfigSpec> getConfigs()
+        {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public UploadResult uploadBackup(Exhibitor exhibitor, BackupMetaData metaData, File source, Map<String, String> configValues) throws Exception
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void downloadBackup(Exhibitor exhibitor, BackupMetaData backup, OutputStream destination, Map<String, String> configValues) throws Exception
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isValidConfig(Exhibitor exhibitor, Map<String, String> configValues)
+        {
+            return true;
+        }
+    }
+}
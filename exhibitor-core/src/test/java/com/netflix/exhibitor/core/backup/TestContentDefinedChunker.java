@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Random;
+
+public class TestContentDefinedChunker
+{
+    private static final int MIN_SIZE = 1024;
+    private static final int AVERAGE_SIZE = 4096;
+    private static final int MAX_SIZE = 16 * 1024;
+
+    @Test
+    public void     testReassembles() throws Exception
+    {
+        byte[]              data = makeData(1, 200 * 1024);
+        List<byte[]>        chunks = chunk(data);
+
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        for ( byte[] chunk : chunks )
+        {
+            Assert.assertTrue(chunk.length <= MAX_SIZE);
+            out.write(chunk);
+        }
+        Assert.assertEquals(out.toByteArray(), data);
+        Assert.assertTrue(chunks.size() > 1);
+    }
+
+    @Test
+    public void     testAppendKeepsEarlierChunks() throws Exception
+    {
+        byte[]              data = makeData(2, 200 * 1024);
+        byte[]              appended = new byte[data.length + 10000];
+        System.arraycopy(data, 0, appended, 0, data.length);
+        System.arraycopy(makeData(3, 10000), 0, appended, data.length, 10000);
+
+        List<String>        before = hashes(chunk(data));
+        List<String>        after = hashes(chunk(appended));
+
+        // only the last chunk of the original data may change
+        Assert.assertTrue(before.size() > 2);
+        Assert.assertEquals(after.subList(0, before.size() - 1), before.subList(0, before.size() - 1));
+    }
+
+    @Test
+    public void     testEmpty() throws Exception
+    {
+        Assert.assertEquals(chunk(new byte[0]).size(), 0);
+    }
+
+    private List<byte[]> chunk(byte[] data) throws Exception
+    {
+        ContentDefinedChunker   chunker = new ContentDefinedChunker(new ByteArrayInputStream(data), MIN_SIZE, AVERAGE_SIZE, MAX_SIZE);
+        List<byte[]>            chunks = Lists.newArrayList();
+        for ( byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next() )
+        {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private List<String> hashes(List<byte[]> chunks)
+    {
+        List<String>        hashes = Lists.newArrayList();
+        for ( byte[] chunk : chunks )
+        {
+            hashes.add(Hashing.sha256().hashBytes(chunk).toString());
+        }
+        return hashes;
+    }
+
+    private byte[] makeData(long seed, int length)
+    {
+        byte[]      data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
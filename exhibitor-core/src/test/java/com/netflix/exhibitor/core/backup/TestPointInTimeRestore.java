@@ -0,0 +1,401 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class TestPointInTimeRestore
+{
+    @Test
+    public void     testPlan()
+    {
+        List<BackupMetaData>    backups = Arrays.asList
+        (
+            new BackupMetaData("snapshot.10", 1000),
+            new BackupMetaData("snapshot.30.manifest", 3000),
+            new BackupMetaData("log.1", 1000),
+            new BackupMetaData("log.20", 2000),
+            new BackupMetaData("log.35.manifest", 3500),
+            new BackupMetaData("log.40", 4000),
+            new BackupMetaData("log.40", 4500)      // newer version of the active log
+        );
+
+        // latest - newest snapshot and the log containing the txn after it onwards
+        PointInTimeRestore.Plan plan = PointInTimeRestore.makePlan(backups, PointInTimeRestore.LATEST, PointInTimeRestore.LATEST);
+        Assert.assertEquals(plan.snapshot, new BackupMetaData("snapshot.30.manifest", 3000));
+        Assert.assertEquals(plan.logs, Arrays.asList(new BackupMetaData("log.20", 2000), new BackupMetaData("log.35.manifest", 3500), new BackupMetaData("log.40", 4500)));
+
+        // by zxid
+        plan = PointInTimeRestore.makePlan(backups, 0x25, PointInTimeRestore.LATEST);
+        Assert.assertEquals(plan.snapshot, new BackupMetaData("snapshot.10", 1000));
+        Assert.assertEquals(plan.logs, Arrays.asList(new BackupMetaData("log.1", 1000), new BackupMetaData("log.20", 2000)));
+
+        // by time
+        plan = PointInTimeRestore.makePlan(backups, PointInTimeRestore.LATEST, 2500);
+        Assert.assertEquals(plan.snapshot, new BackupMetaData("snapshot.10", 1000));
+
+        // before everything
+        plan = PointInTimeRestore.makePlan(backups, 0, PointInTimeRestore.LATEST);
+        Assert.assertNull(plan.snapshot);
+        Assert.assertTrue(plan.logs.isEmpty());
+    }
+
+    @Test
+    public void     testTruncate() throws Exception
+    {
+        File        directory = Files.createTempDir();
+        try
+        {
+            File    logFile = writeLog(directory, 10);
+
+            PointInTimeRestore.Truncation   truncation = PointInTimeRestore.truncateLog(logFile, PointInTimeRestore.LATEST, PointInTimeRestore.LATEST);
+            Assert.assertEquals(truncation.keptQty, 10);
+            Assert.assertEquals(truncation.lastZxid, 10);
+            Assert.assertFalse(truncation.reachedTarget);
+
+            truncation = PointInTimeRestore.truncateLog(logFile, 7, PointInTimeRestore.LATEST);
+            Assert.assertEquals(truncation.keptQty, 7);
+            Assert.assertTrue(truncation.reachedTarget);
+
+            // times are zxid * 1000
+            truncation = PointInTimeRestore.truncateLog(logFile, PointInTimeRestore.LATEST, 3500);
+            Assert.assertEquals(truncation.keptQty, 3);
+            Assert.assertEquals(truncation.lastZxid, 3);
+
+            // the truncated file is still a readable log
+            truncation = PointInTimeRestore.truncateLog(logFile, PointInTimeRestore.LATEST, PointInTimeRestore.LATEST);
+            Assert.assertEquals(truncation.keptQty, 3);
+            Assert.assertEquals(readZxids(directory), Arrays.asList(1L, 2L, 3L));
+        }
+        finally
+        {
+            File[]  files = directory.listFiles();
+            if ( files != null )
+            {
+                for ( File f : files )
+                {
+                    //noinspection ResultOfMethodCallIgnored
+                    f.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void     testRestore() throws Exception
+    {
+        File        directory = Files.createTempDir();
+        try
+        {
+            long        nextEpoch = (2L << 32) | 1;
+            Exhibitor   exhibitor = makeExhibitor(directory, 1, 5, 6, 5, nextEpoch, 2);
+
+            File        dataDirectory = new File(directory, "data1");
+            new PointInTimeRestore(exhibitor, 7, PointInTimeRestore.LATEST, dataDirectory).restore();
+            Assert.assertEquals(readZxids(new File(dataDirectory, "version-2")), Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L));
+
+            // a new epoch restarts the counter
+            dataDirectory = new File(directory, "data2");
+            new PointInTimeRestore(exhibitor, PointInTimeRestore.LATEST, PointInTimeRestore.LATEST, dataDirectory).restore();
+            Assert.assertEquals(readZxids(new File(dataDirectory, "version-2")), Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, nextEpoch, nextEpoch + 1));
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void     testRestoreGap() throws Exception
+    {
+        Assert.assertFalse(PointInTimeRestore.isGap(5, 6));
+        Assert.assertFalse(PointInTimeRestore.isGap(5, 3));
+        Assert.assertTrue(PointInTimeRestore.isGap(5, 8));
+        Assert.assertFalse(PointInTimeRestore.isGap(5, (1L << 32) | 1));
+        Assert.assertTrue(PointInTimeRestore.isGap(5, (1L << 32) | 2));
+
+        File        directory = Files.createTempDir();
+        try
+        {
+            // zxids 6 and 7 are missing
+            Exhibitor   exhibitor = makeExhibitor(directory, 1, 5, 8, 3);
+
+            File        dataDirectory = new File(directory, "data");
+            Assert.assertTrue(dataDirectory.mkdirs());
+            assertRestoreFails(new PointInTimeRestore(exhibitor, PointInTimeRestore.LATEST, PointInTimeRestore.LATEST, dataDirectory), dataDirectory);
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void     testRestoreUnreachedTarget() throws Exception
+    {
+        File        directory = Files.createTempDir();
+        try
+        {
+            Exhibitor   exhibitor = makeExhibitor(directory, 1, 5, 6, 5);
+
+            File        dataDirectory = new File(directory, "data");
+            Assert.assertTrue(dataDirectory.mkdirs());
+            assertRestoreFails(new PointInTimeRestore(exhibitor, 20, PointInTimeRestore.LATEST, dataDirectory), dataDirectory);
+            assertRestoreFails(new PointInTimeRestore(exhibitor, PointInTimeRestore.LATEST, 20000, dataDirectory), dataDirectory);
+
+            // the last backed up transaction is exactly the target
+            new PointInTimeRestore(exhibitor, 10, PointInTimeRestore.LATEST, dataDirectory).restore();
+            Assert.assertEquals(readZxids(new File(dataDirectory, "version-2")).size(), 10);
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void     testRestoreWithoutSnapshot() throws Exception
+    {
+        Assert.assertTrue(PointInTimeRestore.isFirstTransaction(1));
+        Assert.assertTrue(PointInTimeRestore.isFirstTransaction((1L << 32) | 1));
+        Assert.assertFalse(PointInTimeRestore.isFirstTransaction(5));
+        Assert.assertFalse(PointInTimeRestore.isFirstTransaction((2L << 32) | 1));
+
+        File        directory = Files.createTempDir();
+        try
+        {
+            // retention has removed the logs before zxid 5
+            Exhibitor   exhibitor = makeExhibitor(directory, 5, 6);
+
+            File        dataDirectory = new File(directory, "data");
+            Assert.assertTrue(dataDirectory.mkdirs());
+            assertRestoreFails(new PointInTimeRestore(exhibitor, PointInTimeRestore.LATEST, PointInTimeRestore.LATEST, dataDirectory), dataDirectory);
+            assertRestoreFails(new PointInTimeRestore(exhibitor, 7, PointInTimeRestore.LATEST, dataDirectory), dataDirectory);
+
+            // a snapshot covers the missing logs
+            exhibitor = makeExhibitor(new File(directory, "backups"), Arrays.asList(new BackupMetaData("snapshot.4", 4000)), 5, 6);
+            new PointInTimeRestore(exhibitor, PointInTimeRestore.LATEST, PointInTimeRestore.LATEST, dataDirectory).restore();
+            Assert.assertTrue(new File(dataDirectory, "version-2/snapshot.4").exists());
+            Assert.assertEquals(readZxids(new File(dataDirectory, "version-2")), Arrays.asList(5L, 6L, 7L, 8L, 9L, 10L));
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void     testRestoreFuzzySnapshot() throws Exception
+    {
+        File        directory = Files.createTempDir();
+        try
+        {
+            // transaction times are zxid * 1000 - snapshot.5 was still being written when zxid 9 was committed
+            List<BackupMetaData>    snapshots = Arrays.asList(new BackupMetaData("snapshot.3", 4000), new BackupMetaData("snapshot.5", 9000));
+            Exhibitor               exhibitor = makeExhibitor(directory, snapshots, 1, 10);
+
+            File        dataDirectory = new File(directory, "data1");
+            new PointInTimeRestore(exhibitor, 7, PointInTimeRestore.LATEST, dataDirectory).restore();
+            Assert.assertTrue(new File(dataDirectory, "version-2/snapshot.3").exists());
+            Assert.assertFalse(new File(dataDirectory, "version-2/snapshot.5").exists());
+            Assert.assertEquals(readZxids(new File(dataDirectory, "version-2")), Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L));
+
+            dataDirectory = new File(directory, "data2");
+            new PointInTimeRestore(exhibitor, PointInTimeRestore.LATEST, 7500, dataDirectory).restore();
+            Assert.assertTrue(new File(dataDirectory, "version-2/snapshot.3").exists());
+            Assert.assertFalse(new File(dataDirectory, "version-2/snapshot.5").exists());
+
+            // the target transaction is at or after the snapshot was modified
+            dataDirectory = new File(directory, "data3");
+            new PointInTimeRestore(exhibitor, 9, PointInTimeRestore.LATEST, dataDirectory).restore();
+            Assert.assertTrue(new File(dataDirectory, "version-2/snapshot.5").exists());
+            Assert.assertFalse(new File(dataDirectory, "version-2/snapshot.3").exists());
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    private void assertRestoreFails(PointInTimeRestore restore, File dataDirectory) throws Exception
+    {
+        try
+        {
+            restore.restore();
+            Assert.fail("Restore should have failed");
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+
+        // the destination is left as it was
+        String[]    names = dataDirectory.list();
+        Assert.assertNotNull(names);
+        Assert.assertEquals(names.length, 0);
+    }
+
+    private Exhibitor makeExhibitor(File directory, long... logSpecs) throws Exception
+    {
+        return makeExhibitor(directory, Collections.<BackupMetaData>emptyList(), logSpecs);
+    }
+
+    /**
+     * @param directory where to write the backups
+     * @param snapshots snapshot backups to include (the content is a placeholder)
+     * @param logSpecs pairs of first zxid and transaction qty - one pair for each backed up log
+     * @return an Exhibitor whose backups are the snapshots and logs
+     */
+    private Exhibitor makeExhibitor(File directory, List<BackupMetaData> snapshots, long... logSpecs) throws Exception
+    {
+        final Map<BackupMetaData, File> files = Maps.newHashMap();
+        for ( int i = 0; i < logSpecs.length; i += 2 )
+        {
+            File            logDirectory = new File(directory, "backup" + i);
+            Assert.assertTrue(logDirectory.mkdirs());
+            File            logFile = writeLog(logDirectory, logSpecs[i], (int)logSpecs[i + 1]);
+            files.put(new BackupMetaData(logFile.getName(), 1000 * (i + 1)), logFile);
+        }
+        for ( BackupMetaData snapshot : snapshots )
+        {
+            File            snapshotFile = new File(directory, snapshot.getName());
+            Files.write(snapshot.getName().getBytes(), snapshotFile);
+            files.put(snapshot, snapshotFile);
+        }
+
+        BackupManager   backupManager = Mockito.mock(BackupManager.class);
+        Mockito.when(backupManager.getAvailableBackups()).thenReturn(Lists.newArrayList(files.keySet()));
+        Mockito.when(backupManager.getBackupStream(Mockito.any(BackupMetaData.class))).thenAnswer
+        (
+            new Answer<BackupStream>()
+            {
+                @Override
+                public BackupStream answer(InvocationOnMock invocation) throws Throwable
+                {
+                    final InputStream   in = new FileInputStream(files.get((BackupMetaData)invocation.getArguments()[0]));
+                    return new BackupStream()
+                    {
+                        @Override
+                        public InputStream getStream()
+                        {
+                            return in;
+                        }
+
+                        @Override
+                        public void close() throws IOException
+                        {
+                            in.close();
+                        }
+                    };
+                }
+            }
+        );
+
+        Exhibitor       exhibitor = Mockito.mock(Exhibitor.class);
+        Mockito.when(exhibitor.getBackupManager()).thenReturn(backupManager);
+        Mockito.when(exhibitor.getLog()).thenReturn(Mockito.mock(ActivityLog.class));
+        return exhibitor;
+    }
+
+    private void delete(File f)
+    {
+        File[]      files = f.listFiles();
+        if ( files != null )
+        {
+            for ( File child : files )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+
+    private File writeLog(File directory, int qty) throws Exception
+    {
+        return writeLog(directory, 1, qty);
+    }
+
+    private File writeLog(File directory, long firstZxid, int qty) throws Exception
+    {
+        FileTxnLog  log = new FileTxnLog(directory);
+        try
+        {
+            for ( int i = 0; i < qty; ++i )
+            {
+                long    zxid = firstZxid + i;
+                log.append(new TxnHeader(1, (int)zxid, zxid, zxid * 1000, ZooDefs.OpCode.create), new CreateTxn("/n" + zxid, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, false, (int)zxid));
+            }
+            log.commit();
+        }
+        finally
+        {
+            log.close();
+        }
+
+        File[]      files = directory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(files.length, 1);
+        return files[0];
+    }
+
+    private List<Long> readZxids(File directory) throws Exception
+    {
+        List<Long>                      zxids = Lists.newArrayList();
+        FileTxnLog                      log = new FileTxnLog(directory);
+        FileTxnLog.FileTxnIterator      iterator = (FileTxnLog.FileTxnIterator)log.read(1);
+        try
+        {
+            while ( iterator.getHeader() != null )
+            {
+                zxids.add(iterator.getHeader().getZxid());
+                if ( !iterator.next() )
+                {
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            iterator.close();
+        }
+        return zxids;
+    }
+}
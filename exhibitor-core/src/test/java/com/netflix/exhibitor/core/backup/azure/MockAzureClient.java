@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.azure;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.microsoft.azure.storage.blob.BlobProperties;
+import com.microsoft.azure.storage.blob.CloudBlob;
+import com.microsoft.azure.storage.blob.CloudBlobClient;
+import com.microsoft.azure.storage.blob.ListBlobItem;
+import com.netflix.exhibitor.core.azure.AzureClient;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class MockAzureClient implements AzureClient
+{
+    private final Map<String, byte[]> blobs = Maps.newTreeMap();
+    private final Map<String, byte[]> stagedBlocks = Maps.newHashMap();
+    private int blockPuts = 0;
+
+    @Override
+    public CloudBlobClient getClient() throws Exception
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CloudBlob getBlob(String containerName, String uri) throws Exception
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public BlobProperties getBlobProperties(String containerName, String uri) throws Exception
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterable<ListBlobItem> listBlobs(String containerName, String prefix) throws Exception
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized void putBlob(byte[] bytes, String containerName, String uri) throws Exception
+    {
+        blobs.put(toKey(containerName, uri), bytes);
+    }
+
+    @Override
+    public synchronized void deleteBlob(String containerName, String uri) throws Exception
+    {
+        blobs.remove(toKey(containerName, uri));
+    }
+
+    @Override
+    public void createContainerIfNotExists(String containerName) throws Exception
+    {
+    }
+
+    @Override
+    public synchronized void putBlock(String containerName, String uri, String blockId, byte[] bytes, int length) throws Exception
+    {
+        stagedBlocks.put(toKey(containerName, uri) + "#" + blockId, Arrays.copyOf(bytes, length));
+        ++blockPuts;
+    }
+
+    @Override
+    public synchronized void commitBlocks(String containerName, String uri, List<String> blockIds) throws Exception
+    {
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        for ( String blockId : blockIds )
+        {
+            byte[]      bytes = stagedBlocks.remove(toKey(containerName, uri) + "#" + blockId);
+            if ( bytes == null )
+            {
+                throw new IOException("Block not found: " + blockId);
+            }
+            out.write(bytes);
+        }
+        blobs.put(toKey(containerName, uri), out.toByteArray());
+    }
+
+    @Override
+    public synchronized InputStream getBlobRange(String containerName, String uri, long offset, long length) throws Exception
+    {
+        byte[]      bytes = blobs.get(toKey(containerName, uri));
+        if ( bytes == null )
+        {
+            throw new IOException("Blob not found: " + uri);
+        }
+        return new ByteArrayInputStream(bytes, (int)offset, (int)Math.min(length, bytes.length - offset));
+    }
+
+    @Override
+    public synchronized long getBlobLength(String containerName, String uri) throws Exception
+    {
+        byte[]      bytes = blobs.get(toKey(containerName, uri));
+        return (bytes != null) ? bytes.length : -1;
+    }
+
+    @Override
+    public synchronized List<String> listBlobNames(String containerName, String prefix) throws Exception
+    {
+        List<String>    names = Lists.newArrayList();
+        for ( String key : blobs.keySet() )
+        {
+            String      name = key.substring(containerName.length() + 1);
+            if ( key.startsWith(containerName + "/") && name.startsWith(prefix) )
+            {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+    }
+
+    public synchronized int getBlockPuts()
+    {
+        return blockPuts;
+    }
+
+    public synchronized int getStagedBlockCount()
+    {
+        return stagedBlocks.size();
+    }
+
+    private static String toKey(String containerName, String uri)
+    {
+        return containerName + "/" + uri;
+    }
+}
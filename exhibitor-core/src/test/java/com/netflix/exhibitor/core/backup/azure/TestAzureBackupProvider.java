@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.azure;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.netflix.exhibitor.core.azure.AzureClient;
+import com.netflix.exhibitor.core.azure.AzureClientFactory;
+import com.netflix.exhibitor.core.azure.AzureCredential;
+import com.netflix.exhibitor.core.backup.BackupMetaData;
+import com.netflix.exhibitor.core.backup.BackupProvider;
+import com.netflix.exhibitor.core.backup.BackupStream;
+import com.netflix.exhibitor.core.backup.BackupWriter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TestAzureBackupProvider
+{
+    @Test
+    public void     testMultiBlockRoundTrip() throws Exception
+    {
+        MockAzureClient         azureClient = new MockAzureClient();
+        AzureBackupProvider     provider = makeProvider(azureClient);
+        Map<String, String>     config = makeConfig();
+
+        byte[]                  data = makeData((3 * 1024 * 1024) + (512 * 1024));
+        BackupMetaData          backup = new BackupMetaData("log.1", 10);
+        Assert.assertEquals(provider.uploadBackup(null, backup, makeWriter(data), Lists.<BackupMetaData>newArrayList(), config), BackupProvider.UploadResult.SUCCEEDED);
+        Assert.assertEquals(azureClient.getBlockPuts(), 4);
+        Assert.assertEquals(azureClient.getStagedBlockCount(), 0);
+
+        Assert.assertEquals(provider.getAvailableBackups(null, config), Arrays.asList(backup));
+
+        BackupStream            stream = provider.getBackupStream(null, backup, config);
+        try
+        {
+            Assert.assertEquals(ByteStreams.toByteArray(stream.getStream()), data);
+        }
+        finally
+        {
+            stream.close();
+        }
+
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        provider.downloadBackup(null, backup, out, config);
+        Assert.assertEquals(out.toByteArray(), data);
+    }
+
+    @Test
+    public void     testSmallBackupAndReplace() throws Exception
+    {
+        MockAzureClient         azureClient = new MockAzureClient();
+        AzureBackupProvider     provider = makeProvider(azureClient);
+        Map<String, String>     config = makeConfig();
+
+        BackupMetaData          first = new BackupMetaData("log.1", 10);
+        byte[]                  data = makeData(1000);
+        provider.uploadBackup(null, first, makeWriter(data), Lists.<BackupMetaData>newArrayList(), config);
+        Assert.assertEquals(azureClient.getBlockPuts(), 0);
+        Assert.assertEquals(provider.uploadBackup(null, first, makeWriter(data), provider.getAvailableBackups(null, config), config), BackupProvider.UploadResult.DUPLICATE);
+
+        BackupMetaData          second = new BackupMetaData("log.1", 20);
+        Assert.assertEquals(provider.uploadBackup(null, second, makeWriter(data), provider.getAvailableBackups(null, config), config), BackupProvider.UploadResult.REPLACED_OLD_VERSION);
+        Assert.assertEquals(provider.getAvailableBackups(null, config), Collections.singletonList(second));
+
+        Assert.assertNull(provider.getBackupStream(null, first, config));
+    }
+
+    @Test
+    public void     testBlockIds()
+    {
+        Assert.assertEquals(AzureBackupProvider.toBlockId(1).length(), AzureBackupProvider.toBlockId(12345).length());
+        Assert.assertFalse(AzureBackupProvider.toBlockId(1).equals(AzureBackupProvider.toBlockId(2)));
+    }
+
+    private AzureBackupProvider makeProvider(final MockAzureClient azureClient) throws Exception
+    {
+        AzureClientFactory      factory = new AzureClientFactory()
+        {
+            @Override
+            public AzureClient makeNewClient(AzureCredential credentials) throws Exception
+            {
+                return azureClient;
+            }
+        };
+        return new AzureBackupProvider(factory, null);
+    }
+
+    private Map<String, String> makeConfig()
+    {
+        Map<String, String>     config = Maps.newHashMap();
+        config.put("container-name", "container");
+        config.put("block-size-mb", "1");
+        config.put("upload-concurrency", "3");
+        config.put("download-range-mb", "1");
+        config.put("download-concurrency", "3");
+        return config;
+    }
+
+    private static byte[] makeData(int length)
+    {
+        byte[]      data = new byte[length];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+
+    private static BackupWriter makeWriter(final byte[] data)
+    {
+        return new BackupWriter()
+        {
+            @Override
+            public void write(OutputStream out) throws Exception
+            {
+                out.write(data);
+            }
+        };
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.gcs;
+
+import com.google.api.services.storage.Storage;
+import com.google.api.services.storage.model.StorageObject;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.exhibitor.core.gcs.GcsClient;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class MockGcsClient implements GcsClient
+{
+    private final Map<String, byte[]> objects = Maps.newTreeMap();
+    private int composeCount = 0;
+
+    @Override
+    public Storage getClient() throws Exception
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized ByteArrayOutputStream getObject(String bucketName, String objectName) throws Exception
+    {
+        byte[]                  bytes = get(bucketName, objectName);
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        out.write(bytes);
+        return out;
+    }
+
+    @Override
+    public synchronized StorageObject getObjectMetadata(String bucketName, String objectName) throws Exception
+    {
+        byte[]      bytes = objects.get(toKey(bucketName, objectName));
+        return (bytes != null) ? new StorageObject().setName(objectName).setSize(BigInteger.valueOf(bytes.length)) : null;
+    }
+
+    @Override
+    public synchronized List<StorageObject> listObjects(String bucketName, String prefix) throws Exception
+    {
+        List<StorageObject>     list = Lists.newArrayList();
+        for ( Map.Entry<String, byte[]> entry : objects.entrySet() )
+        {
+            String      name = entry.getKey().substring(bucketName.length() + 1);
+            if ( entry.getKey().startsWith(bucketName + "/") && name.startsWith(prefix) )
+            {
+                list.add(new StorageObject().setName(name).setSize(BigInteger.valueOf(entry.getValue().length)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public synchronized void putObject(byte[] bytes, String bucketName, String objectName) throws Exception
+    {
+        objects.put(toKey(bucketName, objectName), Arrays.copyOf(bytes, bytes.length));
+    }
+
+    @Override
+    public synchronized void deleteObject(String bucketName, String objectName) throws Exception
+    {
+        objects.remove(toKey(bucketName, objectName));
+    }
+
+    @Override
+    public synchronized InputStream getObjectRange(String bucketName, String objectName, long start, long end) throws Exception
+    {
+        byte[]      bytes = get(bucketName, objectName);
+        return new ByteArrayInputStream(bytes, (int)start, (int)(Math.min(end, bytes.length - 1) - start) + 1);
+    }
+
+    @Override
+    public synchronized void composeObject(String bucketName, List<String> sourceObjectNames, String destinationObjectName) throws Exception
+    {
+        if ( sourceObjectNames.size() > 32 )
+        {
+            throw new IOException("Too many compose sources: " + sourceObjectNames.size());
+        }
+
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        for ( String name : sourceObjectNames )
+        {
+            out.write(get(bucketName, name));
+        }
+        objects.put(toKey(bucketName, destinationObjectName), out.toByteArray());
+        ++composeCount;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+    }
+
+    public synchronized int getComposeCount()
+    {
+        return composeCount;
+    }
+
+    public synchronized int getObjectCount()
+    {
+        return objects.size();
+    }
+
+    private byte[] get(String bucketName, String objectName) throws IOException
+    {
+        byte[]      bytes = objects.get(toKey(bucketName, objectName));
+        if ( bytes == null )
+        {
+            throw new IOException("Object not found: " + objectName);
+        }
+        return bytes;
+    }
+
+    private static String toKey(String bucketName, String objectName)
+    {
+        return bucketName + "/" + objectName;
+    }
+}
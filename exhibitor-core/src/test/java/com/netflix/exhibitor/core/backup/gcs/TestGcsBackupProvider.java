@@ -0,0 +1,177 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.gcs;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.netflix.exhibitor.core.backup.BackupMetaData;
+import com.netflix.exhibitor.core.backup.BackupProvider;
+import com.netflix.exhibitor.core.backup.BackupStream;
+import com.netflix.exhibitor.core.backup.BackupWriter;
+import com.netflix.exhibitor.core.gcs.GcsClient;
+import com.netflix.exhibitor.core.gcs.GcsClientFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+public class TestGcsBackupProvider
+{
+    @Test
+    public void     testCompositeRoundTrip() throws Exception
+    {
+        MockGcsClient           gcsClient = new MockGcsClient();
+        GcsBackupProvider       provider = makeProvider(gcsClient);
+        Map<String, String>     config = makeConfig();
+
+        byte[]                  data = makeData((3 * 1024 * 1024) + (512 * 1024));
+        BackupMetaData          backup = new BackupMetaData("log.1", 10);
+        Assert.assertEquals(provider.uploadBackup(null, backup, makeWriter(data), Lists.<BackupMetaData>newArrayList(), config), BackupProvider.UploadResult.SUCCEEDED);
+        Assert.assertEquals(gcsClient.getComposeCount(), 1);
+        Assert.assertEquals(gcsClient.getObjectCount(), 1);  // the parts have been deleted
+
+        Assert.assertEquals(provider.getAvailableBackups(null, config), Arrays.asList(backup));
+
+        BackupStream            stream = provider.getBackupStream(null, backup, config);
+        try
+        {
+            Assert.assertEquals(ByteStreams.toByteArray(stream.getStream()), data);
+        }
+        finally
+        {
+            stream.close();
+        }
+
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        provider.downloadBackup(null, backup, out, config);
+        Assert.assertEquals(out.toByteArray(), data);
+    }
+
+    @Test
+    public void     testComposeMoreThanMaxSources() throws Exception
+    {
+        MockGcsClient           gcsClient = new MockGcsClient();
+        GcsBackupProvider       provider = makeProvider(gcsClient);
+        Map<String, String>     config = makeConfig();
+
+        byte[]                  data = makeData((40 * 1024 * 1024) + 1);
+        BackupMetaData          backup = new BackupMetaData("log.1", 10);
+        provider.uploadBackup(null, backup, makeWriter(data), Lists.<BackupMetaData>newArrayList(), config);
+        Assert.assertEquals(gcsClient.getComposeCount(), 3);    // 41 parts -> 2 intermediates -> 1
+        Assert.assertEquals(gcsClient.getObjectCount(), 1);
+
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        provider.downloadBackup(null, backup, out, config);
+        Assert.assertEquals(out.toByteArray(), data);
+    }
+
+    @Test
+    public void     testSmallBackupAndReplace() throws Exception
+    {
+        MockGcsClient           gcsClient = new MockGcsClient();
+        GcsBackupProvider       provider = makeProvider(gcsClient);
+        Map<String, String>     config = makeConfig();
+
+        BackupMetaData          first = new BackupMetaData("log.1", 10);
+        byte[]                  data = makeData(1000);
+        provider.uploadBackup(null, first, makeWriter(data), Lists.<BackupMetaData>newArrayList(), config);
+        Assert.assertEquals(gcsClient.getComposeCount(), 0);
+
+        BackupMetaData          second = new BackupMetaData("log.1", 20);
+        Assert.assertEquals(provider.uploadBackup(null, second, makeWriter(data), provider.getAvailableBackups(null, config), config), BackupProvider.UploadResult.REPLACED_OLD_VERSION);
+        Assert.assertEquals(provider.getAvailableBackups(null, config), Collections.singletonList(second));
+
+        Assert.assertNull(provider.getBackupStream(null, first, config));
+    }
+
+    @Test
+    public void     testFailedUploadCleansUpParts() throws Exception
+    {
+        MockGcsClient           gcsClient = new MockGcsClient();
+        GcsBackupProvider       provider = makeProvider(gcsClient);
+        Map<String, String>     config = makeConfig();
+
+        final byte[]            data = makeData(3 * 1024 * 1024);
+        BackupWriter            writer = new BackupWriter()
+        {
+            @Override
+            public void write(OutputStream out) throws Exception
+            {
+                out.write(data);
+                throw new Exception("test");
+            }
+        };
+        try
+        {
+            provider.uploadBackup(null, new BackupMetaData("log.1", 10), writer, Lists.<BackupMetaData>newArrayList(), config);
+            Assert.fail();
+        }
+        catch ( Exception expected )
+        {
+            // expected
+        }
+        Assert.assertEquals(gcsClient.getObjectCount(), 0);
+    }
+
+    private GcsBackupProvider makeProvider(final MockGcsClient gcsClient) throws Exception
+    {
+        GcsClientFactory        factory = new GcsClientFactory()
+        {
+            @Override
+            public GcsClient makeNewClient() throws Exception
+            {
+                return gcsClient;
+            }
+        };
+        return new GcsBackupProvider(factory);
+    }
+
+    private Map<String, String> makeConfig()
+    {
+        Map<String, String>     config = Maps.newHashMap();
+        config.put("bucket-name", "bucket");
+        config.put("part-size-mb", "1");
+        config.put("upload-concurrency", "3");
+        config.put("download-range-mb", "1");
+        config.put("download-concurrency", "3");
+        return config;
+    }
+
+    private static byte[] makeData(int length)
+    {
+        byte[]      data = new byte[length];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+
+    private static BackupWriter makeWriter(final byte[] data)
+    {
+        return new BackupWriter()
+        {
+            @Override
+            public void write(OutputStream out) throws Exception
+            {
+                out.write(data);
+            }
+        };
+    }
+}
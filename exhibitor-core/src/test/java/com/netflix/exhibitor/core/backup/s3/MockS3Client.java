@@ -36,6 +36,8 @@ public class MockS3Client implements S3Client
     private final List<byte[]>              uploadedBytes = new CopyOnWriteArrayList<byte[]>();
     private final ObjectListing             listing;
     private final Map<String, S3Object>     uploads = Maps.newConcurrentMap();
+    private final Map<Integer, byte[]>      parts = Maps.newConcurrentMap();
+    private final List<DeleteObjectsRequest> deleteRequests = new CopyOnWriteArrayList<DeleteObjectsRequest>();
 
     private static final String BYTES_HEADER = "__internal_index__";
 
@@ -128,6 +130,28 @@ public class MockS3Client implements S3Client
         return s3Object;
     }
 
+    @Override
+    public synchronized S3Object getObject(GetObjectRequest request) throws Exception
+    {
+        S3Object            s3Object = uploads.get(request.getKey());
+        if ( s3Object == null )
+        {
+            return null;
+        }
+
+        String              bytesIndexStr = s3Object.getObjectMetadata().getUserMetadata().get(BYTES_HEADER);
+        byte[]              bytes = uploadedBytes.get(Integer.parseInt(bytesIndexStr));
+        long[]              range = request.getRange();
+        int                 start = (range != null) ? (int)range[0] : 0;
+        int                 end = (range != null) ? (int)Math.min(range[1], bytes.length - 1) : (bytes.length - 1);
+
+        S3Object            copy = new S3Object();
+        copy.setKey(request.getKey());
+        copy.setObjectMetadata(s3Object.getObjectMetadata());
+        copy.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(bytes, start, (end - start) + 1), null));
+        return copy;
+    }
+
     @Override
     public ObjectMetadata getObjectMetadata(String bucket, String key) throws Exception
     {
@@ -184,12 +208,43 @@ public class MockS3Client implements S3Client
     }
 
     @Override
-    public synchronized UploadPartResult uploadPart(UploadPartRequest request) throws Exception
+    public synchronized DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) throws Exception
+    {
+        if ( request.getKeys().size() > 1000 )
+        {
+            throw new IllegalArgumentException("Too many keys: " + request.getKeys().size());
+        }
+
+        deleteRequests.add(request);
+        List<DeleteObjectsResult.DeletedObject>     deleted = Lists.newArrayList();
+        for ( DeleteObjectsRequest.KeyVersion keyVersion : request.getKeys() )
+        {
+            uploads.remove(keyVersion.getKey());
+            DeleteObjectsResult.DeletedObject   deletedObject = new DeleteObjectsResult.DeletedObject();
+            deletedObject.setKey(keyVersion.getKey());
+            deleted.add(deletedObject);
+        }
+        return new DeleteObjectsResult(deleted);
+    }
+
+    public List<DeleteObjectsRequest> getDeleteRequests()
+    {
+        return deleteRequests;
+    }
+
+    public boolean hasObject(String key)
+    {
+        return uploads.containsKey(key);
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) throws Exception
     {
         ByteArrayOutputStream       out = new ByteArrayOutputStream();
         ByteStreams.copy(request.getInputStream(), out);
 
-        uploadedBytes.add(out.toByteArray());
+        // parts can arrive in any order - they're added to uploadedBytes in part order on completion
+        parts.put(request.getPartNumber(), out.toByteArray());
 
         byte[]              md5bytes = S3Utils.md5(out.toByteArray(), out.size());
 
@@ -200,13 +255,18 @@ public class MockS3Client implements S3Client
     }
 
     @Override
-    public void completeMultipartUpload(CompleteMultipartUploadRequest request) throws Exception
+    public synchronized void completeMultipartUpload(CompleteMultipartUploadRequest request) throws Exception
     {
+        for ( PartETag eTag : request.getPartETags() )
+        {
+            uploadedBytes.add(parts.remove(eTag.getPartNumber()));
+        }
     }
 
     @Override
     public void abortMultipartUpload(AbortMultipartUploadRequest request) throws Exception
     {
+        parts.clear();
     }
 
     public List<byte[]> getUploadedBytes()
@@ -16,28 +16,40 @@
 
 package com.netflix.exhibitor.core.backup.s3;
 
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
+import com.netflix.exhibitor.core.backup.BackupCodec;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
+import com.netflix.exhibitor.core.backup.BackupStream;
+import com.netflix.exhibitor.core.backup.FileBackupWriter;
 import com.netflix.exhibitor.core.s3.PropertyBasedS3ClientConfig;
 import com.netflix.exhibitor.core.s3.PropertyBasedS3Credential;
 import org.apache.curator.utils.CloseableUtils;
 import org.testng.Assert;
 import org.testng.annotations.Test;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 public abstract class TestS3BackupProviderBase
 {
@@ -57,6 +69,23 @@ public abstract class TestS3BackupProviderBase
         Assert.assertEquals(uploadedBytes, fileBytes);
     }
 
+    @Test
+    public void   testStreamingCompressedUpload() throws Exception
+    {
+        MockS3Client        s3Client = new MockS3Client();
+        S3BackupProvider    provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), new PropertyBasedS3ClientConfig(new Properties()), null);
+
+        provider.uploadBackup(null, new BackupMetaData("test", 10), new FileBackupWriter(sourceFile, BackupCodec.GZIP), Lists.<BackupMetaData>newArrayList(), Maps.<String, String>newHashMap());
+
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        for ( byte[] bytes : s3Client.getUploadedBytes() )
+        {
+            out.write(bytes);
+        }
+        byte[]      uploadedBytes = ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+        Assert.assertEquals(uploadedBytes, Files.toByteArray(sourceFile));
+    }
+
     @Test
     public void     testDownload() throws Exception
     {
@@ -89,6 +118,74 @@ public abstract class TestS3BackupProviderBase
         }
     }
 
+    @Test
+    public void     testRangedDownloadWithRetries() throws Exception
+    {
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(sourceFile);
+
+            final AtomicInteger     rangeRequests = new AtomicInteger();
+            MockS3Client            s3Client = new MockS3Client(null, null)
+            {
+                @Override
+                public synchronized S3Object getObject(GetObjectRequest request) throws Exception
+                {
+                    S3Object        object = super.getObject(request);
+                    if ( (rangeRequests.incrementAndGet() % 2) == 1 )
+                    {
+                        // fail part way through every other request
+                        final InputStream   content = object.getObjectContent();
+                        object.setObjectContent
+                        (
+                            new FilterInputStream(content)
+                            {
+                                private int count = 0;
+
+                                @Override
+                                public int read(byte[] b, int off, int len) throws IOException
+                                {
+                                    if ( count > 1000 )
+                                    {
+                                        throw new IOException("test");
+                                    }
+                                    int     bytesRead = super.read(b, off, Math.min(len, 100));
+                                    count += Math.max(bytesRead, 0);
+                                    return bytesRead;
+                                }
+                            }
+                        );
+                    }
+                    return object;
+                }
+            };
+            s3Client.putObject(new PutObjectRequest("bucket", "exhibitor-backup" + S3BackupProvider.SEPARATOR + "test" + S3BackupProvider.SEPARATOR + 1, in, null));
+
+            Map<String, String>     config = Maps.newHashMap();
+            config.put("download-range-mb", "1");
+            config.put("download-concurrency", "3");
+            config.put("max-retries", "100");
+            config.put("retry-sleep-ms", "1");
+
+            S3BackupProvider        provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), new PropertyBasedS3ClientConfig(new Properties()), null);
+            BackupStream            backupStream = provider.getBackupStream(null, new BackupMetaData("test", 1), config);
+            try
+            {
+                Assert.assertEquals(ByteStreams.toByteArray(backupStream.getStream()), Files.toByteArray(sourceFile));
+            }
+            finally
+            {
+                backupStream.close();
+            }
+            Assert.assertTrue(rangeRequests.get() > 1);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
     @Test
     public void testGetAvailableBackupKeys() throws Exception
     {
@@ -129,6 +226,28 @@ public abstract class TestS3BackupProviderBase
         Assert.assertEquals(backupNames, Arrays.asList("one", "two", "three"));
     }
 
+    @Test
+    public void     testBulkDelete() throws Exception
+    {
+        MockS3Client            s3Client = new MockS3Client();
+        List<BackupMetaData>    backups = Lists.newArrayList();
+        for ( int i = 0; i < 2500; ++i )
+        {
+            String      key = "exhibitor-backup" + S3BackupProvider.SEPARATOR + "log." + i + S3BackupProvider.SEPARATOR + i;
+            s3Client.putObject(new PutObjectRequest("bucket", key, new ByteArrayInputStream(new byte[1]), null));
+            backups.add(new BackupMetaData("log." + i, i));
+        }
+
+        S3BackupProvider        provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), new PropertyBasedS3ClientConfig(new Properties()), null);
+        provider.deleteBackups(null, backups, Maps.<String, String>newHashMap());
+
+        Assert.assertEquals(s3Client.getDeleteRequests().size(), 3);   // batches of at most 1000 keys
+        for ( int i = 0; i < 2500; ++i )
+        {
+            Assert.assertFalse(s3Client.hasObject("exhibitor-backup" + S3BackupProvider.SEPARATOR + "log." + i + S3BackupProvider.SEPARATOR + i));
+        }
+    }
+
     private byte[] getUploadedBytes(File sourceFile) throws Exception
     {
         MockS3Client        s3Client = new MockS3Client();
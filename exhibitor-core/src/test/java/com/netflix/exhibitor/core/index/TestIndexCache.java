@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.IndexCacheConfiguration;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Collections;
+
+public class TestIndexCache
+{
+    @Test
+    public void     testLeastRecentlyUsed() throws Exception
+    {
+        File            parent = Files.createTempDir();
+        File            index1 = makeIndex(parent, "index1");
+        File            index2 = makeIndex(parent, "index2");
+        File            index3 = makeIndex(parent, "index3");
+
+        IndexCache      cache = new IndexCache(new ActivityLog(100), new IndexCacheConfiguration(1024 * 1024, 2, 60000, 60000));
+        try
+        {
+            LogSearch   search1 = cache.getLogSearch(index1);
+            cache.releaseLogSearch(search1);
+            Thread.sleep(10);
+            LogSearch   search2 = cache.getLogSearch(index2);
+            cache.releaseLogSearch(search2);
+            Thread.sleep(10);
+
+            Assert.assertSame(cache.getLogSearch(index2), search2);    // reused while open
+            cache.releaseLogSearch(search2);
+
+            LogSearch   search3 = cache.getLogSearch(index3);  // index1 is least recently used and idle
+            cache.releaseLogSearch(search3);
+            Assert.assertSame(cache.getLogSearch(index2), search2);
+            cache.releaseLogSearch(search2);
+            LogSearch   reopened1 = cache.getLogSearch(index1);
+            Assert.assertNotSame(reopened1, search1);
+            cache.releaseLogSearch(reopened1);
+            Assert.assertNotNull(search3);
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void     testRefreshWhileInUse() throws Exception
+    {
+        File            parent = Files.createTempDir();
+        File            index = makeIndex(parent, "index");
+
+        IndexCache      cache = new IndexCache(new ActivityLog(100));
+        try
+        {
+            LogSearch   search = cache.getLogSearch(index);
+            cache.markForRefresh(index);
+            Assert.assertEquals(search.getDocQty(), 1);    // still usable until released
+            cache.releaseLogSearch(search);
+
+            LogSearch   refreshed = cache.getLogSearch(index);
+            Assert.assertNotSame(refreshed, search);
+            cache.releaseLogSearch(refreshed);
+
+            cache.markForDeletion(index);
+            Assert.assertFalse(index.exists());
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void     testRefreshWhileBusy() throws Exception
+    {
+        File            parent = Files.createTempDir();
+        File            index = makeIndex(parent, "index");
+
+        IndexCache      cache = new IndexCache(new ActivityLog(100));
+        try
+        {
+            // overlapping users - the use count of the current searcher never gets back to 0
+            LogSearch   search = cache.getLogSearch(index);
+            cache.markForRefresh(index);
+            LogSearch   refreshed = cache.getLogSearch(index);
+            Assert.assertNotSame(refreshed, search);   // new users get a new searcher right away
+            cache.releaseLogSearch(search);
+            Assert.assertSame(cache.getLogSearch(index), refreshed);
+
+            // a deleted index is no longer handed out and is deleted when its last user is done
+            cache.markForDeletion(index);
+            Assert.assertNull(cache.getLogSearch(index));
+            cache.releaseLogSearch(refreshed);
+            Assert.assertTrue(index.exists());
+            cache.releaseLogSearch(refreshed);
+            Assert.assertFalse(index.exists());
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    private File makeIndex(File parent, String name) throws Exception
+    {
+        File            directory = new File(parent, name);
+        IndexBuilder    builder = new IndexBuilder(directory);
+        try
+        {
+            builder.open();
+            TxnHeader   header = new TxnHeader(1, 1, 1, 1000, ZooDefs.OpCode.delete);
+            builder.addDocument(1, 1000, IndexBuilder.makeDocument(header, new DeleteTxn("/test")));
+            builder.writeMetaData(Collections.<String>emptySet());
+        }
+        finally
+        {
+            builder.close();
+        }
+        return directory;
+    }
+}
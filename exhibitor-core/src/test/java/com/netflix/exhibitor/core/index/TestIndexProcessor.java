@@ -0,0 +1,347 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.backup.BackupManager;
+import com.netflix.exhibitor.core.backup.BackupMetaData;
+import com.netflix.exhibitor.core.backup.BackupStream;
+import com.netflix.exhibitor.core.config.ConfigManager;
+import com.netflix.exhibitor.core.config.InstanceConfig;
+import com.netflix.exhibitor.core.config.StringConfigs;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class TestIndexProcessor
+{
+    private static final int    TXN_QTY = 10;
+
+    private File                                directory;
+    private File                                indexDirectory;
+    private Exhibitor                           exhibitor;
+    private final Map<BackupMetaData, File>     backups = Maps.newConcurrentMap();
+    private final Map<BackupMetaData, Integer>  failAfterBytes = Maps.newConcurrentMap();
+    private final Multiset<BackupMetaData>      opened = ConcurrentHashMultiset.create();
+
+    @BeforeMethod
+    public void     setup() throws Exception
+    {
+        directory = Files.createTempDir();
+        indexDirectory = new File(directory, "index");
+        backups.clear();
+        failAfterBytes.clear();
+        opened.clear();
+
+        BackupManager       backupManager = Mockito.mock(BackupManager.class);
+        Mockito.when(backupManager.getAvailableBackups()).thenAnswer
+        (
+            new Answer<List<BackupMetaData>>()
+            {
+                @Override
+                public List<BackupMetaData> answer(InvocationOnMock invocation) throws Throwable
+                {
+                    return Lists.newArrayList(backups.keySet());
+                }
+            }
+        );
+        Mockito.when(backupManager.getBackupStream(Mockito.any(BackupMetaData.class))).thenAnswer
+        (
+            new Answer<BackupStream>()
+            {
+                @Override
+                public BackupStream answer(InvocationOnMock invocation) throws Throwable
+                {
+                    BackupMetaData      backup = (BackupMetaData)invocation.getArguments()[0];
+                    opened.add(backup);
+                    return makeStream(new FileInputStream(backups.get(backup)), failAfterBytes.get(backup));
+                }
+            }
+        );
+
+        // no local logs - only backups are indexed
+        InstanceConfig      config = Mockito.mock(InstanceConfig.class);
+        Mockito.when(config.getString(Mockito.any(StringConfigs.class))).thenReturn(new File(directory, "no-zookeeper").getPath());
+        ConfigManager       configManager = Mockito.mock(ConfigManager.class);
+        Mockito.when(configManager.getConfig()).thenReturn(config);
+
+        exhibitor = Mockito.mock(Exhibitor.class);
+        Mockito.when(exhibitor.getLog()).thenReturn(new ActivityLog(100));
+        Mockito.when(exhibitor.getBackupManager()).thenReturn(backupManager);
+        Mockito.when(exhibitor.getConfigManager()).thenReturn(configManager);
+        Mockito.when(exhibitor.getIndexCache()).thenReturn(Mockito.mock(IndexCache.class));
+    }
+
+    @AfterMethod
+    public void     teardown() throws Exception
+    {
+        delete(directory);
+    }
+
+    @Test
+    public void     testReadVersion1MetaData() throws Exception
+    {
+        // written by versions that didn't record the zxid range or the indexed sources
+        DateFormat      format = DateFormat.getDateTimeInstance();
+        Date            from = format.parse(format.format(new Date(1000000000000L)));
+        Date            to = format.parse(format.format(new Date(1000000100000L)));
+        Properties      properties = new Properties();
+        properties.setProperty("version", "1");
+        properties.setProperty("from", format.format(from));
+        properties.setProperty("to", format.format(to));
+        properties.setProperty("count", "123");
+        File            file = IndexMetaData.getMetaDataFile(indexDirectory);
+        Files.write(toBytes(properties), file);
+
+        IndexMetaData   metaData = IndexMetaData.read(file);
+        Assert.assertEquals(metaData.getFrom(), from);
+        Assert.assertEquals(metaData.getTo(), to);
+        Assert.assertEquals(metaData.getEntryCount(), 123);
+        Assert.assertEquals(metaData.getFromZxid(), IndexMetaData.UNKNOWN_ZXID);
+        Assert.assertEquals(metaData.getToZxid(), IndexMetaData.UNKNOWN_ZXID);
+        Assert.assertTrue(metaData.getIndexedSources().isEmpty());
+        Assert.assertFalse(metaData.isUpdatable());
+
+        // can't be appended to
+        try
+        {
+            new IndexProcessor(exhibitor, 2).update(indexDirectory, metaData);
+            Assert.fail("Version 1 indexes can't be updated");
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+
+        // written back as version 2
+        IndexMetaData.write(new IndexMetaData(from, to, 123, 5, 10, ImmutableSet.of("a", "b")), file);
+        metaData = IndexMetaData.read(file);
+        Assert.assertEquals(metaData.getEntryCount(), 123);
+        Assert.assertEquals(metaData.getFromZxid(), 5);
+        Assert.assertEquals(metaData.getToZxid(), 10);
+        Assert.assertEquals(metaData.getIndexedSources(), ImmutableSet.of("a", "b"));
+        Assert.assertTrue(metaData.isUpdatable());
+
+        properties.setProperty("version", "3");
+        Files.write(toBytes(properties), file);
+        try
+        {
+            IndexMetaData.read(file);
+            Assert.fail("Unknown versions should be rejected");
+        }
+        catch ( Exception e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void     testUpdateSkipsIndexedSources() throws Exception
+    {
+        BackupMetaData      first = addBackup(1, 1000);
+        new IndexProcessor(exhibitor, 2).process(indexDirectory);
+
+        IndexMetaData       metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+        Assert.assertEquals(metaData.getEntryCount(), TXN_QTY);
+        Assert.assertEquals(metaData.getToZxid(), TXN_QTY);
+        Assert.assertEquals(metaData.getIndexedSources(), ImmutableSet.of("backup:" + first.getName() + ":" + first.getModifiedDate()));
+
+        BackupMetaData      second = addBackup(TXN_QTY + 1, 2000);
+        new IndexProcessor(exhibitor, 2).update(indexDirectory, metaData);
+
+        // the first backup was only read by the initial build
+        Assert.assertEquals(opened.count(first), 1);
+        Assert.assertEquals(opened.count(second), 1);
+
+        metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+        Assert.assertEquals(metaData.getEntryCount(), 2 * TXN_QTY);
+        Assert.assertEquals(metaData.getFromZxid(), 1);
+        Assert.assertEquals(metaData.getToZxid(), 2 * TXN_QTY);
+        Assert.assertEquals(metaData.getIndexedSources().size(), 2);
+        Assert.assertEquals(getDocQty(), 2 * TXN_QTY);
+
+        // nothing new
+        new IndexProcessor(exhibitor, 2).update(indexDirectory, metaData);
+        Assert.assertEquals(opened.size(), 2);
+        Assert.assertEquals(getDocQty(), 2 * TXN_QTY);
+    }
+
+    @Test
+    public void     testUpdateRollback() throws Exception
+    {
+        addBackup(1, 1000);
+        new IndexProcessor(exhibitor, 2).process(indexDirectory);
+        IndexMetaData       metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+
+        // one new backup is fine, the other fails partway through
+        addBackup(TXN_QTY + 1, 2000);
+        BackupMetaData      bad = addBackup((2 * TXN_QTY) + 1, 3000);
+        failAfterBytes.put(bad, 200);
+        try
+        {
+            new IndexProcessor(exhibitor, 2).update(indexDirectory, metaData);
+            Assert.fail("The update should have failed");
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+
+        // neither the index nor its meta data changed
+        IndexMetaData       afterMetaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+        Assert.assertEquals(afterMetaData.getEntryCount(), TXN_QTY);
+        Assert.assertEquals(afterMetaData.getToZxid(), TXN_QTY);
+        Assert.assertEquals(afterMetaData.getIndexedSources(), metaData.getIndexedSources());
+        Assert.assertEquals(getDocQty(), TXN_QTY);
+
+        // once the backup can be read, the update picks up both new backups
+        failAfterBytes.clear();
+        new IndexProcessor(exhibitor, 2).update(indexDirectory, afterMetaData);
+        Assert.assertEquals(getDocQty(), 3 * TXN_QTY);
+    }
+
+    private BackupMetaData addBackup(long firstZxid, long modifiedDate) throws Exception
+    {
+        File        logDirectory = new File(directory, "backup-" + firstZxid);
+        FileTxnLog  log = new FileTxnLog(logDirectory);
+        try
+        {
+            for ( int i = 0; i < TXN_QTY; ++i )
+            {
+                long    zxid = firstZxid + i;
+                log.append(new TxnHeader(1, i, zxid, zxid * 1000, ZooDefs.OpCode.create), new CreateTxn("/test/" + zxid, ("data" + zxid).getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, false, 0));
+            }
+            log.commit();
+        }
+        finally
+        {
+            log.close();
+        }
+
+        File[]          files = logDirectory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(files.length, 1);
+        BackupMetaData  backup = new BackupMetaData(files[0].getName(), modifiedDate);
+        backups.put(backup, files[0]);
+        return backup;
+    }
+
+    private int getDocQty() throws Exception
+    {
+        LogSearch   logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            return logSearch.getDocQty();
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    private static BackupStream makeStream(final InputStream in, final Integer failAfterBytes)
+    {
+        final InputStream   stream = (failAfterBytes == null) ? in : new FilterInputStream(in)
+        {
+            private int     count = 0;
+
+            @Override
+            public int read() throws IOException
+            {
+                checkCount(1);
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                checkCount(len);
+                return super.read(b, off, len);
+            }
+
+            private void checkCount(int len) throws IOException
+            {
+                count += len;
+                if ( count > failAfterBytes )
+                {
+                    throw new IOException("read failed");
+                }
+            }
+        };
+        return new BackupStream()
+        {
+            @Override
+            public InputStream getStream()
+            {
+                return stream;
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                in.close();
+            }
+        };
+    }
+
+    private static byte[] toBytes(Properties properties) throws IOException
+    {
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        properties.store(out, null);
+        return out.toByteArray();
+    }
+
+    private static void delete(File f)
+    {
+        File[]      files = f.listFiles();
+        if ( files != null )
+        {
+            for ( File child : files )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestLogFileCatalog
+{
+    @Test
+    public void     testGetLogFiles() throws Exception
+    {
+        File        directory = Files.createTempDir();
+        try
+        {
+            File    log10 = new File(directory, "log.10");
+            File    log2 = new File(directory, "log.2");
+            File    snapshot = new File(directory, "snapshot.5");
+            Files.write(makeHeader(FileTxnLog.TXNLOG_MAGIC), log10);
+            Files.write(makeHeader(FileTxnLog.TXNLOG_MAGIC), log2);
+            Files.write(makeHeader(0x5a4b534e), snapshot);    // "ZKSN"
+
+            LogFileCatalog  catalog = new LogFileCatalog();
+            List<File>      logFiles = catalog.getLogFiles(directory);
+            Assert.assertEquals(logFiles, Arrays.asList(log2, log10));  // zxid order, not name order
+
+            Assert.assertEquals(LogFileCatalog.getZxidFromName(log10), 0x10);
+            Assert.assertEquals(LogFileCatalog.getZxidFromName(snapshot), -1);
+
+            // a change in size forces the header to be read again
+            Files.write("garbage".getBytes(), log2);
+            Assert.assertEquals(catalog.getLogFiles(directory), Arrays.asList(log10));
+        }
+        finally
+        {
+            File[]  files = directory.listFiles();
+            if ( files != null )
+            {
+                for ( File f : files )
+                {
+                    //noinspection ResultOfMethodCallIgnored
+                    f.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            directory.delete();
+        }
+    }
+
+    private byte[] makeHeader(int magic) throws Exception
+    {
+        ByteArrayOutputStream   bytes = new ByteArrayOutputStream();
+        DataOutputStream        out = new DataOutputStream(bytes);
+        out.writeInt(magic);
+        out.writeInt(2);
+        out.writeLong(0);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public class TestLogSearch
+{
+    private static final int    QTY = 250;
+    private static final long   BASE_TIME = 1000000;
+
+    private File        directory;
+
+    @BeforeMethod
+    public void     setup() throws Exception
+    {
+        directory = Files.createTempDir();
+
+        IndexBuilder    builder = new IndexBuilder(directory);
+        try
+        {
+            builder.open();
+            for ( int i = 0; i < QTY; ++i )
+            {
+                long        zxid = i + 1;
+                long        time = BASE_TIME + (i / 2);   // pairs of entries share a date
+                TxnHeader   header;
+                if ( (i % 2) == 0 )
+                {
+                    header = new TxnHeader(1, i, zxid, time, ZooDefs.OpCode.create);
+                    builder.addDocument(zxid, time, IndexBuilder.makeDocument(header, new CreateTxn("/test/" + i, ("data" + i).getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, false, 0)));
+                }
+                else
+                {
+                    header = new TxnHeader(1, i, zxid, time, ZooDefs.OpCode.setData);
+                    builder.addDocument(zxid, time, IndexBuilder.makeDocument(header, new SetDataTxn("/test/" + (i - 1), ("data" + i).getBytes(), i)));
+                }
+            }
+            builder.writeMetaData(Collections.<String>emptySet());
+        }
+        finally
+        {
+            builder.close();
+        }
+    }
+
+    @AfterMethod
+    public void     teardown() throws Exception
+    {
+        new IndexCache(new ActivityLog(100)).delete(directory);
+    }
+
+    @Test
+    public void     testResults() throws Exception
+    {
+        LogSearch   logSearch = new LogSearch(directory);
+        try
+        {
+            Assert.assertEquals(logSearch.getDocQty(), QTY);
+            for ( int docId = 0; docId < QTY; ++docId )
+            {
+                SearchItem  item = logSearch.toResult(docId);
+                Assert.assertEquals(item.getDate().getTime(), BASE_TIME + (docId / 2));
+                Assert.assertEquals(new String(logSearch.toData(docId)), "data" + docId);
+                if ( (docId % 2) == 0 )
+                {
+                    Assert.assertEquals(item.getType(), EntryTypes.CREATE_PERSISTENT.getId());
+                    Assert.assertEquals(item.getPath(), "/test/" + docId);
+                    Assert.assertEquals(item.getVersion(), -1);
+                }
+                else
+                {
+                    Assert.assertEquals(item.getType(), EntryTypes.SET_DATA.getId());
+                    Assert.assertEquals(item.getPath(), "/test/" + (docId - 1));
+                    Assert.assertEquals(item.getVersion(), docId);
+                }
+            }
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void     testPaging() throws Exception
+    {
+        LogSearch   logSearch = new LogSearch(directory);
+        try
+        {
+            List<Integer>   allDocIds = Lists.newArrayList();
+            Set<Integer>    uniqueDocIds = Sets.newHashSet();
+            String          cursor = null;
+            int             pageQty = 0;
+            do
+            {
+                SearchPage      page = logSearch.searchPage(null, cursor, 17);
+                Assert.assertEquals(page.getRemainingHits(), QTY - allDocIds.size());
+                allDocIds.addAll(page.getDocIds());
+                uniqueDocIds.addAll(page.getDocIds());
+                cursor = page.getNextCursor();
+                ++pageQty;
+            } while ( cursor != null );
+
+            Assert.assertEquals(allDocIds.size(), QTY);
+            Assert.assertEquals(uniqueDocIds.size(), QTY);
+            Assert.assertEquals(pageQty, (QTY + 16) / 17);
+
+            // newest first, ties in zxid (here also document) order
+            long        previousDate = Long.MAX_VALUE;
+            int         previousDocId = -1;
+            for ( int docId : allDocIds )
+            {
+                long    date = logSearch.toResult(docId).getDate().getTime();
+                Assert.assertTrue(date <= previousDate);
+                if ( date == previousDate )
+                {
+                    Assert.assertTrue(docId > previousDocId);
+                }
+                previousDate = date;
+                previousDocId = docId;
+            }
+
+            SearchPage      filtered = logSearch.searchPage(QueryBuilder.builder().operationType(EntryTypes.SET_DATA.getId()).build(QueryBuilder.Type.AND), null, 0);
+            Assert.assertEquals(filtered.getDocIds().size(), QTY / 2);
+            Assert.assertNull(filtered.getNextCursor());
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void     testPagingAcrossUpdate() throws Exception
+    {
+        Set<Integer>    docIds = Sets.newHashSet();
+        String          cursor;
+        LogSearch       logSearch = new LogSearch(directory);
+        try
+        {
+            SearchPage      page = logSearch.searchPage(null, null, 100, false);
+            Assert.assertEquals(page.getRemainingHits(), -1);
+            Assert.assertEquals(page.getDocIds().size(), 100);
+            docIds.addAll(page.getDocIds());
+            cursor = page.getNextCursor();
+            Assert.assertNotNull(cursor);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+
+        // append older entries - the cursor identifies the last entry by date/zxid so it's still valid
+        final int       addedQty = 10;
+        IndexBuilder    builder = new IndexBuilder(directory, IndexMetaData.read(IndexMetaData.getMetaDataFile(directory)));
+        try
+        {
+            builder.open();
+            for ( int i = 0; i < addedQty; ++i )
+            {
+                long        zxid = QTY + i + 1;
+                long        time = BASE_TIME - 1;
+                TxnHeader   header = new TxnHeader(1, i, zxid, time, ZooDefs.OpCode.create);
+                builder.addDocument(zxid, time, IndexBuilder.makeDocument(header, new CreateTxn("/added/" + i, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, false, 0)));
+            }
+            builder.writeMetaData(Collections.<String>emptySet());
+        }
+        finally
+        {
+            builder.close();
+        }
+
+        logSearch = new LogSearch(directory);
+        try
+        {
+            int     addedFound = 0;
+            while ( cursor != null )
+            {
+                SearchPage      page = logSearch.searchPage(null, cursor, 100, false);
+                for ( int docId : page.getDocIds() )
+                {
+                    Assert.assertTrue(docIds.add(docId));
+                    if ( logSearch.toResult(docId).getPath().startsWith("/added/") )
+                    {
+                        ++addedFound;
+                    }
+                }
+                cursor = page.getNextCursor();
+            }
+            Assert.assertEquals(docIds.size(), QTY + addedQty);
+            Assert.assertEquals(addedFound, addedQty);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void     testAggregate() throws Exception
+    {
+        LogSearch   logSearch = new LogSearch(directory);
+        try
+        {
+            LogAggregation  aggregation = logSearch.aggregate(null, 3, 1000, 1);
+            Assert.assertEquals(aggregation.getDocumentCount(), QTY);
+
+            // each node is created and then set once
+            Assert.assertEquals(Lists.newArrayList(aggregation.getTopPaths().keySet()), Lists.newArrayList("/test/0", "/test/10", "/test/100"));
+            Assert.assertEquals(aggregation.getTopPaths().get("/test/0").longValue(), 2L);
+
+            long        expectedBytes = 0;
+            for ( int i = 0; i < QTY; ++i )
+            {
+                expectedBytes += ("data" + i).length();
+            }
+            Assert.assertEquals(aggregation.getBytesBySubtree().size(), 1);
+            Assert.assertEquals(aggregation.getBytesBySubtree().get("/test").longValue(), expectedBytes);
+
+            Assert.assertEquals(aggregation.getWritesPerInterval().size(), 1);
+            Assert.assertEquals(aggregation.getWritesPerInterval().get(BASE_TIME).longValue(), (long)QTY);
+            Assert.assertTrue(aggregation.getEphemeralChurn().isEmpty());
+
+            Assert.assertEquals(AggregationCollector.getPrefix("/a/b/c", 2), "/a/b");
+            Assert.assertEquals(AggregationCollector.getPrefix("/a", 2), "/a");
+            Assert.assertEquals(AggregationCollector.getPrefix("/a/b", 0), "/");
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void     testCachedSearch() throws Exception
+    {
+        SearchResultCache   cache = new SearchResultCache(Long.MAX_VALUE);
+        LogSearch           logSearch = new LogSearch(directory, cache);
+        try
+        {
+            String          id = logSearch.cacheSearch(QueryBuilder.builder().pathPrefix("/test/1").build(QueryBuilder.Type.AND), null, 0);
+            CachedSearch    cachedSearch = logSearch.getCachedSearch(id);
+            Assert.assertTrue(cachedSearch.getTotalHits() > 0);
+            for ( int i = 0; i < cachedSearch.getTotalHits(); ++i )
+            {
+                Assert.assertTrue(logSearch.toResult(cachedSearch.getNthDocId(i)).getPath().startsWith("/test/1"));
+            }
+            Assert.assertEquals(cache.getEntryCount(), 1);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+        Assert.assertEquals(cache.getEntryCount(), 0);
+    }
+}
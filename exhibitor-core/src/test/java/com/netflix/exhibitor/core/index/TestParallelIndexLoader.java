@@ -0,0 +1,349 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.lucene.document.Document;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public class TestParallelIndexLoader
+{
+    private static final int    LOG_QTY = 4;
+    private static final int    TXN_QTY = 200;
+    private static final int    MAX_QUEUED_BYTES = 4096;    // small enough that the parsers block on the writer
+
+    private File            directory;
+    private List<File>      logs;
+
+    @BeforeMethod
+    public void     setup() throws Exception
+    {
+        directory = Files.createTempDir();
+        logs = Lists.newArrayList();
+        for ( int i = 0; i < LOG_QTY; ++i )
+        {
+            logs.add(writeLog(new File(directory, "log" + i), getFirstZxid(i), TXN_QTY));
+        }
+    }
+
+    @AfterMethod
+    public void     teardown() throws Exception
+    {
+        delete(directory);
+    }
+
+    @Test
+    public void     testMatchesSingleThreaded() throws Exception
+    {
+        File                parallelDirectory = new File(directory, "parallel");
+        RecordingBuilder    parallelBuilder = new RecordingBuilder(parallelDirectory, Integer.MAX_VALUE);
+        Set<String>         indexedSources = Sets.newHashSet();
+        try
+        {
+            parallelBuilder.open();
+            List<IndexSource>   sources = Lists.newArrayList();
+            for ( File log : logs )
+            {
+                sources.add(makeSource(log, -1));
+            }
+            new ParallelIndexLoader(parallelBuilder, new ActivityLog(100), LOG_QTY, MAX_QUEUED_BYTES).load(sources, indexedSources);
+            parallelBuilder.writeMetaData(indexedSources);
+        }
+        finally
+        {
+            parallelBuilder.close();
+        }
+
+        File                singleDirectory = new File(directory, "single");
+        IndexBuilder        singleBuilder = new IndexBuilder(singleDirectory);
+        try
+        {
+            singleBuilder.open();
+            for ( File log : logs )
+            {
+                InputStream     in = new BufferedInputStream(new FileInputStream(log));
+                try
+                {
+                    singleBuilder.add(in);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            singleBuilder.writeMetaData(Collections.<String>emptySet());
+        }
+        finally
+        {
+            singleBuilder.close();
+        }
+
+        // each source's entries are added in log order
+        Assert.assertEquals(parallelBuilder.zxids.size(), LOG_QTY * TXN_QTY);
+        for ( int i = 0; i < LOG_QTY; ++i )
+        {
+            List<Long>  sourceZxids = Lists.newArrayList();
+            for ( long zxid : parallelBuilder.zxids )
+            {
+                if ( (zxid >= getFirstZxid(i)) && (zxid < (getFirstZxid(i) + TXN_QTY)) )
+                {
+                    sourceZxids.add(zxid);
+                }
+            }
+            Assert.assertEquals(sourceZxids.size(), TXN_QTY);
+            for ( int j = 0; j < TXN_QTY; ++j )
+            {
+                Assert.assertEquals(sourceZxids.get(j).longValue(), getFirstZxid(i) + j);
+            }
+        }
+
+        // same index as the single threaded path
+        IndexMetaData       parallelMetaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(parallelDirectory));
+        IndexMetaData       singleMetaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(singleDirectory));
+        Assert.assertEquals(parallelMetaData.getEntryCount(), singleMetaData.getEntryCount());
+        Assert.assertEquals(parallelMetaData.getFromZxid(), singleMetaData.getFromZxid());
+        Assert.assertEquals(parallelMetaData.getToZxid(), singleMetaData.getToZxid());
+        Assert.assertEquals(parallelMetaData.getFrom(), singleMetaData.getFrom());
+        Assert.assertEquals(parallelMetaData.getTo(), singleMetaData.getTo());
+        Assert.assertEquals(parallelMetaData.getIndexedSources().size(), LOG_QTY);
+        Assert.assertEquals(getEntries(parallelDirectory), getEntries(singleDirectory));
+    }
+
+    @Test
+    public void     testParserError() throws Exception
+    {
+        RecordingBuilder    builder = new RecordingBuilder(new File(directory, "index"), Integer.MAX_VALUE);
+        try
+        {
+            builder.open();
+            List<IndexSource>   sources = Lists.newArrayList();
+            for ( int i = 0; i < logs.size(); ++i )
+            {
+                sources.add(makeSource(logs.get(i), (i == 1) ? 2000 : -1));
+            }
+            try
+            {
+                new ParallelIndexLoader(builder, new ActivityLog(100), LOG_QTY, MAX_QUEUED_BYTES).load(sources, Sets.<String>newHashSet());
+                Assert.fail("The read error should have been thrown");
+            }
+            catch ( IOException e )
+            {
+                Assert.assertEquals(e.getMessage(), "read failed");
+            }
+        }
+        finally
+        {
+            builder.rollback();
+            builder.close();
+        }
+    }
+
+    @Test
+    public void     testWriterError() throws Exception
+    {
+        RecordingBuilder    builder = new RecordingBuilder(new File(directory, "index"), 50);
+        try
+        {
+            builder.open();
+            List<IndexSource>   sources = Lists.newArrayList();
+            for ( File log : logs )
+            {
+                sources.add(makeSource(log, -1));
+            }
+            try
+            {
+                // the parsers are blocked waiting for queue space when the writer fails
+                new ParallelIndexLoader(builder, new ActivityLog(100), LOG_QTY, MAX_QUEUED_BYTES).load(sources, Sets.<String>newHashSet());
+                Assert.fail("The write error should have been thrown");
+            }
+            catch ( IOException e )
+            {
+                Assert.assertEquals(e.getMessage(), "write failed");
+            }
+            Assert.assertEquals(builder.zxids.size(), 50);
+        }
+        finally
+        {
+            builder.rollback();
+            builder.close();
+        }
+    }
+
+    private static class RecordingBuilder extends IndexBuilder
+    {
+        private final List<Long> zxids = Lists.newArrayList();
+        private final int failAfterQty;
+
+        RecordingBuilder(File directory, int failAfterQty)
+        {
+            super(directory);
+            this.failAfterQty = failAfterQty;
+        }
+
+        @Override
+        public void addDocument(long zxid, long time, Document document) throws IOException
+        {
+            if ( zxids.size() >= failAfterQty )
+            {
+                throw new IOException("write failed");
+            }
+            zxids.add(zxid);
+            super.addDocument(zxid, time, document);
+        }
+    }
+
+    /**
+     * @param log log file
+     * @param failAfterBytes if not -1, reads fail after this many bytes
+     * @return source
+     */
+    private IndexSource makeSource(final File log, final int failAfterBytes)
+    {
+        return new IndexSource()
+        {
+            @Override
+            public String getKey()
+            {
+                return log.getPath();
+            }
+
+            @Override
+            public String getDescription()
+            {
+                return log.getPath();
+            }
+
+            @Override
+            public InputStream open() throws Exception
+            {
+                InputStream     in = new BufferedInputStream(new FileInputStream(log));
+                if ( failAfterBytes < 0 )
+                {
+                    return in;
+                }
+                return new FilterInputStream(in)
+                {
+                    private int     count = 0;
+
+                    @Override
+                    public int read() throws IOException
+                    {
+                        checkCount(1);
+                        return super.read();
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException
+                    {
+                        checkCount(len);
+                        return super.read(b, off, len);
+                    }
+
+                    private void checkCount(int len) throws IOException
+                    {
+                        count += len;
+                        if ( count > failAfterBytes )
+                        {
+                            throw new IOException("read failed");
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    private Set<String> getEntries(File indexDirectory) throws Exception
+    {
+        Set<String>     entries = Sets.newHashSet();
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            for ( int docId = 0; docId < logSearch.getDocQty(); ++docId )
+            {
+                SearchItem  item = logSearch.toResult(docId);
+                entries.add(item.getPath() + " " + item.getDate().getTime() + " " + new String(logSearch.toData(docId)));
+            }
+        }
+        finally
+        {
+            logSearch.close();
+        }
+        return entries;
+    }
+
+    private static void delete(File f)
+    {
+        File[]      files = f.listFiles();
+        if ( files != null )
+        {
+            for ( File child : files )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+
+    private static long getFirstZxid(int logIndex)
+    {
+        return (logIndex * 1000) + 1;
+    }
+
+    private static File writeLog(File logDirectory, long firstZxid, int qty) throws Exception
+    {
+        FileTxnLog  log = new FileTxnLog(logDirectory);
+        try
+        {
+            for ( int i = 0; i < qty; ++i )
+            {
+                long    zxid = firstZxid + i;
+                byte[]  data = new byte[(int)(zxid % 1000) * 10];   // payloads of varying size
+                log.append(new TxnHeader(1, i, zxid, zxid * 1000, ZooDefs.OpCode.create), new CreateTxn("/test/" + zxid, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, false, 0));
+            }
+            log.commit();
+        }
+        finally
+        {
+            log.close();
+        }
+
+        File[]      files = logDirectory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(files.length, 1);
+        return files[0];
+    }
+}
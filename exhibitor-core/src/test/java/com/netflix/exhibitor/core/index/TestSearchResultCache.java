@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestSearchResultCache
+{
+    private static final int HIT_QTY = 100;
+    private static final int ENTRY_WEIGHT = 128 + (HIT_QTY * 4);
+    private static final int MAX_ENTRIES = 10;
+
+    @Test
+    public void     testWeightEviction() throws Exception
+    {
+        SearchResultCache   cache = new SearchResultCache(MAX_ENTRIES * ENTRY_WEIGHT);
+        LogSearch           owner = Mockito.mock(LogSearch.class);
+        for ( int i = 0; i < (2 * MAX_ENTRIES); ++i )
+        {
+            cache.put(owner, Integer.toString(i), new int[HIT_QTY]);
+        }
+
+        // twice the budget was added - the excess has been evicted
+        Assert.assertTrue(cache.getEntryCount() <= MAX_ENTRIES, "entries: " + cache.getEntryCount());
+        Assert.assertTrue(cache.getEvictionCount() >= MAX_ENTRIES, "evictions: " + cache.getEvictionCount());
+        Assert.assertEquals(cache.getEstimatedBytes(), cache.getEntryCount() * ENTRY_WEIGHT);
+        Assert.assertNotNull(cache.get(owner, Integer.toString((2 * MAX_ENTRIES) - 1)));
+
+        // an entry larger than the whole budget isn't kept
+        cache.put(owner, "big", new int[MAX_ENTRIES * HIT_QTY]);
+        Assert.assertNull(cache.get(owner, "big"));
+        Assert.assertEquals(cache.getEstimatedBytes(), cache.getEntryCount() * ENTRY_WEIGHT);
+    }
+
+    @Test
+    public void     testInvalidateAll() throws Exception
+    {
+        SearchResultCache   cache = new SearchResultCache(Long.MAX_VALUE);
+        LogSearch           owner1 = Mockito.mock(LogSearch.class);
+        LogSearch           owner2 = Mockito.mock(LogSearch.class);
+        for ( int i = 0; i < 3; ++i )
+        {
+            cache.put(owner1, Integer.toString(i), new int[HIT_QTY]);
+            cache.put(owner2, Integer.toString(i), new int[HIT_QTY]);
+        }
+        Assert.assertEquals(cache.getEntryCount(), 6);
+
+        cache.invalidateAll(owner1);
+        for ( int i = 0; i < 3; ++i )
+        {
+            Assert.assertNull(cache.get(owner1, Integer.toString(i)));
+            Assert.assertNotNull(cache.get(owner2, Integer.toString(i)));
+        }
+        Assert.assertEquals(cache.getEntryCount(), 3);
+        Assert.assertEquals(cache.getEstimatedBytes(), 3 * ENTRY_WEIGHT);
+
+        cache.invalidate(owner2, "0");
+        Assert.assertNull(cache.get(owner2, "0"));
+        Assert.assertEquals(cache.getEstimatedBytes(), 2 * ENTRY_WEIGHT);
+    }
+}
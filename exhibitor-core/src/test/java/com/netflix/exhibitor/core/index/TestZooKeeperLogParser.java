@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+public class TestZooKeeperLogParser
+{
+    @Test
+    public void     testParse() throws Exception
+    {
+        File        directory = Files.createTempDir();
+        try
+        {
+            byte[]      bigData = new byte[64 * 1024];  // larger than the parser's initial buffer
+            FileTxnLog  log = new FileTxnLog(directory);
+            try
+            {
+                log.append(new TxnHeader(1, 1, 1, 1000, ZooDefs.OpCode.create), new CreateTxn("/a", "one".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, false, 1));
+                log.append(new TxnHeader(1, 2, 2, 2000, ZooDefs.OpCode.setData), new SetDataTxn("/a", bigData, 1));
+                log.append(new TxnHeader(1, 3, 3, 3000, ZooDefs.OpCode.closeSession), null);
+                log.append(new TxnHeader(1, 4, 4, 4000, ZooDefs.OpCode.create), new CreateTxn("/b", "two".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, true, 2));
+                log.append(new TxnHeader(1, 5, 5, 5000, ZooDefs.OpCode.delete), new DeleteTxn("/a"));
+                log.commit();
+            }
+            finally
+            {
+                log.close();
+            }
+
+            // parse through both a plain stream and the memory mapped stream
+            for ( boolean mapped : new boolean[]{false, true} )
+            {
+                checkRecords(directory, bigData, mapped);
+            }
+        }
+        finally
+        {
+            deleteDirectory(directory);
+        }
+    }
+
+    private void checkRecords(File directory, byte[] bigData, boolean mapped) throws Exception
+    {
+        final List<TxnHeader>   headers = Lists.newArrayList();
+        final List<Record>      records = Lists.newArrayList();
+        parse(directory, headers, records, mapped);
+
+        Assert.assertEquals(headers.size(), 5);
+        for ( int i = 0; i < headers.size(); ++i )
+        {
+            Assert.assertEquals(headers.get(i).getZxid(), i + 1);
+        }
+
+        Assert.assertEquals(((CreateTxn)records.get(0)).getPath(), "/a");
+        Assert.assertEquals(((CreateTxn)records.get(0)).getData(), "one".getBytes());
+        Assert.assertEquals(((SetDataTxn)records.get(1)).getData(), bigData);
+        Assert.assertNull(records.get(2));
+        Assert.assertTrue(((CreateTxn)records.get(3)).getEphemeral());
+        Assert.assertEquals(((DeleteTxn)records.get(4)).getPath(), "/a");
+    }
+
+    @Test
+    public void     testInvalidHeader() throws Exception
+    {
+        File        directory = Files.createTempDir();
+        try
+        {
+            File        file = new File(directory, "log.1");
+            Files.write("not a zookeeper log file".getBytes(), file);
+
+            InputStream in = new FileInputStream(file);
+            try
+            {
+                Assert.assertFalse(new ZooKeeperLogParser(in).isValid());
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        finally
+        {
+            deleteDirectory(directory);
+        }
+    }
+
+    private void parse(File directory, final List<TxnHeader> headers, final List<Record> records, boolean mapped) throws Exception
+    {
+        File[]      files = directory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(files.length, 1);
+
+        InputStream in = mapped ? MappedLogInputStream.open(files[0]) : new BufferedInputStream(new FileInputStream(files[0]));
+        try
+        {
+            ZooKeeperLogParser  parser = new ZooKeeperLogParser(in);
+            Assert.assertTrue(parser.isValid());
+            parser.parse
+            (
+                new LogEntryReceiver()
+                {
+                    @Override
+                    public void receiveEntry(TxnHeader header, Record record) throws Exception
+                    {
+                        headers.add(header);
+                        records.add(record);
+                    }
+                }
+            );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private void deleteDirectory(File directory)
+    {
+        File[]      files = directory.listFiles();
+        if ( files != null )
+        {
+            for ( File f : files )
+            {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import org.apache.jute.BinaryInputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.server.persistence.FileHeader;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.server.util.SerializeUtils;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import java.util.zip.Checksum;
+
+/**
+ * Reports the records/sec of {@link ZooKeeperLogParser} against the previous parser (a new buffer,
+ * checksum and archive per record plus a reflective SerializeUtils call). Pass the paths of real
+ * ZooKeeper txn logs as arguments, e.g. <code>ZooKeeperLogParserBenchmark /var/zookeeper/version-2/log.*</code>
+ */
+public class ZooKeeperLogParserBenchmark
+{
+    private static final int ITERATIONS = 5;
+
+    private static final Method deserializeTxnMethod;
+    static
+    {
+        try
+        {
+            deserializeTxnMethod = SerializeUtils.class.getMethod("deserializeTxn", byte[].class, TxnHeader.class);
+        }
+        catch ( NoSuchMethodException e )
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface Parser
+    {
+        public void parse(InputStream in, LogEntryReceiver receiver) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if ( args.length == 0 )
+        {
+            System.err.println("Usage: ZooKeeperLogParserBenchmark <txn log> [<txn log> ...]");
+            System.exit(1);
+        }
+
+        Parser      current = new Parser()
+        {
+            @Override
+            public void parse(InputStream in, LogEntryReceiver receiver) throws Exception
+            {
+                ZooKeeperLogParser  parser = new ZooKeeperLogParser(in);
+                if ( parser.isValid() )
+                {
+                    parser.parse(receiver);
+                }
+            }
+        };
+        Parser      previous = new Parser()
+        {
+            @Override
+            public void parse(InputStream in, LogEntryReceiver receiver) throws Exception
+            {
+                previousParse(in, receiver);
+            }
+        };
+
+        // warm up both before measuring
+        run("previous", previous, args, false);
+        run("current", current, args, false);
+
+        System.out.println(String.format("%-10s %12s %12s %14s", "parser", "records", "MB/s", "records/s"));
+        run("previous", previous, args, true);
+        run("current", current, args, true);
+    }
+
+    private static void run(String name, Parser parser, String[] paths, boolean report) throws Exception
+    {
+        final AtomicLong    records = new AtomicLong(0);
+        LogEntryReceiver    receiver = new LogEntryReceiver()
+        {
+            @Override
+            public void receiveEntry(TxnHeader header, Record record) throws Exception
+            {
+                records.incrementAndGet();
+            }
+        };
+
+        long        bytes = 0;
+        long        nanos = 0;
+        for ( String path : paths )
+        {
+            byte[]      data = Files.toByteArray(new File(path));
+            for ( int i = 0; i < ITERATIONS; ++i )
+            {
+                long        start = System.nanoTime();
+                parser.parse(new ByteArrayInputStream(data), receiver);
+                nanos += System.nanoTime() - start;
+                bytes += data.length;
+            }
+        }
+
+        if ( report )
+        {
+            double      seconds = Math.max(1, nanos) / 1e9;
+            System.out.println(String.format("%-10s %12d %12.1f %14.0f", name, records.get() / ITERATIONS, (bytes / (1024.0 * 1024.0)) / seconds, records.get() / seconds));
+        }
+    }
+
+    // the parse loop as it was before the buffers were reused
+    private static void previousParse(InputStream in, LogEntryReceiver receiver) throws Exception
+    {
+        BinaryInputArchive  logStream = BinaryInputArchive.getArchive(in);
+        try
+        {
+            FileHeader      fhdr = new FileHeader();
+            fhdr.deserialize(logStream, "fileheader");
+            if ( fhdr.getMagic() != FileTxnLog.TXNLOG_MAGIC )
+            {
+                return;
+            }
+        }
+        catch ( IOException e )
+        {
+            return;
+        }
+
+        while ( true )
+        {
+            long        crcValue;
+            byte[]      bytes;
+            try
+            {
+                crcValue = logStream.readLong("crcvalue");
+                bytes = logStream.readBuffer("txnEntry");
+            }
+            catch ( EOFException e )
+            {
+                break;
+            }
+            if ( bytes.length == 0 )
+            {
+                break;
+            }
+
+            Checksum    crc = new Adler32();
+            crc.update(bytes, 0, bytes.length);
+            if ( crcValue != crc.getValue() )
+            {
+                throw new IOException("CRC doesn't match " + crcValue + " vs " + crc.getValue());
+            }
+
+            TxnHeader       hdr = new TxnHeader();
+            Record          record = (Record)deserializeTxnMethod.invoke(null, bytes, hdr);
+
+            if ( logStream.readByte("EOR") != 'B' )
+            {
+                break;
+            }
+
+            receiver.receiveEntry(hdr, record);
+        }
+    }
+}
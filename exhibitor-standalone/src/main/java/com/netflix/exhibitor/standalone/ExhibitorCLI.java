@@ -91,6 +91,8 @@ public class ExhibitorCLI
     public static final String STATIC_ENSEMBLE = "staticensemble";
 
     public static final String FILESYSTEMBACKUP = "filesystembackup";
+    public static final String AZURE_BACKUP = "azurebackup";
+    public static final String GCS_BACKUP = "gcsbackup";
     public static final String TIMEOUT = "timeout";
     public static final String LOGLINES = "loglines";
     public static final String HOSTNAME = "hostname";
@@ -105,6 +107,11 @@ public class ExhibitorCLI
     public static final String ACL_ID = "aclid";
     public static final String ACL_PERMISSIONS = "aclperms";
     public static final String SERVO_INTEGRATION = "servo";
+    public static final String INDEX_SEARCH_CACHE_MB = "indexsearchcachemb";
+    public static final String INDEX_MAX_OPEN = "indexmaxopen";
+    public static final String MAIN_WORKERS = "mainworkers";
+    public static final String IO_WORKERS = "ioworkers";
+    public static final String SLOW_ACTIVITY_MS = "slowactivityms";
 
     public static final String SECURITY_FILE = "security";
     public static final String REALM = "realm";
@@ -172,6 +179,8 @@ public class ExhibitorCLI
         Options backupOptions = new Options();
         backupOptions.addOption(null, S3_BACKUP, true, "If true, enables AWS S3 backup of ZooKeeper log files (s3credentials may be provided as well).");
         backupOptions.addOption(null, FILESYSTEMBACKUP, true, "If true, enables file system backup of ZooKeeper log files.");
+        backupOptions.addOption(null, AZURE_BACKUP, true, "If true, enables Azure block blob backup of ZooKeeper log files (azurecredentials must be provided as well).");
+        backupOptions.addOption(null, GCS_BACKUP, true, "If true, enables Google Cloud Storage backup of ZooKeeper log files.");
 
         Options s3Options = new Options();
         s3Options.addOption(null, S3_CREDENTIALS, true, "Optional credentials to use for s3backup or s3config. Argument is the path to an AWS credential properties file with two properties: " + PropertyBasedS3Credential.PROPERTY_S3_KEY_ID + " and " + PropertyBasedS3Credential.PROPERTY_S3_SECRET_KEY);
@@ -196,6 +205,11 @@ public class ExhibitorCLI
         generalOptions.addOption(SHORT_CONFIG_TYPE, CONFIG_TYPE, true, "Defines which configuration type you want to use. Choices are: \"file\", \"s3\", \"gcs\", \"azure\", \"zookeeper\", or \"none\". Additional config will be required depending on which type you are using.");
         generalOptions.addOption(null, CONFIGCHECKMS, true, "Period (ms) to check for shared config updates. Default is: 30000");
         generalOptions.addOption(null, SERVO_INTEGRATION, true, "true/false (default is false). If enabled, ZooKeeper will be queried once a minute for its state via the 'mntr' four letter word (this requires ZooKeeper 3.4.x+). Servo will be used to publish this data via JMX.");
+        generalOptions.addOption(null, INDEX_SEARCH_CACHE_MB, true, "Approximate memory (in megabytes) used to cache log index search results. Default is 50.");
+        generalOptions.addOption(null, INDEX_MAX_OPEN, true, "Max number of log indexes to keep open for searching. The least recently used idle index is closed when exceeded. Default is 10.");
+        generalOptions.addOption(null, MAIN_WORKERS, true, "Number of threads running instance monitoring/control activities. Activities that must not overlap still run serially. Default is 1.");
+        generalOptions.addOption(null, IO_WORKERS, true, "Number of threads running I/O activities (backups, cleanup, indexing, etc.). Activities that must not overlap still run serially. Default is 1.");
+        generalOptions.addOption(null, SLOW_ACTIVITY_MS, true, "Activities running longer than this many ms have their worker's stack written to the log. 0 disables. Default is 60000.");
         generalOptions.addOption(null, INITIAL_CONFIG_FILE, true, "Full path to a file that contains initial/default values for Exhibitor/ZooKeeper config values. The file is a standard property file. The property names are listed below. The file can specify some or all of the properties.");
         generalOptions.addOption(null, PREFERENCES_PATH, true, "Certain values (such as Control Panel values) are stored in a preferences file. By default, Preferences.userRoot() is used. Use this option to specify a different file path.");
 
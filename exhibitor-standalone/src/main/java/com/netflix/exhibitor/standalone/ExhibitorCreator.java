@@ -19,13 +19,17 @@ package com.netflix.exhibitor.standalone;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.netflix.exhibitor.core.ActivityQueueConfiguration;
 import com.netflix.exhibitor.core.ExhibitorArguments;
 import com.netflix.exhibitor.core.ExhibitorEnv;
 import com.netflix.exhibitor.core.HttpsConfiguration;
+import com.netflix.exhibitor.core.IndexCacheConfiguration;
 import com.netflix.exhibitor.core.azure.AzureClientFactoryImpl;
 import com.netflix.exhibitor.core.azure.PropertyBasedAzureCredential;
 import com.netflix.exhibitor.core.backup.BackupProvider;
+import com.netflix.exhibitor.core.backup.azure.AzureBackupProvider;
 import com.netflix.exhibitor.core.backup.filesystem.FileSystemBackupProvider;
+import com.netflix.exhibitor.core.backup.gcs.GcsBackupProvider;
 import com.netflix.exhibitor.core.backup.s3.S3BackupProvider;
 import com.netflix.exhibitor.core.config.AutoManageLockArguments;
 import com.netflix.exhibitor.core.config.ConfigProvider;
@@ -132,7 +136,14 @@ public class ExhibitorCreator
             throw new ExhibitorCreatorExit(cli);
         }
 
-        checkMutuallyExclusive(cli, commandLine, S3_BACKUP, FILESYSTEMBACKUP);
+        String[]    backupTypes = {S3_BACKUP, FILESYSTEMBACKUP, AZURE_BACKUP, GCS_BACKUP};
+        for ( int i = 0; i < backupTypes.length; ++i )
+        {
+            for ( int j = i + 1; j < backupTypes.length; ++j )
+            {
+                checkMutuallyExclusive(cli, commandLine, backupTypes[i], backupTypes[j]);
+            }
+        }
 
         String                        s3Region = commandLine.getOptionValue(S3_REGION, null);
         PropertyBasedS3Credential     awsCredentials = null;
@@ -164,6 +175,19 @@ public class ExhibitorCreator
         {
             backupProvider = new FileSystemBackupProvider();
         }
+        else if ( "true".equalsIgnoreCase(commandLine.getOptionValue(AZURE_BACKUP)) )
+        {
+            if ( azureCredentials == null )
+            {
+                log.error(AZURE_BACKUP + " requires " + AZURE_CREDENTIALS);
+                throw new ExhibitorCreatorExit(cli);
+            }
+            backupProvider = new AzureBackupProvider(new AzureClientFactoryImpl(), azureCredentials);
+        }
+        else if ( "true".equalsIgnoreCase(commandLine.getOptionValue(GCS_BACKUP)) )
+        {
+            backupProvider = new GcsBackupProvider(new GcsClientFactoryImpl());
+        }
 
         int timeoutMs = Integer.parseInt(commandLine.getOptionValue(TIMEOUT, "30000"));
         int logWindowSizeLines = Integer.parseInt(commandLine.getOptionValue(LOGLINES, "1000"));
@@ -172,6 +196,11 @@ public class ExhibitorCreator
         int httpPort = Integer.parseInt(commandLine.getOptionValue(HTTP_PORT, "8080"));
         String extraHeadingText = commandLine.getOptionValue(EXTRA_HEADING_TEXT, null);
         boolean allowNodeMutations = "true".equalsIgnoreCase(commandLine.getOptionValue(NODE_MUTATIONS, "true"));
+        int indexSearchCacheMb = Integer.parseInt(commandLine.getOptionValue(INDEX_SEARCH_CACHE_MB, "50"));
+        int indexMaxOpen = Integer.parseInt(commandLine.getOptionValue(INDEX_MAX_OPEN, "10"));
+        int mainWorkers = Integer.parseInt(commandLine.getOptionValue(MAIN_WORKERS, "1"));
+        int ioWorkers = Integer.parseInt(commandLine.getOptionValue(IO_WORKERS, "1"));
+        int slowActivityMs = Integer.parseInt(commandLine.getOptionValue(SLOW_ACTIVITY_MS, "60000"));
 
         String configType = commandLine.hasOption(SHORT_CONFIG_TYPE) ? commandLine.getOptionValue(SHORT_CONFIG_TYPE) : (commandLine.hasOption(CONFIG_TYPE) ? commandLine.getOptionValue(CONFIG_TYPE) : null);
         if ( configType == null )
@@ -263,6 +292,8 @@ public class ExhibitorCreator
             .servoRegistration(servoRegistration)
             .preferencesPath(preferencesPath)
             .httpsConfiguration(httpsConfiguration)
+            .indexCacheConfiguration(new IndexCacheConfiguration(indexSearchCacheMb * 1024L * 1024L, indexMaxOpen, IndexCacheConfiguration.DEFAULT_MAX_IDLE_MS, IndexCacheConfiguration.DEFAULT_SWEEP_PERIOD_MS))
+            .activityQueueConfiguration(new ActivityQueueConfiguration(mainWorkers, ioWorkers, slowActivityMs))
         ;
 
         this.securityHandler = handler;